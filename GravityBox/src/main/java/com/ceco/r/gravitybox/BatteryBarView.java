@@ -27,6 +27,7 @@ import com.ceco.r.gravitybox.ProgressBarController.ProgressInfo;
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
 import com.ceco.r.gravitybox.managers.SysUiStatusBarIconManager;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
+import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryData;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryStatusListener;
 import com.ceco.r.gravitybox.managers.SysUiStatusBarIconManager.ColorInfo;
@@ -166,7 +167,8 @@ public class BatteryBarView extends View implements IconManagerListener,
             SysUiManagers.IconManager.registerListener(this);
         }
         if (SysUiManagers.BatteryInfoManager != null) {
-            SysUiManagers.BatteryInfoManager.registerListener(this);
+            SysUiManagers.BatteryInfoManager.registerListener(this,
+                    SysUiBatteryInfoManager.FIELD_LEVEL | SysUiBatteryInfoManager.FIELD_CHARGING);
         }
     }
 
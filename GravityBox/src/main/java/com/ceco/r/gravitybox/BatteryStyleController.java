@@ -60,6 +60,7 @@ public class BatteryStyleController implements BroadcastMediator.Receiver {
     private XSharedPreferences mPrefs;
     private int mBatteryStyle;
     private boolean mBatteryStyleHeaderEnabled;
+    private int mCircleAnimFps;
     private boolean mBatteryPercentTextEnabledSb;
     private boolean mBatteryPercentTextEnabledSbHeader;
     private boolean mBatteryPercentTextOnRight;
@@ -136,6 +137,8 @@ public class BatteryStyleController implements BroadcastMediator.Receiver {
 
         mBatteryStyleHeaderEnabled = prefs.getBoolean(
                 GravityBoxSettings.PREF_KEY_BATTERY_STYLE_HEADER, false);
+        mCircleAnimFps = prefs.getInt(GravityBoxSettings.PREF_KEY_BATTERY_CIRCLE_ANIM_FPS,
+                CmCircleBattery.DEFAULT_ANIM_FPS);
         mBatteryPercentTextEnabledSb = prefs.getBoolean(
                 GravityBoxSettings.PREF_KEY_BATTERY_PERCENT_TEXT_STATUSBAR, false);
         mBatteryPercentTextEnabledSbHeader = prefs.getBoolean(
@@ -176,6 +179,7 @@ public class BatteryStyleController implements BroadcastMediator.Receiver {
 
         // inject circle battery view
         mCircleBattery = new CmCircleBattery(mContext, this);
+        mCircleBattery.setAnimationFrameRate(mCircleAnimFps);
         if (bLayoutParams != null) {
             mCircleBattery.setLayoutParams(bLayoutParams);
         } else {
@@ -447,6 +451,13 @@ public class BatteryStyleController implements BroadcastMediator.Receiver {
                         GravityBoxSettings.EXTRA_BATTERY_STYLE_HEADER, false);
                 if (DEBUG) log("mBatteryStyleHeaderEnabled changed to: " + mBatteryStyleHeaderEnabled);
             }
+            if (intent.hasExtra(GravityBoxSettings.EXTRA_BATTERY_CIRCLE_ANIM_FPS)) {
+                mCircleAnimFps = intent.getIntExtra(GravityBoxSettings.EXTRA_BATTERY_CIRCLE_ANIM_FPS,
+                        CmCircleBattery.DEFAULT_ANIM_FPS);
+                if (mCircleBattery != null) {
+                    mCircleBattery.setAnimationFrameRate(mCircleAnimFps);
+                }
+            }
             updateBatteryStyle();
         } else if (action.equals(GravityBoxSettings.ACTION_PREF_BATTERY_PERCENT_TEXT_CHANGED)) {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_BATTERY_PERCENT_TEXT_STATUSBAR)) {
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+/**
+ * Brightness control by sliding over status bar.
+ * Adjustment starts after horizontal lingering or long-press within status bar.
+ * Previews are delivered at most once per minimum interval (display frame)
+ * and the final level is committed once when gesture ends.
+ * Levels are in range 0..1, optionally mapped perceptually from slider position.
+ * Geometry is supplied by the caller whenever layout changes and timing is
+ * delegated to a Scheduler; there are no Android dependencies so synthetic
+ * touch streams can be replayed on plain JVM.
+ * Not thread safe; all calls are expected to come from a single thread.
+ */
+class BrightnessGestureController {
+    // same values as MotionEvent actions
+    static final int ACTION_DOWN = 0;
+    static final int ACTION_UP = 1;
+    static final int ACTION_MOVE = 2;
+    static final int ACTION_CANCEL = 3;
+
+    private static final float PADDING = 0.2f;
+    private static final long LONG_PRESS_TIMEOUT = 750; // ms
+    private static final int LINGER_THRESHOLD = 20;
+
+    // HLG curve constants as used by SettingsLib brightness slider
+    private static final float HLG_R = 0.5f;
+    private static final float HLG_A = 0.17883277f;
+    private static final float HLG_B = 0.28466892f;
+    private static final float HLG_C = 0.55991073f;
+
+    interface Scheduler {
+        long now();
+        void postDelayed(Runnable r, long delayMs);
+        void removeCallbacks(Runnable r);
+    }
+
+    interface Callback {
+        void onPreview(float level);
+        void onCommit(float level);
+        void onLongPress();
+    }
+
+    private final Scheduler mScheduler;
+    private final Callback mCallback;
+
+    private int mStatusBarHeight;
+    private int mPeekHeight;
+    private float mScreenWidth;
+    private int mTouchSlop;
+    private long mMinPreviewIntervalMs = 16;
+    private boolean mPerceptual;
+
+    private boolean mJustPeeked;
+    private boolean mChanged;
+    private int mLinger;
+    private int mInitialTouchX;
+    private int mInitialTouchY;
+    private float mLevel = -1f;
+    private float mPreviewedLevel = -1f;
+    private long mLastPreviewTime;
+
+    BrightnessGestureController(Scheduler scheduler, Callback callback) {
+        mScheduler = scheduler;
+        mCallback = callback;
+    }
+
+    void setGeometry(int statusBarHeight, int peekHeight, int screenWidth, int touchSlop) {
+        mStatusBarHeight = statusBarHeight;
+        mPeekHeight = peekHeight;
+        mScreenWidth = screenWidth;
+        mTouchSlop = touchSlop;
+    }
+
+    void setMinPreviewIntervalMs(long intervalMs) {
+        mMinPreviewIntervalMs = Math.max(0, intervalMs);
+    }
+
+    void setPerceptual(boolean perceptual) {
+        mPerceptual = perceptual;
+    }
+
+    /**
+     * True if level was adjusted within current or last finished gesture
+     */
+    boolean isChanged() {
+        return mChanged;
+    }
+
+    /**
+     * True if current or last finished gesture hasn't left peek area
+     */
+    boolean isJustPeeked() {
+        return mJustPeeked;
+    }
+
+    void onTouch(int action, int x, int y) {
+        if (mScreenWidth <= 0) return;
+
+        if (action == ACTION_DOWN) {
+            mScheduler.removeCallbacks(mLongPress);
+            mScheduler.removeCallbacks(mPreviewFlush);
+            mChanged = false;
+            if (y < mStatusBarHeight) {
+                mLinger = 0;
+                mInitialTouchX = x;
+                mInitialTouchY = y;
+                mJustPeeked = true;
+                mLevel = mPreviewedLevel = -1f;
+                mScheduler.postDelayed(mLongPress, LONG_PRESS_TIMEOUT);
+            } else {
+                mJustPeeked = false;
+            }
+        } else if (action == ACTION_MOVE) {
+            if (y < mStatusBarHeight && mJustPeeked) {
+                if (mLinger > LINGER_THRESHOLD) {
+                    adjust(x);
+                } else {
+                    final int xDiff = Math.abs(x - mInitialTouchX);
+                    final int yDiff = Math.abs(y - mInitialTouchY);
+                    if (xDiff > yDiff) {
+                        mLinger++;
+                    }
+                    if (xDiff > mTouchSlop || yDiff > mTouchSlop) {
+                        mScheduler.removeCallbacks(mLongPress);
+                    }
+                }
+            } else {
+                if (y > mPeekHeight) {
+                    mJustPeeked = false;
+                }
+                mScheduler.removeCallbacks(mLongPress);
+            }
+        } else if (action == ACTION_UP || action == ACTION_CANCEL) {
+            mScheduler.removeCallbacks(mLongPress);
+            mScheduler.removeCallbacks(mPreviewFlush);
+            if (mChanged) {
+                if (mPreviewedLevel != mLevel) {
+                    mPreviewedLevel = mLevel;
+                    mCallback.onPreview(mLevel);
+                }
+                mCallback.onCommit(mLevel);
+            }
+        }
+    }
+
+    private void adjust(int x) {
+        final float level = positionToLevel(x / mScreenWidth, mPerceptual);
+        mChanged = true;
+        if (level == mLevel) return;
+        mLevel = level;
+
+        final long sinceLast = mScheduler.now() - mLastPreviewTime;
+        if (sinceLast >= mMinPreviewIntervalMs) {
+            mScheduler.removeCallbacks(mPreviewFlush);
+            mPreviewFlush.run();
+        } else {
+            // keep single pending flush so that the latest level gets shown
+            mScheduler.removeCallbacks(mPreviewFlush);
+            mScheduler.postDelayed(mPreviewFlush, mMinPreviewIntervalMs - sinceLast);
+        }
+    }
+
+    private final Runnable mPreviewFlush = new Runnable() {
+        @Override
+        public void run() {
+            mLastPreviewTime = mScheduler.now();
+            if (mPreviewedLevel != mLevel) {
+                mPreviewedLevel = mLevel;
+                mCallback.onPreview(mLevel);
+            }
+        }
+    };
+
+    private final Runnable mLongPress = new Runnable() {
+        @Override
+        public void run() {
+            mCallback.onLongPress();
+            mLinger = LINGER_THRESHOLD + 1;
+            adjust(mInitialTouchX);
+        }
+    };
+
+    /**
+     * Maps relative horizontal position to level in range 0..1.
+     * Padding on both sides makes it easier to reach min/max.
+     */
+    static float positionToLevel(float position, boolean perceptual) {
+        float padded = Math.min(1f - PADDING, Math.max(PADDING, position));
+        float value = (padded - PADDING) / (1f - 2f * PADDING);
+        return perceptual ? gammaToLinear(value) : value;
+    }
+
+    /**
+     * Inverse of HLG opto-electronic transfer function normalized to range 0..1
+     * so that equal slider steps give perceptually similar brightness steps
+     */
+    static float gammaToLinear(float value) {
+        final float v = Math.max(0f, Math.min(1f, value));
+        final float ret;
+        if (v <= HLG_R) {
+            ret = (v / HLG_R) * (v / HLG_R);
+        } else {
+            ret = (float) Math.exp((v - HLG_C) / HLG_A) + HLG_B;
+        }
+        return Math.max(0f, Math.min(1f, ret / 12f));
+    }
+}
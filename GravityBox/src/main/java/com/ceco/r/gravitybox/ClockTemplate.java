@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Status bar clock text compiled from time pattern, AM/PM handling and
+ * day of week/date prefix. Compiled once per configuration (locale,
+ * timezone, 12/24h, preferences); rendering reuses internal buffer and
+ * prefix is formatted once per day.
+ * Patterns with fields other than hours, minutes, seconds and AM/PM
+ * fall back to SimpleDateFormat for the time part.
+ * There are no Android dependencies so it can be verified on plain JVM.
+ * Not thread safe.
+ */
+class ClockTemplate {
+    static final int DOW_NONE = 0;
+    static final int DOW_STANDARD = 1;
+    static final int DOW_LOWERCASE = 2;
+    static final int DOW_UPPERCASE = 3;
+
+    private static final char FIELD_LITERAL = 0;
+
+    // compiled time pattern; field letter and width, or literal text
+    private static class Token {
+        final char field;
+        final int width;
+        final String literal;
+        Token(char field, int width, String literal) {
+            this.field = field;
+            this.width = width;
+            this.literal = literal;
+        }
+    }
+
+    private final Locale mLocale;
+    private final Calendar mCalendar;
+    private final List<Token> mTokens = new ArrayList<>();
+    private final String[] mAmPmStrings;
+    private final boolean mAmPmFirst;
+    private final char mZeroDigit;
+    private final SimpleDateFormat mFallbackFormat;
+    private final SimpleDateFormat mDateFormat;
+    private final int mDowMode;
+
+    private final StringBuilder mText = new StringBuilder(32);
+    private int mPrefixLength;
+    private int mAmPmStart = -1;
+    private int mAmPmEnd = -1;
+
+    private String mPrefix = "";
+    private int mPrefixDay = -1;
+
+    /**
+     * @param timePattern SimpleDateFormat pattern of time part
+     * @param datePattern SimpleDateFormat pattern of date prefix or null to show no date
+     */
+    ClockTemplate(Locale locale, TimeZone timeZone, String timePattern, boolean is24,
+                  boolean amPmHide, String datePattern, int dowMode) {
+        mLocale = locale;
+        mCalendar = Calendar.getInstance(timeZone, locale);
+        mAmPmStrings = DateFormatSymbols.getInstance(locale).getAmPmStrings();
+        mAmPmFirst = locale.equals(Locale.TAIWAN) || locale.equals(Locale.CHINA);
+        mZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        mDowMode = dowMode;
+
+        if (datePattern != null) {
+            mDateFormat = new SimpleDateFormat(datePattern, locale);
+            mDateFormat.setTimeZone(timeZone);
+        } else {
+            mDateFormat = null;
+        }
+
+        if (compile(timePattern)) {
+            mFallbackFormat = null;
+            applyAmPmRules(is24, amPmHide);
+        } else {
+            mTokens.clear();
+            mFallbackFormat = new SimpleDateFormat(
+                    applyAmPmRules(timePattern, is24, amPmHide), locale);
+            mFallbackFormat.setTimeZone(timeZone);
+        }
+    }
+
+    private boolean compile(String pattern) {
+        StringBuilder literal = new StringBuilder();
+        final int len = pattern.length();
+        int i = 0;
+        while (i < len) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                i++;
+                if (i < len && pattern.charAt(i) == '\'') {
+                    // doubled quote outside of quoted text
+                    literal.append('\'');
+                    i++;
+                    continue;
+                }
+                // quoted text up to closing quote; doubled quote inside stands for quote
+                while (i < len) {
+                    c = pattern.charAt(i++);
+                    if (c != '\'') {
+                        literal.append(c);
+                    } else if (i < len && pattern.charAt(i) == '\'') {
+                        literal.append('\'');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                if ("HkKhmsa".indexOf(c) < 0) {
+                    return false;
+                }
+                int width = 1;
+                while (i + width < len && pattern.charAt(i + width) == c) width++;
+                if (literal.length() > 0) {
+                    mTokens.add(new Token(FIELD_LITERAL, 0, literal.toString()));
+                    literal.setLength(0);
+                }
+                mTokens.add(new Token(c, width, null));
+                i += width;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() > 0) {
+            mTokens.add(new Token(FIELD_LITERAL, 0, literal.toString()));
+        }
+        return true;
+    }
+
+    private void applyAmPmRules(boolean is24, boolean amPmHide) {
+        boolean hasAmPm = false;
+        for (Token t : mTokens) {
+            hasAmPm |= t.field == 'a';
+        }
+
+        if (amPmHide && hasAmPm) {
+            for (int i = mTokens.size() - 1; i >= 0; i--) {
+                if (mTokens.get(i).field == 'a') {
+                    mTokens.remove(i);
+                }
+            }
+            trimLiterals();
+        } else if (!amPmHide && !is24 && !hasAmPm) {
+            if (mAmPmFirst) {
+                mTokens.add(0, new Token(FIELD_LITERAL, 0, " "));
+                mTokens.add(0, new Token('a', 1, null));
+            } else {
+                mTokens.add(new Token(FIELD_LITERAL, 0, " "));
+                mTokens.add(new Token('a', 1, null));
+            }
+        }
+    }
+
+    // same rules as above applied to pattern used by fallback format
+    private String applyAmPmRules(String pattern, boolean is24, boolean amPmHide) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 2);
+        boolean quoted = false;
+        boolean hasAmPm = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == 'a') {
+                hasAmPm = true;
+                if (amPmHide) continue;
+            }
+            sb.append(c);
+        }
+
+        if (amPmHide && hasAmPm) {
+            return sb.toString().trim();
+        } else if (!amPmHide && !is24 && !hasAmPm) {
+            return mAmPmFirst ? "a " + pattern : pattern + " a";
+        }
+        return pattern;
+    }
+
+    private void trimLiterals() {
+        while (!mTokens.isEmpty() && mTokens.get(0).field == FIELD_LITERAL) {
+            String s = mTokens.get(0).literal.replaceAll("^\\s+", "");
+            mTokens.remove(0);
+            if (!s.isEmpty()) {
+                mTokens.add(0, new Token(FIELD_LITERAL, 0, s));
+                break;
+            }
+        }
+        while (!mTokens.isEmpty() && mTokens.get(mTokens.size() - 1).field == FIELD_LITERAL) {
+            String s = mTokens.get(mTokens.size() - 1).literal.replaceAll("\\s+$", "");
+            mTokens.remove(mTokens.size() - 1);
+            if (!s.isEmpty()) {
+                mTokens.add(new Token(FIELD_LITERAL, 0, s));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Renders clock text for given time. Returned buffer is reused by subsequent calls.
+     */
+    CharSequence format(long timeMillis) {
+        mCalendar.setTimeInMillis(timeMillis);
+        mText.setLength(0);
+        mAmPmStart = mAmPmEnd = -1;
+
+        updatePrefix();
+        mText.append(mPrefix);
+        mPrefixLength = mPrefix.length();
+
+        if (mFallbackFormat != null) {
+            mText.append(mFallbackFormat.format(mCalendar.getTime()));
+            return mText;
+        }
+
+        final int hour = mCalendar.get(Calendar.HOUR_OF_DAY);
+        for (int i = 0; i < mTokens.size(); i++) {
+            Token t = mTokens.get(i);
+            switch (t.field) {
+                case FIELD_LITERAL: mText.append(t.literal); break;
+                case 'H': appendNumber(hour, t.width); break;
+                case 'k': appendNumber(hour == 0 ? 24 : hour, t.width); break;
+                case 'K': appendNumber(hour % 12, t.width); break;
+                case 'h': appendNumber(hour % 12 == 0 ? 12 : hour % 12, t.width); break;
+                case 'm': appendNumber(mCalendar.get(Calendar.MINUTE), t.width); break;
+                case 's': appendNumber(mCalendar.get(Calendar.SECOND), t.width); break;
+                case 'a':
+                    int start = mText.length();
+                    mText.append(mAmPmStrings[hour < 12 ? Calendar.AM : Calendar.PM]);
+                    mAmPmEnd = mText.length();
+                    // span includes leading space unless AM/PM goes first
+                    mAmPmStart = !mAmPmFirst && start > 0 &&
+                            Character.isWhitespace(mText.charAt(start - 1)) ? start - 1 : start;
+                    break;
+            }
+        }
+        return mText;
+    }
+
+    private void appendNumber(int value, int width) {
+        if (width >= 2 || value >= 10) {
+            if (value < 10 && width >= 2) {
+                mText.append(mZeroDigit);
+            } else {
+                mText.append((char) (mZeroDigit + value / 10));
+            }
+        }
+        mText.append((char) (mZeroDigit + value % 10));
+    }
+
+    private void updatePrefix() {
+        if (mDateFormat == null && mDowMode == DOW_NONE) return;
+
+        final int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (day == mPrefixDay) return;
+
+        StringBuilder prefix = new StringBuilder();
+        if (mDowMode != DOW_NONE) {
+            String dow = mCalendar.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT, mLocale);
+            if (mDowMode == DOW_LOWERCASE) {
+                dow = dow.toLowerCase(mLocale);
+            } else if (mDowMode == DOW_UPPERCASE) {
+                dow = dow.toUpperCase(mLocale);
+            }
+            prefix.append(dow).append(' ');
+        }
+        if (mDateFormat != null) {
+            prefix.append(mDateFormat.format(mCalendar.getTime())).append(' ');
+        }
+        mPrefix = prefix.toString();
+        mPrefixDay = day;
+    }
+
+    /**
+     * Length of day of week and date prefix of last rendered text
+     */
+    int getPrefixLength() {
+        return mPrefixLength;
+    }
+
+    /**
+     * Start of AM/PM span of last rendered text or -1 if there is none
+     */
+    int getAmPmStart() {
+        return mAmPmStart;
+    }
+
+    int getAmPmEnd() {
+        return mAmPmEnd;
+    }
+}
@@ -19,6 +19,7 @@ package com.ceco.r.gravitybox;
 import com.ceco.r.gravitybox.ModStatusBar.ContainerType;
 import com.ceco.r.gravitybox.managers.SysUiStatusBarIconManager;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
+import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryData;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryStatusListener;
 import com.ceco.r.gravitybox.managers.SysUiStatusBarIconManager.ColorInfo;
@@ -36,6 +37,7 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.Handler;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.widget.ImageView;
 import de.robv.android.xposed.XposedBridge;
 
@@ -46,6 +48,11 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
 
     public enum Style { SOLID, DASHED }
 
+    // charging animation speed in degrees per second
+    private static final float ANIM_SPEED_NORMAL = 60f;
+    private static final float ANIM_SPEED_FAST = 200f;
+    public static final int DEFAULT_ANIM_FPS = 20;
+
     private Handler mHandler;
 
     // state variables
@@ -54,7 +61,12 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
     private boolean mIsFastCharging; // whether or not device is currently fast charging
     private int     mLevel;         // current battery level
     private int     mAnimOffset;    // current level of charging animation
-    private boolean mIsAnimating;   // stores charge-animation status to reliably remove callbacks
+    private float   mAnimPhase;     // precise animation offset in degrees
+    private long    mLastFrameTimeMs; // frame time of last animation step, 0 if not running
+    private boolean mFrameScheduled; // whether frame callback is pending
+    private long    mFrameIntervalMs = 1000 / DEFAULT_ANIM_FPS;
+    private boolean mVisible = true; // aggregated visibility including ancestors and window
+    private boolean mScreenOn = true;
     private boolean mPercentage;    // whether to show percentage
     private BatteryStyleController mController;
 
@@ -65,6 +77,11 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
     private Float   mTextLeftX;     // precalculated x position for drawText() to appear centered
     private Float   mTextY;         // precalculated y position for drawText() to appear vertical-centered
 
+    // precalculated per battery level
+    private Paint   mLevelPaint;
+    private float   mLevelSweep;
+    private String  mLevelText;
+
     // quiet a lot of paint variables. helps to move cpu-usage from actual drawing to initialization
     private Paint   mPaintFont;
     private Paint   mPaintGray;
@@ -88,17 +105,55 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
         }
     };
 
+    // charging animation clock; frames are requested no more often than mFrameIntervalMs
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameScheduled = false;
+            if (!shouldAnimate()) return;
+
+            final long frameTimeMs = frameTimeNanos / 1000000;
+            if (mLastFrameTimeMs != 0) {
+                // advance by elapsed time so speed doesn't depend on frame rate
+                final float speed = mIsFastCharging ? ANIM_SPEED_FAST : ANIM_SPEED_NORMAL;
+                mAnimPhase = (mAnimPhase + (frameTimeMs - mLastFrameTimeMs) * speed / 1000f) % 360f;
+            }
+            mLastFrameTimeMs = frameTimeMs;
+
+            final int offset = (int) mAnimPhase;
+            if (offset != mAnimOffset) {
+                mAnimOffset = offset;
+                invalidate();
+            }
+            scheduleFrame();
+        }
+    };
+
     // keeps track of current battery level and charger-plugged-state
     @Override
     public void onBatteryStatusChanged(BatteryData batteryData) {
+        final boolean levelChanged = mLevel != batteryData.level || mLevelText == null;
         mLevel = batteryData.level;
         mIsCharging = batteryData.charging;
         mIsFastCharging = batteryData.fastCharging;
+        if (levelChanged) {
+            updateLevelState();
+        }
+        updateChargeAnim();
         if (mAttached) {
             invalidate();
         }
     }
 
+    private void updateLevelState() {
+        mLevelPaint = mLevel <= 15 ? mPaintRed : mPaintSystem;
+        // pad circle percentage to 100% once it reaches 97%
+        // for one, the circle looks odd with a too small gap,
+        // for another, some phones never reach 100% due to hardware design
+        mLevelSweep = 3.6f * (mLevel >= 97 ? 100 : mLevel);
+        mLevelText = Integer.toString(mLevel);
+    }
+
     /***
      * Start of CircleBattery implementation
      */
@@ -145,9 +200,15 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
 
         mPercentage = false;
 
+        updateLevelState();
         setStyle(Style.SOLID);
     }
 
+    public void setAnimationFrameRate(int fps) {
+        mFrameIntervalMs = 1000 / Math.max(1, Math.min(60, fps));
+        if (DEBUG) log("setAnimationFrameRate: fps=" + fps + "; interval=" + mFrameIntervalMs + "ms");
+    }
+
     public void setPercentage(boolean enable) {
         mPercentage = enable;
         if (mAttached) {
@@ -166,6 +227,8 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
                 mPathEffect = new DashPathEffect(new float[]{3,2},0);
                 break;
         }
+        mPaintRed.setPathEffect(mPathEffect);
+        mPaintSystem.setPathEffect(mPathEffect);
         mRectLeft = null;
         if (mAttached) {
             invalidate();
@@ -181,9 +244,12 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
                 SysUiManagers.IconManager.registerListener(this);
             }
             if (SysUiManagers.BatteryInfoManager != null) {
-                SysUiManagers.BatteryInfoManager.registerListener(this);
+                SysUiManagers.BatteryInfoManager.registerListener(this,
+                        SysUiBatteryInfoManager.FIELD_LEVEL | SysUiBatteryInfoManager.FIELD_CHARGING |
+                        SysUiBatteryInfoManager.FIELD_FAST_CHARGING);
             }
             mHandler.postDelayed(mInvalidate, 250);
+            updateChargeAnim();
         }
     }
 
@@ -202,9 +268,24 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
                                 // recalculated on next attach
             mCircleSize = 0;    // makes sure, mCircleSize is reread from icons on
                                 // next attach
+            updateChargeAnim();
         }
     }
 
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        mVisible = isVisible;
+        updateChargeAnim();
+    }
+
+    @Override
+    public void onScreenStateChanged(int screenState) {
+        super.onScreenStateChanged(screenState);
+        mScreenOn = screenState == SCREEN_STATE_ON;
+        updateChargeAnim();
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         if (mCircleSize == 0) {
@@ -219,30 +300,20 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
         initSizeBasedStuff();
     }
 
-    private void drawCircle(Canvas canvas, int level, int animOffset, float textX, RectF drawRect) {
-        final Paint usePaint = level <= 15 ? mPaintRed : mPaintSystem;
-        usePaint.setAntiAlias(true);
-        usePaint.setPathEffect(mPathEffect);
-
-        // pad circle percentage to 100% once it reaches 97%
-        // for one, the circle looks odd with a too small gap,
-        // for another, some phones never reach 100% due to hardware design
-        int padLevel = level;
-        if (padLevel >= 97) {
-            padLevel = 100;
-        }
+    private void drawCircle(Canvas canvas, int animOffset, float textX, RectF drawRect) {
+        final Paint usePaint = mLevelPaint;
 
         // draw thin gray ring first
         canvas.drawArc(drawRect, 270, 360, false, mPaintGray);
         // draw colored arc representing charge level
-        canvas.drawArc(drawRect, 270 + animOffset, 3.6f * padLevel, false, usePaint);
+        canvas.drawArc(drawRect, 270 + animOffset, mLevelSweep, false, usePaint);
         // if chosen by options, draw percentage text in the middle
         // always skip percentage when 100, so layout doesnt break
-        if (level < 100 && mPercentage) {
+        if (mLevel < 100 && mPercentage) {
             mPaintFont.setColor(usePaint.getColor());
             // Workarround for drawing bug on Samsung Roms
             if (Utils.isSamsungRom()) mPaintFont.setStyle(Paint.Style.FILL);
-            canvas.drawText(Integer.toString(level), textX, mTextY, mPaintFont);
+            canvas.drawText(mLevelText, textX, mTextY, mPaintFont);
             if (Utils.isSamsungRom()) mPaintFont.setStyle(Paint.Style.STROKE);
         }
 
@@ -254,36 +325,48 @@ public class CmCircleBattery extends ImageView implements IconManagerListener, B
             initSizeBasedStuff();
         }
 
-        updateChargeAnim();
+        // view bounds are the arc bounds so whole view is the dirty region
+        drawCircle(canvas, (mIsCharging ? mAnimOffset : 0), mTextLeftX, mRectLeft);
+    }
+
+    private boolean isChargeAnimActive() {
+        return mIsCharging && mLevel < 97;
+    }
 
-        drawCircle(canvas, mLevel, (mIsCharging ? mAnimOffset : 0), mTextLeftX, mRectLeft);
+    private boolean shouldAnimate() {
+        return isChargeAnimActive() && mAttached && mVisible && mScreenOn;
     }
 
     /***
-     * updates the animation counter
-     * cares for timed callbacks to continue animation cycles
-     * uses mInvalidate for delayed invalidate() callbacks
+     * starts, pauses or stops charging animation
+     * animation runs only while it can be seen: attached, visible and screen on
      */
     private void updateChargeAnim() {
-        if (!mIsCharging || mLevel >= 97) {
-            if (mIsAnimating) {
-                mIsAnimating = false;
-                mAnimOffset = 0;
-                mHandler.removeCallbacks(mInvalidate);
-            }
+        if (shouldAnimate()) {
+            scheduleFrame();
             return;
         }
 
-        mIsAnimating = true;
-
-        if (mAnimOffset >= 360) {
+        if (mFrameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameScheduled = false;
+        }
+        // restart timing on resume so animation doesn't jump
+        mLastFrameTimeMs = 0;
+        if (!isChargeAnimActive() && mAnimOffset != 0) {
+            mAnimPhase = 0;
             mAnimOffset = 0;
-        } else {
-            mAnimOffset += mIsFastCharging ? 6 : 3;
+            if (mAttached) {
+                invalidate();
+            }
         }
+    }
 
-        mHandler.removeCallbacks(mInvalidate);
-        mHandler.postDelayed(mInvalidate, mIsFastCharging ? 30 : 50);
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            Choreographer.getInstance().postFrameCallbackDelayed(mFrameCallback, mFrameIntervalMs);
+        }
     }
 
     /***
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Computes overall CPU load from aggregate "cpu" line of /proc/stat.
+ * Load is derived from the difference between two consecutive readings.
+ * Uses plain Java I/O only so it can be run against fixture files.
+ * Many ROMs deny access to /proc/stat in which case readings fail.
+ */
+public class CpuStatReader {
+    public static final String PROC_STAT = "/proc/stat";
+
+    private static final int FIELD_IDLE = 3;
+    private static final int FIELD_IOWAIT = 4;
+    // user..steal; guest and guest_nice are already accounted in user and nice
+    private static final int MAX_FIELDS = 8;
+
+    private final byte[] mBuffer = new byte[256];
+    private final long[] mFields = new long[MAX_FIELDS];
+    private long mLastTotal = -1;
+    private long mLastIdle = -1;
+    private int mLoadPercent = -1;
+
+    /**
+     * Reads stat file at given path and updates load.
+     * Returns false if file is not readable or not in expected format.
+     */
+    public boolean readCpuStat(String path) {
+        int len = 0;
+        try (FileInputStream is = new FileInputStream(path)) {
+            int read;
+            // aggregate cpu line is always the first one
+            while (len < mBuffer.length &&
+                    (read = is.read(mBuffer, len, mBuffer.length - len)) > 0) {
+                len += read;
+            }
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+
+        if (len < 4 || mBuffer[0] != 'c' || mBuffer[1] != 'p' ||
+                mBuffer[2] != 'u' || mBuffer[3] != ' ') {
+            return false;
+        }
+
+        int fieldCount = 0;
+        int i = 4;
+        while (i < len && mBuffer[i] != '\n' && fieldCount < MAX_FIELDS) {
+            if (mBuffer[i] >= '0' && mBuffer[i] <= '9') {
+                long value = 0;
+                while (i < len && mBuffer[i] >= '0' && mBuffer[i] <= '9') {
+                    value = value * 10 + (mBuffer[i] - '0');
+                    i++;
+                }
+                mFields[fieldCount++] = value;
+            } else {
+                i++;
+            }
+        }
+        if (fieldCount <= FIELD_IOWAIT) {
+            return false;
+        }
+
+        long total = 0;
+        for (int f = 0; f < fieldCount; f++) {
+            total += mFields[f];
+        }
+        long idle = mFields[FIELD_IDLE] + mFields[FIELD_IOWAIT];
+
+        if (mLastTotal >= 0 && total > mLastTotal) {
+            long totalDelta = total - mLastTotal;
+            long idleDelta = Math.max(0, idle - mLastIdle);
+            mLoadPercent = (int) Math.max(0, Math.min(100,
+                    (100 * (totalDelta - idleDelta) + totalDelta / 2) / totalDelta));
+        }
+        mLastTotal = total;
+        mLastIdle = idle;
+        return true;
+    }
+
+    /**
+     * Returns CPU load in percent since previous reading
+     * or -1 if there were not enough readings yet.
+     */
+    public int getLoadPercent() {
+        return mLoadPercent;
+    }
+
+    public void reset() {
+        mLastTotal = -1;
+        mLastIdle = -1;
+        mLoadPercent = -1;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable table of per-application expanded desktop rules compiled
+ * into package to flag mask map. Window policy hooks resolve flags
+ * of a window with a single hash lookup.
+ * There are no Android dependencies so it can be verified on plain JVM.
+ */
+class ExpandedDesktopPolicy {
+    static final int FLAG_HIDE_STATUSBAR = 1;
+    static final int FLAG_HIDE_NAVBAR = 1 << 1;
+    static final int FLAG_IMMERSIVE = FLAG_HIDE_STATUSBAR | FLAG_HIDE_NAVBAR;
+    // opts out of both global mode and any other rule
+    static final int FLAG_EXCLUDE = 1 << 2;
+
+    static final ExpandedDesktopPolicy EMPTY = new ExpandedDesktopPolicy(
+            Collections.emptyMap());
+
+    private final Map<String, Integer> mRules;
+
+    private ExpandedDesktopPolicy(Map<String, Integer> rules) {
+        mRules = rules;
+    }
+
+    /**
+     * Compiles rules given as package lists per flag.
+     * Flags of a package listed under several rules are combined.
+     */
+    static ExpandedDesktopPolicy compile(Collection<String> hideStatusbar,
+            Collection<String> hideNavbar, Collection<String> immersive,
+            Collection<String> exclude) {
+        Map<String, Integer> rules = new HashMap<>();
+        addRules(rules, hideStatusbar, FLAG_HIDE_STATUSBAR);
+        addRules(rules, hideNavbar, FLAG_HIDE_NAVBAR);
+        addRules(rules, immersive, FLAG_IMMERSIVE);
+        addRules(rules, exclude, FLAG_EXCLUDE);
+        return rules.isEmpty() ? EMPTY :
+                new ExpandedDesktopPolicy(Collections.unmodifiableMap(rules));
+    }
+
+    private static void addRules(Map<String, Integer> rules, Collection<String> pkgs, int flag) {
+        if (pkgs == null) return;
+        for (String pkg : pkgs) {
+            if (pkg == null || pkg.isEmpty()) continue;
+            Integer flags = rules.get(pkg);
+            rules.put(pkg, flags == null ? flag : (flags | flag));
+        }
+    }
+
+    /**
+     * Returns effective flags for a window of given package
+     * @param globalFlags flags resulting from global expanded desktop mode
+     */
+    int getFlags(String pkg, int globalFlags) {
+        if (pkg == null || mRules.isEmpty()) return globalFlags;
+        Integer flags = mRules.get(pkg);
+        if (flags == null) return globalFlags;
+        return (flags & FLAG_EXCLUDE) != 0 ? 0 : (flags | globalFlags);
+    }
+
+    int size() {
+        return mRules.size();
+    }
+}
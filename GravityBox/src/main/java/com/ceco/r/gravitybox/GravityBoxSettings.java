@@ -109,6 +109,9 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String PREF_KEY_QS_SCALE_CORRECTION = "pref_qs_scale_correction";
     public static final String PREF_KEY_QS_LOCKED_TILE_INDICATOR = "pref_qs_locked_tile_indicator";
     public static final String PREF_KEY_QS_RAMBAR_MODE = "pref_qs_rambar_mode";
+    public static final String PREF_KEY_QS_RAMBAR_INTERVAL = "pref_qs_rambar_interval";
+    public static final String PREF_KEY_QS_RAMBAR_SHOW_SWAP = "pref_qs_rambar_show_swap";
+    public static final String PREF_KEY_QS_RAMBAR_SHOW_CPU = "pref_qs_rambar_show_cpu";
     public static final int QUICK_PULLDOWN_OFF = 0;
     public static final int QUICK_PULLDOWN_RIGHT = 1;
     public static final int QUICK_PULLDOWN_LEFT = 2;
@@ -118,6 +121,7 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String PREF_KEY_BATTERY_TWEAKS_ENABLED = "pref_battery_masterswitch";
     public static final String PREF_KEY_BATTERY_STYLE = "pref_battery_style";
     public static final String PREF_KEY_BATTERY_STYLE_HEADER = "pref_battery_style_header";
+    public static final String PREF_KEY_BATTERY_CIRCLE_ANIM_FPS = "pref_battery_circle_anim_fps";
     public static final String PREF_KEY_BATTERY_PERCENT_TEXT_STATUSBAR = "pref_battery_percent_text_statusbar";
     public static final String PREF_KEY_BATTERY_PERCENT_TEXT_STATUSBAR_HEADER = "pref_battery_percent_text_statusbar_header";
     public static final String PREF_KEY_BATTERY_PERCENT_TEXT_POSITION = "pref_battery_percent_text_position";
@@ -276,8 +280,16 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final int ED_IMMERSIVE = 3;
     public static final int ED_IMMERSIVE_STATUSBAR = 4;
     public static final int ED_IMMERSIVE_NAVBAR = 5;
+    public static final String PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_STATUSBAR = "pref_expanded_desktop_apps_hide_statusbar";
+    public static final String PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_NAVBAR = "pref_expanded_desktop_apps_hide_navbar";
+    public static final String PREF_KEY_EXPANDED_DESKTOP_APPS_IMMERSIVE = "pref_expanded_desktop_apps_immersive";
+    public static final String PREF_KEY_EXPANDED_DESKTOP_APPS_EXCLUDE = "pref_expanded_desktop_apps_exclude";
     public static final String ACTION_PREF_EXPANDED_DESKTOP_MODE_CHANGED = "gravitybox.intent.action.EXPANDED_DESKTOP_MODE_CHANGED";
     public static final String EXTRA_ED_MODE = "expandedDesktopMode";
+    public static final String EXTRA_ED_APPS_HIDE_STATUSBAR = "edAppsHideStatusbar";
+    public static final String EXTRA_ED_APPS_HIDE_NAVBAR = "edAppsHideNavbar";
+    public static final String EXTRA_ED_APPS_IMMERSIVE = "edAppsImmersive";
+    public static final String EXTRA_ED_APPS_EXCLUDE = "edAppsExclude";
     public static final String PREF_CAT_KEY_BRIGHTNESS = "pref_cat_brightness";
     public static final String PREF_KEY_BRIGHTNESS_MASTER_SWITCH = "pref_brightness_master_switch";
     public static final String PREF_KEY_BRIGHTNESS_MIN = "pref_brightness_min2";
@@ -489,6 +501,7 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String ACTION_PREF_BATTERY_STYLE_CHANGED = "gravitybox.intent.action.BATTERY_STYLE_CHANGED";
     public static final String EXTRA_BATTERY_STYLE = "batteryStyle";
     public static final String EXTRA_BATTERY_STYLE_HEADER = "batteryStyleHeader";
+    public static final String EXTRA_BATTERY_CIRCLE_ANIM_FPS = "batteryCircleAnimFps";
     public static final String ACTION_PREF_BATTERY_PERCENT_TEXT_CHANGED =
             "gravitybox.intent.action.BATTERY_PERCENT_TEXT_CHANGED";
     public static final String EXTRA_BATTERY_PERCENT_TEXT_STATUSBAR = "batteryPercentTextSb";
@@ -518,6 +531,9 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String EXTRA_QS_SCALE_CORRECTION = "qsScaleCorrection";
     public static final String EXTRA_QS_LOCKED_TILE_INDICATOR = "qsLockedTileIndicator";
     public static final String EXTRA_QS_RAMBAR_MODE = "qsRambarMode";
+    public static final String EXTRA_QS_RAMBAR_INTERVAL = "qsRambarInterval";
+    public static final String EXTRA_QS_RAMBAR_SHOW_SWAP = "qsRambarShowSwap";
+    public static final String EXTRA_QS_RAMBAR_SHOW_CPU = "qsRambarShowCpu";
 
     public static final String ACTION_PREF_CLOCK_CHANGED = "gravitybox.intent.action.CENTER_CLOCK_CHANGED";
     public static final String EXTRA_CLOCK_POSITION = "clockPosition";
@@ -568,12 +584,14 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String EXTRA_NAVBAR_CUSTOM_KEY_ICON_STYLE = "navbarCustomKeyIconStyle";
 
     public static final String PREF_KEY_STATUSBAR_BRIGHTNESS = "pref_statusbar_brightness";
+    public static final String PREF_KEY_STATUSBAR_BRIGHTNESS_PERCEPTUAL = "pref_statusbar_brightness_perceptual";
     public static final String PREF_KEY_STATUSBAR_DISABLE_PEEK = "pref_statusbar_disable_peek";
     public static final String PREF_KEY_STATUSBAR_DT2S = "pref_statusbar_dt2s";
     public static final String PREF_KEY_CORNER_PADDING_REMOVE = "pref_sb_corner_padding_remove";
     public static final String PREF_KEY_STATUSBAR_MAX_NOTIF_ICONS = "pref_sb_max_notif_icons";
     public static final String ACTION_PREF_STATUSBAR_CHANGED = "gravitybox.intent.action.STATUSBAR_CHANGED";
     public static final String EXTRA_SB_BRIGHTNESS = "sbBrightness";
+    public static final String EXTRA_SB_BRIGHTNESS_PERCEPTUAL = "sbBrightnessPerceptual";
     public static final String EXTRA_SB_DISABLE_PEEK = "sbDisablePeek";
     public static final String EXTRA_SB_DT2S = "sbDt2s";
     public static final String EXTRA_SB_MAX_NOTIF_ICONS = "maxNotifIcons";
@@ -652,6 +670,7 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String PREF_KEY_SMART_RADIO_IGNORE_LOCKED = "pref_smart_radio_ignore_locked";
     public static final String PREF_KEY_SMART_RADIO_MODE_CHANGE_DELAY = "pref_smart_radio_mode_change_delay";
     public static final String PREF_KEY_SMART_RADIO_MDA_IGNORE = "pref_smart_radio_mda_ignore";
+    public static final String PREF_KEY_SMART_RADIO_MIN_DWELL = "pref_smart_radio_min_dwell";
     public static final String ACTION_PREF_SMART_RADIO_CHANGED = "gravitybox.intent.action.SMART_RADIO_CHANGED";
     public static final String EXTRA_SR_NORMAL_MODE = "smartRadioNormalMode";
     public static final String EXTRA_SR_POWER_SAVING_MODE = "smartRadioPowerSavingMode";
@@ -661,6 +680,7 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String EXTRA_SR_MODE_CHANGE_DELAY = "smartRadioModeChangeDelay";
     public static final String EXTRA_SR_MDA_IGNORE = "smartRadioMdaIgnore";
     public static final String EXTRA_SR_ADAPTIVE_DELAY = "smartRadioAdaptiveDelay";
+    public static final String EXTRA_SR_MIN_DWELL = "smartRadioMinDwell";
 
     public static final String PREF_KEY_TORCH_AUTO_OFF = "pref_torch_auto_off";
     public static final String PREF_KEY_FORCE_OVERFLOW_MENU_BUTTON = "pref_force_overflow_menu_button2";
@@ -682,7 +702,7 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
     public static final String PREF_KEY_SCREENRECORD_TIMELIMIT = "pref_screenrecord_timelimit";
     public static final String PREF_KEY_SCREENRECORD_ROTATE = "pref_screenrecord_rotate";
     public static final String PREF_KEY_SCREENRECORD_MICROPHONE = "pref_screenrecord_microphone";
-    public static final String PREF_KEY_SCREENRECORD_USE_STOCK = "pref_screenrecord_use_stock";
+    public static final String PREF_KEY_SCREENRECORD_FRAMERATE = "pref_screenrecord_framerate";
 
     public static final String PREF_KEY_FORCE_ENGLISH_LOCALE = "pref_force_english_locale";
 
@@ -1955,6 +1975,15 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
             super.onDestroy();
         }
 
+        private ProgressDialog createBackupProgressDialog(int titleResId) {
+            ProgressDialog progress = new ProgressDialog(getActivity());
+            progress.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+            progress.setTitle(titleResId);
+            progress.setCancelable(false);
+            progress.setProgressNumberFormat(null);
+            return progress;
+        }
+
         private void maybeShowCompatWarningDialog() {
             final int stage = mPrefs.getInt("compat_warning_stage", 0);
             if (stage < 2) {
@@ -2492,6 +2521,9 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
             } else if (key.equals(PREF_KEY_BATTERY_STYLE_HEADER)) {
                 intent.setAction(ACTION_PREF_BATTERY_STYLE_CHANGED);
                 intent.putExtra(EXTRA_BATTERY_STYLE_HEADER, prefs.getBoolean(key, false));
+            } else if (key.equals(PREF_KEY_BATTERY_CIRCLE_ANIM_FPS)) {
+                intent.setAction(ACTION_PREF_BATTERY_STYLE_CHANGED);
+                intent.putExtra(EXTRA_BATTERY_CIRCLE_ANIM_FPS, prefs.getInt(key, 20));
             } else if (key.equals(PREF_KEY_BATTERY_PERCENT_TEXT_STATUSBAR)) {
                 intent.setAction(ACTION_PREF_BATTERY_PERCENT_TEXT_CHANGED);
                 intent.putExtra(EXTRA_BATTERY_PERCENT_TEXT_STATUSBAR, prefs.getBoolean(key, false));
@@ -2861,6 +2893,20 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
                 intent.setAction(ACTION_PREF_EXPANDED_DESKTOP_MODE_CHANGED);
                 intent.putExtra(EXTRA_ED_MODE, Integer.valueOf(
                         prefs.getString(PREF_KEY_EXPANDED_DESKTOP, "0")));
+            } else if (key.equals(PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_STATUSBAR) ||
+                    key.equals(PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_NAVBAR) ||
+                    key.equals(PREF_KEY_EXPANDED_DESKTOP_APPS_IMMERSIVE) ||
+                    key.equals(PREF_KEY_EXPANDED_DESKTOP_APPS_EXCLUDE)) {
+                // rule table is rebuilt from all lists at once
+                intent.setAction(ACTION_PREF_EXPANDED_DESKTOP_MODE_CHANGED);
+                intent.putStringArrayListExtra(EXTRA_ED_APPS_HIDE_STATUSBAR, new ArrayList<>(
+                        prefs.getStringSet(PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_STATUSBAR, new HashSet<>())));
+                intent.putStringArrayListExtra(EXTRA_ED_APPS_HIDE_NAVBAR, new ArrayList<>(
+                        prefs.getStringSet(PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_NAVBAR, new HashSet<>())));
+                intent.putStringArrayListExtra(EXTRA_ED_APPS_IMMERSIVE, new ArrayList<>(
+                        prefs.getStringSet(PREF_KEY_EXPANDED_DESKTOP_APPS_IMMERSIVE, new HashSet<>())));
+                intent.putStringArrayListExtra(EXTRA_ED_APPS_EXCLUDE, new ArrayList<>(
+                        prefs.getStringSet(PREF_KEY_EXPANDED_DESKTOP_APPS_EXCLUDE, new HashSet<>())));
             } else if (key.equals(PREF_KEY_NAVBAR_MENUKEY)) {
                 intent.setAction(ACTION_PREF_NAVBAR_CHANGED);
                 intent.putExtra(EXTRA_NAVBAR_MENUKEY, prefs.getBoolean(PREF_KEY_NAVBAR_MENUKEY, false));
@@ -2930,6 +2976,9 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
             } else if (key.equals(PREF_KEY_STATUSBAR_BRIGHTNESS)) {
                 intent.setAction(ACTION_PREF_STATUSBAR_CHANGED);
                 intent.putExtra(EXTRA_SB_BRIGHTNESS, prefs.getBoolean(key, false));
+            } else if (key.equals(PREF_KEY_STATUSBAR_BRIGHTNESS_PERCEPTUAL)) {
+                intent.setAction(ACTION_PREF_STATUSBAR_CHANGED);
+                intent.putExtra(EXTRA_SB_BRIGHTNESS_PERCEPTUAL, prefs.getBoolean(key, false));
             } else if (key.equals(PREF_KEY_STATUSBAR_DISABLE_PEEK)) {
                 intent.setAction(ACTION_PREF_STATUSBAR_CHANGED);
                 intent.putExtra(EXTRA_SB_DISABLE_PEEK, prefs.getBoolean(key, false));
@@ -3030,6 +3079,10 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
                 intent.setAction(ACTION_PREF_SMART_RADIO_CHANGED);
                 intent.putExtra(EXTRA_SR_MODE_CHANGE_DELAY,
                         prefs.getInt(PREF_KEY_SMART_RADIO_MODE_CHANGE_DELAY, 5));
+            } else if (key.equals(PREF_KEY_SMART_RADIO_MIN_DWELL)) {
+                intent.setAction(ACTION_PREF_SMART_RADIO_CHANGED);
+                intent.putExtra(EXTRA_SR_MIN_DWELL,
+                        prefs.getInt(PREF_KEY_SMART_RADIO_MIN_DWELL, 10));
             } else if (key.equals(PREF_KEY_SMART_RADIO_MDA_IGNORE)) {
                 intent.setAction(ACTION_PREF_SMART_RADIO_CHANGED);
                 intent.putExtra(EXTRA_SR_MDA_IGNORE,
@@ -3182,6 +3235,15 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
             } else if (key.equals(PREF_KEY_QS_RAMBAR_MODE)) {
                 intent.setAction(ACTION_PREF_QUICKSETTINGS_CHANGED);
                 intent.putExtra(EXTRA_QS_RAMBAR_MODE, prefs.getString(key, "OFF"));
+            } else if (key.equals(PREF_KEY_QS_RAMBAR_INTERVAL)) {
+                intent.setAction(ACTION_PREF_QUICKSETTINGS_CHANGED);
+                intent.putExtra(EXTRA_QS_RAMBAR_INTERVAL, prefs.getInt(key, 2));
+            } else if (key.equals(PREF_KEY_QS_RAMBAR_SHOW_SWAP)) {
+                intent.setAction(ACTION_PREF_QUICKSETTINGS_CHANGED);
+                intent.putExtra(EXTRA_QS_RAMBAR_SHOW_SWAP, prefs.getBoolean(key, false));
+            } else if (key.equals(PREF_KEY_QS_RAMBAR_SHOW_CPU)) {
+                intent.setAction(ACTION_PREF_QUICKSETTINGS_CHANGED);
+                intent.putExtra(EXTRA_QS_RAMBAR_SHOW_CPU, prefs.getBoolean(key, false));
             } else if (PREF_KEY_LOCKSCREEN_SHORTCUT.contains(key)) {
                 intent.setAction(ACTION_PREF_LOCKSCREEN_SHORTCUT_CHANGED);
                 intent.putExtra(EXTRA_LS_SHORTCUT_SLOT,
@@ -3460,7 +3522,25 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
                 mDialog = builder.create();
                 mDialog.show();
             } else if (PREF_KEY_SETTINGS_BACKUP.equals(pref.getKey())) {
-                SettingsManager.getInstance(getActivity()).backupSettings();
+                final ProgressDialog progress = createBackupProgressDialog(
+                        R.string.pref_settings_backup_title);
+                if (SettingsManager.getInstance(getActivity()).backupSettings(
+                        new SettingsBackupEngine.ProgressListener() {
+                    @Override
+                    public void onProgress(int done, int total) {
+                        progress.setMax(total);
+                        progress.setProgress(done);
+                    }
+                    @Override
+                    public void onFinished(boolean success) {
+                        if (progress.isShowing()) {
+                            progress.dismiss();
+                        }
+                    }
+                })) {
+                    mDialog = progress;
+                    mDialog.show();
+                }
             } else if (PREF_KEY_SETTINGS_RESTORE.equals(pref.getKey())) {
                 final SettingsManager sm = SettingsManager.getInstance(getActivity());
                 if (sm.isBackupObsolete()) {
@@ -3478,16 +3558,33 @@ public class GravityBoxSettings extends GravityBoxActivity implements GravityBox
                     .setCancelable(true)
                     .setPositiveButton(android.R.string.ok, (dialog, which) -> {
                         dialog.dismiss();
-                        if (sm.restoreSettings()) {
-                            AlertDialog.Builder builder1 = new AlertDialog.Builder(getActivity())
-                            .setTitle(R.string.app_name)
-                            .setMessage(R.string.settings_restore_reboot)
-                            .setCancelable(false)
-                            .setPositiveButton(android.R.string.ok, (dialog1, which1) -> {
-                                dialog1.dismiss();
-                                getActivity().finish();
-                            });
-                            mDialog = builder1.create();
+                        final ProgressDialog progress = createBackupProgressDialog(
+                                R.string.pref_settings_restore_title);
+                        if (sm.restoreSettings(new SettingsBackupEngine.ProgressListener() {
+                            @Override
+                            public void onProgress(int done, int total) {
+                                progress.setMax(total);
+                                progress.setProgress(done);
+                            }
+                            @Override
+                            public void onFinished(boolean success) {
+                                if (progress.isShowing()) {
+                                    progress.dismiss();
+                                }
+                                if (!success || getActivity() == null) return;
+                                AlertDialog.Builder builder1 = new AlertDialog.Builder(getActivity())
+                                .setTitle(R.string.app_name)
+                                .setMessage(R.string.settings_restore_reboot)
+                                .setCancelable(false)
+                                .setPositiveButton(android.R.string.ok, (dialog1, which1) -> {
+                                    dialog1.dismiss();
+                                    getActivity().finish();
+                                });
+                                mDialog = builder1.create();
+                                mDialog.show();
+                            }
+                        })) {
+                            mDialog = progress;
                             mDialog.show();
                         }
                     })
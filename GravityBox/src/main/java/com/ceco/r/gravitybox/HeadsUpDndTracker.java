@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides whether heads-up is to be suppressed because an application
+ * with heads-up DND enabled is in the foreground.
+ * Set of DND packages is maintained from settings changes and foreground
+ * package is resolved at most once per foreground change reported by task
+ * stack events, so a burst of notifications costs a set lookup each.
+ * Foreground lookup is delegated to a ForegroundSource and there are
+ * no Android dependencies so foreground changes and notification bursts
+ * can be replayed on plain JVM.
+ */
+class HeadsUpDndTracker {
+
+    interface ForegroundSource {
+        String getForegroundPackage();
+    }
+
+    private final ForegroundSource mSource;
+    private volatile Set<String> mDndPackages = Collections.emptySet();
+    private volatile boolean mLocked;
+    private boolean mEventsAvailable;
+    private boolean mForegroundValid;
+    private String mForegroundPkg;
+    private int mForegroundGeneration;
+
+    HeadsUpDndTracker(ForegroundSource source) {
+        mSource = source;
+    }
+
+    /**
+     * Whether foreground changes are reported via {@link #onForegroundChanged()}.
+     * If not, foreground package is looked up for every decision.
+     */
+    synchronized void setEventsAvailable(boolean available) {
+        mEventsAvailable = available;
+        mForegroundValid = false;
+        mForegroundGeneration++;
+    }
+
+    void setLocked(boolean locked) {
+        mLocked = locked;
+    }
+
+    synchronized void setDndPackages(Collection<String> pkgs) {
+        mDndPackages = pkgs == null || pkgs.isEmpty() ?
+                Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(pkgs));
+    }
+
+    synchronized void setPackageDnd(String pkg, boolean dnd) {
+        if (pkg == null || mDndPackages.contains(pkg) == dnd) return;
+        Set<String> pkgs = new HashSet<>(mDndPackages);
+        if (dnd) {
+            pkgs.add(pkg);
+        } else {
+            pkgs.remove(pkg);
+        }
+        mDndPackages = Collections.unmodifiableSet(pkgs);
+    }
+
+    synchronized void onForegroundChanged() {
+        mForegroundValid = false;
+        mForegroundGeneration++;
+    }
+
+    boolean shouldNotDisturb() {
+        if (mLocked) return false;
+        final Set<String> dndPackages = mDndPackages;
+        if (dndPackages.isEmpty()) return false;
+        final String pkg = getForegroundPackage();
+        return (pkg != null && dndPackages.contains(pkg));
+    }
+
+    String getForegroundPackage() {
+        final int generation;
+        synchronized (this) {
+            if (mEventsAvailable && mForegroundValid) {
+                return mForegroundPkg;
+            }
+            generation = mForegroundGeneration;
+        }
+        final String pkg = mSource.getForegroundPackage();
+        synchronized (this) {
+            // drop result if foreground changed meanwhile
+            if (mEventsAvailable && generation == mForegroundGeneration) {
+                mForegroundPkg = pkg;
+                mForegroundValid = true;
+            }
+        }
+        return pkg;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+/**
+ * Single-tap/double-tap/long-press state machine for a hardware key.
+ * Original key events are always consumed; single tap is delivered either
+ * on key up or, when double-tap is configured, once double-tap timeout
+ * expires with the key released.
+ * Timing is delegated to a Scheduler and there are no Android dependencies
+ * so recorded key sequences can be replayed on plain JVM.
+ */
+class HwKeyGestureDetector {
+
+    interface Scheduler {
+        void postDelayed(Runnable r, long delayMs);
+        void removeCallbacks(Runnable r);
+    }
+
+    interface Callback {
+        // performs single-tap action or injects original key
+        void onSingleTap();
+        void onDoubleTap();
+        void onLongPress();
+        boolean areKeysEnabled();
+    }
+
+    private final Scheduler mScheduler;
+    private final Callback mCallback;
+
+    private boolean mKeyPressed;
+    private boolean mLongPressed;
+    private boolean mDoubleTapPending;
+    private boolean mWasDoubleTap;
+
+    HwKeyGestureDetector(Scheduler scheduler, Callback callback) {
+        mScheduler = scheduler;
+        mCallback = callback;
+    }
+
+    /**
+     * Handles key down. Returns true if event was consumed.
+     * Repeated down events are not consumed.
+     */
+    boolean onKeyDown(int repeatCount, boolean hasDoubleTap, long doubleTapTimeout,
+                      boolean hasLongPress, long longPressTimeout) {
+        if (repeatCount != 0) return false;
+
+        mKeyPressed = true;
+        mWasDoubleTap = mDoubleTapPending;
+        if (mDoubleTapPending) {
+            mScheduler.removeCallbacks(mDoubleTapReset);
+            mDoubleTapPending = false;
+            mCallback.onDoubleTap();
+        } else {
+            mLongPressed = false;
+            if (hasDoubleTap) {
+                mDoubleTapPending = true;
+                mScheduler.postDelayed(mDoubleTapReset, doubleTapTimeout);
+            }
+            if (hasLongPress) {
+                mScheduler.postDelayed(mLongPress, longPressTimeout);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles key up. Returns true if event was consumed.
+     */
+    boolean onKeyUp(int repeatCount, boolean canceled) {
+        mKeyPressed = false;
+        mScheduler.removeCallbacks(mLongPress);
+        if (mLongPressed) {
+            mLongPressed = false;
+            return true;
+        }
+        if (repeatCount != 0) return false;
+
+        // single tap is postponed while waiting for double-tap
+        // and swallowed completely when HW keys are disabled
+        if (mCallback.areKeysEnabled() && !mDoubleTapPending &&
+                !mWasDoubleTap && !canceled) {
+            mCallback.onSingleTap();
+        }
+        return true;
+    }
+
+    boolean isKeyPressed() {
+        return mKeyPressed;
+    }
+
+    private final Runnable mLongPress = new Runnable() {
+        @Override
+        public void run() {
+            mLongPressed = true;
+            mCallback.onLongPress();
+        }
+    };
+
+    private final Runnable mDoubleTapReset = new Runnable() {
+        @Override
+        public void run() {
+            mDoubleTapPending = false;
+            // doubletap timed out and since we blocked single-tap while waiting for doubletap
+            // let's deliver it now, but only in case key is not still pressed as we might still
+            // be waiting for long-press
+            if (!mKeyPressed && mCallback.areKeysEnabled()) {
+                mCallback.onSingleTap();
+            }
+        }
+    };
+}
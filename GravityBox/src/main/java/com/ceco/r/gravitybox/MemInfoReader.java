@@ -17,15 +17,21 @@
 package com.ceco.r.gravitybox;
 
 import java.io.FileInputStream;
+import java.util.Arrays;
 
 import android.os.StrictMode;
 
 public class MemInfoReader {
-    byte[] mBuffer = new byte[1024];
+    public static final String PROC_MEMINFO = "/proc/meminfo";
+
+    // large enough to reach Swap* lines which follow Cached
+    byte[] mBuffer = new byte[2048];
 
     private long mTotalSize;
     private long mFreeSize;
     private long mCachedSize;
+    private long mSwapTotalSize;
+    private long mSwapFreeSize;
 
     private boolean matchText(byte[] buffer, int index, String text) {
         int N = text.length();
@@ -49,8 +55,11 @@ public class MemInfoReader {
                     && buffer[index] <= '9') {
                     index++;
                 }
-                String str = new String(buffer, 0, start, index-start);
-                return ((long)Integer.parseInt(str)) * 1024;
+                long value = 0;
+                for (int i = start; i < index; i++) {
+                    value = value * 10 + (buffer[i] - '0');
+                }
+                return value * 1024;
             }
             index++;
         }
@@ -63,15 +72,34 @@ public class MemInfoReader {
         // /proc/ and /sys/ files perhaps?
         StrictMode.ThreadPolicy savedPolicy = StrictMode.allowThreadDiskReads();
         try {
-            mTotalSize = 0;
-            mFreeSize = 0;
-            mCachedSize = 0;
-            FileInputStream is = new FileInputStream("/proc/meminfo");
-            int len = is.read(mBuffer);
-            is.close();
-            final int BUFLEN = mBuffer.length;
+            readMemInfo(PROC_MEMINFO);
+        } finally {
+            StrictMode.setThreadPolicy(savedPolicy);
+        }
+    }
+
+    /**
+     * Reads meminfo formatted file at given path.
+     * Does not touch any Android APIs so it's safe to call from any thread.
+     */
+    public void readMemInfo(String path) {
+        mTotalSize = 0;
+        mFreeSize = 0;
+        mCachedSize = 0;
+        mSwapTotalSize = 0;
+        mSwapFreeSize = 0;
+        try (FileInputStream is = new FileInputStream(path)) {
+            int len = 0;
+            int read;
+            while (len < mBuffer.length &&
+                    (read = is.read(mBuffer, len, mBuffer.length - len)) > 0) {
+                len += read;
+            }
+            // don't let leftovers of previous read leak into truncated line
+            Arrays.fill(mBuffer, len, mBuffer.length, (byte) 0);
+            final int BUFLEN = len;
             int count = 0;
-            for (int i=0; i<len && count < 3; i++) {
+            for (int i=0; i<len && count < 5; i++) {
                 if (matchText(mBuffer, i, "MemTotal")) {
                     i += 8;
                     mTotalSize = extractMemValue(mBuffer, i);
@@ -84,14 +112,20 @@ public class MemInfoReader {
                     i += 6;
                     mCachedSize = extractMemValue(mBuffer, i);
                     count++;
+                } else if (matchText(mBuffer, i, "SwapTotal")) {
+                    i += 9;
+                    mSwapTotalSize = extractMemValue(mBuffer, i);
+                    count++;
+                } else if (matchText(mBuffer, i, "SwapFree")) {
+                    i += 8;
+                    mSwapFreeSize = extractMemValue(mBuffer, i);
+                    count++;
                 }
                 while (i < BUFLEN && mBuffer[i] != '\n') {
                     i++;
                 }
             }
         } catch (java.io.IOException ignored) {
-        } finally {
-            StrictMode.setThreadPolicy(savedPolicy);
         }
     }
 
@@ -106,4 +140,12 @@ public class MemInfoReader {
     public long getCachedSize() {
         return mCachedSize;
     }
+
+    public long getSwapTotalSize() {
+        return mSwapTotalSize;
+    }
+
+    public long getSwapFreeSize() {
+        return mSwapFreeSize;
+    }
 }
@@ -14,6 +14,9 @@
  */
 package com.ceco.r.gravitybox;
 
+import java.lang.reflect.Field;
+import java.util.HashSet;
+
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.Resources;
@@ -66,6 +69,10 @@ public class ModExpandedDesktop {
     private static boolean mExpandedDesktop;
     private static int mExpandedDesktopMode;
     private static NavbarDimensions mNavbarDimensions;
+    // read by window policy hooks; replaced as a whole on preference changes
+    private static volatile ExpandedDesktopPolicy mAppPolicy = ExpandedDesktopPolicy.EMPTY;
+    private static volatile int mGlobalPolicyFlags;
+    private static Field mWindowStateAttrsField;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -97,6 +104,14 @@ public class ModExpandedDesktop {
             mExpandedDesktopMode = intent.getIntExtra(
                     GravityBoxSettings.EXTRA_ED_MODE, GravityBoxSettings.ED_DISABLED);
             updateSettings();
+        } else if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_EXPANDED_DESKTOP_MODE_CHANGED)
+                && intent.hasExtra(GravityBoxSettings.EXTRA_ED_APPS_EXCLUDE)) {
+            mAppPolicy = ExpandedDesktopPolicy.compile(
+                    intent.getStringArrayListExtra(GravityBoxSettings.EXTRA_ED_APPS_HIDE_STATUSBAR),
+                    intent.getStringArrayListExtra(GravityBoxSettings.EXTRA_ED_APPS_HIDE_NAVBAR),
+                    intent.getStringArrayListExtra(GravityBoxSettings.EXTRA_ED_APPS_IMMERSIVE),
+                    intent.getStringArrayListExtra(GravityBoxSettings.EXTRA_ED_APPS_EXCLUDE));
+            if (DEBUG) log("Per-app policy rules: " + mAppPolicy.size());
         } else if (intent.getAction().equals(ModStatusBar.ACTION_PHONE_STATUSBAR_VIEW_MADE)) {
             updateSettings();
         }
@@ -117,6 +132,7 @@ public class ModExpandedDesktop {
             if (mExpandedDesktop != expandedDesktop) {
                 mExpandedDesktop = expandedDesktop;
             }
+            updateGlobalPolicyFlags();
 
             Object displayPolicy = XposedHelpers.getObjectField(mPhoneWindowManager, "mDefaultDisplayPolicy");
             Object displayRotation = XposedHelpers.callMethod(
@@ -215,6 +231,18 @@ public class ModExpandedDesktop {
                 GravityBox.log(TAG, "Invalid value for PREF_KEY_EXPANDED_DESKTOP preference");
             }
 
+            mAppPolicy = ExpandedDesktopPolicy.compile(
+                    prefs.getStringSet(GravityBoxSettings.PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_STATUSBAR,
+                            new HashSet<>()),
+                    prefs.getStringSet(GravityBoxSettings.PREF_KEY_EXPANDED_DESKTOP_APPS_HIDE_NAVBAR,
+                            new HashSet<>()),
+                    prefs.getStringSet(GravityBoxSettings.PREF_KEY_EXPANDED_DESKTOP_APPS_IMMERSIVE,
+                            new HashSet<>()),
+                    prefs.getStringSet(GravityBoxSettings.PREF_KEY_EXPANDED_DESKTOP_APPS_EXCLUDE,
+                            new HashSet<>()));
+            mWindowStateAttrsField = XposedHelpers.findField(
+                    XposedHelpers.findClass(CLASS_WINDOW_STATE, classLoader), "mAttrs");
+
             XposedHelpers.findAndHookMethod(classPhoneWindowManager, "init",
                 Context.class, CLASS_IWINDOW_MANAGER, CLASS_WINDOW_MANAGER_FUNCS, new XC_MethodHook() {
                 @Override
@@ -250,15 +278,18 @@ public class ModExpandedDesktop {
                     CLASS_WINDOW_STATE, WindowManager.LayoutParams.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
+                    final int policy = getWindowPolicyFlags(param.args[0],
+                            (WindowManager.LayoutParams) param.args[1]);
+                    if (policy == 0) return;
                     int vis = (int) param.getResult();
-                    if (isStatusbarImmersive()) {
+                    if ((policy & ExpandedDesktopPolicy.FLAG_HIDE_STATUSBAR) != 0) {
                         vis |= View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY |
                                 View.SYSTEM_UI_FLAG_FULLSCREEN |
                                 View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN;
                         vis &= ~(View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
                                  ViewConst.STATUS_BAR_TRANSLUCENT);
                     }
-                    if (isNavbarImmersive() || isNavbarHidden()) {
+                    if ((policy & ExpandedDesktopPolicy.FLAG_HIDE_NAVBAR) != 0) {
                         vis |= View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY
                                 | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
                                 | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION;
@@ -273,13 +304,16 @@ public class ModExpandedDesktop {
                     CLASS_WINDOW_STATE, WindowManager.LayoutParams.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
+                    final int policy = getWindowPolicyFlags(param.args[0],
+                            (WindowManager.LayoutParams) param.args[1]);
+                    if (policy == 0) return;
                     int flags = (int) param.getResult();
-                    if (isStatusbarImmersive()) {
+                    if ((policy & ExpandedDesktopPolicy.FLAG_HIDE_STATUSBAR) != 0) {
                         flags |= WindowManager.LayoutParams.FLAG_FULLSCREEN;
                         flags &= ~(WindowManager.LayoutParams.FLAG_FORCE_NOT_FULLSCREEN |
                                     WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
                     }
-                    if (isNavbarImmersive() || isNavbarHidden()) {
+                    if ((policy & ExpandedDesktopPolicy.FLAG_HIDE_NAVBAR) != 0) {
                         flags &= ~WindowManager.LayoutParams.FLAG_TRANSLUCENT_NAVIGATION;
                     }
                     param.setResult(flags);
@@ -290,11 +324,12 @@ public class ModExpandedDesktop {
                     CLASS_WINDOW_STATE, int.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    int clearableFlags = (int) param.getResult();
-                    if (isStatusbarImmersive()) {
+                    final int policy = getWindowPolicyFlags(param.args[0], null);
+                    if ((policy & ExpandedDesktopPolicy.FLAG_HIDE_STATUSBAR) != 0) {
+                        int clearableFlags = (int) param.getResult();
                         clearableFlags &= ~View.SYSTEM_UI_FLAG_FULLSCREEN;
+                        param.setResult(clearableFlags);
                     }
-                    param.setResult(clearableFlags);
                 }
             });
 
@@ -314,6 +349,29 @@ public class ModExpandedDesktop {
         }
     }
 
+    private static void updateGlobalPolicyFlags() {
+        int flags = 0;
+        if (isStatusbarImmersive()) {
+            flags |= ExpandedDesktopPolicy.FLAG_HIDE_STATUSBAR;
+        }
+        if (isNavbarImmersive() || isNavbarHidden()) {
+            flags |= ExpandedDesktopPolicy.FLAG_HIDE_NAVBAR;
+        }
+        mGlobalPolicyFlags = flags;
+    }
+
+    // same attrs resolution as PolicyControl uses
+    private static int getWindowPolicyFlags(Object win, WindowManager.LayoutParams attrs) {
+        if (attrs == null && win != null) {
+            try {
+                attrs = (WindowManager.LayoutParams) mWindowStateAttrsField.get(win);
+            } catch (IllegalAccessException e) {
+                GravityBox.log(TAG, e);
+            }
+        }
+        return mAppPolicy.getFlags(attrs == null ? null : attrs.packageName, mGlobalPolicyFlags);
+    }
+
     private static boolean isStatusbarImmersive() {
         return (mExpandedDesktop
                 && (mExpandedDesktopMode == GravityBoxSettings.ED_SEMI_IMMERSIVE ||
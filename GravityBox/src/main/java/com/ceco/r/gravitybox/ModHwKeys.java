@@ -130,16 +130,6 @@ public class ModHwKeys {
     private static String mStrNoPrevApp;
     private static String mStrCustomAppNone;
     private static String mStrCustomAppMissing;
-    private static boolean mIsMenuLongPressed = false;
-    private static boolean mIsMenuDoubleTap = false;
-    private static boolean mWasMenuDoubleTap = false;
-    private static boolean mIsBackLongPressed = false;
-    private static boolean mIsBackDoubleTap = false;
-    private static boolean mWasBackDoubleTap = false;
-    private static boolean mRecentsKeyPressed = false;
-    private static boolean mIsRecentsLongPressed = false;
-    private static boolean mIsRecentsDoubleTap = false;
-    private static boolean mWasRecentsDoubleTap = false;
     private static boolean mIsHomeLongPressed = false;
     private static int mLockscreenTorch = 0;
     private static boolean mHomeDoubletapDisabled;
@@ -153,8 +143,6 @@ public class ModHwKeys {
     private static XSharedPreferences mPrefs;
     private static int mPieMode;
     private static int mExpandedDesktopMode;
-    private static boolean mMenuKeyPressed;
-    private static boolean mBackKeyPressed;
     private static boolean mIsCustomKeyLongPressed = false;
     private static boolean mCustomKeyDoubletapPending = false;
     private static boolean mWasCustomKeyDoubletap = false;
@@ -163,6 +151,9 @@ public class ModHwKeys {
     private static String[] mHeadsetUri = new String[2]; // index 0 = unplugged, index 1 = plugged 
     private static Method mLaunchAssistAction = null;
     private static Method mLaunchAssistLongPressAction = null;
+    private static Method mKeyguardOn = null;
+    private static Handler mHandler;
+    private static volatile KeyDecision[] mKeyDecisions = new KeyDecision[0];
     private static ActivityManager mActivityManager;
     private static AudioManager mAudioManager;
     private static PowerManager mPowerManager;
@@ -178,14 +169,6 @@ public class ModHwKeys {
         XposedBridge.log(TAG + ": " + message);
     }
 
-    private enum HwKey {
-        MENU,
-        HOME,
-        BACK,
-        RECENTS,
-        CUSTOM
-    }
-
     private enum HwKeyTrigger {
         MENU_SINGLETAP,
         MENU_LONGPRESS,
@@ -216,6 +199,116 @@ public class ModHwKeys {
         }
     }
 
+    /**
+     * Immutable per-keycode snapshot of preferences relevant for key handling.
+     * Keycodes without entry are not of our interest.
+     */
+    private static final class KeyDecision {
+        static final int TYPE_POWER_TORCH = 1;
+        static final int TYPE_VOLUME = 2;
+        static final int TYPE_TAP = 3;
+        static final int TYPE_HOME = 4;
+        static final int TYPE_CUSTOM = 5;
+
+        final int type;
+        final boolean hasSingleTap;
+        final boolean hasDoubleTap;
+        final boolean hasLongPress;
+        final int longPressActionId;
+        final long doubleTapTimeout;
+        final HwKeyGestureDetector detector;
+        final boolean hapticOnDown;
+        final String hapticReason;
+
+        KeyDecision(int type) {
+            this(type, false, false, false, 0, 0, null, false, null);
+        }
+
+        KeyDecision(int type, boolean hasSingleTap, boolean hasDoubleTap, boolean hasLongPress,
+                    int longPressActionId, long doubleTapTimeout, HwKeyGestureDetector detector,
+                    boolean hapticOnDown, String hapticReason) {
+            this.type = type;
+            this.hasSingleTap = hasSingleTap;
+            this.hasDoubleTap = hasDoubleTap;
+            this.hasLongPress = hasLongPress;
+            this.longPressActionId = longPressActionId;
+            this.doubleTapTimeout = doubleTapTimeout;
+            this.detector = detector;
+            this.hapticOnDown = hapticOnDown;
+            this.hapticReason = hapticReason;
+        }
+
+        boolean hasAction() {
+            return hasSingleTap || hasDoubleTap || hasLongPress;
+        }
+    }
+
+    private static final HwKeyGestureDetector.Scheduler mHandlerScheduler =
+            new HwKeyGestureDetector.Scheduler() {
+        @Override
+        public void postDelayed(Runnable r, long delayMs) {
+            mHandler.postDelayed(r, delayMs);
+        }
+        @Override
+        public void removeCallbacks(Runnable r) {
+            mHandler.removeCallbacks(r);
+        }
+    };
+
+    private static class TapKeyCallback implements HwKeyGestureDetector.Callback {
+        private final int mKeyCode;
+        private final HwKeyTrigger mSingleTap;
+        private final HwKeyTrigger mDoubleTap;
+        private final HwKeyTrigger mLongPress;
+        private final String mLongPressReason;
+
+        TapKeyCallback(int keyCode, HwKeyTrigger singleTap, HwKeyTrigger doubleTap,
+                       HwKeyTrigger longPress, String keyName) {
+            mKeyCode = keyCode;
+            mSingleTap = singleTap;
+            mDoubleTap = doubleTap;
+            mLongPress = longPress;
+            mLongPressReason = "GravityBox - " + keyName + " Key Longpress";
+        }
+
+        @Override
+        public void onSingleTap() {
+            KeyDecision decision = mKeyDecisions[mKeyCode];
+            if (decision != null && decision.hasSingleTap) {
+                performAction(mSingleTap);
+            } else {
+                if (DEBUG) log("Triggering original DOWN/UP events for key " + mKeyCode);
+                injectKey(mKeyCode);
+            }
+        }
+
+        @Override
+        public void onDoubleTap() {
+            performAction(mDoubleTap);
+        }
+
+        @Override
+        public void onLongPress() {
+            performAction(mLongPress);
+            performHapticFeedback(HapticFeedbackConstants.LONG_PRESS, false, mLongPressReason);
+        }
+
+        @Override
+        public boolean areKeysEnabled() {
+            return areHwKeysEnabled();
+        }
+    }
+
+    private static final HwKeyGestureDetector mMenuKeyDetector = new HwKeyGestureDetector(
+            mHandlerScheduler, new TapKeyCallback(KeyEvent.KEYCODE_MENU, HwKeyTrigger.MENU_SINGLETAP,
+                    HwKeyTrigger.MENU_DOUBLETAP, HwKeyTrigger.MENU_LONGPRESS, "Menu"));
+    private static final HwKeyGestureDetector mBackKeyDetector = new HwKeyGestureDetector(
+            mHandlerScheduler, new TapKeyCallback(KeyEvent.KEYCODE_BACK, HwKeyTrigger.BACK_SINGLETAP,
+                    HwKeyTrigger.BACK_DOUBLETAP, HwKeyTrigger.BACK_LONGPRESS, "Back"));
+    private static final HwKeyGestureDetector mRecentsKeyDetector = new HwKeyGestureDetector(
+            mHandlerScheduler, new TapKeyCallback(KeyEvent.KEYCODE_APP_SWITCH, HwKeyTrigger.RECENTS_SINGLETAP,
+                    HwKeyTrigger.RECENTS_DOUBLETAP, HwKeyTrigger.RECENTS_LONGPRESS, "Recents"));
+
     private static BroadcastMediator.Receiver mBroadcastReceiver = (context, intent) -> {
         if (DEBUG) log("Broadcast received: " + intent.toString());
 
@@ -292,11 +385,14 @@ public class ModHwKeys {
                 setActionFor(HwKeyTrigger.CUSTOM_DOUBLETAP, value, customApp);
                 if (DEBUG) log("Custom key doubletap action set to: " + value);
             }
+            rebuildKeyDecisions();
         } else if (action.equals(GravityBoxSettings.ACTION_PREF_HWKEY_DOUBLETAP_SPEED_CHANGED)) {
             mDoubletapSpeed = value;
+            rebuildKeyDecisions();
             if (DEBUG) log("Doubletap speed set to: " + value);
         } else if (action.equals(GravityBoxSettings.ACTION_PREF_HWKEY_KILL_DELAY_CHANGED)) {
             mKillDelay = value;
+            rebuildKeyDecisions();
             if (DEBUG) log("Kill delay set to: " + value);
         } else if (action.equals(GravityBoxSettings.ACTION_PREF_VOLUME_ROCKER_WAKE_CHANGED)) {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_VOLUME_ROCKER_WAKE)) {
@@ -308,12 +404,14 @@ public class ModHwKeys {
                         GravityBoxSettings.EXTRA_VOLUME_ROCKER_WAKE_ALLOW_MUSIC, false);
                 if (DEBUG) log("mVolumeRockerWakeAllowMusic set to: " + mVolumeRockerWakeAllowMusic);
             }
+            rebuildKeyDecisions();
         } else if (action.equals(GravityBoxSettings.ACTION_PREF_HWKEY_LOCKSCREEN_TORCH_CHANGED)) {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_HWKEY_TORCH)) {
                 mLockscreenTorch = intent.getIntExtra(GravityBoxSettings.EXTRA_HWKEY_TORCH,
                         GravityBoxSettings.HWKEY_TORCH_DISABLED);
                 if (DEBUG) log("Lockscreen torch set to: " + mLockscreenTorch);
             }
+            rebuildKeyDecisions();
         } else if (action.equals(GravityBoxSettings.ACTION_PREF_PIE_CHANGED)) {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_PIE_HWKEYS_DISABLE)) {
                 mHwKeysEnabled = !intent.getBooleanExtra(GravityBoxSettings.EXTRA_PIE_HWKEYS_DISABLE, false);
@@ -321,6 +419,7 @@ public class ModHwKeys {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_PIE_ENABLE)) {
                 mPieMode = intent.getIntExtra(GravityBoxSettings.EXTRA_PIE_ENABLE, 0);
             }
+            rebuildKeyDecisions();
         } else if (action.equals(ACTION_SCREENSHOT) && mPhoneWindowManager != null) {
             takeScreenshot(intent.getLongExtra(EXTRA_SCREENSHOT_DELAY_MS, 300L));
         } else if (action.equals(ACTION_SHOW_POWER_MENU) && mPhoneWindowManager != null) {
@@ -410,6 +509,10 @@ public class ModHwKeys {
                         "launchAssistLongPressAction");
                 mLaunchAssistLongPressAction.setAccessible(true);
             }
+            if (mKeyguardOn == null) {
+                mKeyguardOn = classPhoneWindowManager.getDeclaredMethod("keyguardOn");
+                mKeyguardOn.setAccessible(true);
+            }
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
         }
@@ -514,6 +617,8 @@ public class ModHwKeys {
             mHeadsetUri[0] = prefs.getString(GravityBoxSettings.PREF_KEY_HEADSET_ACTION_UNPLUG, null);
             mHeadsetUri[1] = prefs.getString(GravityBoxSettings.PREF_KEY_HEADSET_ACTION_PLUG, null);
 
+            rebuildKeyDecisions();
+
             mWindowStateClass = XposedHelpers.findClass(CLASS_WINDOW_STATE, classLoader);
 
             mPhoneWindowManagerClass = XposedHelpers.findClass(CLASS_PHONE_WINDOW_MANAGER, classLoader);
@@ -528,18 +633,12 @@ public class ModHwKeys {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
                     KeyEvent event = (KeyEvent) param.args[0];
-
-                    int keyCode = event.getKeyCode();
-                    boolean down = event.getAction() == KeyEvent.ACTION_DOWN;
-                    boolean keyguardOn = (Boolean) XposedHelpers.callMethod(mPhoneWindowManager, "keyguardOn");
-                    boolean isFromSystem = (event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) != 0;
-                    Handler handler = (Handler) XposedHelpers.getObjectField(param.thisObject, "mHandler");
+                    final int keyCode = event.getKeyCode();
                     if (DEBUG) log("interceptKeyBeforeQueueing: keyCode=" + keyCode +
                             "; action=" + event.getAction() + "; repeatCount=" + event.getRepeatCount() +
                             "; flags=0x" + Integer.toHexString(event.getFlags()) +
                             "; source=" + event.getSource() +
-                            "; interactive=" + getPowerManager().isInteractive() +
-                            "; repeatCount=" + event.getRepeatCount());
+                            "; interactive=" + getPowerManager().isInteractive());
 
                     if (event.getSource() == InputDevice.SOURCE_UNKNOWN ||
                             event.getSource() == PA_SOURCE_CUSTOM) {
@@ -559,307 +658,17 @@ public class ModHwKeys {
                         return;
                     }
 
-                    if (keyCode == KeyEvent.KEYCODE_POWER &&
-                            mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_POWER_LONGPRESS &&
-                            !getPowerManager().isInteractive()) {
-                        if (!down) {
-                            handler.removeCallbacks(mLockscreenTorchRunnable);
-                            if (mPowerLongPressInterceptedByTorch) {
-                                mPowerLongPressInterceptedByTorch = false;
-                                param.setResult(0);
-                                if (DEBUG) log("Power key long-press intercepted by torch, ignoring original event");
-                            } else {
-                                injectKey(KeyEvent.KEYCODE_POWER);
-                                if (DEBUG) log("Injecting original down/up event");
-                            }
-                            if (mWakeLock != null && mWakeLock.isHeld()) {
-                                mWakeLock.release();
-                            }
-                            mWakeLock = null;
-                        } else {
-                            if (event.getRepeatCount() == 0) {
-                                mPowerLongPressInterceptedByTorch = false;
-                                mWakeLock = getPowerManager().newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "GB:PowerKeyTorch");
-                                mWakeLock.acquire(1000);
-                                handler.postDelayed(mLockscreenTorchRunnable, getLongpressTimeoutForAction(
-                                        GravityBoxSettings.HWKEY_ACTION_TORCH));
-                                if (DEBUG) log("Scheduled torch runnable, ignoring original event");
-                            }
-                            param.setResult(0);
-                        }
-                        return;
-                    }
-
-                    if (keyCode == KeyEvent.KEYCODE_VOLUME_UP) {
-                        if (!down) {
-                            handler.removeCallbacks(mResetBrightnessRunnable);
-                        } else {
-                            if (event.getRepeatCount() == 0) {
-                                handler.postDelayed(mResetBrightnessRunnable, 7000);
-                            }
-                        }
-                    }
-
-                    if (!mVolumeRockerWake.equals("default") && 
-                            (keyCode == KeyEvent.KEYCODE_VOLUME_UP ||
-                                    keyCode == KeyEvent.KEYCODE_VOLUME_DOWN)) {
-                        int policyFlags = (Integer) param.args[1];
-                        if (mVolumeRockerWake.equals("enabled") &&
-                            (!getAudioManager().isMusicActive() || mVolumeRockerWakeAllowMusic)) {
-                            policyFlags |= FLAG_WAKE;
-                            policyFlags |= FLAG_WAKE_DROPPED;
-                        } else if (mVolumeRockerWake.equals("disabled")) {
-                            policyFlags &= ~FLAG_WAKE;
-                            policyFlags &= ~FLAG_WAKE_DROPPED;
-                        }
-                        param.args[1] = policyFlags;
-                        return;
-                    }
-
-                    if (keyCode == KeyEvent.KEYCODE_BACK && isFromSystem && !isTaskLocked() &&
-                            (hasAction(HwKey.BACK) || !areHwKeysEnabled())) {
-
-                        if (!down) {
-                            mBackKeyPressed = false;
-                            handler.removeCallbacks(mBackLongPress);
-                            if (mIsBackLongPressed) {
-                                mIsBackLongPressed = false;
-                                param.setResult(0);
-                                return;
-                            } else if (event.getRepeatCount() == 0) {
-                                if (!areHwKeysEnabled()) {
-                                    if (DEBUG) log("BACK KeyEvent coming from HW key and keys disabled. Ignoring.");
-                                } else if (mIsBackDoubleTap) {
-                                    // we are still waiting for double-tap
-                                    if (DEBUG) log("BACK doubletap pending. Ignoring.");
-                                } else if (!mWasBackDoubleTap && !event.isCanceled()) {
-                                    if (getActionFor(HwKeyTrigger.BACK_SINGLETAP).actionId !=
-                                            GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                        performAction(HwKeyTrigger.BACK_SINGLETAP);
-                                    } else {
-                                        if (DEBUG) log("Triggering original DOWN/UP events for BACK key");
-                                        injectKey(KeyEvent.KEYCODE_BACK);
-                                    }
-                                }
-                                param.setResult(0);
-                                return;
-                            }
-                        } else if (event.getRepeatCount() == 0) {
-                            mBackKeyPressed = true;
-                            mWasBackDoubleTap = mIsBackDoubleTap;
-                            if (mIsBackDoubleTap) {
-                                performAction(HwKeyTrigger.BACK_DOUBLETAP);
-                                handler.removeCallbacks(mBackDoubleTapReset);
-                                mIsBackDoubleTap = false;
-                            } else {
-                                mIsBackLongPressed = false;
-                                mIsBackDoubleTap = false;
-                                if (getActionFor(HwKeyTrigger.BACK_DOUBLETAP).actionId !=
-                                        GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                    mIsBackDoubleTap = true;
-                                    handler.postDelayed(mBackDoubleTapReset, mDoubletapSpeed);
-                                }
-                                if (getActionFor(HwKeyTrigger.BACK_LONGPRESS).actionId !=
-                                        GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                    handler.postDelayed(mBackLongPress,
-                                            getLongpressTimeoutForAction(
-                                                    getActionFor(HwKeyTrigger.BACK_LONGPRESS).actionId));
-                                }
-                            }
-                            if (!Utils.isOxygenOsRom()) {
-                                performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY, false,
-                                        "GravityBox - Back Key");
-                            }
-                            param.setResult(0);
-                            return;
-                        }
-                    }
-
-                    if (keyCode == KeyEvent.KEYCODE_HOME && !isTaskLocked()) {
-                        if (!down) {
-                            handler.removeCallbacks(mLockscreenTorchRunnable);
-                            handler.removeCallbacks(mHomeLongPress);
-                            if (mIsHomeLongPressed) {
-                                mIsHomeLongPressed = false;
-                                param.setResult(0);
-                                return;
-                            }
-                            if (!areHwKeysEnabled() && 
-                                    event.getRepeatCount() == 0 &&
-                                    (event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) != 0) {
-                               if (DEBUG) log("HOME KeyEvent coming from HW key and keys disabled. Ignoring.");
-                               param.setResult(0);
-                               return;
-                           }
-                        } else {
-                            if (event.getRepeatCount() == 0) {
-                                mIsHomeLongPressed = false;
-                                if (keyguardOn && mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_HOME_LONGPRESS) {
-                                    handler.postDelayed(mLockscreenTorchRunnable, 
-                                            getLongpressTimeoutForAction(GravityBoxSettings.HWKEY_ACTION_TORCH));
-                                } else if (getActionFor(HwKeyTrigger.HOME_LONGPRESS).actionId != 0) {
-                                    handler.postDelayed(mHomeLongPress, ViewConfiguration.getLongPressTimeout());
-                                }
-                            } else {
-                                if ((keyguardOn && mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_HOME_LONGPRESS) ||
-                                        getActionFor(HwKeyTrigger.HOME_LONGPRESS).actionId != 0) {
-                                    param.setResult(0);
-                                }
-                            }
-                            return;
-                        }
-                    }
-
-                    if (keyCode == KeyEvent.KEYCODE_APP_SWITCH && isFromSystem && !isTaskLocked() &&
-                            (hasAction(HwKey.RECENTS) || !areHwKeysEnabled())) {
-                        if (!down) {
-                            mRecentsKeyPressed = false;
-                            handler.removeCallbacks(mRecentsLongPress);
-                            if (mIsRecentsLongPressed) {
-                                mIsRecentsLongPressed = false;
-                                param.setResult(0);
-                            } else if (event.getRepeatCount() == 0) {
-                                if (!areHwKeysEnabled()) {
-                                    if (DEBUG) log("RECENTS KeyEvent coming from HW key and keys disabled. Ignoring.");
-                                } else if (mIsRecentsDoubleTap) {
-                                    // we are still waiting for double-tap
-                                    if (DEBUG) log("RECENTS doubletap pending. Ignoring.");
-                                } else if (!mWasRecentsDoubleTap && !event.isCanceled()) {
-                                    if (getActionFor(HwKeyTrigger.RECENTS_SINGLETAP).actionId !=
-                                            GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                        performAction(HwKeyTrigger.RECENTS_SINGLETAP);
-                                    } else {
-                                        if (DEBUG) log("Triggering original DOWN/UP events for RECENTS key");
-                                        injectKey(KeyEvent.KEYCODE_APP_SWITCH);
-                                    }
-                                }
-                                param.setResult(0);
-                            }
-                        } else if (event.getRepeatCount() == 0) {
-                            mRecentsKeyPressed = true;
-                            mWasRecentsDoubleTap = mIsRecentsDoubleTap;
-                            if (mIsRecentsDoubleTap) {
-                                performAction(HwKeyTrigger.RECENTS_DOUBLETAP);
-                                handler.removeCallbacks(mRecentsDoubleTapReset);
-                                mIsRecentsDoubleTap = false;
-                            } else {
-                                mIsRecentsLongPressed = false;
-                                mIsRecentsDoubleTap = false;
-                                if (getActionFor(HwKeyTrigger.RECENTS_DOUBLETAP).actionId !=
-                                        GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                    mIsRecentsDoubleTap = true;
-                                    handler.postDelayed(mRecentsDoubleTapReset, mDoubletapSpeed);
-                                }
-                                if (getActionFor(HwKeyTrigger.RECENTS_LONGPRESS).actionId !=
-                                        GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                    handler.postDelayed(mRecentsLongPress,
-                                            getLongpressTimeoutForAction(
-                                                    getActionFor(HwKeyTrigger.RECENTS_LONGPRESS).actionId));
-                                }
-                            }
-                            if (!Utils.isOxygenOsRom()) {
-                                performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY, false,
-                                        "GravityBox - Recents Key");
-                            }
-                            param.setResult(0);
-                        }
-                    }
-
-                    if (keyCode == KeyEvent.KEYCODE_MENU && isFromSystem && !isTaskLocked() &&
-                            (hasAction(HwKey.MENU) || !areHwKeysEnabled())) {
-                        if (!down) {
-                            mMenuKeyPressed = false;
-                            handler.removeCallbacks(mMenuLongPress);
-                            if (mIsMenuLongPressed) {
-                                mIsMenuLongPressed = false;
-                                param.setResult(0);
-                                return;
-                            } else if (event.getRepeatCount() == 0) {
-                                if (!areHwKeysEnabled()) {
-                                    if (DEBUG) log("MENU KeyEvent coming from HW key and keys disabled. Ignoring.");
-                                } else if (mIsMenuDoubleTap) {
-                                    // we are still waiting for double-tap
-                                    if (DEBUG) log("MENU doubletap pending. Ignoring.");
-                                } else if (!mWasMenuDoubleTap && !event.isCanceled()) {
-                                    if (getActionFor(HwKeyTrigger.MENU_SINGLETAP).actionId !=
-                                            GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                        performAction(HwKeyTrigger.MENU_SINGLETAP);
-                                    } else {
-                                        if (DEBUG) log("Triggering original DOWN/UP events for MENU key");
-                                        injectKey(KeyEvent.KEYCODE_MENU);
-                                    }
-                                }
-                                param.setResult(0);
-                                return;
-                            }
-                        } else if (event.getRepeatCount() == 0) {
-                            mMenuKeyPressed = true;
-                            mWasMenuDoubleTap = mIsMenuDoubleTap;
-                            if (mIsMenuDoubleTap) {
-                                performAction(HwKeyTrigger.MENU_DOUBLETAP);
-                                handler.removeCallbacks(mMenuDoubleTapReset);
-                                mIsMenuDoubleTap = false;
-                            } else {
-                                mIsMenuLongPressed = false;
-                                mIsMenuDoubleTap = false;
-                                if (getActionFor(HwKeyTrigger.MENU_DOUBLETAP).actionId !=
-                                        GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                    mIsMenuDoubleTap = true;
-                                    handler.postDelayed(mMenuDoubleTapReset, mDoubletapSpeed);
-                                }
-                                if (getActionFor(HwKeyTrigger.MENU_LONGPRESS).actionId !=
-                                        GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                                    handler.postDelayed(mMenuLongPress,
-                                            getLongpressTimeoutForAction(
-                                                    getActionFor(HwKeyTrigger.MENU_LONGPRESS).actionId));
-                                }
-                            }
-                            performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY, false,
-                                    "GravityBox - Menu Key");
-                            param.setResult(0);
-                            return;
-                        }
-                    }
-
-                    if (keyCode == KeyEvent.KEYCODE_SOFT_LEFT && !isTaskLocked()) {
-                        if (!down) {
-                            mCustomKeyPressed = false;
-                            if (!mIsCustomKeyLongPressed && 
-                                    !mCustomKeyDoubletapPending && !mWasCustomKeyDoubletap) {
-                                if (DEBUG) log("Custom key singletap action");
-                                performAction(HwKeyTrigger.CUSTOM_SINGLETAP);
-                            }
-                            mIsCustomKeyLongPressed = false;
-                        } else {
-                            mCustomKeyPressed = true;
-                            if (event.getRepeatCount() == 0) {
-                                if (mCustomKeyDoubletapPending) {
-                                    handler.removeCallbacks(mCustomKeyDoubletapReset);
-                                    mWasCustomKeyDoubletap = true;
-                                    mCustomKeyDoubletapPending = false;
-                                    if (DEBUG) log("Custom key double-tap action");
-                                    performAction(HwKeyTrigger.CUSTOM_DOUBLETAP);
-                                } else if (getActionFor(HwKeyTrigger.CUSTOM_DOUBLETAP).actionId != 
-                                        GravityBoxSettings.HWKEY_ACTION_DEFAULT && isFromSystem) {
-                                    mCustomKeyDoubletapPending = true;
-                                    mWasCustomKeyDoubletap = false;
-                                    handler.postDelayed(mCustomKeyDoubletapReset, mDoubletapSpeed);
-                                }
-                                if (isFromSystem) {
-                                    performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY, false,
-                                            "GravityBox - Custom Key");
-                                }
-                            } else {
-                                handler.removeCallbacks(mCustomKeyDoubletapReset);
-                                mCustomKeyDoubletapPending = false;
-                                mIsCustomKeyLongPressed = true;
-                                if (DEBUG) log("Custom key long-press action");
-                                performAction(HwKeyTrigger.CUSTOM_LONGPRESS);
-                                performHapticFeedback(HapticFeedbackConstants.LONG_PRESS, false,
-                                        "GravityBox - Custom Key");
-                            }
-                        }
-                        param.setResult(0);
+                    final KeyDecision[] decisions = mKeyDecisions;
+                    final KeyDecision decision = keyCode >= 0 && keyCode < decisions.length ?
+                            decisions[keyCode] : null;
+                    if (decision == null) return;
+
+                    switch (decision.type) {
+                        case KeyDecision.TYPE_POWER_TORCH: handlePowerKeyTorch(param, event); break;
+                        case KeyDecision.TYPE_VOLUME: handleVolumeKey(param, event); break;
+                        case KeyDecision.TYPE_TAP: handleTapKey(param, event, decision); break;
+                        case KeyDecision.TYPE_HOME: handleHomeKey(param, event, decision); break;
+                        case KeyDecision.TYPE_CUSTOM: handleCustomKey(param, event, decision); break;
                     }
                 }
             });
@@ -922,6 +731,7 @@ public class ModHwKeys {
         protected void afterHookedMethod(MethodHookParam param) throws Throwable {
             mPhoneWindowManager = param.thisObject;
             mContext = (Context) XposedHelpers.getObjectField(mPhoneWindowManager, "mContext");
+            mHandler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
             mGbContext = Utils.getGbContext(mContext);
 
             Resources res = mGbContext.getResources();
@@ -978,81 +788,6 @@ public class ModHwKeys {
                   !ModPieControls.isPieEnabled(mContext, mPieMode, mExpandedDesktopMode));
     }
 
-    private static Runnable mMenuLongPress = () -> {
-        if (DEBUG) log("mMenuLongPress runnable launched");
-        mIsMenuLongPressed = true;
-        performAction(HwKeyTrigger.MENU_LONGPRESS);
-        performHapticFeedback(HapticFeedbackConstants.LONG_PRESS, false,
-                "GravityBox - Menu Key Longpress");
-    };
-
-    private static Runnable mMenuDoubleTapReset = () -> {
-        mIsMenuDoubleTap = false;
-        // doubletap timed out and since we blocked default MENU key action while waiting for doubletap
-        // let's inject it now additionally, but only in case it's not still pressed as we might still be waiting
-        // for long-press action
-        if (!mMenuKeyPressed && areHwKeysEnabled()) {
-            if (getActionFor(HwKeyTrigger.MENU_SINGLETAP).actionId !=
-                    GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                if (DEBUG) log("MENU key double tap timed out and key not pressed; performing singletap action");
-                performAction(HwKeyTrigger.MENU_SINGLETAP);
-            } else {
-                if (DEBUG) log("MENU key double tap timed out and key not pressed; injecting MENU key");
-                injectKey(KeyEvent.KEYCODE_MENU);
-            }
-        }
-    };
-
-    private static Runnable mBackLongPress = () -> {
-        if (DEBUG) log("mBackLongPress runnable launched");
-        mIsBackLongPressed = true;
-        performAction(HwKeyTrigger.BACK_LONGPRESS);
-        performHapticFeedback(HapticFeedbackConstants.LONG_PRESS, false,
-                "GravityBox - Back Key Longpress");
-    };
-
-    private static Runnable mBackDoubleTapReset = () -> {
-        mIsBackDoubleTap = false;
-        // doubletap timed out and since we blocked default BACK key action while waiting for doubletap
-        // let's inject it now additionally, but only in case it's not still pressed as we might still be waiting
-        // for long-press action
-        if (!mBackKeyPressed && areHwKeysEnabled()) {
-            if (getActionFor(HwKeyTrigger.BACK_SINGLETAP).actionId !=
-                    GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                if (DEBUG) log("BACK key double tap timed out and key not pressed; performing singletap action");
-                performAction(HwKeyTrigger.BACK_SINGLETAP);
-            } else {
-                if (DEBUG) log("BACK key double tap timed out and key not pressed; injecting BACK key");
-                injectKey(KeyEvent.KEYCODE_BACK);
-            }
-        }
-    };
-
-    private static Runnable mRecentsLongPress = () -> {
-        if (DEBUG) log("mRecentsLongPress runnable launched");
-        mIsRecentsLongPressed = true;
-        performAction(HwKeyTrigger.RECENTS_LONGPRESS);
-        performHapticFeedback(HapticFeedbackConstants.LONG_PRESS, false,
-                "GravityBox - Recents Key Longpress");
-    };
-
-    private static Runnable mRecentsDoubleTapReset = () -> {
-        mIsRecentsDoubleTap = false;
-        // doubletap timed out and since we blocked default RECENTS key action while waiting for doubletap
-        // let's inject it now additionally, but only in case it's not still pressed as we might still be waiting
-        // for long-press action
-        if (!mRecentsKeyPressed && areHwKeysEnabled()) {
-            if (getActionFor(HwKeyTrigger.RECENTS_SINGLETAP).actionId !=
-                    GravityBoxSettings.HWKEY_ACTION_DEFAULT) {
-                if (DEBUG) log("RECENTS key double tap timed out and key not pressed; performing singletap action");
-                performAction(HwKeyTrigger.RECENTS_SINGLETAP);
-            } else {
-                if (DEBUG) log("RECENTS key double tap timed out and key not pressed; injecting RECENTS key");
-                injectKey(KeyEvent.KEYCODE_APP_SWITCH);
-            }
-        }
-    };
-
     private static Runnable mCustomKeyDoubletapReset = () -> {
         mCustomKeyDoubletapPending = false;
         // doubletap timed out and since we blocked single-tap action while waiting for doubletap
@@ -1105,28 +840,225 @@ public class ModHwKeys {
         mHwKeyActions.get(keyTrigger).customApp = customApp;
     }
 
-    private static boolean hasAction(HwKey key) {
-        boolean retVal = false;
-        if (key == HwKey.MENU) {
-            retVal |= getActionFor(HwKeyTrigger.MENU_SINGLETAP).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-            retVal |= getActionFor(HwKeyTrigger.MENU_LONGPRESS).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-            retVal |= getActionFor(HwKeyTrigger.MENU_DOUBLETAP).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-        } else if (key == HwKey.HOME) {
-            retVal |= getActionFor(HwKeyTrigger.HOME_LONGPRESS).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-        } else if (key == HwKey.BACK) {
-            retVal |= getActionFor(HwKeyTrigger.BACK_SINGLETAP).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-            retVal |= getActionFor(HwKeyTrigger.BACK_LONGPRESS).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-            retVal |= getActionFor(HwKeyTrigger.BACK_DOUBLETAP).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-        } else if (key == HwKey.RECENTS) {
-            retVal |= getActionFor(HwKeyTrigger.RECENTS_SINGLETAP).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-            retVal |= getActionFor(HwKeyTrigger.RECENTS_LONGPRESS).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-            retVal |= getActionFor(HwKeyTrigger.RECENTS_DOUBLETAP).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
-        } else if (key == HwKey.CUSTOM) {
-            retVal = true;
-        }
-
-        if (DEBUG) log("HWKEY " + key + " has action = " + retVal);
-        return retVal;
+    private static boolean hasActionFor(HwKeyTrigger keyTrigger) {
+        return getActionFor(keyTrigger).actionId != GravityBoxSettings.HWKEY_ACTION_DEFAULT;
+    }
+
+    private static KeyDecision createTapKeyDecision(HwKeyTrigger singleTap, HwKeyTrigger doubleTap,
+            HwKeyTrigger longPress, HwKeyGestureDetector detector, boolean hapticOnDown, String hapticReason) {
+        return new KeyDecision(KeyDecision.TYPE_TAP, hasActionFor(singleTap), hasActionFor(doubleTap),
+                hasActionFor(longPress), getActionFor(longPress).actionId, mDoubletapSpeed,
+                detector, hapticOnDown, hapticReason);
+    }
+
+    private static void rebuildKeyDecisions() {
+        KeyDecision[] decisions = new KeyDecision[KeyEvent.getMaxKeyCode() + 1];
+
+        if (mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_POWER_LONGPRESS) {
+            decisions[KeyEvent.KEYCODE_POWER] = new KeyDecision(KeyDecision.TYPE_POWER_TORCH);
+        }
+
+        decisions[KeyEvent.KEYCODE_VOLUME_UP] = new KeyDecision(KeyDecision.TYPE_VOLUME);
+        if (!mVolumeRockerWake.equals("default")) {
+            decisions[KeyEvent.KEYCODE_VOLUME_DOWN] = new KeyDecision(KeyDecision.TYPE_VOLUME);
+        }
+
+        // when HW keys can get disabled by Pie we need to see the events regardless of actions
+        final boolean hwKeysMayBeDisabled = !mHwKeysEnabled;
+        final boolean tapKeyHaptic = !Utils.isOxygenOsRom();
+        KeyDecision d = createTapKeyDecision(HwKeyTrigger.BACK_SINGLETAP, HwKeyTrigger.BACK_DOUBLETAP,
+                HwKeyTrigger.BACK_LONGPRESS, mBackKeyDetector, tapKeyHaptic, "GravityBox - Back Key");
+        if (d.hasAction() || hwKeysMayBeDisabled) {
+            decisions[KeyEvent.KEYCODE_BACK] = d;
+        }
+        d = createTapKeyDecision(HwKeyTrigger.RECENTS_SINGLETAP, HwKeyTrigger.RECENTS_DOUBLETAP,
+                HwKeyTrigger.RECENTS_LONGPRESS, mRecentsKeyDetector, tapKeyHaptic, "GravityBox - Recents Key");
+        if (d.hasAction() || hwKeysMayBeDisabled) {
+            decisions[KeyEvent.KEYCODE_APP_SWITCH] = d;
+        }
+        d = createTapKeyDecision(HwKeyTrigger.MENU_SINGLETAP, HwKeyTrigger.MENU_DOUBLETAP,
+                HwKeyTrigger.MENU_LONGPRESS, mMenuKeyDetector, true, "GravityBox - Menu Key");
+        if (d.hasAction() || hwKeysMayBeDisabled) {
+            decisions[KeyEvent.KEYCODE_MENU] = d;
+        }
+
+        decisions[KeyEvent.KEYCODE_HOME] = new KeyDecision(KeyDecision.TYPE_HOME,
+                false, false, hasActionFor(HwKeyTrigger.HOME_LONGPRESS),
+                getActionFor(HwKeyTrigger.HOME_LONGPRESS).actionId, 0, null, false, null);
+
+        decisions[KeyEvent.KEYCODE_SOFT_LEFT] = new KeyDecision(KeyDecision.TYPE_CUSTOM,
+                true, hasActionFor(HwKeyTrigger.CUSTOM_DOUBLETAP), true,
+                getActionFor(HwKeyTrigger.CUSTOM_LONGPRESS).actionId, mDoubletapSpeed,
+                null, true, "GravityBox - Custom Key");
+
+        mKeyDecisions = decisions;
+        if (DEBUG) log("Key decision table rebuilt");
+    }
+
+    private static boolean isKeyguardOn() {
+        try {
+            return (Boolean) mKeyguardOn.invoke(mPhoneWindowManager);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+            return false;
+        }
+    }
+
+    private static void handlePowerKeyTorch(XC_MethodHook.MethodHookParam param, KeyEvent event) {
+        if (getPowerManager().isInteractive()) return;
+
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
+            mHandler.removeCallbacks(mLockscreenTorchRunnable);
+            if (mPowerLongPressInterceptedByTorch) {
+                mPowerLongPressInterceptedByTorch = false;
+                param.setResult(0);
+                if (DEBUG) log("Power key long-press intercepted by torch, ignoring original event");
+            } else {
+                injectKey(KeyEvent.KEYCODE_POWER);
+                if (DEBUG) log("Injecting original down/up event");
+            }
+            if (mWakeLock != null && mWakeLock.isHeld()) {
+                mWakeLock.release();
+            }
+            mWakeLock = null;
+        } else {
+            if (event.getRepeatCount() == 0) {
+                mPowerLongPressInterceptedByTorch = false;
+                mWakeLock = getPowerManager().newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "GB:PowerKeyTorch");
+                mWakeLock.acquire(1000);
+                mHandler.postDelayed(mLockscreenTorchRunnable, getLongpressTimeoutForAction(
+                        GravityBoxSettings.HWKEY_ACTION_TORCH));
+                if (DEBUG) log("Scheduled torch runnable, ignoring original event");
+            }
+            param.setResult(0);
+        }
+    }
+
+    private static void handleVolumeKey(XC_MethodHook.MethodHookParam param, KeyEvent event) {
+        final boolean down = event.getAction() == KeyEvent.ACTION_DOWN;
+        if (event.getKeyCode() == KeyEvent.KEYCODE_VOLUME_UP) {
+            if (!down) {
+                mHandler.removeCallbacks(mResetBrightnessRunnable);
+            } else if (event.getRepeatCount() == 0) {
+                mHandler.postDelayed(mResetBrightnessRunnable, 7000);
+            }
+        }
+
+        if (!mVolumeRockerWake.equals("default")) {
+            int policyFlags = (Integer) param.args[1];
+            if (mVolumeRockerWake.equals("enabled") &&
+                (!getAudioManager().isMusicActive() || mVolumeRockerWakeAllowMusic)) {
+                policyFlags |= FLAG_WAKE;
+                policyFlags |= FLAG_WAKE_DROPPED;
+            } else if (mVolumeRockerWake.equals("disabled")) {
+                policyFlags &= ~FLAG_WAKE;
+                policyFlags &= ~FLAG_WAKE_DROPPED;
+            }
+            param.args[1] = policyFlags;
+        }
+    }
+
+    private static void handleTapKey(XC_MethodHook.MethodHookParam param, KeyEvent event,
+                                     KeyDecision decision) {
+        if ((event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) == 0 ||
+                (!decision.hasAction() && areHwKeysEnabled()) || isTaskLocked()) {
+            return;
+        }
+
+        final boolean consumed;
+        if (event.getAction() == KeyEvent.ACTION_DOWN) {
+            consumed = decision.detector.onKeyDown(event.getRepeatCount(),
+                    decision.hasDoubleTap, decision.doubleTapTimeout, decision.hasLongPress,
+                    decision.hasLongPress ? getLongpressTimeoutForAction(decision.longPressActionId) : 0);
+            if (consumed && decision.hapticOnDown) {
+                performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY, false,
+                        decision.hapticReason);
+            }
+        } else {
+            consumed = decision.detector.onKeyUp(event.getRepeatCount(), event.isCanceled());
+        }
+        if (consumed) {
+            param.setResult(0);
+        }
+    }
+
+    private static void handleHomeKey(XC_MethodHook.MethodHookParam param, KeyEvent event,
+                                      KeyDecision decision) {
+        if (isTaskLocked()) return;
+
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
+            mHandler.removeCallbacks(mLockscreenTorchRunnable);
+            mHandler.removeCallbacks(mHomeLongPress);
+            if (mIsHomeLongPressed) {
+                mIsHomeLongPressed = false;
+                param.setResult(0);
+                return;
+            }
+            if (!areHwKeysEnabled() &&
+                    event.getRepeatCount() == 0 &&
+                    (event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) != 0) {
+                if (DEBUG) log("HOME KeyEvent coming from HW key and keys disabled. Ignoring.");
+                param.setResult(0);
+            }
+        } else {
+            final boolean torch = mLockscreenTorch == GravityBoxSettings.HWKEY_TORCH_HOME_LONGPRESS &&
+                    isKeyguardOn();
+            if (event.getRepeatCount() == 0) {
+                mIsHomeLongPressed = false;
+                if (torch) {
+                    mHandler.postDelayed(mLockscreenTorchRunnable,
+                            getLongpressTimeoutForAction(GravityBoxSettings.HWKEY_ACTION_TORCH));
+                } else if (decision.hasLongPress) {
+                    mHandler.postDelayed(mHomeLongPress, ViewConfiguration.getLongPressTimeout());
+                }
+            } else if (torch || decision.hasLongPress) {
+                param.setResult(0);
+            }
+        }
+    }
+
+    private static void handleCustomKey(XC_MethodHook.MethodHookParam param, KeyEvent event,
+                                        KeyDecision decision) {
+        if (isTaskLocked()) return;
+
+        final boolean isFromSystem = (event.getFlags() & KeyEvent.FLAG_FROM_SYSTEM) != 0;
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
+            mCustomKeyPressed = false;
+            if (!mIsCustomKeyLongPressed &&
+                    !mCustomKeyDoubletapPending && !mWasCustomKeyDoubletap) {
+                if (DEBUG) log("Custom key singletap action");
+                performAction(HwKeyTrigger.CUSTOM_SINGLETAP);
+            }
+            mIsCustomKeyLongPressed = false;
+        } else {
+            mCustomKeyPressed = true;
+            if (event.getRepeatCount() == 0) {
+                if (mCustomKeyDoubletapPending) {
+                    mHandler.removeCallbacks(mCustomKeyDoubletapReset);
+                    mWasCustomKeyDoubletap = true;
+                    mCustomKeyDoubletapPending = false;
+                    if (DEBUG) log("Custom key double-tap action");
+                    performAction(HwKeyTrigger.CUSTOM_DOUBLETAP);
+                } else if (decision.hasDoubleTap && isFromSystem) {
+                    mCustomKeyDoubletapPending = true;
+                    mWasCustomKeyDoubletap = false;
+                    mHandler.postDelayed(mCustomKeyDoubletapReset, decision.doubleTapTimeout);
+                }
+                if (isFromSystem) {
+                    performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY, false,
+                            decision.hapticReason);
+                }
+            } else {
+                mHandler.removeCallbacks(mCustomKeyDoubletapReset);
+                mCustomKeyDoubletapPending = false;
+                mIsCustomKeyLongPressed = true;
+                if (DEBUG) log("Custom key long-press action");
+                performAction(HwKeyTrigger.CUSTOM_LONGPRESS);
+                performHapticFeedback(HapticFeedbackConstants.LONG_PRESS, false,
+                        decision.hapticReason);
+            }
+        }
+        param.setResult(0);
     }
 
     private static int getLongpressTimeoutForAction(int action) {
@@ -1214,7 +1146,7 @@ public class ModHwKeys {
     }
 
     private static void killForegroundApp() {
-        Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+        Handler handler = mHandler;
         if (handler == null) return;
 
         handler.post(() -> {
@@ -1273,7 +1205,7 @@ public class ModHwKeys {
 
     @SuppressLint("MissingPermission")
     private static void switchToLastApp() {
-        Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+        Handler handler = mHandler;
         if (handler == null) return;
 
         handler.post(() -> {
@@ -1325,7 +1257,7 @@ public class ModHwKeys {
     private static void launchCustomApp(String uri) {
         if (uri == null) {
             try {
-                Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+                Handler handler = mHandler;
                 handler.post(() -> Toast.makeText(mContext, mStrCustomAppNone, Toast.LENGTH_SHORT).show());
             } catch (Throwable ignore) { }
             return;
@@ -1340,7 +1272,7 @@ public class ModHwKeys {
     }
 
     private static void launchCustomApp(final Intent intent) {
-        Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+        Handler handler = mHandler;
         if (handler == null) return;
 
         handler.post(() -> {
@@ -1383,7 +1315,7 @@ public class ModHwKeys {
     }
 
     private static void injectKey(final int keyCode) {
-        Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+        Handler handler = mHandler;
         if (handler == null) return;
 
         handler.post(() -> {
@@ -1506,7 +1438,7 @@ public class ModHwKeys {
     private static final Object mScreenshotLock = new Object();
     private static ServiceConnection mScreenshotConnection = null;  
     private static void takeScreenshot(final long delayMs) {
-        final Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+        final Handler handler = mHandler;
         if (handler == null) return;
 
         if (tryNativeScreenshot(handler, delayMs)) {
@@ -1580,7 +1512,7 @@ public class ModHwKeys {
 
     private static void showGlobalActionsDialog() {
         try {
-            Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+            Handler handler = mHandler;
             handler.post(() -> XposedHelpers.callMethod(mPhoneWindowManager, "showGlobalActions"));
         } catch (Throwable t) {
             GravityBox.log(TAG, "Error executing PhoneWindowManager.showGlobalActionsDialog(): ", t);
@@ -1609,7 +1541,7 @@ public class ModHwKeys {
 
     private static void showVolumePanel() {
         try {
-            Handler handler = (Handler) XposedHelpers.getObjectField(mPhoneWindowManager, "mHandler");
+            Handler handler = mHandler;
             handler.post(() -> {
                 AudioManager am = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
                 am.adjustVolume(AudioManager.ADJUST_SAME, AudioManager.FLAG_SHOW_UI);
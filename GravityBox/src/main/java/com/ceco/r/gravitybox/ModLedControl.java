@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.ceco.r.gravitybox.ModStatusBar.StatusBarState;
 import com.ceco.r.gravitybox.ledcontrol.LedSettings;
@@ -73,16 +74,16 @@ public class ModLedControl {
     private static final String CLASS_NOTIFICATION_RECORD = "com.android.server.notification.NotificationRecord";
     private static final String CLASS_ALERT_ENTRY = "com.android.systemui.statusbar.AlertingNotificationManager.AlertEntry";
     private static final String CLASS_NOTIF_INTERRUPTION_STATE_PROVIDER = "com.android.systemui.statusbar.notification.interruption.NotificationInterruptStateProviderImpl";
+    private static final String CLASS_TASK_STACK_CHANGE_LISTENERS = "com.android.systemui.shared.system.TaskStackChangeListeners";
     public static final String PACKAGE_NAME_SYSTEMUI = "com.android.systemui";
 
-    private static final String NOTIF_EXTRA_HEADS_UP_MODE = "gbHeadsUpMode";
-    private static final String NOTIF_EXTRA_HEADS_UP_TIMEOUT = "gbHeadsUpTimeout";
-    private static final String NOTIF_EXTRA_ACTIVE_SCREEN = "gbActiveScreen";
-    private static final String NOTIF_EXTRA_ACTIVE_SCREEN_MODE = "gbActiveScreenMode";
-    private static final String NOTIF_EXTRA_ACTIVE_SCREEN_POCKET_MODE = "gbActiveScreenPocketMode";
-    public static final String NOTIF_EXTRA_PROGRESS_TRACKING = "gbProgressTracking";
-    public static final String NOTIF_EXTRA_VISIBILITY_LS = "gbVisibilityLs";
-    public static final String NOTIF_EXTRA_HIDE_PERSISTENT = "gbHidePersistent";
+    // packed NotificationPolicy word
+    public static final String NOTIF_EXTRA_POLICY = "gbPolicy";
+    private static final String ENTRY_FIELD_POLICY = "gbPolicy";
+
+    private static final HeadsUpMode[] HEADS_UP_MODES = HeadsUpMode.values();
+    private static final VisibilityLs[] VISIBILITY_LS_VALUES = VisibilityLs.values();
+    private static final ActiveScreenMode[] ACTIVE_SCREEN_MODES = ActiveScreenMode.values();
 
     private  static final String SETTING_ZEN_MODE = "zen_mode";
 
@@ -316,10 +317,12 @@ public class ModLedControl {
                         "; qhActiveIncludingVibe=" + qhActiveIncludingVibe + 
                         "; qhActiveIncludingActiveScreen=" + qhActiveIncludingActiveScreen);
 
+                int policy = NotificationPolicy.EMPTY;
                 if (ls.getEnabled()) {
-                    n.extras.putBoolean(NOTIF_EXTRA_PROGRESS_TRACKING, ls.getProgressTracking());
-                    n.extras.putString(NOTIF_EXTRA_VISIBILITY_LS, ls.getVisibilityLs().toString());
-                    n.extras.putBoolean(NOTIF_EXTRA_HIDE_PERSISTENT, ls.getHidePersistent());
+                    policy = NotificationPolicy.setProgressTracking(policy, ls.getProgressTracking());
+                    policy = NotificationPolicy.setVisibilityLs(policy, ls.getVisibilityLs().ordinal());
+                    policy = NotificationPolicy.setHidePersistent(policy, ls.getHidePersistent());
+                    n.extras.putInt(NOTIF_EXTRA_POLICY, policy);
                 }
 
                 // whether to ignore ongoing notification
@@ -405,10 +408,9 @@ public class ModLedControl {
 
                 if (ls.getEnabled()) {
                     // heads up mode
-                    n.extras.putString(NOTIF_EXTRA_HEADS_UP_MODE, ls.getHeadsUpMode().toString());
+                    policy = NotificationPolicy.setHeadsUpMode(policy, ls.getHeadsUpMode().ordinal());
                     if (ls.getHeadsUpMode() != HeadsUpMode.OFF) {
-                        n.extras.putInt(NOTIF_EXTRA_HEADS_UP_TIMEOUT,
-                                ls.getHeadsUpTimeout());
+                        policy = NotificationPolicy.setHeadsUpTimeout(policy, ls.getHeadsUpTimeout());
                     }
                     // active screen mode
                     if (mUncActiveScreenEnabled &&
@@ -419,10 +421,10 @@ public class ModLedControl {
                             ls.getVisibilityLs() != VisibilityLs.ALL &&
                             !qhActiveIncludingActiveScreen && !isOngoing &&
                             !userPresent) {
-                        n.extras.putBoolean(NOTIF_EXTRA_ACTIVE_SCREEN, true);
-                        n.extras.putString(NOTIF_EXTRA_ACTIVE_SCREEN_MODE,
-                                ls.getActiveScreenMode().toString());
+                        policy = NotificationPolicy.setActiveScreen(policy, true,
+                                ls.getActiveScreenMode().ordinal());
                     }
+                    n.extras.putInt(NOTIF_EXTRA_POLICY, policy);
                     // visibility
                     if (ls.getVisibility() != Visibility.DEFAULT) {
                         n.visibility = ls.getVisibility().getValue();
@@ -597,25 +599,23 @@ public class ModLedControl {
         protected void afterHookedMethod(final MethodHookParam param) {
             try {
                 Notification n = (Notification) XposedHelpers.callMethod(param.args[0], "getNotification");
-                if (!mUncActiveScreenEnabled ||
-                        !n.extras.containsKey(NOTIF_EXTRA_ACTIVE_SCREEN) ||
-                        !n.extras.containsKey(NOTIF_EXTRA_ACTIVE_SCREEN_MODE) ||
-                        isUserPresent()) {
-                    n.extras.remove(NOTIF_EXTRA_ACTIVE_SCREEN);
+                final int policy = NotificationPolicy.decode(n.extras.getInt(NOTIF_EXTRA_POLICY));
+                if (!NotificationPolicy.isActiveScreen(policy)) {
+                    return;
+                }
+                // active screen is performed once
+                n.extras.putInt(NOTIF_EXTRA_POLICY, NotificationPolicy.setActiveScreen(policy, false, 0));
+                if (!mUncActiveScreenEnabled || isUserPresent()) {
                     return;
                 }
-                n.extras.remove(NOTIF_EXTRA_ACTIVE_SCREEN);
 
-                // set additional params
-                final ActiveScreenMode asMode = ActiveScreenMode.valueOf(
-                        n.extras.getString(NOTIF_EXTRA_ACTIVE_SCREEN_MODE));
-                n.extras.putBoolean(NOTIF_EXTRA_ACTIVE_SCREEN_POCKET_MODE,
-                        !mProximityWakeUpEnabled && mUncActiveScreenPocketModeEnabled);
+                final ActiveScreenMode asMode = ACTIVE_SCREEN_MODES[
+                        NotificationPolicy.getActiveScreenMode(policy)];
+                final boolean pocketMode = !mProximityWakeUpEnabled && mUncActiveScreenPocketModeEnabled;
 
                 if (DEBUG) log("Performing Active Screen with mode " + asMode.toString());
 
-                if (mSm != null && mProxSensor != null &&
-                        n.extras.getBoolean(NOTIF_EXTRA_ACTIVE_SCREEN_POCKET_MODE)) {
+                if (mSm != null && mProxSensor != null && pocketMode) {
                     mSm.registerListener(mProxSensorEventListener, mProxSensor, SensorManager.SENSOR_DELAY_FASTEST);
                     if (DEBUG) log("Performing active screen using proximity sensor");
                 } else {
@@ -741,10 +741,23 @@ public class ModLedControl {
     private static Object mStatusBar;
     private static XSharedPreferences mSysUiPrefs;
     private static XSharedPreferences mSysUiUncPrefs;
+    private static HeadsUpDndTracker mHeadsUpDndTracker;
 
     private static BroadcastMediator.Receiver mSystemUiBroadcastReceiver = (context, intent) -> {
         if (intent.getAction().equals(GravityBoxSettings.ACTION_HEADS_UP_SETTINGS_CHANGED)) {
             mSysUiPrefs.reload();
+        } else if (intent.getAction().equals(LedSettings.ACTION_UNC_SETTINGS_CHANGED)) {
+            if (intent.hasExtra(LedSettings.PREF_KEY_LOCKED)) {
+                mHeadsUpDndTracker.setLocked(intent.getBooleanExtra(LedSettings.PREF_KEY_LOCKED, false));
+            }
+            if (intent.hasExtra(LedSettings.EXTRA_UNC_PACKAGE_NAME) &&
+                    intent.hasExtra(LedSettings.EXTRA_UNC_PACKAGE_SETTINGS)) {
+                String pkgName = intent.getStringExtra(LedSettings.EXTRA_UNC_PACKAGE_NAME);
+                LedSettings ls = LedSettings.deserialize(pkgName,
+                        intent.getStringArrayListExtra(LedSettings.EXTRA_UNC_PACKAGE_SETTINGS));
+                mHeadsUpDndTracker.setPackageDnd(pkgName, ls.getEnabled() && ls.getHeadsUpDnd());
+                if (DEBUG) log("Heads up DND for " + pkgName + " updated");
+            }
         }
     };
 
@@ -757,19 +770,18 @@ public class ModLedControl {
                 protected void beforeHookedMethod(MethodHookParam param) {
                     StatusBarNotification sbn = (StatusBarNotification)
                             XposedHelpers.getObjectField(param.args[0], "mSbn");
-                    Notification n = sbn.getNotification();
+                    final int policy = getEntryPolicy(param.args[0], sbn);
+                    if (policy == NotificationPolicy.NONE) return;
 
                     // whether to hide persistent everywhere
-                    if (!sbn.isClearable() && n.extras.getBoolean(NOTIF_EXTRA_HIDE_PERSISTENT)) {
+                    if (NotificationPolicy.isHidePersistent(policy) && !sbn.isClearable()) {
                         param.setResult(true);
                         return;
                     }
 
                     // whether to hide during keyguard
                     if (ModStatusBar.getStatusBarState() != StatusBarState.SHADE) {
-                        VisibilityLs vls = n.extras.containsKey(NOTIF_EXTRA_VISIBILITY_LS) ?
-                                VisibilityLs.valueOf(n.extras.getString(NOTIF_EXTRA_VISIBILITY_LS)) :
-                                    VisibilityLs.DEFAULT;
+                        VisibilityLs vls = VISIBILITY_LS_VALUES[NotificationPolicy.getVisibilityLs(policy)];
                         switch (vls) {
                             case CLEARABLE:
                                 param.setResult(sbn.isClearable());
@@ -796,16 +808,35 @@ public class ModLedControl {
         try {
             mSysUiPrefs = prefs;
             mSysUiUncPrefs = uncPrefs;
+            mHeadsUpDndTracker = new HeadsUpDndTracker(() -> mStatusBar == null ? null :
+                    getTopLevelPackageName((Context) XposedHelpers.getObjectField(mStatusBar, "mContext")));
 
             XposedHelpers.findAndHookMethod(CLASS_STATUSBAR, classLoader, "start", new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
                     mStatusBar = param.thisObject;
+                    initHeadsUpDndPackages();
                     SysUiManagers.BroadcastMediator.subscribe(mSystemUiBroadcastReceiver,
-                            GravityBoxSettings.ACTION_HEADS_UP_SETTINGS_CHANGED);
+                            GravityBoxSettings.ACTION_HEADS_UP_SETTINGS_CHANGED,
+                            LedSettings.ACTION_UNC_SETTINGS_CHANGED);
                 }
             });
 
+            try {
+                // foreground package is looked up again only after task stack changes
+                boolean hooked = !XposedBridge.hookAllMethods(XposedHelpers.findClass(
+                        CLASS_TASK_STACK_CHANGE_LISTENERS, classLoader),
+                        "onTaskStackChanged", new XC_MethodHook() {
+                    @Override
+                    protected void beforeHookedMethod(MethodHookParam param) {
+                        mHeadsUpDndTracker.onForegroundChanged();
+                    }
+                }).isEmpty();
+                mHeadsUpDndTracker.setEventsAvailable(hooked);
+            } catch (Throwable t) {
+                GravityBox.log(TAG, "Task stack changes not available; foreground app will be queried for each heads up", t);
+            }
+
             Method mtdCanAlertCommon = XposedHelpers.findMethodExactIfExists(
                     CLASS_NOTIF_INTERRUPTION_STATE_PROVIDER,
                     classLoader, "canHeadsUpCommon", CLASS_NOTIF_DATA_ENTRY);
@@ -822,21 +853,19 @@ public class ModLedControl {
                         StatusBarNotification sbn = (StatusBarNotification) XposedHelpers
                                 .getObjectField(param.args[0], "mSbn");
                         Context context = (Context) XposedHelpers.getObjectField(mStatusBar, "mContext");
-                        Notification n = sbn.getNotification();
                         int statusBarWindowState = XposedHelpers.getIntField(mStatusBar, "mStatusBarWindowState");
 
                         boolean showHeadsUp = false;
 
                         // no heads up if app with DND enabled is in the foreground
-                        if (shouldNotDisturb(context)) {
+                        if (mHeadsUpDndTracker.shouldNotDisturb()) {
                             if (DEBUG)
                                 log("shouldInterrupt: NO due to DND app in the foreground");
                             showHeadsUp = false;
                             // get desired mode set by UNC or use default
                         } else {
-                            HeadsUpMode mode = n.extras.containsKey(NOTIF_EXTRA_HEADS_UP_MODE) ?
-                                    HeadsUpMode.valueOf(n.extras.getString(NOTIF_EXTRA_HEADS_UP_MODE)) :
-                                    HeadsUpMode.DEFAULT;
+                            HeadsUpMode mode = HEADS_UP_MODES[NotificationPolicy.getHeadsUpMode(
+                                    getEntryPolicy(param.args[0], sbn))];
                             if (DEBUG) log("Heads up mode: " + mode.toString());
 
                             switch (mode) {
@@ -878,9 +907,9 @@ public class ModLedControl {
                         XposedHelpers.callMethod(param.thisObject, "removeAutoRemovalCallbacks");
                         StatusBarNotification sbNotif = (StatusBarNotification)
                                 XposedHelpers.getObjectField(entry, "mSbn");
-                        Notification n = sbNotif.getNotification();
-                        int timeout = n.extras.containsKey(NOTIF_EXTRA_HEADS_UP_TIMEOUT) ?
-                                n.extras.getInt(NOTIF_EXTRA_HEADS_UP_TIMEOUT) * 1000 :
+                        final int policy = getEntryPolicy(entry, sbNotif);
+                        int timeout = NotificationPolicy.hasHeadsUpTimeout(policy) ?
+                                NotificationPolicy.getHeadsUpTimeout(policy) * 1000 :
                                 mSysUiPrefs.getInt(GravityBoxSettings.PREF_KEY_HEADS_UP_TIMEOUT, 5) * 1000;
                         if (timeout > 0) {
                             Handler H = (Handler) XposedHelpers.getObjectField(huMgr, "mHandler");
@@ -897,6 +926,32 @@ public class ModLedControl {
         }
     }
 
+    // policy decoded once per notification and kept with the entry
+    private static final class EntryPolicy {
+        final Notification notification;
+        final int policy;
+        EntryPolicy(Notification notification, int policy) {
+            this.notification = notification;
+            this.policy = policy;
+        }
+    }
+
+    private static int getEntryPolicy(Object entry, StatusBarNotification sbn) {
+        final Notification n = sbn.getNotification();
+        EntryPolicy ep = (EntryPolicy) XposedHelpers.getAdditionalInstanceField(entry, ENTRY_FIELD_POLICY);
+        // entry gets new notification instance when updated
+        if (ep == null || ep.notification != n) {
+            ep = new EntryPolicy(n, NotificationPolicy.decode(n.extras.getInt(NOTIF_EXTRA_POLICY)));
+            XposedHelpers.setAdditionalInstanceField(entry, ENTRY_FIELD_POLICY, ep);
+        }
+        return ep.policy;
+    }
+
+    static int getNotificationPolicy(Notification n) {
+        return (n == null ? NotificationPolicy.NONE :
+                NotificationPolicy.decode(n.extras.getInt(NOTIF_EXTRA_POLICY)));
+    }
+
     private static boolean keyguardAllowsHeadsUp(StatusBarNotification sbn) {
         if (sbn.getNotification().fullScreenIntent == null) {
             return true;
@@ -989,14 +1044,24 @@ public class ModLedControl {
         }
     }
 
-    private static boolean shouldNotDisturb(Context context) {
-        String pkgName = getTopLevelPackageName(context);
-        mSysUiUncPrefs.reload();
-        if(!mSysUiUncPrefs.getBoolean(LedSettings.PREF_KEY_LOCKED, false) && pkgName != null) {
-            LedSettings ls = LedSettings.deserialize(mSysUiUncPrefs.getStringSet(pkgName, null));
-            return (ls.getEnabled() && ls.getHeadsUpDnd());
-        } else {
-            return false;
+    @SuppressWarnings("unchecked")
+    private static void initHeadsUpDndPackages() {
+        try {
+            mSysUiUncPrefs.reload();
+            mHeadsUpDndTracker.setLocked(mSysUiUncPrefs.getBoolean(LedSettings.PREF_KEY_LOCKED, false));
+            List<String> pkgs = new ArrayList<>();
+            for (Map.Entry<String, ?> entry : mSysUiUncPrefs.getAll().entrySet()) {
+                if (entry.getValue() instanceof Set) {
+                    LedSettings ls = LedSettings.deserialize((Set<String>) entry.getValue());
+                    if (ls.getEnabled() && ls.getHeadsUpDnd()) {
+                        pkgs.add(entry.getKey());
+                    }
+                }
+            }
+            mHeadsUpDndTracker.setDndPackages(pkgs);
+            if (DEBUG) log("Heads up DND packages: " + pkgs);
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
         }
     }
 }
@@ -19,9 +19,12 @@ import static de.robv.android.xposed.XposedHelpers.findAndHookMethod;
 import static de.robv.android.xposed.XposedHelpers.findClass;
 
 import com.ceco.r.gravitybox.ledcontrol.QuietHours;
+import com.ceco.r.gravitybox.managers.BatteryHistory;
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
 import com.ceco.r.gravitybox.managers.FrameworkManagers;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
+import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager;
+import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryStatusListener;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.LowBatteryWarningPolicy;
 
 import android.os.BatteryManager;
@@ -37,6 +40,8 @@ public class ModLowBatteryWarning {
     private static final String CLASS_POWER_WARNINGS = "com.android.systemui.power.PowerNotificationWarnings";
     private static final String CLASS_BATTERY_SERVICE_LED = "com.android.server.BatteryService$Led";
     public static final boolean DEBUG = false;
+    // non-intrusive warning plays sound anyway once estimated time left drops below this
+    private static final long CRITICAL_TIME_TO_EMPTY_MS = 15 * 60 * 1000;
 
     public enum ChargingLed { DEFAULT, EMULATED, CONSTANT, DISABLED }
 
@@ -44,6 +49,8 @@ public class ModLowBatteryWarning {
     private static boolean mFlashingLedDisabled;
     private static ChargingLed mChargingLed;
     private static Integer mDashChargingSoundIdOrig;
+    private static long mTimeToEmpty = BatteryHistory.UNKNOWN;
+    private static boolean mEstimateListenerRegistered;
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -63,6 +70,14 @@ public class ModLowBatteryWarning {
         }
     };
 
+    private static final BatteryStatusListener mEstimateListener = batteryData ->
+            mTimeToEmpty = batteryData.timeToEmpty;
+
+    private static boolean isBatteryRunningOut() {
+        return mTimeToEmpty != BatteryHistory.UNKNOWN &&
+                mTimeToEmpty < CRITICAL_TIME_TO_EMPTY_MS;
+    }
+
     private static void updateLightsLocked() {
         if (mBatteryLed == null) return;
 
@@ -146,14 +161,24 @@ public class ModLowBatteryWarning {
                 protected void beforeHookedMethod(MethodHookParam param) {
                     if (SysUiManagers.BatteryInfoManager == null) return;
 
+                    if (!mEstimateListenerRegistered) {
+                        // delivers current estimate immediately
+                        SysUiManagers.BatteryInfoManager.registerListener(mEstimateListener,
+                                SysUiBatteryInfoManager.FIELD_ESTIMATE);
+                        mEstimateListenerRegistered = true;
+                    }
+
                     LowBatteryWarningPolicy policy = SysUiManagers.BatteryInfoManager
                             .getLowBatteryWarningPolicy();
-                    if (DEBUG) log("showLowBatteryWarning called; policy=" + policy);
+                    if (DEBUG) log("showLowBatteryWarning called; policy=" + policy +
+                            "; timeToEmpty=" + mTimeToEmpty);
                     switch (policy) {
                         case DEFAULT:
                             return;
                         case NONINTRUSIVE:
-                            XposedHelpers.setBooleanField(param.thisObject, "mPlaySound", false);
+                            if (!isBatteryRunningOut()) {
+                                XposedHelpers.setBooleanField(param.thisObject, "mPlaySound", false);
+                            }
                             return;
                         case OFF:
                             XposedHelpers.setBooleanField(param.thisObject, "mWarning", false);
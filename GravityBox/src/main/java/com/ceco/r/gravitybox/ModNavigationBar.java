@@ -30,6 +30,7 @@ import android.graphics.Region;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.PowerManager;
 import android.util.TypedValue;
 import android.view.KeyEvent;
@@ -104,6 +105,11 @@ public class ModNavigationBar {
     private static NavbarViewInfo[] mNavbarViewInfo = new NavbarViewInfo[2];
     private static boolean mCustomKeySwapEnabled;
     private static CustomKeyIconStyle mCustomKeyIconStyle;
+    // icon shared by all navbar instances; key is style, image mtime, density and navbar height
+    private static String mCustomKeyIconKey;
+    private static Drawable.ConstantState mCustomKeyIconState;
+    private static long mCustomKeyImageMtime;
+    private static int mCustomKeyIconGeneration;
 
     // Colors
     private static boolean mNavbarColorsEnabled;
@@ -208,6 +214,8 @@ public class ModNavigationBar {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_NAVBAR_CUSTOM_KEY_ICON_STYLE)) {
                 mCustomKeyIconStyle = CustomKeyIconStyle.valueOf(intent.getStringExtra(
                         GravityBoxSettings.EXTRA_NAVBAR_CUSTOM_KEY_ICON_STYLE));
+                // custom image might have been replaced
+                mCustomKeyImageMtime = getCustomKeyImageFile().lastModified();
                 updateCustomKeyIcon();
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_NAVBAR_HIDE_IME)) {
@@ -302,6 +310,9 @@ public class ModNavigationBar {
                             GravityBoxSettings.PREF_KEY_NAVBAR_KEY_GLOW_COLOR, mKeyDefaultGlowColor);
                     mCustomKeyIconStyle = CustomKeyIconStyle.valueOf(prefs.getString(
                             GravityBoxSettings.PREF_KEY_NAVBAR_CUSTOM_KEY_ICON_STYLE, "SIX_DOT"));
+                    if (mCustomKeyIconKey == null) {
+                        mCustomKeyImageMtime = getCustomKeyImageFile().lastModified();
+                    }
 
                     mNavigationBarView = (View) param.thisObject;
                     SysUiManagers.BroadcastMediator.subscribe(mBroadcastReceiver,
@@ -1051,34 +1062,127 @@ public class ModNavigationBar {
     private static void updateCustomKeyIcon() {
         try {
             for (NavbarViewInfo nvi : mNavbarViewInfo) {
-                nvi.customKey.setImageDrawable(getCustomKeyIconDrawable());
+                if (nvi != null && nvi.customKey != null) {
+                    nvi.customKey.setImageDrawable(getCustomKeyIconDrawable());
+                }
             }
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
         }
     }
 
+    private static File getCustomKeyImageFile() {
+        return new File(mPreferenceDir, "navbar_custom_key_image");
+    }
+
     private static Drawable getCustomKeyIconDrawable() {
-        switch (mCustomKeyIconStyle) {
+        final CustomKeyIconStyle style = mCustomKeyIconStyle;
+        final long mtime = style == CustomKeyIconStyle.CUSTOM ? mCustomKeyImageMtime : 0;
+        final String key = style + ":" + mtime + ":" +
+                mResources.getDisplayMetrics().densityDpi + ":" + mNavbarHeight;
+        if (!key.equals(mCustomKeyIconKey)) {
+            mCustomKeyIconKey = key;
+            mCustomKeyIconGeneration++;
+            mCustomKeyIconState = null;
+            if (style == CustomKeyIconStyle.CUSTOM && mtime != 0) {
+                decodeCustomKeyImage(mCustomKeyIconGeneration);
+            } else {
+                mCustomKeyIconState = createCustomKeyIconDrawable(style).getConstantState();
+            }
+        }
+
+        if (mCustomKeyIconState == null) {
+            // custom image is being decoded; keep space reserved meanwhile
+            return createCustomKeyIconDrawable(CustomKeyIconStyle.TRANSPARENT);
+        }
+        Drawable d = mCustomKeyIconState.newDrawable(mResources);
+        if (d instanceof ColorDrawable) {
+            // bounds are not part of constant state
+            d.setBounds(0, 0, getCustomKeyIconWidth(), getCustomKeyIconHeight());
+        }
+        return d;
+    }
+
+    private static Drawable createCustomKeyIconDrawable(CustomKeyIconStyle style) {
+        switch (style) {
+            case THREE_DOT:
+                return mGbContext.getDrawable(R.drawable.ic_sysbar_apps2);
+            case SIX_DOT:
+                return mGbContext.getDrawable(R.drawable.ic_sysbar_apps);
             case CUSTOM:
-                File f = new File(mPreferenceDir, "navbar_custom_key_image");
-                if (f.exists() && f.canRead()) {
-                    Bitmap b = BitmapFactory.decodeFile(f.getAbsolutePath());
-                    if (b != null) {
-                        return new BitmapDrawable(mResources, b);
-                    }
-                }
-                // fall through to transparent if custom not available
+                // custom image not available
             case TRANSPARENT:
-                Drawable d = mGbContext.getDrawable(R.drawable.ic_sysbar_apps);
+            default:
                 Drawable transD = new ColorDrawable(Color.TRANSPARENT);
-                transD.setBounds(0, 0, d.getMinimumWidth(), d.getMinimumHeight());
+                transD.setBounds(0, 0, getCustomKeyIconWidth(), getCustomKeyIconHeight());
                 return transD;
-            case THREE_DOT: 
-                return mGbContext.getDrawable(R.drawable.ic_sysbar_apps2);
-            case SIX_DOT:
-            default:
-                return mGbContext.getDrawable(R.drawable.ic_sysbar_apps);
+        }
+    }
+
+    private static int getCustomKeyIconWidth() {
+        return mGbContext.getResources().getDimensionPixelSize(R.dimen.navbar_custom_key_image_width);
+    }
+
+    private static int getCustomKeyIconHeight() {
+        return mGbContext.getResources().getDimensionPixelSize(R.dimen.navbar_custom_key_image_height);
+    }
+
+    private static void decodeCustomKeyImage(final int generation) {
+        final String path = getCustomKeyImageFile().getAbsolutePath();
+        // keep image sharp on enlarged navbar
+        final float scale = Math.max(1f, mNavbarHeight / 100f);
+        final int reqWidth = Math.round(getCustomKeyIconWidth() * scale);
+        final int reqHeight = Math.round(getCustomKeyIconHeight() * scale);
+        final View navbarView = mNavigationBarView;
+        AsyncTask.execute(() -> {
+            final Bitmap b = decodeSampledBitmap(path, reqWidth, reqHeight);
+            if (navbarView == null) return;
+            navbarView.post(() -> {
+                if (generation != mCustomKeyIconGeneration) return;
+                if (b != null) {
+                    mCustomKeyIconState = new BitmapDrawable(mResources, b).getConstantState();
+                } else {
+                    mCustomKeyIconState = createCustomKeyIconDrawable(
+                            CustomKeyIconStyle.TRANSPARENT).getConstantState();
+                }
+                if (DEBUG) log("Custom key image decoded: " + (b == null ? "null" :
+                        b.getWidth() + "x" + b.getHeight()));
+                updateCustomKeyIcon();
+            });
+        });
+    }
+
+    private static Bitmap decodeSampledBitmap(String path, int reqWidth, int reqHeight) {
+        try {
+            BitmapFactory.Options opts = new BitmapFactory.Options();
+            opts.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, opts);
+            if (opts.outWidth <= 0 || opts.outHeight <= 0) return null;
+
+            int sampleSize = 1;
+            while (opts.outWidth / (sampleSize * 2) >= reqWidth &&
+                    opts.outHeight / (sampleSize * 2) >= reqHeight) {
+                sampleSize *= 2;
+            }
+            opts.inJustDecodeBounds = false;
+            opts.inSampleSize = sampleSize;
+            Bitmap b = BitmapFactory.decodeFile(path, opts);
+            if (b != null && reqWidth > 0 && reqHeight > 0 &&
+                    (b.getWidth() > reqWidth || b.getHeight() > reqHeight)) {
+                float scale = Math.min((float) reqWidth / b.getWidth(),
+                        (float) reqHeight / b.getHeight());
+                Bitmap scaled = Bitmap.createScaledBitmap(b,
+                        Math.max(1, Math.round(b.getWidth() * scale)),
+                        Math.max(1, Math.round(b.getHeight() * scale)), true);
+                if (scaled != b) {
+                    b.recycle();
+                }
+                b = scaled;
+            }
+            return b;
+        } catch (Throwable t) {
+            GravityBox.log(TAG, "Error decoding custom key image:", t);
+            return null;
         }
     }
 
@@ -17,6 +17,7 @@
  */
 package com.ceco.r.gravitybox;
 
+import java.lang.reflect.Proxy;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -27,11 +28,15 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.database.ContentObserver;
 import android.graphics.PixelFormat;
+import android.graphics.Point;
 import android.inputmethodservice.InputMethodService;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.provider.Settings;
 import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.InputEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -41,6 +46,7 @@ import com.ceco.r.gravitybox.managers.BroadcastMediator;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
 import com.ceco.r.gravitybox.pie.PieController;
 import com.ceco.r.gravitybox.pie.PieLayout;
+import com.ceco.r.gravitybox.pie.PieTriggerGeometry;
 import com.ceco.r.gravitybox.pie.PieController.Position;
 
 import de.robv.android.xposed.XC_MethodHook;
@@ -57,6 +63,12 @@ public class ModPieControls {
     private static final String CLASS_SYSTEM_UI = "com.android.systemui.SystemUI";
     private static final String CLASS_STATUSBAR = "com.android.systemui.statusbar.phone.StatusBar";
     private static final String CLASS_NAVBAR_FRAGMENT = "com.android.systemui.statusbar.phone.NavigationBarFragment";
+    private static final String CLASS_INPUT_MONITOR = "com.android.systemui.shared.system.InputMonitorCompat";
+    private static final String CLASS_INPUT_EVENT_LISTENER =
+            "com.android.systemui.shared.system.InputChannelCompat.InputEventListener";
+
+    // pie window is released when not activated for this long
+    private static final long PIE_IDLE_TIMEOUT = 30000;
 
     public static final int STATUS_BAR_DISABLE_HOME = 0x00200000;
     public static final int STATUS_BAR_DISABLE_SEARCH = 0x02000000;
@@ -71,7 +83,16 @@ public class ModPieControls {
     private static PieController mPieController;
     private static PieLayout mPieContainer;
     private static int mPieTriggerSlots;
-    private static View[] mPieTrigger = new View[PieController.Position.values().length];
+    private static PieTriggerGeometry mTriggerGeometry = new PieTriggerGeometry();
+    private static PieController.Tracker[] mTrackers = new PieController.Tracker[PieTriggerGeometry.COUNT];
+    private static PieController.Tracker mActiveTracker;
+    private static Object mInputMonitor;
+    private static Object mInputReceiver;
+    private static final Point mTmpSize = new Point();
+    // non-touchable trigger indicators shown only when requested
+    private static View[] mPieTrigind = new View[PieController.Position.values().length];
+    private static ClassLoader mClassLoader;
+    private static Handler mHandler;
     private static Context mContext;
     private static Context mGbContext;
     private static WindowManager mWindowManager;
@@ -222,75 +243,119 @@ public class ModPieControls {
         return tslots;
     }
 
-    private static View.OnTouchListener mPieTriggerOnTouchHandler = new View.OnTouchListener() {
-        @Override
-        public boolean onTouch(View v, MotionEvent event) {
-            final int action = event.getAction();
-            final PieController.Tracker tracker = (PieController.Tracker)v.getTag();
-
-            if (tracker == null) {
-                if (DEBUG_INPUT) {
-                    log("Pie trigger onTouch: action: " + action + ", ("
-                            + event.getAxisValue(MotionEvent.AXIS_X) + ","
-                            + event.getAxisValue(MotionEvent.AXIS_Y) + ") position: NULL returning: false");
-                }
-                return false;
+    private static void onInputEvent(InputEvent ev) {
+        if (!(ev instanceof MotionEvent) || mPieController == null) return;
+        final MotionEvent event = (MotionEvent) ev;
+        final int action = event.getActionMasked();
+
+        if (mPieController.isShowing()) {
+            if (DEBUG_INPUT) {
+                log("Pie input: action: " + action + ", (" + event.getRawX() + ","
+                        + event.getRawY() + ") delegating");
             }
+            mPieContainer.onTouch(mPieContainer, event);
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                scheduleReleasePie();
+            }
+            return;
+        }
 
-            if (!mPieController.isShowing()) {
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+                mActiveTracker = null;
+                final int index = mTriggerGeometry.findTrigger(event.getRawX(), event.getRawY());
+                if (index != PieTriggerGeometry.NONE) {
+                    mActiveTracker = mTrackers[index];
+                    mActiveTracker.start(event);
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mActiveTracker == null) break;
                 if (event.getPointerCount() > 1) {
-                    if (DEBUG_INPUT) {
-                        log("Pie trigger onTouch: action: " + action
-                                + ", (to many pointers) position: " + tracker.position.name()
-                                + " returning: false");
-                    }
-                    return false;
+                    mActiveTracker.active = false;
+                    mActiveTracker = null;
+                } else if (mActiveTracker.move(event)) {
+                    activatePie(event, mActiveTracker.position);
+                    mActiveTracker = null;
                 }
-
-                switch (action) {
-                    case MotionEvent.ACTION_DOWN:
-                        tracker.start(event);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        if (tracker.move(event)) {
-                            if (DEBUG) {
-                                log("Pie control activated on: ("
-                                        + event.getAxisValue(MotionEvent.AXIS_X) + ","
-                                        + event.getAxisValue(MotionEvent.AXIS_Y) + ") with position: "
-                                        + tracker.position.name());
-                            }
-                            // send the activation to the controller
-                            mPieController.activateFromTrigger(v, event, tracker.position);
-                            // forward a spoofed ACTION_DOWN event
-                            MotionEvent echo = (MotionEvent) XposedHelpers.callMethod(event, "copy");
-                            echo.setAction(MotionEvent.ACTION_DOWN);
-                            return mPieContainer.onTouch(v, echo);
-                        }
-                        break;
-                    default:
-                        // whatever it was, we are giving up on this one
-                        tracker.active = false;
-                        break;
+                break;
+            default:
+                // whatever it was, we are giving up on this one
+                if (mActiveTracker != null) {
+                    mActiveTracker.active = false;
+                    mActiveTracker = null;
                 }
-            } else {
-                if (DEBUG_INPUT) {
-                    log("Pie trigger onTouch: action: " + action + ", ("
-                            + event.getAxisValue(MotionEvent.AXIS_X) + ","
-                            + event.getAxisValue(MotionEvent.AXIS_Y)
-                            + ") position: " + tracker.position.name() + " delegating");
+                if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                    scheduleReleasePie();
                 }
-                return mPieContainer.onTouch(v, event);
-            }
-            if (DEBUG_INPUT) {
-                log("Pie trigger onTouch: action: " + action + ", ("
-                        + event.getAxisValue(MotionEvent.AXIS_X) + ","
-                        + event.getAxisValue(MotionEvent.AXIS_Y) + ") position: "
-                        + tracker.position.name() + " returning: " + tracker.active);
-            }
-            return tracker.active;
+                break;
         }
+    }
 
-    };
+    private static void activatePie(MotionEvent event, Position position) {
+        if (DEBUG) {
+            log("Pie control activated on: (" + event.getRawX() + ","
+                    + event.getRawY() + ") with position: " + position.name());
+        }
+        mHandler.removeCallbacks(mReleasePieRunnable);
+        ensurePieContainer();
+        // steal the gesture from windows below
+        try {
+            XposedHelpers.callMethod(mInputMonitor, "pilferPointers");
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+        mPieController.activateFromTrigger(mPieContainer, event, position);
+        // forward a spoofed ACTION_DOWN event
+        MotionEvent echo = MotionEvent.obtain(event);
+        echo.setAction(MotionEvent.ACTION_DOWN);
+        mPieContainer.onTouch(mPieContainer, echo);
+        echo.recycle();
+    }
+
+    private static void ensurePieContainer() {
+        if (mPieContainer != null) return;
+
+        mPieContainer = new PieLayout(mContext, mGbContext, mPieTriggerSlots, mPieSize);
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.TYPE_KEYGUARD_DIALOG,
+                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+                | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                | WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON
+                | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED,
+                PixelFormat.TRANSLUCENT);
+        // This title is for debugging only. See: dumpsys window
+        lp.setTitle("PieControlPanel");
+        lp.windowAnimations = android.R.style.Animation;
+        lp.screenOrientation = ActivityInfo.SCREEN_ORIENTATION_BEHIND;
+
+        mWindowManager.addView(mPieContainer, lp);
+        mPieController.attachTo(mPieContainer);
+        if (DEBUG) log("Pie container created");
+    }
+
+    private static void scheduleReleasePie() {
+        if (mPieContainer == null) return;
+        mHandler.removeCallbacks(mReleasePieRunnable);
+        mHandler.postDelayed(mReleasePieRunnable, PIE_IDLE_TIMEOUT);
+    }
+
+    private static final Runnable mReleasePieRunnable = ModPieControls::releasePie;
+
+    private static void releasePie() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mReleasePieRunnable);
+        }
+        if (mPieContainer == null || mPieController.isShowing()) return;
+
+        mPieController.detach();
+        mWindowManager.removeView(mPieContainer);
+        mPieContainer = null;
+        if (DEBUG) log("Pie container released");
+    }
 
     public static void init(final XSharedPreferences prefs, final ClassLoader classLoader) {
         try {
@@ -313,6 +378,7 @@ public class ModPieControls {
             mCenterTrigger = prefs.getBoolean(GravityBoxSettings.PREF_KEY_PIE_CENTER_TRIGGER, false);
             mTrigindEnabled = prefs.getBoolean(GravityBoxSettings.PREF_KEY_PIE_TRIGIND, false);
 
+            mClassLoader = classLoader;
             mExpandedDesktopMode = GravityBoxSettings.ED_DISABLED;
             try {
                 mExpandedDesktopMode = Integer.valueOf(prefs.getString(
@@ -328,7 +394,11 @@ public class ModPieControls {
                     mContext = (Context) XposedHelpers.getObjectField(param.thisObject, "mContext");
                     mGbContext = Utils.getGbContext(mContext);
                     mWindowManager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+                    mHandler = new Handler();
                     mPieController = new PieController(mContext, mGbContext, prefs);
+                    for (Position g : Position.values()) {
+                        mTrackers[g.INDEX] = mPieController.buildTracker(g);
+                    }
 
                     int customKeyMode = GravityBoxSettings.PIE_CUSTOM_KEY_OFF;
                     try {
@@ -458,116 +528,126 @@ public class ModPieControls {
 
     private static void attachPie() {
         if (isPieEnabled(mContext, mPieMode, mExpandedDesktopMode)) {
-
-            // Create our container, if it does not exist already
-            if (mPieContainer == null) {
-                mPieContainer = new PieLayout(mContext, mGbContext, mPieTriggerSlots, mPieSize);
-                WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
-                        ViewGroup.LayoutParams.MATCH_PARENT,
-                        ViewGroup.LayoutParams.MATCH_PARENT,
-                        WindowManager.LayoutParams.TYPE_KEYGUARD_DIALOG,
-                        WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
-                        | WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL
-                        | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
-                        | WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON
-                        | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED,
-                        PixelFormat.TRANSLUCENT);
-                // This title is for debugging only. See: dumpsys window
-                lp.setTitle("PieControlPanel");
-                lp.windowAnimations = android.R.style.Animation;
-                lp.screenOrientation = ActivityInfo.SCREEN_ORIENTATION_BEHIND;
-
-                mWindowManager.addView(mPieContainer, lp);
-                mPieController.attachTo(mPieContainer);
-            }
-
             // add or update pie triggers
             if (DEBUG) log("AttachPie with trigger position flags: " + mPieTriggerSlots);
 
-            refreshPieTriggers();
-
+            updateTriggerGeometry();
+            setInputMonitorEnabled(!mTriggerGeometry.isEmpty());
+            refreshTriggerIndicators();
         } else {
-            for (int i = 0; i < mPieTrigger.length; i++) {
-                if (mPieTrigger[i] != null) {
-                    mWindowManager.removeView(mPieTrigger[i]);
-                    mPieTrigger[i] = null;
+            setInputMonitorEnabled(false);
+            for (int i = 0; i < mPieTrigind.length; i++) {
+                if (mPieTrigind[i] != null) {
+                    mWindowManager.removeView(mPieTrigind[i]);
+                    mPieTrigind[i] = null;
                 }
             }
+            releasePie();
         }
     }
 
-    private static void refreshPieTriggers() {
-        for (Position g : Position.values()) {
-            View trigger = mPieTrigger[g.INDEX];
-            if (trigger == null && (mPieTriggerSlots & g.FLAG) != 0) {
-                trigger = new View(mContext);
-                trigger.setClickable(false);
-                trigger.setLongClickable(false);
-                trigger.setTag(mPieController.buildTracker(g));
-                trigger.setOnTouchListener(mPieTriggerOnTouchHandler);
-
-                if (DEBUG) log("addPieTrigger on " + g.INDEX
-                        + " with position: " + g + " : " + trigger.toString());
-                mWindowManager.addView(trigger, getPieTriggerLayoutParams(g));
-                mPieTrigger[g.INDEX] = trigger;
-                updateTriggerIndicator(trigger);
-            } else if (trigger != null && (mPieTriggerSlots & g.FLAG) == 0) {
-                mWindowManager.removeView(trigger);
-                mPieTrigger[g.INDEX] = null;
-            } else if (trigger != null) {
-                mWindowManager.updateViewLayout(trigger, getPieTriggerLayoutParams(g));
-                updateTriggerIndicator(trigger);
+    private static void updateTriggerGeometry() {
+        final Resources res = mContext.getResources();
+        mWindowManager.getDefaultDisplay().getRealSize(mTmpSize);
+        mTriggerGeometry.update(mPieTriggerSlots, mTmpSize.x, mTmpSize.y,
+                (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                        mPieTriggerSize, res.getDisplayMetrics()),
+                mCenterTrigger,
+                (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                        60, res.getDisplayMetrics()));
+    }
+
+    private static void setInputMonitorEnabled(boolean enabled) {
+        if (enabled == (mInputMonitor != null)) return;
+
+        try {
+            if (enabled) {
+                mInputMonitor = XposedHelpers.newInstance(
+                        XposedHelpers.findClass(CLASS_INPUT_MONITOR, mClassLoader),
+                        "gb-pie-controls", mContext.getDisplayId());
+                Class<?> listenerClass = XposedHelpers.findClass(CLASS_INPUT_EVENT_LISTENER, mClassLoader);
+                Object listener = Proxy.newProxyInstance(mClassLoader, new Class<?>[] { listenerClass },
+                        (proxy, method, args) -> {
+                            switch (method.getName()) {
+                                case "onInputEvent":
+                                    onInputEvent((InputEvent) args[0]);
+                                    return null;
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                case "toString":
+                                    return "PieInputEventListener";
+                                default:
+                                    return null;
+                            }
+                        });
+                mInputReceiver = XposedHelpers.callMethod(mInputMonitor, "getInputReceiver",
+                        Looper.getMainLooper(), Choreographer.getInstance(), listener);
+                if (DEBUG) log("Input monitor registered");
+            } else {
+                if (mInputReceiver != null) {
+                    XposedHelpers.callMethod(mInputReceiver, "dispose");
+                }
+                XposedHelpers.callMethod(mInputMonitor, "dispose");
+                if (DEBUG) log("Input monitor disposed");
             }
+        } catch (Throwable t) {
+            GravityBox.log(TAG, "Error setting up pie input monitor:", t);
+            enabled = false;
         }
-    }
 
-    private static void updateTriggerIndicator(View trigger) {
-        if (mCenterTrigger && mTrigindEnabled) {
-            trigger.setBackgroundColor(mTrigindColor);
-        } else {
-            trigger.setBackgroundColor(0);
+        if (!enabled) {
+            mInputMonitor = null;
+            mInputReceiver = null;
+            mActiveTracker = null;
         }
     }
 
-    private static WindowManager.LayoutParams getPieTriggerLayoutParams(Position position) {
-        final Resources res = mContext.getResources();
-
-        int triggerLength = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 60, 
-                res.getDisplayMetrics());
-        int width = mCenterTrigger ? triggerLength : (int) (res.getDisplayMetrics().widthPixels * 0.8f);
-        int height = mCenterTrigger ? triggerLength : (int) (res.getDisplayMetrics().heightPixels * 0.8f);
+    private static void refreshTriggerIndicators() {
+        final boolean visible = mCenterTrigger && mTrigindEnabled;
+        for (Position g : Position.values()) {
+            View trigind = mPieTrigind[g.INDEX];
+            if (trigind == null && visible && mTriggerGeometry.isEnabled(g.INDEX)) {
+                trigind = new View(mContext);
+                trigind.setBackgroundColor(mTrigindColor);
+                if (DEBUG) log("addPieTriggerIndicator on " + g.INDEX + " with position: " + g);
+                mWindowManager.addView(trigind, getPieTrigindLayoutParams(g));
+                mPieTrigind[g.INDEX] = trigind;
+            } else if (trigind != null && (!visible || !mTriggerGeometry.isEnabled(g.INDEX))) {
+                mWindowManager.removeView(trigind);
+                mPieTrigind[g.INDEX] = null;
+            } else if (trigind != null) {
+                trigind.setBackgroundColor(mTrigindColor);
+                mWindowManager.updateViewLayout(trigind, getPieTrigindLayoutParams(g));
+            }
+        }
+    }
 
-        int triggerThickness = (int) TypedValue.applyDimension(
-                TypedValue.COMPLEX_UNIT_DIP, mPieTriggerSize, 
-                        res.getDisplayMetrics());
-        if (DEBUG) log("Pie trigger thickness: " + triggerThickness);
+    private static WindowManager.LayoutParams getPieTrigindLayoutParams(Position position) {
+        final int length = mTriggerGeometry.getLength(position.INDEX);
+        final int thickness = mTriggerGeometry.getThickness();
         WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
                 (position == Position.TOP || position == Position.BOTTOM
-                        ? width : triggerThickness),
+                        ? length : thickness),
                 (position == Position.LEFT || position == Position.RIGHT
-                        ? height : triggerThickness),
+                        ? length : thickness),
                 WindowManager.LayoutParams.TYPE_KEYGUARD_DIALOG,
-                WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL
-                        | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
-                        | WindowManager.LayoutParams.FLAG_SPLIT_TOUCH
-                        /* | WindowManager.LayoutParams.FLAG_ALT_FOCUSABLE_IM */,
+                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                        | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+                        | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE,
                 PixelFormat.TRANSLUCENT);
         // This title is for debugging only. See: dumpsys window
         lp.setTitle("PieTrigger" + position.name());
-        if (position == Position.LEFT || position == Position.RIGHT) {
-            lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_STATE_UNCHANGED
-                    | WindowManager.LayoutParams.SOFT_INPUT_ADJUST_RESIZE;
-        } else {
-            lp.softInputMode = WindowManager.LayoutParams.SOFT_INPUT_STATE_UNCHANGED
-                    | WindowManager.LayoutParams.SOFT_INPUT_ADJUST_NOTHING;
-        }
         lp.gravity = position.ANDROID_GRAVITY;
         return lp;
     }
 
     public static void onPieSnapped(int positionFlagOrig, int positionFlagNew) {
         mPieTriggerSlots = mPieTriggerSlots & ~positionFlagOrig | positionFlagNew;
-        mPieContainer.setTriggerSlots(mPieTriggerSlots);
+        if (mPieContainer != null) {
+            mPieContainer.setTriggerSlots(mPieTriggerSlots);
+        }
         attachPie();
     }
 }
\ No newline at end of file
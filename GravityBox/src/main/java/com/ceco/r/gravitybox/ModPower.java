@@ -30,9 +30,10 @@ import android.hardware.SensorManager;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
-import android.os.Message;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
+import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import de.robv.android.xposed.XC_MethodHook;
 import de.robv.android.xposed.XC_MethodReplacement;
@@ -43,24 +44,28 @@ import de.robv.android.xposed.XposedHelpers;
 public class ModPower {
     private static final String TAG = "GB:ModPower";
     private static final String CLASS_PM_SERVICE = "com.android.server.power.PowerManagerService";
-    private static final String CLASS_PM_HANDLER = "com.android.server.power.PowerManagerService$PowerManagerHandlerCallback";
     private static final String CLASS_PM_NOTIFIER = "com.android.server.power.Notifier";
     private static final String CLASS_SHUTDOWN_THREAD = "com.android.server.power.ShutdownThread";
     private static final boolean DEBUG = false;
 
-    private static final int MSG_WAKE_UP = 100;
-    private static final int MSG_UNREGISTER_PROX_SENSOR_LISTENER = 101;
     public static final int MAX_PROXIMITY_WAIT = 500;
     private static final int MAX_PROXIMITY_TTL = MAX_PROXIMITY_WAIT * 2;
 
+    // PowerManager wake reasons
+    private static final int WAKE_REASON_PLUGGED_IN = 3;
+    private static final int WAKE_REASON_CAMERA_LAUNCH = 5;
+    private static final int WAKE_REASON_HDMI = 8;
+    private static final int WAKE_REASON_LID = 9;
+
     private static Context mContext;
     private static Handler mHandler;
     private static SensorManager mSensorManager;
     private static Sensor mProxSensor;
-    private static Object mLock;
-    private static Runnable mWakeUpRunnable;
-    private static boolean mProxSensorCovered;
+    private static ProximityWakeGate mProximityGate;
     private static WakeLock mWakeLock;
+    private static TelephonyManager mTelephonyManager;
+    private static PhoneStateListener mPhoneStateListener;
+    private static volatile boolean mCallRinging;
     private static boolean mIgnoreIncomingCall;
     private static boolean mIsChargingSoundCustom;
     private static boolean mMotoHooksCreated;
@@ -81,6 +86,7 @@ public class ModPower {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_POWER_PROXIMITY_WAKE_IGNORE_CALL)) {
                 mIgnoreIncomingCall = intent.getBooleanExtra(
                         GravityBoxSettings.EXTRA_POWER_PROXIMITY_WAKE_IGNORE_CALL, false);
+                updateCallStateListener();
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_POWER_ADVANCED)) {
                 mAdvancedPowerMenuEnabled = intent.getBooleanExtra(
@@ -114,8 +120,6 @@ public class ModPower {
 
         // wake up with proximity feature
         try {
-            Class<?> pmHandlerClass = XposedHelpers.findClass(CLASS_PM_HANDLER, classLoader);
-
             mIgnoreIncomingCall = prefs.getBoolean(
                     GravityBoxSettings.PREF_KEY_POWER_PROXIMITY_WAKE_IGNORE_CALL, false);
             mLockscreenTorch = Integer.valueOf(
@@ -126,7 +130,6 @@ public class ModPower {
                 protected void afterHookedMethod(MethodHookParam param) {
                     mContext = (Context) XposedHelpers.getObjectField(param.thisObject, "mContext");
                     mHandler = (Handler) XposedHelpers.getObjectField(param.thisObject, "mHandler");
-                    mLock = XposedHelpers.getObjectField(param.thisObject, "mLock");
                     toggleWakeUpWithProximityFeature(prefs.getBoolean(
                             GravityBoxSettings.PREF_KEY_POWER_PROXIMITY_WAKE, false));
 
@@ -148,43 +151,14 @@ public class ModPower {
                     if (!shouldRunProximityCheck())
                         return;
 
-                    //noinspection SynchronizeOnNonFinalField
-                    synchronized (mLock) {
-                        if (mHandler.hasMessages(MSG_WAKE_UP)) {
-                            if (DEBUG) log("wakeUpInternal: Wake up message already queued");
-                            param.setResult(null);
-                            return;
-                        }
-
-                        mWakeUpRunnable = () -> {
-                            final long ident = Binder.clearCallingIdentity();
-                            try {
-                                if (DEBUG) log("Waking up...");
-                                XposedBridge.invokeOriginalMethod(param.method, param.thisObject, param.args);
-                            } catch (Throwable ignored) {
-                            } finally {
-                                Binder.restoreCallingIdentity(ident);
-                            }
-                        };
-                        runWithProximityCheck();
+                    final int reason = (int) param.args[1];
+                    final int decision = mProximityGate.onWakeRequest(reason);
+                    if (DEBUG) log("wakeUpInternal: reason=" + reason + "; decision=" + decision);
+                    if (decision == ProximityWakeGate.DECISION_BLOCK) {
                         param.setResult(null);
                     }
                 }
             });
-
-            XposedHelpers.findAndHookMethod(pmHandlerClass, "handleMessage",
-                    Message.class, new XC_MethodHook() {
-                @Override
-                protected void beforeHookedMethod(final MethodHookParam param) {
-                    Message msg = (Message) param.args[0];
-                    if (msg.what == MSG_WAKE_UP) {
-                        mWakeUpRunnable.run();
-                        unregisterProxSensorListener();
-                    } else if (msg.what == MSG_UNREGISTER_PROX_SENSOR_LISTENER) {
-                        unregisterProxSensorListener();
-                    }
-                }
-            });
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
         }
@@ -266,79 +240,121 @@ public class ModPower {
                 mProxSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_PROXIMITY);
                 mWakeLock = ((PowerManager) mContext.getSystemService(Context.POWER_SERVICE))
                         .newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+                if (mProximityGate == null) {
+                    mProximityGate = createProximityGate();
+                }
             } else {
-                unregisterProxSensorListener();
+                if (mProximityGate != null) {
+                    mProximityGate.reset();
+                }
                 mProxSensor = null;
                 mSensorManager = null;
                 mWakeLock = null;
             }
+            updateCallStateListener();
             if (DEBUG) log("toggleWakeUpWithProximityFeature: " + enabled);
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
         }
     }
 
+    private static ProximityWakeGate createProximityGate() {
+        ProximityWakeGate gate = new ProximityWakeGate(new ProximityWakeGate.Scheduler() {
+            @Override
+            public void postDelayed(Runnable r, long delayMs) {
+                mHandler.postDelayed(r, delayMs);
+            }
+            @Override
+            public void removeCallbacks(Runnable r) {
+                mHandler.removeCallbacks(r);
+            }
+        }, new ProximityWakeGate.Callback() {
+            @Override
+            public void setSensorEnabled(boolean enabled) {
+                setProxSensorListenerEnabled(enabled);
+            }
+            @Override
+            public void onCoveredAfterWake() {
+                if (DEBUG) log("Proximity sensor covered after wake up; going back to sleep");
+                mHandler.post(ModPower::goToSleep);
+            }
+        });
+        gate.setVerifyTimeoutMs(MAX_PROXIMITY_WAIT);
+        gate.setSensorTtlMs(MAX_PROXIMITY_TTL);
+        gate.setTrustedReasons(WAKE_REASON_PLUGGED_IN, WAKE_REASON_CAMERA_LAUNCH,
+                WAKE_REASON_HDMI, WAKE_REASON_LID);
+        return gate;
+    }
+
     private static boolean shouldRunProximityCheck() {
-        return (mSensorManager != null && mProxSensor != null &&
-                !(mIgnoreIncomingCall && isIncomingCall()));
+        return (mProximityGate != null && mSensorManager != null && mProxSensor != null &&
+                !(mIgnoreIncomingCall && mCallRinging));
     }
 
-    private static boolean isIncomingCall() {
+    private static void updateCallStateListener() {
+        if (mContext == null) return;
         try {
-            TelephonyManager phone = (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
-            return (phone.getCallState() == TelephonyManager.CALL_STATE_RINGING);
+            final boolean listen = mIgnoreIncomingCall && mSensorManager != null;
+            if (listen && mPhoneStateListener == null) {
+                mTelephonyManager = (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
+                mPhoneStateListener = new PhoneStateListener(mHandler::post) {
+                    @Override
+                    public void onCallStateChanged(int state, String phoneNumber) {
+                        mCallRinging = (state == TelephonyManager.CALL_STATE_RINGING);
+                        if (DEBUG) log("onCallStateChanged: mCallRinging=" + mCallRinging);
+                    }
+                };
+                mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_CALL_STATE);
+            } else if (!listen && mPhoneStateListener != null) {
+                mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
+                mPhoneStateListener = null;
+                mCallRinging = false;
+            }
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
-            return false;
         }
     }
 
-    private static void runWithProximityCheck() {
-        if (mHandler.hasMessages(MSG_WAKE_UP)) {
-            if (DEBUG) log("runWithProximityCheck: Wake up message already queued");
-        } else if (mHandler.hasMessages(MSG_UNREGISTER_PROX_SENSOR_LISTENER)) {
-            mHandler.removeMessages(MSG_UNREGISTER_PROX_SENSOR_LISTENER);
-            mHandler.sendEmptyMessageDelayed(MSG_UNREGISTER_PROX_SENSOR_LISTENER, MAX_PROXIMITY_TTL);
-            if (DEBUG) log("Proximity sensor listener still alive; mProxSensorCovered=" + mProxSensorCovered);
-            if (!mProxSensorCovered) {
-                mWakeUpRunnable.run();
+    private static void setProxSensorListenerEnabled(boolean enabled) {
+        if (mSensorManager == null || mProxSensor == null) return;
+        // might be called from binder thread of wake up caller
+        final long ident = Binder.clearCallingIdentity();
+        try {
+            if (enabled) {
+                mSensorManager.registerListener(mProxSensorListener, mProxSensor,
+                        SensorManager.SENSOR_DELAY_FASTEST, mHandler);
+                // live reading must not be interrupted by suspend
+                mWakeLock.acquire();
+                if (DEBUG) log("Proximity sensor listener registered");
+            } else {
+                mSensorManager.unregisterListener(mProxSensorListener, mProxSensor);
+                if (mWakeLock != null && mWakeLock.isHeld()) {
+                    mWakeLock.release();
+                }
+                if (DEBUG) log("Proximity sensor listener unregistered");
             }
-        } else {
-            mHandler.sendEmptyMessageDelayed(MSG_WAKE_UP, MAX_PROXIMITY_WAIT);
-            mSensorManager.registerListener(mProxSensorListener, mProxSensor, 
-                    SensorManager.SENSOR_DELAY_FASTEST);
-            mWakeLock.acquire();
-            if (DEBUG) log("Proximity sensor listener resgistered");
+        } finally {
+            Binder.restoreCallingIdentity(ident);
         }
     }
 
-    private static void unregisterProxSensorListener() {
-        if (mSensorManager != null && mProxSensor != null) {
-            mSensorManager.unregisterListener(mProxSensorListener, mProxSensor);
-            if (DEBUG) log("Proximity sensor listener unregistered");
-        }
-        if (mWakeLock != null && mWakeLock.isHeld()) {
-            mWakeLock.release();
+    private static void goToSleep() {
+        try {
+            XposedHelpers.callMethod(mContext.getSystemService(Context.POWER_SERVICE),
+                    "goToSleep", SystemClock.uptimeMillis());
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
         }
     }
 
     private static SensorEventListener mProxSensorListener = new SensorEventListener() {
         @Override
         public void onSensorChanged(SensorEvent event) {
-            mProxSensorCovered = event.values[0] != mProxSensor.getMaximumRange();
-            if (DEBUG) log("onSensorChanged:  mProxSensorCovered=" + mProxSensorCovered);
-            if (!mHandler.hasMessages(MSG_UNREGISTER_PROX_SENSOR_LISTENER)) {
-                if (DEBUG) log("Proximity sensor listener was not alive; scheduling unreg");
-                mHandler.sendEmptyMessageDelayed(MSG_UNREGISTER_PROX_SENSOR_LISTENER, MAX_PROXIMITY_TTL);
-                if (!mHandler.hasMessages(MSG_WAKE_UP)) {
-                    if (DEBUG) log("Prox sensor status received too late. Wake up already triggered");
-                    return;
-                }
-                mHandler.removeMessages(MSG_WAKE_UP);
-                if (!mProxSensorCovered) {
-                    mWakeUpRunnable.run();
-                }
-            }
+            final Sensor sensor = mProxSensor;
+            if (sensor == null || mProximityGate == null) return;
+            final boolean covered = event.values[0] != sensor.getMaximumRange();
+            if (DEBUG) log("onSensorChanged: covered=" + covered);
+            mProximityGate.onProximityChanged(covered);
         }
         @Override
         public void onAccuracyChanged(Sensor sensor, int accuracy) {}
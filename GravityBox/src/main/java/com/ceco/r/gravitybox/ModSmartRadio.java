@@ -27,11 +27,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.Network;
-import android.net.NetworkInfo;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
 import android.net.TrafficStats;
 import android.os.Handler;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.telephony.TelephonyManager;
 import de.robv.android.xposed.XC_MethodHook;
@@ -39,6 +41,12 @@ import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
 public class ModSmartRadio {
     private static final String TAG = "GB:SmartRadio";
     public static final String PACKAGE_NAME = "com.android.systemui";
@@ -47,6 +55,9 @@ public class ModSmartRadio {
     public static final String SETTING_SMART_RADIO_ENABLED = "gb_smart_radio_enabled";
     public static final String SETTING_SMART_RADIO_STATE = "gb_smart_radio_state";
     public static final String ACTION_TOGGLE_SMART_RADIO = "gravitybox.intent.action.TOGGLE_SMART_RADIO";
+    public static final String ACTION_DUMP_SMART_RADIO_LOG = "gravitybox.intent.action.DUMP_SMART_RADIO_LOG";
+    private static final String ACTION_TETHER_STATE_CHANGED = "android.net.conn.TETHER_STATE_CHANGED";
+    private static final String EXTRA_ACTIVE_TETHER = "tetherArray";
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -70,6 +81,18 @@ public class ModSmartRadio {
     private static boolean mIgnoreMobileDataAvailability;
     private static boolean mIsPhoneIdle = true;
     private static int mAdaptiveDelayThreshold;
+    private static int mMinDwell;
+    private static Handler mHandler;
+    private static SmartRadioScheduler<State> mScheduler;
+    private static WakeLock mSchedulerWakeLock;
+
+    // connectivity snapshot maintained by network callbacks and tether broadcasts
+    private static final Set<Network> mMobileNetworks = new HashSet<>();
+    private static final Set<Network> mWifiNetworks = new HashSet<>();
+    private static String[] mTetheredIfaces;
+    private static Pattern[] mWifiTetherPatterns;
+    private static Pattern[] mUsbTetherPatterns;
+    private static Pattern[] mBtTetherPatterns;
 
     private static BroadcastMediator.Receiver mBroadcastReceiver = (context, intent) -> {
         if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_SMART_RADIO_CHANGED)) {
@@ -93,8 +116,14 @@ public class ModSmartRadio {
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_MODE_CHANGE_DELAY)) {
                 mModeChangeDelay = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_MODE_CHANGE_DELAY, 5);
+                mScheduler.setHysteresisMs(mModeChangeDelay * 1000L);
                 if (DEBUG) log("mModeChangeDelay = " + mModeChangeDelay);
             }
+            if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_MIN_DWELL)) {
+                mMinDwell = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_MIN_DWELL, 10);
+                mScheduler.setMinDwellMs(mMinDwell * 1000L);
+                if (DEBUG) log("mMinDwell = " + mMinDwell);
+            }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_SR_SCREEN_OFF_DELAY)) {
                 mScreenOffDelay = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_SCREEN_OFF_DELAY, 0);
                 if (DEBUG) log("mScreenOffDelay = " + mScreenOffDelay);
@@ -107,131 +136,159 @@ public class ModSmartRadio {
                 mAdaptiveDelayThreshold = intent.getIntExtra(GravityBoxSettings.EXTRA_SR_ADAPTIVE_DELAY, 0);
                 if (DEBUG) log("mAdaptiveDelay = " + mAdaptiveDelayThreshold);
             }
-        } else if (intent.getAction().equals(ConnectivityManager.CONNECTIVITY_ACTION)) {
-            int nwType = intent.getIntExtra(ConnectivityManager.EXTRA_NETWORK_TYPE, -1);
-            if (DEBUG) log("Received CONNECTIVITY_ACTION broadcast; networkType=" + nwType);
-            if (nwType == ConnectivityManager.TYPE_WIFI ||
-                    nwType == ConnectivityManager.TYPE_MOBILE) {
-                if (shouldSwitchToNormalState()) {
-                    switchToState(State.NORMAL);
-                } else {
-                    switchToState(State.POWER_SAVING);
-                }
+        } else if (intent.getAction().equals(ACTION_TETHER_STATE_CHANGED)) {
+            ArrayList<String> active = intent.getStringArrayListExtra(EXTRA_ACTIVE_TETHER);
+            String[] tetheredIfaces = active == null ? new String[0] : active.toArray(new String[0]);
+            final boolean changed = mTetheredIfaces != null &&
+                    !Arrays.equals(mTetheredIfaces, tetheredIfaces);
+            mTetheredIfaces = tetheredIfaces;
+            if (DEBUG) log("ACTION_TETHER_STATE_CHANGED: tethered ifaces=" + mTetheredIfaces.length);
+            if (changed && mPowerSaveWhenScreenOff) {
+                evaluateState("tethering changed");
             }
         } else if (intent.getAction().equals(Intent.ACTION_SCREEN_OFF)) {
             if (DEBUG) log("Screen turning off");
             mIsScreenOff = true;
             if (mPowerSaveWhenScreenOff && !isTetheringViaMobileNetwork()) {
-                switchToState(State.POWER_SAVING, true);
+                // alarm applies screen off delay so hysteresis is not added on top
+                switchToState(State.POWER_SAVING, true, mScreenOffDelay != 0, "screen off");
             }
         } else if (intent.getAction().equals(Intent.ACTION_SCREEN_ON)) {
             if (DEBUG) log("Screen turning on");
             mIsScreenOff = false;
             if (shouldSwitchToNormalState()) {
-                switchToState(State.NORMAL);
+                switchToState(State.NORMAL, "screen on");
             }
         } else if (intent.getAction().equals(Intent.ACTION_USER_PRESENT)) {
             if (DEBUG) log("Keyguard unlocked");
             if (shouldSwitchToNormalState()) {
-                switchToState(State.NORMAL);
+                switchToState(State.NORMAL, "user present");
             }
         } else if (intent.getAction().equals(ACTION_TOGGLE_SMART_RADIO)) {
             changeSmartRadioState(intent);
+        } else if (intent.getAction().equals(ACTION_DUMP_SMART_RADIO_LOG)) {
+            log("Decision log:\n" + mScheduler.dump());
         } else if (intent.getAction().equals(TelephonyManager.ACTION_PHONE_STATE_CHANGED)) {
             final boolean wasPhoneBusy = !mIsPhoneIdle;
             mIsPhoneIdle = TelephonyManager.EXTRA_STATE_IDLE.equals(
                     intent.getStringExtra(TelephonyManager.EXTRA_STATE));
             if (DEBUG) log("ACTION_PHONE_STATE_CHANGED: mIsPhoneIdle=" + mIsPhoneIdle);
             if (wasPhoneBusy && mIsPhoneIdle) {
-                if (shouldSwitchToNormalState()) {
-                    switchToState(State.NORMAL);
-                } else {
-                    switchToState(State.POWER_SAVING);
-                }
+                evaluateState("phone idle");
             }
         }
     };
 
-    private static boolean isMobileDataEnabled() {
-        try {
-            return (Boolean) XposedHelpers.callMethod(mConnManager, "getMobileDataEnabled");
-        } catch (Throwable t) {
-            return false;
+    private static class NetworkTracker extends ConnectivityManager.NetworkCallback {
+        private final Set<Network> mNetworks;
+        private final String mName;
+
+        NetworkTracker(Set<Network> networks, String name) {
+            mNetworks = networks;
+            mName = name;
+        }
+
+        @Override
+        public void onAvailable(Network network) {
+            if (mNetworks.add(network)) {
+                if (DEBUG) log(mName + " network available: " + network);
+                evaluateState(mName + " available");
+            }
+        }
+
+        @Override
+        public void onLost(Network network) {
+            if (mNetworks.remove(network)) {
+                if (DEBUG) log(mName + " network lost: " + network);
+                evaluateState(mName + " lost");
+            }
         }
     }
 
     @SuppressLint("MissingPermission")
-    private static boolean isMobileNetworkAvailable() {
-        if (mIgnoreMobileDataAvailability) {
-            return true;
-        }
+    private static void registerNetworkCallbacks() {
+        mConnManager.registerNetworkCallback(new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_CELLULAR).build(),
+                new NetworkTracker(mMobileNetworks, "mobile"), mHandler);
+        mConnManager.registerNetworkCallback(new NetworkRequest.Builder()
+                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI).build(),
+                new NetworkTracker(mWifiNetworks, "wifi"), mHandler);
+    }
+
+    private static Pattern[] compileTetherRegexs(String methodName) {
         try {
-            Network[] networkInfos= mConnManager.getAllNetworks();
-            for (Network net : networkInfos) {
-                NetworkInfo netInfo = mConnManager.getNetworkInfo(net);
-                if (netInfo.getType() == ConnectivityManager.TYPE_MOBILE &&
-                        netInfo.isAvailable()) {
-                    if (DEBUG) log("isMobileNetworkAvailable: true");
-                    return true;
-                }
+            String[] regexs = (String[]) XposedHelpers.callMethod(mConnManager, methodName);
+            Pattern[] patterns = new Pattern[regexs.length];
+            for (int i = 0; i < regexs.length; i++) {
+                patterns[i] = Pattern.compile(regexs[i]);
             }
-            if (DEBUG) log("isMobileNetworkAvailable: false");
-            return false;
+            return patterns;
         } catch (Throwable t) {
-            GravityBox.log(TAG, t);
-            return false;
+            GravityBox.log(TAG, "compileTetherRegexs: " + methodName + ": ", t);
+            return new Pattern[0];
         }
     }
 
-    @SuppressLint("MissingPermission")
-    private static boolean isWifiConnected() {
+    private static void initTetheringState() {
+        mWifiTetherPatterns = compileTetherRegexs("getTetherableWifiRegexs");
+        mUsbTetherPatterns = compileTetherRegexs("getTetherableUsbRegexs");
+        mBtTetherPatterns = compileTetherRegexs("getTetherableBluetoothRegexs");
         try {
-            Network[] networkInfos= mConnManager.getAllNetworks();
-            for (Network net : networkInfos) {
-                NetworkInfo netInfo = mConnManager.getNetworkInfo(net);
-                if (netInfo.getType() == ConnectivityManager.TYPE_WIFI &&
-                        netInfo.isConnected()) {
-                    if (DEBUG) log("isWifiConnected: true");
-                    return true;
-                }
+            mTetheredIfaces = (String[]) XposedHelpers.callMethod(mConnManager, "getTetheredIfaces");
+        } catch (Throwable t) {
+            GravityBox.log(TAG, "initTetheringState: ", t);
+            mTetheredIfaces = new String[0];
+        }
+    }
+
+    private static boolean matchesAny(String iface, Pattern[] patterns) {
+        for (Pattern p : patterns) {
+            if (p.matcher(iface).matches()) {
+                return true;
             }
-            if (DEBUG) log("isWifiConnected: false");
-            return false;
+        }
+        return false;
+    }
+
+    private static boolean isMobileDataEnabled() {
+        try {
+            return (Boolean) XposedHelpers.callMethod(mConnManager, "getMobileDataEnabled");
         } catch (Throwable t) {
-            GravityBox.log(TAG, t);
             return false;
         }
     }
 
+    private static boolean isMobileNetworkAvailable() {
+        if (mIgnoreMobileDataAvailability) {
+            return true;
+        }
+        if (DEBUG) log("isMobileNetworkAvailable: " + !mMobileNetworks.isEmpty());
+        return !mMobileNetworks.isEmpty();
+    }
+
+    private static boolean isWifiConnected() {
+        if (DEBUG) log("isWifiConnected: " + !mWifiNetworks.isEmpty());
+        return !mWifiNetworks.isEmpty();
+    }
+
     private static boolean isTetheringViaMobileNetwork() {
         try {
-            String[] wifiRegexs = (String[]) XposedHelpers.callMethod(mConnManager, "getTetherableWifiRegexs");
-            String[] usbRegexs = (String[]) XposedHelpers.callMethod(mConnManager, "getTetherableUsbRegexs");
-            String[] btRegexes = (String[]) XposedHelpers.callMethod(mConnManager, "getTetherableBluetoothRegexs");
-            String[] tetheredIfaces = (String[]) XposedHelpers.callMethod(mConnManager, "getTetheredIfaces");
-
-            for (String tiface : tetheredIfaces) {
+            for (String tiface : mTetheredIfaces) {
                 // if wifi tethering active it's obvious it goes via mobile network
-                for (String regex : wifiRegexs) {
-                    if (tiface.matches(regex)) {
-                        if (DEBUG) log("isTetheringViaMobileNetwork: WiFi tethering enabled");
-                        return true;
-                    }
+                if (matchesAny(tiface, mWifiTetherPatterns)) {
+                    if (DEBUG) log("isTetheringViaMobileNetwork: WiFi tethering enabled");
+                    return true;
                 }
 
                 // if not WiFi connected check for USB and BT tethering
                 if (!isWifiConnected()) {
-                    for (String regex : usbRegexs) {
-                        if (tiface.matches(regex)) {
-                            if (DEBUG) log("isTetheringViaMobileNetwork: USB tethering enabled and WiFi not connected");
-                            return true;
-                        }
+                    if (matchesAny(tiface, mUsbTetherPatterns)) {
+                        if (DEBUG) log("isTetheringViaMobileNetwork: USB tethering enabled and WiFi not connected");
+                        return true;
                     }
-                    for (String regex : btRegexes) {
-                        if (tiface.matches(regex)) {
-                            if (DEBUG) log("isTetheringViaMobileNetwork: BT tethering enabled and WiFi not connected");
-                            return true;
-                        }
+                    if (matchesAny(tiface, mBtTetherPatterns)) {
+                        if (DEBUG) log("isTetheringViaMobileNetwork: BT tethering enabled and WiFi not connected");
+                        return true;
                     }
                 }
             }
@@ -266,17 +323,26 @@ public class ModSmartRadio {
         return shouldSwitch;
     }
 
-    private static void switchToState(State newState) {
-        switchToState(newState, false);
+    private static void evaluateState(String reason) {
+        if (shouldSwitchToNormalState()) {
+            switchToState(State.NORMAL, reason);
+        } else {
+            switchToState(State.POWER_SAVING, reason);
+        }
+    }
+
+    private static void switchToState(State newState, String reason) {
+        switchToState(newState, false, reason);
+    }
+
+    private static void switchToState(State newState, boolean force, String reason) {
+        switchToState(newState, force, false, reason);
     }
 
-    private static void switchToState(State newState, boolean force) {
+    private static void switchToState(State newState, boolean force, boolean skipHysteresis, String reason) {
         if (!mSmartRadioEnabled) {
             if (DEBUG) log("switchToState: Smart Radio is disabled - ignoring");
             return;
-        } else if (mCurrentState == newState && !force) {
-            if (DEBUG) log("switchToState: new state == previous state - ignoring");
-            return;
         } else if (!mIsPhoneIdle) {
             if (DEBUG) log("switchToState: phone is not idle - ignoring");
             return;
@@ -284,11 +350,18 @@ public class ModSmartRadio {
             // force power saving state no matter what so we start with it when mobile network is available again
             if (DEBUG) log("switchToState: mobile network unavailable - resetting to POWER_SAVING state");
             newState = State.POWER_SAVING;
+            reason = "mobile network unavailable";
         } else if (DEBUG) {
-            log("Switching to state: " + newState);
+            log("Requesting state: " + newState + " (" + reason + ")");
         }
 
+        // scheduler decides when (and whether) requested state actually gets applied
+        mScheduler.request(newState, force, skipHysteresis, reason);
+    }
+
+    private static final SmartRadioScheduler.Listener<State> mSchedulerListener = (newState, reason) -> {
         try {
+            if (DEBUG) log("Switching to state: " + newState + " (" + reason + ")");
             int networkMode = -1;
             switch (newState) {
                 case NORMAL: networkMode = mNormalMode; break;
@@ -301,6 +374,37 @@ public class ModSmartRadio {
             mNetworkModeChanger.changeNetworkMode(networkMode);
         } catch (Throwable t) {
             GravityBox.log(TAG, "switchToState: ", t);
+        } finally {
+            releaseSchedulerWakeLockIfHeld();
+        }
+    };
+
+    private static final SmartRadioScheduler.Timer mSchedulerTimer = new SmartRadioScheduler.Timer() {
+        @Override
+        public long now() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void postDelayed(Runnable r, long delayMs) {
+            if (mIsScreenOff) {
+                mSchedulerWakeLock.acquire(delayMs + 1000);
+                if (DEBUG) log("Scheduler: Wake Lock acquired");
+            }
+            mHandler.postDelayed(r, delayMs);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable r) {
+            mHandler.removeCallbacks(r);
+            releaseSchedulerWakeLockIfHeld();
+        }
+    };
+
+    private static void releaseSchedulerWakeLockIfHeld() {
+        if (mSchedulerWakeLock != null && mSchedulerWakeLock.isHeld()) {
+            mSchedulerWakeLock.release();
+            if (DEBUG) log("Scheduler: Wake Lock released");
         }
     }
 
@@ -313,7 +417,7 @@ public class ModSmartRadio {
                 mPowerSavingMode = mode;
             }
             if (mCurrentState == state) {
-                switchToState(state, true);
+                switchToState(state, true, "mode value changed");
             }
         }
     }
@@ -328,11 +432,9 @@ public class ModSmartRadio {
             Settings.System.putInt(mContext.getContentResolver(),
                     SETTING_SMART_RADIO_ENABLED, mSmartRadioEnabled ? 1 : 0);
             if (mSmartRadioEnabled) {
-                if (shouldSwitchToNormalState()) {
-                    switchToState(State.NORMAL);
-                } else {
-                    switchToState(State.POWER_SAVING);
-                }
+                evaluateState("enabled");
+            } else {
+                mScheduler.cancel("disabled");
             }
             if (intent.getBooleanExtra(AShortcut.EXTRA_SHOW_TOAST, false)) {
                 Utils.postToast(mContext, mSmartRadioEnabled ? R.string.smart_radio_on :
@@ -351,7 +453,6 @@ public class ModSmartRadio {
         private Handler mHandler;
         private int mNextNetworkMode;
         private int mCurrentNetworkMode;
-        private WakeLock mWakeLock;
         private AlarmManager mAlarmManager;
         private PendingIntent mPendingIntent;
         private LinkActivity mLinkActivity;
@@ -370,9 +471,6 @@ public class ModSmartRadio {
             mAlarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
             mLinkActivity = new LinkActivity();
 
-            PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-            mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "GB:SmartRadio");
-
             SysUiManagers.BroadcastMediator.subscribe(this,
                     ACTION_CHANGE_MODE_ALARM,
                     PhoneWrapper.ACTION_NETWORK_TYPE_CHANGED);
@@ -381,7 +479,6 @@ public class ModSmartRadio {
         @Override
         public void run() {
             if (mContext == null || mNextNetworkMode == mCurrentNetworkMode) {
-                releaseWakeLockIfHeld();
                 return;
             }
 
@@ -389,12 +486,10 @@ public class ModSmartRadio {
             Intent intent = new Intent(PhoneWrapper.ACTION_CHANGE_NETWORK_TYPE);
             intent.putExtra(PhoneWrapper.EXTRA_NETWORK_TYPE, mNextNetworkMode);
             mContext.sendBroadcast(intent);
-            releaseWakeLockIfHeld();
         }
 
         public void changeNetworkMode(int networkMode) {
             mHandler.removeCallbacks(this);
-            releaseWakeLockIfHeld();
             cancelPendingAlarm();
             if (networkMode == -1) {
                 if (DEBUG) log("NetworkModeChanger: ignoring request to change to undefined mode (-1)");
@@ -406,23 +501,8 @@ public class ModSmartRadio {
                 if (DEBUG) log("NetworkModeChanger: scheduling alarm for switching to power saving mode");
                 scheduleAlarm();
             } else {
-                if (mModeChangeDelay == 0) {
-                    run();
-                } else {
-                    if (DEBUG) log("NetworkModeChanger: scheduling network mode change");
-                    if (mIsScreenOff) {
-                        mWakeLock.acquire(mModeChangeDelay*1000+1000);
-                        if (DEBUG) log("NetworkModeChanger: Wake Lock acquired");
-                    }
-                    mHandler.postDelayed(this, mModeChangeDelay*1000);
-                }
-            }
-        }
-
-        private void releaseWakeLockIfHeld() {
-            if (mWakeLock != null && mWakeLock.isHeld()) {
-                mWakeLock.release();
-                if (DEBUG) log("NetworkModeChanger: Wake Lock released");
+                // mode change delay is already applied by scheduler as hysteresis window
+                run();
             }
         }
 
@@ -493,6 +573,7 @@ public class ModSmartRadio {
             mScreenOffDelay = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_SCREEN_OFF_DELAY, 0);
             mIgnoreMobileDataAvailability = prefs.getBoolean(GravityBoxSettings.PREF_KEY_SMART_RADIO_MDA_IGNORE, false);
             mAdaptiveDelayThreshold = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_ADAPTIVE_DELAY, 0);
+            mMinDwell = prefs.getInt(GravityBoxSettings.PREF_KEY_SMART_RADIO_MIN_DWELL, 10);
 
             XposedHelpers.findAndHookMethod(classSystemUIService, "onCreate", new XC_MethodHook() {
                 @Override
@@ -505,18 +586,31 @@ public class ModSmartRadio {
                                 SETTING_SMART_RADIO_ENABLED, 1) == 1;
                         mConnManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
                         mKeyguardManager = (KeyguardManager) mContext.getSystemService(Context.KEYGUARD_SERVICE);
-                        mNetworkModeChanger = new NetworkModeChanger(mContext, new Handler());
+                        mHandler = new Handler();
+                        mNetworkModeChanger = new NetworkModeChanger(mContext, mHandler);
                         Settings.System.putString(mContext.getContentResolver(), 
                                 SETTING_SMART_RADIO_STATE, mCurrentState.toString());
 
+                        PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+                        mSchedulerWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "GB:SmartRadio");
+                        mSchedulerWakeLock.setReferenceCounted(false);
+                        mScheduler = new SmartRadioScheduler<>(mSchedulerTimer, mSchedulerListener);
+                        mScheduler.setHysteresisMs(mModeChangeDelay * 1000L);
+                        mScheduler.setMinDwellMs(mMinDwell * 1000L);
+
+                        initTetheringState();
                         SysUiManagers.BroadcastMediator.subscribe(mBroadcastReceiver,
                                 GravityBoxSettings.ACTION_PREF_SMART_RADIO_CHANGED,
-                                ConnectivityManager.CONNECTIVITY_ACTION,
+                                ACTION_TETHER_STATE_CHANGED,
                                 Intent.ACTION_SCREEN_ON,
                                 Intent.ACTION_SCREEN_OFF,
                                 Intent.ACTION_USER_PRESENT,
                                 ACTION_TOGGLE_SMART_RADIO,
+                                ACTION_DUMP_SMART_RADIO_LOG,
                                 TelephonyManager.ACTION_PHONE_STATE_CHANGED);
+                        // callbacks report currently connected networks right after registration
+                        registerNetworkCallbacks();
+                        mHandler.post(() -> evaluateState("init"));
                     }
                 }
             });
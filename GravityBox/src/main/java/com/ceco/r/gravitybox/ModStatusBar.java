@@ -14,6 +14,7 @@
  */
 package com.ceco.r.gravitybox;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -43,12 +44,16 @@ import android.hardware.display.DisplayManager;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.provider.Settings;
 import android.service.notification.StatusBarNotification;
 import android.service.notification.NotificationListenerService.RankingMap;
+import android.util.DisplayMetrics;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.GestureDetector;
 import android.view.Gravity;
 import android.view.HapticFeedbackConstants;
@@ -78,10 +83,6 @@ public class ModStatusBar {
     private static final boolean DEBUG = false;
     private static final boolean DEBUG_LAYOUT = false;
 
-    private static final float BRIGHTNESS_CONTROL_PADDING = 0.2f;
-    private static final int BRIGHTNESS_CONTROL_LONG_PRESS_TIMEOUT = 750; // ms
-    private static final int BRIGHTNESS_CONTROL_LINGER_THRESHOLD = 20;
-    private static final float BRIGHTNESS_ADJ_RESOLUTION = 100;
     private static final int STATUS_BAR_DISABLE_EXPAND = 0x00010000;
     public static final String SETTING_ONGOING_NOTIFICATIONS = "gb_ongoing_notifications";
 
@@ -111,7 +112,7 @@ public class ModStatusBar {
     private static ViewGroup mStatusBarView;
     private static Context mContext;
     private static SettingsObserver mSettingsObserver;
-    private static String mOngoingNotif;
+    private static OngoingNotifRegistry mOngoingNotifRegistry;
     private static TrafficMeterAbstract mTrafficMeter;
     private static TrafficMeterMode mTrafficMeterMode = TrafficMeterMode.OFF;
     private static boolean mNotifExpandAll;
@@ -132,23 +133,20 @@ public class ModStatusBar {
     private static int mHomeLongpressAction = 0;
     private static boolean mMaxNotifIconsEnabled;
     private static Boolean mMaxNotifIconsIsStaticLayoutOrig;
-    private static int mNotifIconContainerComputedWidth;
-    private static int mSystemIconAreaMaxWidth;
+    private static final NotifIconAreaGeometry mNotifIconAreaGeometry = new NotifIconAreaGeometry();
+    private static final int[] mTmpLocation = new int[2];
+    private static Method mNotifIconContainerUpdateState;
 
     // Brightness control
     private static boolean mBrightnessControlEnabled;
+    private static boolean mBrightnessPerceptual;
     private static boolean mAutomaticBrightness;
-    private static boolean mBrightnessChanged;
-    private static float mScreenWidth;
     private static int mMinBrightness;
     private static int mPeekHeight;
-    private static boolean mJustPeeked;
-    private static int mLinger;
-    private static int mInitialTouchX;
-    private static int mInitialTouchY;
     private static int BRIGHTNESS_ON = 255;
-    private static float mPrevBrightness = -1f;
-    private static float mPrevBrightnessAuto = -1f;
+    private static BrightnessGestureController mBrightnessCtrl;
+    private static Method mSetTemporaryBrightness;
+    private static Method mSetTemporaryAutoBrightnessAdj;
 
     private static List<StatusBarStateChangedListener> mStateChangeListeners =
             new ArrayList<>();
@@ -157,6 +155,31 @@ public class ModStatusBar {
         XposedBridge.log(TAG + ": " + message);
     }
 
+    private static OngoingNotifRegistry createOngoingNotifRegistry() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new OngoingNotifRegistry(new OngoingNotifRegistry.Store() {
+            @Override
+            public String load() {
+                return Settings.Secure.getString(mContext.getContentResolver(),
+                        SETTING_ONGOING_NOTIFICATIONS);
+            }
+            @Override
+            public void save(String data) {
+                AsyncTask.execute(() -> Settings.Secure.putString(mContext.getContentResolver(),
+                        SETTING_ONGOING_NOTIFICATIONS, data));
+            }
+        }, new OngoingNotifRegistry.Scheduler() {
+            @Override
+            public void postDelayed(Runnable r, long delayMs) {
+                handler.postDelayed(r, delayMs);
+            }
+            @Override
+            public void removeCallbacks(Runnable r) {
+                handler.removeCallbacks(r);
+            }
+        }, OngoingNotifRegistry.DEFAULT_CAPACITY);
+    }
+
     private static BroadcastMediator.Receiver mBroadcastReceiver = (context, intent) -> {
         if (DEBUG) log("Broadcast received: " + intent.toString());
 
@@ -181,6 +204,11 @@ public class ModStatusBar {
                     mSettingsObserver.update();
                 }
             }
+            if (intent.hasExtra(GravityBoxSettings.EXTRA_SB_BRIGHTNESS_PERCEPTUAL)) {
+                mBrightnessPerceptual = intent.getBooleanExtra(
+                        GravityBoxSettings.EXTRA_SB_BRIGHTNESS_PERCEPTUAL, false);
+                updateBrightnessMapping();
+            }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_SB_DISABLE_PEEK)) {
                 mDisablePeek = intent.getBooleanExtra(GravityBoxSettings.EXTRA_SB_DISABLE_PEEK, false);
             }
@@ -193,12 +221,12 @@ public class ModStatusBar {
         } else if (intent.getAction().equals(
                 GravityBoxSettings.ACTION_PREF_ONGOING_NOTIFICATIONS_CHANGED)) {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_ONGOING_NOTIF)) {
-                mOngoingNotif = intent.getStringExtra(GravityBoxSettings.EXTRA_ONGOING_NOTIF);
-                if (DEBUG) log("mOngoingNotif = " + mOngoingNotif);
+                String blocked = intent.getStringExtra(GravityBoxSettings.EXTRA_ONGOING_NOTIF);
+                mOngoingNotifRegistry.setBlocked(blocked);
+                if (DEBUG) log("Blocked ongoing notifications = " + blocked);
             } else if (intent.hasExtra(GravityBoxSettings.EXTRA_ONGOING_NOTIF_RESET)) {
-                mOngoingNotif = "";
-                Settings.Secure.putString(mContext.getContentResolver(),
-                        SETTING_ONGOING_NOTIFICATIONS, "");
+                mOngoingNotifRegistry.setBlocked("");
+                mOngoingNotifRegistry.reset();
                 if (DEBUG) log("Ongoing notifications list reset");
             }
         } else if (intent.getAction().equals(GravityBoxSettings.ACTION_PREF_DATA_TRAFFIC_CHANGED)) {
@@ -263,6 +291,7 @@ public class ModStatusBar {
                         "getIntForUser", resolver,
                         Settings.System.SCREEN_BRIGHTNESS_MODE, 0, -2);
                 mAutomaticBrightness = brightnessMode == Settings.System.SCREEN_BRIGHTNESS_MODE_AUTOMATIC;
+                updateBrightnessMapping();
             } catch (Throwable t) {
                 GravityBox.log(TAG, t);
             }
@@ -293,8 +322,14 @@ public class ModStatusBar {
             mLayoutCenter.setGravity(Gravity.CENTER);
             if (DEBUG_LAYOUT) mLayoutCenter.setBackgroundColor(0x4dff0000);
             mStatusBarView.addView(mLayoutCenter);
+            mLayoutCenter.addOnLayoutChangeListener(mNotifIconAreaInvalidator);
+            mStatusBarView.addOnLayoutChangeListener(mNotifIconAreaInvalidator);
+            mNotifIconAreaGeometry.invalidate();
             if (DEBUG) log("mLayoutCenter injected");
 
+            // brightness control geometry follows status bar size
+            mStatusBarView.addOnLayoutChangeListener(mBrightnessLayoutListener);
+
             mRightArea = mStatusBarView
                     .findViewById(res.getIdentifier("system_icons", "id", PACKAGE_NAME));
             mLeftArea = mStatusBarView
@@ -333,6 +368,7 @@ public class ModStatusBar {
 
             // destroy center layout
             if (mLayoutCenter != null) {
+                mLayoutCenter.removeOnLayoutChangeListener(mNotifIconAreaInvalidator);
                 mStatusBarView.removeView(mLayoutCenter);
                 mLayoutCenter.removeAllViews();
                 mLayoutCenter = null;
@@ -347,6 +383,9 @@ public class ModStatusBar {
 
             mLeftArea = null;
             mRightArea = null;
+            mStatusBarView.removeOnLayoutChangeListener(mBrightnessLayoutListener);
+            mStatusBarView.removeOnLayoutChangeListener(mNotifIconAreaInvalidator);
+            mNotifIconAreaGeometry.invalidate();
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
         }
@@ -377,11 +416,73 @@ public class ModStatusBar {
             mPeekHeight = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 84,
                     res.getDisplayMetrics());
             BRIGHTNESS_ON = XposedHelpers.getStaticIntField(powerManagerClass, "BRIGHTNESS_ON");
+
+            mSetTemporaryBrightness = XposedHelpers.findMethodExactIfExists(
+                    DisplayManager.class, "setTemporaryBrightness", float.class);
+            if (mSetTemporaryBrightness == null) {
+                mSetTemporaryBrightness = XposedHelpers.findMethodExact(
+                        DisplayManager.class, "setTemporaryBrightness", int.class);
+            }
+            mSetTemporaryAutoBrightnessAdj = XposedHelpers.findMethodExact(
+                    DisplayManager.class, "setTemporaryAutoBrightnessAdjustment", float.class);
+
+            final Handler handler = (Handler) XposedHelpers.getObjectField(mStatusBar, "mHandler");
+            mBrightnessCtrl = new BrightnessGestureController(
+                    new BrightnessGestureController.Scheduler() {
+                @Override
+                public long now() {
+                    return SystemClock.uptimeMillis();
+                }
+                @Override
+                public void postDelayed(Runnable r, long delayMs) {
+                    handler.postDelayed(r, delayMs);
+                }
+                @Override
+                public void removeCallbacks(Runnable r) {
+                    handler.removeCallbacks(r);
+                }
+            }, mBrightnessCallback);
+
+            // temporary brightness is previewed at most once per display frame
+            Display display = getDisplayManager().getDisplay(Display.DEFAULT_DISPLAY);
+            float refreshRate = display != null ? display.getRefreshRate() : 0;
+            if (refreshRate > 0) {
+                mBrightnessCtrl.setMinPreviewIntervalMs(Math.max(1, (long) (1000f / refreshRate)));
+            }
+            updateBrightnessMapping();
+            updateBrightnessGeometry();
         } catch (Throwable t) {
             GravityBox.log(TAG, t);
         }
     }
 
+    private static void updateBrightnessMapping() {
+        if (mBrightnessCtrl != null) {
+            // perceptual mapping applies to absolute level only
+            mBrightnessCtrl.setPerceptual(mBrightnessPerceptual && !mAutomaticBrightness);
+        }
+    }
+
+    private static void updateBrightnessGeometry() {
+        if (mBrightnessCtrl == null) return;
+        try {
+            mBrightnessCtrl.setGeometry(
+                    (int) XposedHelpers.callMethod(mStatusBar, "getStatusBarHeight"),
+                    mPeekHeight,
+                    mContext.getResources().getDisplayMetrics().widthPixels,
+                    ViewConfiguration.get(mContext).getScaledTouchSlop());
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+    }
+
+    private static final View.OnLayoutChangeListener mBrightnessLayoutListener =
+            (v, l, t, r, b, oldL, oldT, oldR, oldB) -> {
+                if (r - l != oldR - oldL || b - t != oldB - oldT) {
+                    updateBrightnessGeometry();
+                }
+            };
+
     private static void prepareTrafficMeter() {
         try {
             TrafficMeterMode mode = TrafficMeterMode.valueOf(
@@ -547,7 +648,11 @@ public class ModStatusBar {
 
             mBrightnessControlEnabled = prefs.getBoolean(
                     GravityBoxSettings.PREF_KEY_STATUSBAR_BRIGHTNESS, false);
-            mOngoingNotif = prefs.getString(GravityBoxSettings.PREF_KEY_ONGOING_NOTIFICATIONS, "");
+            mBrightnessPerceptual = prefs.getBoolean(
+                    GravityBoxSettings.PREF_KEY_STATUSBAR_BRIGHTNESS_PERCEPTUAL, false);
+            mOngoingNotifRegistry = createOngoingNotifRegistry();
+            mOngoingNotifRegistry.setBlocked(prefs.getString(
+                    GravityBoxSettings.PREF_KEY_ONGOING_NOTIFICATIONS, ""));
             mNotifExpandAll = prefs.getBoolean(GravityBoxSettings.PREF_KEY_NOTIF_EXPAND_ALL, false);
             mDisablePeek = prefs.getBoolean(GravityBoxSettings.PREF_KEY_STATUSBAR_DISABLE_PEEK, false);
             mDt2sEnabled = prefs.getBoolean(GravityBoxSettings.PREF_KEY_STATUSBAR_DT2S, false);
@@ -652,14 +757,14 @@ public class ModStatusBar {
                     }
                     @Override
                     protected void afterHookedMethod(MethodHookParam param) {
-                        if (!mBrightnessControlEnabled || !mBrightnessChanged) return;
+                        if (!mBrightnessControlEnabled || mBrightnessCtrl == null ||
+                                !mBrightnessCtrl.isChanged()) return;
     
                         int action = ((MotionEvent) param.args[0]).getAction();
                         final boolean upOrCancel = (action == MotionEvent.ACTION_UP ||
                                 action == MotionEvent.ACTION_CANCEL);
                         if (upOrCancel) {
-                            mBrightnessChanged = false;
-                            if (mJustPeeked && XposedHelpers.getBooleanField(
+                            if (mBrightnessCtrl.isJustPeeked() && XposedHelpers.getBooleanField(
                                     param.thisObject, "mExpandedVisible")) {
                                 Object notifPanel = XposedHelpers.getObjectField(
                                         param.thisObject, "mNotificationPanelViewController");
@@ -689,25 +794,15 @@ public class ModStatusBar {
                         if (clearable) return;
     
                         // store if new
-                        final String notifData = pkg + "," + n.icon;
-                        final ContentResolver cr = mContext.getContentResolver();
-                        String storedNotifs = Settings.Secure.getString(cr,
-                                SETTING_ONGOING_NOTIFICATIONS);
-                        if (storedNotifs == null || !storedNotifs.contains(notifData)) {
-                            if (storedNotifs == null || storedNotifs.isEmpty()) {
-                                storedNotifs = notifData;
-                            } else {
-                                storedNotifs += "#C3C0#" + notifData;
-                            }
-                            if (DEBUG) log("New storedNotifs = " + storedNotifs);
-                            Settings.Secure.putString(cr, SETTING_ONGOING_NOTIFICATIONS, storedNotifs);
+                        if (mOngoingNotifRegistry.record(pkg, n.icon)) {
+                            if (DEBUG) log("New ongoing notification: " + pkg + "," + n.icon);
                         }
     
                         // block if requested
-                        if (mOngoingNotif.contains(notifData)) {
+                        if (mOngoingNotifRegistry.isBlocked(pkg, n.icon)) {
                             param.setResult(null);
                             param.getExtra().putBoolean("returnEarly", true);
-                            if (DEBUG) log("Ongoing notification " + notifData + " blocked.");
+                            if (DEBUG) log("Ongoing notification " + pkg + "," + n.icon + " blocked.");
                         }
                     }
                     @Override
@@ -918,33 +1013,16 @@ public class ModStatusBar {
                             if (DEBUG_LAYOUT) {
                                 container.setWillNotDraw(false);
                             }
-                            int[] location = new int[2];
-                            container.getLocationOnScreen(location);
-                            int xOffset = location[0];
-                            int screenWidth = mContext.getResources().getDisplayMetrics().widthPixels;
-                            int screenHeight = mContext.getResources().getDisplayMetrics().heightPixels;
-                            Rect topCutout = Utils.getDisplayCutoutTop(container.getRootWindowInsets());
-                            int baseWidth = Math.round(screenWidth <= screenHeight ?
-                                    screenWidth*0.55f : screenWidth*0.60f);
-                            int safeWidth = topCutout == null ? baseWidth :
-                                    Math.min(baseWidth, topCutout.left);
-
-                            if (centerLayoutHasVisibleChild()) {
-                                int[] centerViewLoc = new int[2];
-                                mLayoutCenter.getChildAt(0).getLocationOnScreen(centerViewLoc);
-                                if (DEBUG_LAYOUT) log("getActualWidth: mLayoutCenter related safe width=" + centerViewLoc[0]);
-                                safeWidth = Math.min(safeWidth, centerViewLoc[0]);
+                            if (!mNotifIconAreaGeometry.isValid()) {
+                                updateNotifIconAreaGeometry(container);
                             }
-
-                            mNotifIconContainerComputedWidth = Math.max(0, safeWidth);
-                            mSystemIconAreaMaxWidth = screenWidth - mNotifIconContainerComputedWidth
-                                    - (int)TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 6,
-                                    mContext.getResources().getDisplayMetrics());
-                            int maxWidth = Math.max(0, safeWidth - xOffset);
-                            if (DEBUG_LAYOUT) log("getActualWidth: screenWidth=" + screenWidth +
-                                    "; baseWidth=" + baseWidth +
-                                    "; topCutout=" + (topCutout == null ? "null" : String.valueOf(topCutout.left)) +
-                                    "; safeWidth=" + safeWidth +
+                            // offset follows translation during animations so it's not cached
+                            container.getLocationOnScreen(mTmpLocation);
+                            int xOffset = mTmpLocation[0];
+                            int maxWidth = NotifIconAreaGeometry.computeMaxWidth(
+                                    mNotifIconAreaGeometry.getSafeWidth(), xOffset);
+                            if (DEBUG_LAYOUT) log("getActualWidth: safeWidth=" +
+                                    mNotifIconAreaGeometry.getSafeWidth() +
                                     "; xOffset=" + xOffset +
                                     "; maxWidth=" + maxWidth + "px");
                             param.setResult(maxWidth);
@@ -982,11 +1060,21 @@ public class ModStatusBar {
                         View container = (View) param.thisObject;
                         if (isNotificationIconContainer(container) && mMaxNotifIconsEnabled) {
                             if (DEBUG_LAYOUT) log("onLayout: calling updateState()");
-                            XposedHelpers.callMethod(param.thisObject, "updateState");
+                            try {
+                                if (mNotifIconContainerUpdateState == null) {
+                                    mNotifIconContainerUpdateState = XposedHelpers.findMethodExact(
+                                            container.getClass(), "updateState");
+                                }
+                                mNotifIconContainerUpdateState.invoke(container);
+                            } catch (Throwable t) {
+                                GravityBox.log(TAG, t);
+                            }
                             ViewGroup parent = getNotifIconArea(container);
-                            if (parent != null && parent.getWidth() != mNotifIconContainerComputedWidth) {
+                            final int computedWidth = mNotifIconAreaGeometry.getComputedWidth();
+                            if (mNotifIconAreaGeometry.isValid() && parent != null &&
+                                    parent.getLayoutParams().width != computedWidth) {
                                 ViewGroup.LayoutParams lp = parent.getLayoutParams();
-                                lp.width = mNotifIconContainerComputedWidth;
+                                lp.width = computedWidth;
                                 if (DEBUG_LAYOUT) log("onLayout: parent width adjusted: " +
                                         parent.getWidth() + " -> " + lp.width);
                                 if (lp instanceof LinearLayout.LayoutParams) {
@@ -997,7 +1085,7 @@ public class ModStatusBar {
                                 ViewGroup sysIconArea = getSystemIconArea(container);
                                 if (sysIconArea != null) {
                                     lp = sysIconArea.getLayoutParams();
-                                    lp.width = mSystemIconAreaMaxWidth;
+                                    lp.width = mNotifIconAreaGeometry.getSystemIconAreaMaxWidth();
                                     if (DEBUG_LAYOUT) log("onLayout: system icon area width adjusted: " +
                                             sysIconArea.getWidth() + " -> " + lp.width);
                                     if (lp instanceof LinearLayout.LayoutParams) {
@@ -1006,7 +1094,8 @@ public class ModStatusBar {
                                     }
                                     sysIconArea.setLayoutParams(lp);
                                 }
-                                container.postDelayed(container::requestLayout, 1000);
+                                // single relayout once new widths are applied
+                                container.post(container::requestLayout);
                             }
                         }
                     }
@@ -1117,6 +1206,40 @@ public class ModStatusBar {
                 mLayoutCenter.getChildAt(0).getVisibility() == View.VISIBLE);
     }
 
+    private static boolean updateNotifIconAreaGeometry(View view) {
+        DisplayMetrics dm = mContext.getResources().getDisplayMetrics();
+        Rect topCutout = view.getRootWindowInsets() == null ? null :
+                Utils.getDisplayCutoutTop(view.getRootWindowInsets());
+        int centerChildLeft = NotifIconAreaGeometry.NONE;
+        if (centerLayoutHasVisibleChild()) {
+            mLayoutCenter.getChildAt(0).getLocationOnScreen(mTmpLocation);
+            centerChildLeft = mTmpLocation[0];
+        }
+        boolean changed = mNotifIconAreaGeometry.update(dm.widthPixels, dm.heightPixels,
+                topCutout == null ? NotifIconAreaGeometry.NONE : topCutout.left,
+                centerChildLeft,
+                (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 6, dm));
+        if (DEBUG_LAYOUT) log("updateNotifIconAreaGeometry: screenWidth=" + dm.widthPixels +
+                "; topCutout=" + (topCutout == null ? "null" : String.valueOf(topCutout.left)) +
+                "; centerChildLeft=" + centerChildLeft +
+                "; safeWidth=" + mNotifIconAreaGeometry.getSafeWidth() +
+                "; changed=" + changed);
+        return changed;
+    }
+
+    // cached geometry depends on status bar size (configuration, cutout) and center layout content;
+    // icon container is laid out again only when resulting widths change
+    private static final View.OnLayoutChangeListener mNotifIconAreaInvalidator =
+            (v, l, t, r, b, oldL, oldT, oldR, oldB) -> {
+                if (v == mStatusBarView && r - l == oldR - oldL && b - t == oldB - oldT) return;
+                if (mStatusBarView == null || !updateNotifIconAreaGeometry(v)) return;
+                View container = mStatusBarView.findViewById(mContext.getResources().getIdentifier(
+                        "notificationIcons", "id", PACKAGE_NAME));
+                if (container != null && shouldOverrideActualWidth(container)) {
+                    container.post(container::requestLayout);
+                }
+            };
+
     private static void updateHiddenByPolicy(boolean hidden) {
         if (mLayoutCenter != null) {
             mLayoutCenter.setVisibility(hidden ? View.GONE : View.VISIBLE);
@@ -1262,14 +1385,50 @@ public class ModStatusBar {
         }
     }
 
-    private static Runnable mLongPressBrightnessChange = new Runnable() {
+    private static final BrightnessGestureController.Callback mBrightnessCallback =
+            new BrightnessGestureController.Callback() {
         @Override
-        public void run() {
+        public void onPreview(float level) {
             try {
-                XposedHelpers.callMethod(mStatusBarView, "performHapticFeedback", 
-                        HapticFeedbackConstants.LONG_PRESS);
-                adjustBrightness(mInitialTouchX);
-                mLinger = BRIGHTNESS_CONTROL_LINGER_THRESHOLD + 1;
+                if (mAutomaticBrightness) {
+                    mSetTemporaryAutoBrightnessAdj.invoke(getDisplayManager(), levelToAutoAdj(level));
+                } else if (mSetTemporaryBrightness.getParameterTypes()[0] == float.class) {
+                    // float brightness excludes int value 0 which stands for off
+                    int val = levelToBrightness(level);
+                    mSetTemporaryBrightness.invoke(getDisplayManager(),
+                            Math.max(0f, (float) (val - 1) / (float) (BRIGHTNESS_ON - 1)));
+                } else {
+                    mSetTemporaryBrightness.invoke(getDisplayManager(), levelToBrightness(level));
+                }
+            } catch (Throwable t) {
+                GravityBox.log(TAG, t);
+            }
+        }
+
+        @Override
+        public void onCommit(float level) {
+            final boolean automatic = mAutomaticBrightness;
+            final float adj = levelToAutoAdj(level);
+            final int val = levelToBrightness(level);
+            AsyncTask.execute(() -> {
+                try {
+                    if (automatic) {
+                        XposedHelpers.callStaticMethod(Settings.System.class, "putFloatForUser",
+                                mContext.getContentResolver(), "screen_auto_brightness_adj", adj, -2);
+                    } else {
+                        XposedHelpers.callStaticMethod(Settings.System.class, "putIntForUser",
+                                mContext.getContentResolver(), Settings.System.SCREEN_BRIGHTNESS, val, -2);
+                    }
+                } catch (Throwable t) {
+                    GravityBox.log(TAG, t);
+                }
+            });
+        }
+
+        @Override
+        public void onLongPress() {
+            try {
+                mStatusBarView.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
             } catch (Throwable t) {
                 GravityBox.log(TAG, t);
             }
@@ -1284,95 +1443,18 @@ public class ModStatusBar {
         return mDisplayManager;
     }
 
-    private static void adjustBrightness(int x) {
-        try {
-            mBrightnessChanged = true;
-            float raw = ((float) x) / mScreenWidth;
-
-            // Add a padding to the brightness control on both sides to
-            // make it easier to reach min/max brightness
-            float padded = Math.min(1.0f - BRIGHTNESS_CONTROL_PADDING,
-                    Math.max(BRIGHTNESS_CONTROL_PADDING, raw));
-            float value = (padded - BRIGHTNESS_CONTROL_PADDING) /
-                    (1 - (2.0f * BRIGHTNESS_CONTROL_PADDING));
-
-            if (mAutomaticBrightness) {
-                float adj = (value * 100) / (BRIGHTNESS_ADJ_RESOLUTION / 2f) - 1;
-                adj = Math.max(adj, -1);
-                adj = Math.min(adj, 1);
-                final float val = adj;
-                if (mPrevBrightnessAuto != val) {
-                    mPrevBrightnessAuto = val;
-                    XposedHelpers.callMethod(getDisplayManager(), "setTemporaryAutoBrightnessAdjustment", val);
-                    AsyncTask.execute(() ->
-                            XposedHelpers.callStaticMethod(Settings.System.class, "putFloatForUser",
-                                    mContext.getContentResolver(), "screen_auto_brightness_adj", val, -2));
-                }
-            } else {
-                int newBrightness = mMinBrightness + Math.round(value *
-                        (BRIGHTNESS_ON - mMinBrightness));
-                newBrightness = Math.min(newBrightness, BRIGHTNESS_ON);
-                newBrightness = Math.max(newBrightness, mMinBrightness);
-                final int val = newBrightness;
-                if (mPrevBrightness != val) {
-                    mPrevBrightness = val;
-                    XposedHelpers.callMethod(getDisplayManager(), "setTemporaryBrightness", val);
-                    AsyncTask.execute(() ->
-                            XposedHelpers.callStaticMethod(Settings.System.class, "putIntForUser",
-                                    mContext.getContentResolver(), Settings.System.SCREEN_BRIGHTNESS, val, -2));
-                }
-            }
-        } catch (Throwable t) {
-            GravityBox.log(TAG, t);
-        }
+    private static int levelToBrightness(float level) {
+        int brightness = mMinBrightness + Math.round(level * (BRIGHTNESS_ON - mMinBrightness));
+        return Math.max(mMinBrightness, Math.min(BRIGHTNESS_ON, brightness));
+    }
+
+    private static float levelToAutoAdj(float level) {
+        return Math.max(-1f, Math.min(1f, level * 2f - 1f));
     }
 
     private static void brightnessControl(MotionEvent event) {
-        try {
-            final int action = event.getAction();
-            final int x = (int) event.getRawX();
-            final int y = (int) event.getRawY();
-            Handler handler = (Handler) XposedHelpers.getObjectField(mStatusBar, "mHandler");
-            int statusBarHeight = (int)XposedHelpers.callMethod(mStatusBar, "getStatusBarHeight");
-
-            if (action == MotionEvent.ACTION_DOWN) {
-                if (y < statusBarHeight) {
-                    mLinger = 0;
-                    mInitialTouchX = x;
-                    mInitialTouchY = y;
-                    mJustPeeked = true;
-                    mScreenWidth = (float) mContext.getResources().getDisplayMetrics().widthPixels;
-                    handler.removeCallbacks(mLongPressBrightnessChange);
-                    handler.postDelayed(mLongPressBrightnessChange,
-                            BRIGHTNESS_CONTROL_LONG_PRESS_TIMEOUT);
-                }
-            } else if (action == MotionEvent.ACTION_MOVE) {
-                if (y < statusBarHeight && mJustPeeked) {
-                    if (mLinger > BRIGHTNESS_CONTROL_LINGER_THRESHOLD) {
-                        adjustBrightness(x);
-                    } else {
-                        final int xDiff = Math.abs(x - mInitialTouchX);
-                        final int yDiff = Math.abs(y - mInitialTouchY);
-                        final int touchSlop = ViewConfiguration.get(mContext).getScaledTouchSlop();
-                        if (xDiff > yDiff) {
-                            mLinger++;
-                        }
-                        if (xDiff > touchSlop || yDiff > touchSlop) {
-                            handler.removeCallbacks(mLongPressBrightnessChange);
-                        }
-                    }
-                } else {
-                    if (y > mPeekHeight) {
-                        mJustPeeked = false;
-                    }
-                    handler.removeCallbacks(mLongPressBrightnessChange);
-                }
-            } else if (action == MotionEvent.ACTION_UP ||
-                        action == MotionEvent.ACTION_CANCEL) {
-                handler.removeCallbacks(mLongPressBrightnessChange);
-            }
-        } catch (Throwable t) {
-            GravityBox.log(TAG, t);
+        if (mBrightnessCtrl != null) {
+            mBrightnessCtrl.onTouch(event.getAction(), (int) event.getRawX(), (int) event.getRawY());
         }
     }
 
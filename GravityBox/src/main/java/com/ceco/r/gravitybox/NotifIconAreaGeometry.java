@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+/**
+ * Width of status bar notification icon area that is safe from display cutout
+ * and center layout, and the remaining width for system icon area.
+ * Computed values are cached until invalidated by configuration, insets
+ * or center layout changes. There are no Android dependencies so width math
+ * can be verified on plain JVM.
+ */
+class NotifIconAreaGeometry {
+    static final int NONE = Integer.MIN_VALUE;
+
+    private boolean mValid;
+    private int mSafeWidth;
+    private int mComputedWidth;
+    private int mSystemIconAreaMaxWidth;
+
+    /**
+     * Returns right edge of notification icon area in screen coordinates.
+     * Might be negative when center layout starts left of screen.
+     * @param cutoutLeft left edge of top display cutout or NONE
+     * @param centerChildLeft left edge of visible center layout child or NONE
+     */
+    static int computeSafeWidth(int screenWidth, int screenHeight,
+                                int cutoutLeft, int centerChildLeft) {
+        int baseWidth = Math.round(screenWidth <= screenHeight ?
+                screenWidth * 0.55f : screenWidth * 0.60f);
+        int safeWidth = cutoutLeft == NONE ? baseWidth : Math.min(baseWidth, cutoutLeft);
+        if (centerChildLeft != NONE) {
+            safeWidth = Math.min(safeWidth, centerChildLeft);
+        }
+        return safeWidth;
+    }
+
+    static int computeSystemIconAreaMaxWidth(int screenWidth, int safeWidth, int gap) {
+        return screenWidth - Math.max(0, safeWidth) - gap;
+    }
+
+    /**
+     * Returns width available to icon container starting at given screen offset
+     */
+    static int computeMaxWidth(int safeWidth, int xOffset) {
+        return Math.max(0, safeWidth - xOffset);
+    }
+
+    /**
+     * Recomputes cached values. Returns true if any of them changed.
+     */
+    boolean update(int screenWidth, int screenHeight, int cutoutLeft, int centerChildLeft, int gap) {
+        final int safeWidth = computeSafeWidth(screenWidth, screenHeight, cutoutLeft, centerChildLeft);
+        final int sysIconAreaMaxWidth = computeSystemIconAreaMaxWidth(screenWidth, safeWidth, gap);
+        final boolean changed = !mValid || safeWidth != mSafeWidth ||
+                sysIconAreaMaxWidth != mSystemIconAreaMaxWidth;
+        mSafeWidth = safeWidth;
+        mComputedWidth = Math.max(0, safeWidth);
+        mSystemIconAreaMaxWidth = sysIconAreaMaxWidth;
+        mValid = true;
+        return changed;
+    }
+
+    void invalidate() {
+        mValid = false;
+    }
+
+    boolean isValid() {
+        return mValid;
+    }
+
+    int getSafeWidth() {
+        return mSafeWidth;
+    }
+
+    /**
+     * Width of notification icon area
+     */
+    int getComputedWidth() {
+        return mComputedWidth;
+    }
+
+    int getSystemIconAreaMaxWidth() {
+        return mSystemIconAreaMaxWidth;
+    }
+}
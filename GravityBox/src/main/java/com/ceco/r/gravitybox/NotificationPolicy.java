@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+/**
+ * Notification policy decided by UNC at post time packed into a single int
+ * that travels with notification as one extra and is tested bitwise in SystemUI.
+ * Enum values are stored as ordinals of corresponding LedSettings enums.
+ * Layout:
+ * <pre>
+ *  bit  0      progress tracking
+ *  bit  1      hide persistent
+ *  bit  2      active screen requested
+ *  bit  3      heads up timeout present
+ *  bits 4-5    VisibilityLs
+ *  bits 6-7    HeadsUpMode
+ *  bits 8-9    ActiveScreenMode
+ *  bits 10-17  heads up timeout in seconds
+ *  bits 28-31  version
+ * </pre>
+ * Word of another version decodes as {@link #NONE} meaning default policy.
+ * There are no Android dependencies so encoding can be verified on plain JVM.
+ */
+final class NotificationPolicy {
+    static final int VERSION = 1;
+    static final int NONE = 0;
+    static final int EMPTY = VERSION << 28;
+
+    static final int MAX_HEADS_UP_TIMEOUT = 0xFF;
+
+    private static final int FLAG_PROGRESS_TRACKING = 1;
+    private static final int FLAG_HIDE_PERSISTENT = 1 << 1;
+    private static final int FLAG_ACTIVE_SCREEN = 1 << 2;
+    private static final int FLAG_HEADS_UP_TIMEOUT = 1 << 3;
+
+    private static final int SHIFT_VISIBILITY_LS = 4;
+    private static final int SHIFT_HEADS_UP_MODE = 6;
+    private static final int SHIFT_ACTIVE_SCREEN_MODE = 8;
+    private static final int MASK_MODE = 0x3;
+    private static final int SHIFT_HEADS_UP_TIMEOUT = 10;
+    private static final int SHIFT_VERSION = 28;
+
+    private NotificationPolicy() { /* static only */ }
+
+    /**
+     * Validates word read from notification extras
+     */
+    static int decode(int word) {
+        return (word >>> SHIFT_VERSION) == VERSION ? word : NONE;
+    }
+
+    static int setProgressTracking(int policy, boolean enabled) {
+        return setFlag(policy, FLAG_PROGRESS_TRACKING, enabled);
+    }
+
+    static boolean isProgressTracking(int policy) {
+        return (policy & FLAG_PROGRESS_TRACKING) != 0;
+    }
+
+    static int setHidePersistent(int policy, boolean hide) {
+        return setFlag(policy, FLAG_HIDE_PERSISTENT, hide);
+    }
+
+    static boolean isHidePersistent(int policy) {
+        return (policy & FLAG_HIDE_PERSISTENT) != 0;
+    }
+
+    static int setActiveScreen(int policy, boolean requested, int modeOrdinal) {
+        policy = setFlag(policy, FLAG_ACTIVE_SCREEN, requested);
+        return setMode(policy, SHIFT_ACTIVE_SCREEN_MODE, requested ? modeOrdinal : 0);
+    }
+
+    static boolean isActiveScreen(int policy) {
+        return (policy & FLAG_ACTIVE_SCREEN) != 0;
+    }
+
+    static int getActiveScreenMode(int policy) {
+        return getMode(policy, SHIFT_ACTIVE_SCREEN_MODE);
+    }
+
+    static int setVisibilityLs(int policy, int ordinal) {
+        return setMode(policy, SHIFT_VISIBILITY_LS, ordinal);
+    }
+
+    static int getVisibilityLs(int policy) {
+        return getMode(policy, SHIFT_VISIBILITY_LS);
+    }
+
+    static int setHeadsUpMode(int policy, int ordinal) {
+        return setMode(policy, SHIFT_HEADS_UP_MODE, ordinal);
+    }
+
+    static int getHeadsUpMode(int policy) {
+        return getMode(policy, SHIFT_HEADS_UP_MODE);
+    }
+
+    /**
+     * Sets heads up timeout in seconds; negative value clears it
+     */
+    static int setHeadsUpTimeout(int policy, int timeout) {
+        policy &= ~(FLAG_HEADS_UP_TIMEOUT | (MAX_HEADS_UP_TIMEOUT << SHIFT_HEADS_UP_TIMEOUT));
+        if (timeout < 0) return policy;
+        return policy | FLAG_HEADS_UP_TIMEOUT |
+                (Math.min(timeout, MAX_HEADS_UP_TIMEOUT) << SHIFT_HEADS_UP_TIMEOUT);
+    }
+
+    static boolean hasHeadsUpTimeout(int policy) {
+        return (policy & FLAG_HEADS_UP_TIMEOUT) != 0;
+    }
+
+    static int getHeadsUpTimeout(int policy) {
+        return (policy >>> SHIFT_HEADS_UP_TIMEOUT) & MAX_HEADS_UP_TIMEOUT;
+    }
+
+    private static int setFlag(int policy, int flag, boolean set) {
+        return set ? (policy | flag) : (policy & ~flag);
+    }
+
+    private static int setMode(int policy, int shift, int ordinal) {
+        if (ordinal < 0 || ordinal > MASK_MODE) {
+            throw new IllegalArgumentException("Value out of range: " + ordinal);
+        }
+        return (policy & ~(MASK_MODE << shift)) | (ordinal << shift);
+    }
+
+    private static int getMode(int policy, int shift) {
+        return (policy >>> shift) & MASK_MODE;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Registry of ongoing notifications seen so far, identified by package
+ * and icon, together with the set of those that are blocked.
+ * Seen entries are loaded once and persisted asynchronously, batching
+ * additions that come in short succession. Once capacity is reached,
+ * oldest entries that are not blocked get evicted.
+ * Serialized format is shared with settings UI.
+ * There are no Android dependencies so it can be verified on plain JVM.
+ * Not thread safe; expected to be used from main thread.
+ */
+public class OngoingNotifRegistry {
+    public static final String SEPARATOR = "#C3C0#";
+    public static final int DEFAULT_CAPACITY = 200;
+    private static final long SAVE_DELAY_MS = 5000;
+
+    public interface Store {
+        String load();
+        // expected to perform actual write off the calling thread
+        void save(String data);
+    }
+
+    public interface Scheduler {
+        void postDelayed(Runnable r, long delayMs);
+        void removeCallbacks(Runnable r);
+    }
+
+    private final Store mStore;
+    private final Scheduler mScheduler;
+    private final int mCapacity;
+    private final LinkedHashSet<String> mSeen = new LinkedHashSet<>();
+    private Set<String> mBlocked = new HashSet<>();
+    private boolean mLoaded;
+    private boolean mSavePending;
+
+    public OngoingNotifRegistry(Store store, Scheduler scheduler, int capacity) {
+        mStore = store;
+        mScheduler = scheduler;
+        mCapacity = Math.max(1, capacity);
+    }
+
+    public static String getKey(String pkg, int iconId) {
+        return pkg + "," + iconId;
+    }
+
+    /**
+     * Parses serialized list into keys, skipping malformed entries
+     */
+    public static List<String> parse(String data) {
+        List<String> keys = new ArrayList<>();
+        if (data == null || data.isEmpty()) return keys;
+        for (String entry : data.split(SEPARATOR)) {
+            final int comma = entry.lastIndexOf(',');
+            if (comma <= 0 || comma == entry.length() - 1) continue;
+            try {
+                Integer.parseInt(entry.substring(comma + 1));
+                keys.add(entry);
+            } catch (NumberFormatException ignore) { }
+        }
+        return keys;
+    }
+
+    public static String serialize(Collection<String> keys) {
+        StringBuilder buf = new StringBuilder();
+        for (String key : keys) {
+            if (buf.length() > 0) buf.append(SEPARATOR);
+            buf.append(key);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Sets blocked notifications from serialized list
+     */
+    public void setBlocked(String data) {
+        mBlocked = new HashSet<>(parse(data));
+    }
+
+    public boolean isBlocked(String pkg, int iconId) {
+        return !mBlocked.isEmpty() && mBlocked.contains(getKey(pkg, iconId));
+    }
+
+    /**
+     * Records ongoing notification. Returns true if it was not seen before.
+     */
+    public boolean record(String pkg, int iconId) {
+        ensureLoaded();
+        final String key = getKey(pkg, iconId);
+        if (mSeen.contains(key)) return false;
+
+        mSeen.add(key);
+        evict();
+        scheduleSave();
+        return true;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) return;
+        mLoaded = true;
+        mSeen.addAll(parse(mStore.load()));
+        if (evict()) {
+            scheduleSave();
+        }
+    }
+
+    private boolean evict() {
+        boolean evicted = false;
+        Iterator<String> it = mSeen.iterator();
+        while (mSeen.size() > mCapacity && it.hasNext()) {
+            // keep blocked ones so that they can still be unblocked from settings
+            if (!mBlocked.contains(it.next())) {
+                it.remove();
+                evicted = true;
+            }
+        }
+        return evicted;
+    }
+
+    private void scheduleSave() {
+        if (mSavePending) return;
+        mSavePending = true;
+        mScheduler.postDelayed(mSaveRunnable, SAVE_DELAY_MS);
+    }
+
+    private final Runnable mSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mSavePending = false;
+            mStore.save(serialize(mSeen));
+        }
+    };
+
+    /**
+     * Forgets all seen notifications and persists empty list right away
+     */
+    public void reset() {
+        mScheduler.removeCallbacks(mSaveRunnable);
+        mSavePending = false;
+        mSeen.clear();
+        mLoaded = true;
+        mStore.save("");
+    }
+
+    public boolean isSeen(String pkg, int iconId) {
+        ensureLoaded();
+        return mSeen.contains(getKey(pkg, iconId));
+    }
+
+    public int size() {
+        ensureLoaded();
+        return mSeen.size();
+    }
+}
@@ -28,7 +28,7 @@ public class PermissionGranter {
     private static final String CLASS_PERMISSION_MANAGER_SERVICE = "com.android.server.pm.permission.PermissionManagerService";
     private static final String CLASS_PERMISSION_CALLBACK = "com.android.server.pm.permission.PermissionManagerServiceInternal.PermissionCallback";
     private static final String CLASS_ANDROID_PACKAGE = "com.android.server.pm.parsing.pkg.AndroidPackage";
-    private static final String PERM_ACCESS_SURFACE_FLINGER = "android.permission.ACCESS_SURFACE_FLINGER";
+    private static final String PERM_CAPTURE_VIDEO_OUTPUT = "android.permission.CAPTURE_VIDEO_OUTPUT";
 
     private static void log(String message) {
         XposedBridge.log(TAG + ": " + message);
@@ -58,12 +58,20 @@ public class PermissionGranter {
 
                     // GravityBox
                     if (GravityBox.PACKAGE_NAME.equals(pkgName)) {
-                        // Add android.permission.ACCESS_SURFACE_FLINGER needed by screen recorder
-                        if (!(boolean)XposedHelpers.callMethod(ps,"hasInstallPermission", PERM_ACCESS_SURFACE_FLINGER)) {
-                            final Object pAccessSurfaceFlinger = XposedHelpers.callMethod(permissions, "get",
-                                    PERM_ACCESS_SURFACE_FLINGER);
-                            int ret = (int) XposedHelpers.callMethod(ps, "grantInstallPermission", pAccessSurfaceFlinger);
-                            if (DEBUG) log("Permission added: " + pAccessSurfaceFlinger + "; ret=" + ret);
+                        // Add android.permission.CAPTURE_VIDEO_OUTPUT needed by screen recorder
+                        // to create virtual display mirroring the screen
+                        if (!(boolean)XposedHelpers.callMethod(ps,"hasInstallPermission", PERM_CAPTURE_VIDEO_OUTPUT)) {
+                            final Object pCaptureVideoOutput = XposedHelpers.callMethod(permissions, "get",
+                                    PERM_CAPTURE_VIDEO_OUTPUT);
+                            int ret = (int) XposedHelpers.callMethod(ps, "grantInstallPermission", pCaptureVideoOutput);
+                            if (DEBUG) log("Permission added: " + pCaptureVideoOutput + "; ret=" + ret);
+                        }
+                        // Add android.permission.RECORD_AUDIO needed by screen recorder for microphone
+                        if (grantedPerms.contains(permission.RECORD_AUDIO) &&
+                                !(boolean)XposedHelpers.callMethod(ps,"hasInstallPermission", permission.RECORD_AUDIO)) {
+                            final Object p = XposedHelpers.callMethod(permissions, "get",
+                                    permission.RECORD_AUDIO);
+                            XposedHelpers.callMethod(ps, "grantInstallPermission", p);
                         }
 
                         if (DEBUG) {
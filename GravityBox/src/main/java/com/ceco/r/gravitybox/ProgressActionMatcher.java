@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.r.gravitybox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pairs setMax and setProgress reflection actions targeting the same view.
+ * The view ID carrying progress is remembered per package so that
+ * subsequent updates only need to look at actions targeting that view.
+ * Action fields are read through an ActionReader and there are no Android
+ * dependencies so captured action lists can be replayed on plain JVM.
+ * Not thread safe.
+ */
+class ProgressActionMatcher {
+
+    interface ActionReader {
+        boolean isReflectionAction(Object action);
+        int getViewId(Object action) throws IllegalAccessException;
+        String getMethodName(Object action) throws IllegalAccessException;
+        Object getValue(Object action) throws IllegalAccessException;
+    }
+
+    private final ActionReader mReader;
+    private final Map<String, Integer> mProgressViewIds = new HashMap<>();
+    private int mMax;
+    private int mProgress;
+
+    ProgressActionMatcher(ActionReader reader) {
+        mReader = reader;
+    }
+
+    int getMax() {
+        return mMax;
+    }
+
+    int getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * Returns true when both max and progress were found for the same view.
+     * Values can then be obtained via getMax() and getProgress().
+     */
+    boolean match(String pkgName, List<?> actions) throws IllegalAccessException {
+        Integer viewId = mProgressViewIds.get(pkgName);
+        if (viewId != null) {
+            if (matchView(actions, viewId)) {
+                return true;
+            }
+            // layout changed; forget remembered view and do full scan
+            mProgressViewIds.remove(pkgName);
+        }
+
+        int progressViewId = matchAny(actions);
+        if (progressViewId != 0) {
+            mProgressViewIds.put(pkgName, progressViewId);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean matchView(List<?> actions, int viewId) throws IllegalAccessException {
+        int max = -1;
+        int progress = -1;
+        for (int i = 0; i < actions.size(); i++) {
+            Object a = actions.get(i);
+            if (!mReader.isReflectionAction(a) ||
+                    mReader.getViewId(a) != viewId) continue;
+            String methodName = mReader.getMethodName(a);
+            if ("setMax".equals(methodName)) {
+                max = (Integer) mReader.getValue(a);
+            } else if ("setProgress".equals(methodName)) {
+                progress = (Integer) mReader.getValue(a);
+            }
+        }
+        if (max != -1 && progress != -1) {
+            mMax = max;
+            mProgress = progress;
+            return true;
+        }
+        return false;
+    }
+
+    // returns ID of view having both setMax and setProgress or 0 if not found
+    private int matchAny(List<?> actions) throws IllegalAccessException {
+        List<Integer> candidates = new ArrayList<>(2);
+        for (int i = 0; i < actions.size(); i++) {
+            Object a = actions.get(i);
+            if (!mReader.isReflectionAction(a)) continue;
+            if ("setProgress".equals(mReader.getMethodName(a))) {
+                int viewId = mReader.getViewId(a);
+                if (viewId != 0 && !candidates.contains(viewId)) {
+                    candidates.add(viewId);
+                }
+            }
+        }
+        // values must come from the same view so that remembered ID satisfies fast path
+        for (int viewId : candidates) {
+            if (matchView(actions, viewId)) {
+                return viewId;
+            }
+        }
+        return 0;
+    }
+}
@@ -26,15 +26,15 @@ import java.util.Map;
 import android.app.Notification;
 import android.content.Context;
 import android.content.Intent;
+import android.hardware.display.DisplayManager;
 import android.media.AudioAttributes;
 import android.media.Ringtone;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Handler;
-import android.os.Parcel;
-import android.os.Parcelable;
 import android.os.PowerManager;
 import android.service.notification.StatusBarNotification;
+import android.view.Display;
 import android.widget.RemoteViews;
 
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
@@ -42,7 +42,6 @@ import com.ceco.r.gravitybox.managers.SysUiManagers;
 
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
-import de.robv.android.xposed.XposedHelpers;
 
 public class ProgressBarController implements BroadcastMediator.Receiver {
     private static final String TAG = "GB:ProgressBarController";
@@ -78,6 +77,8 @@ public class ProgressBarController implements BroadcastMediator.Receiver {
         int progress;
         int max;
         long lastUpdatedMs;
+        long lastNotifiedMs;
+        boolean updatePending;
 
         public ProgressInfo(String id, int progress, int max) {
             this.id = id;
@@ -109,6 +110,23 @@ public class ProgressBarController implements BroadcastMediator.Receiver {
     private boolean mSoundWhenScreenOffOnly;
     private PowerManager mPowerManager;
     private Handler mHandler;
+    private final RemoteViewsProgressExtractor mProgressExtractor = new RemoteViewsProgressExtractor();
+    private long mMinUpdateIntervalMs = 16;
+
+    private Runnable mDispatchPendingUpdatesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mProgressList) {
+                for (ProgressInfo pi : mProgressList.values()) {
+                    if (pi.updatePending) {
+                        pi.updatePending = false;
+                        pi.lastNotifiedMs = System.currentTimeMillis();
+                        notifyProgressUpdated(pi);
+                    }
+                }
+            }
+        }
+    };
 
     private Runnable mRemoveIdleRunnable = new Runnable() {
         @Override
@@ -138,11 +156,26 @@ public class ProgressBarController implements BroadcastMediator.Receiver {
 
         mPowerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
         mHandler = new Handler();
+        initMinUpdateInterval();
 
         SysUiManagers.BroadcastMediator.subscribe(this,
                 GravityBoxSettings.ACTION_PREF_STATUSBAR_DOWNLOAD_PROGRESS_CHANGED);
     }
 
+    // listeners are updated at most once per display frame
+    private void initMinUpdateInterval() {
+        try {
+            DisplayManager dm = (DisplayManager) mContext.getSystemService(Context.DISPLAY_SERVICE);
+            Display display = dm.getDisplay(Display.DEFAULT_DISPLAY);
+            float refreshRate = display != null ? display.getRefreshRate() : 0;
+            if (refreshRate > 0) {
+                mMinUpdateIntervalMs = Math.max(1, (long) (1000f / refreshRate));
+            }
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+    }
+
     public void registerListener(ProgressStateListener listener) {
         if (listener == null) return;
         synchronized (mListeners) {
@@ -259,7 +292,15 @@ public class ProgressBarController implements BroadcastMediator.Receiver {
                 log("updateProgress: updated progress for '" + id + "': " +
                         "max=" + max + "; progress=" + progress);
             }
-            notifyProgressUpdated(pi);
+            final long sinceLastNotify = pi.lastUpdatedMs - pi.lastNotifiedMs;
+            if (sinceLastNotify >= mMinUpdateIntervalMs) {
+                pi.lastNotifiedMs = pi.lastUpdatedMs;
+                notifyProgressUpdated(pi);
+            } else if (!pi.updatePending) {
+                pi.updatePending = true;
+                mHandler.postDelayed(mDispatchPendingUpdatesRunnable,
+                        mMinUpdateIntervalMs - sinceLastNotify);
+            }
         }
     }
 
@@ -331,8 +372,8 @@ public class ProgressBarController implements BroadcastMediator.Receiver {
         Notification n = statusBarNotif.getNotification();
         if (n != null && 
                (SUPPORTED_PACKAGES.contains(statusBarNotif.getPackageName()) ||
-                n.extras.getBoolean(ModLedControl.NOTIF_EXTRA_PROGRESS_TRACKING))) {
-            return getProgressInfo(id, n);
+                NotificationPolicy.isProgressTracking(ModLedControl.getNotificationPolicy(n)))) {
+            return getProgressInfo(id, statusBarNotif.getPackageName(), n);
         }
         return null;
     }
@@ -353,7 +394,7 @@ public class ProgressBarController implements BroadcastMediator.Receiver {
     }
 
     @SuppressWarnings("deprecation")
-    private ProgressInfo getProgressInfo(String id, Notification n) {
+    private ProgressInfo getProgressInfo(String id, String pkgName, Notification n) {
         if (id == null || n == null)
             return null;
 
@@ -364,56 +405,21 @@ public class ProgressBarController implements BroadcastMediator.Receiver {
                     n.extras.getInt(EXTRA_PROGRESS),
                     n.extras.getInt(EXTRA_PROGRESS_MAX));
         } else if (n.bigContentView != null) {
-            return getProgressInfoFromRemoteView(id, n.bigContentView);
+            return getProgressInfoFromRemoteView(id, pkgName, n.bigContentView);
         } else if (n.contentView != null) {
-            return getProgressInfoFromRemoteView(id, n.contentView);
+            return getProgressInfoFromRemoteView(id, pkgName, n.contentView);
         }
 
         return null;
     }
 
-    private ProgressInfo getProgressInfoFromRemoteView(String id, RemoteViews view) {
-        int max = -1;
-        int progress = -1;
-
-        try {
-            @SuppressWarnings("unchecked")
-            List<Parcelable> actions = (List<Parcelable>) 
-                XposedHelpers.getObjectField(view, "mActions");
-            if (actions == null) return null;
-
-            for (Parcelable p : actions) {
-                Parcel parcel = Parcel.obtain();
-                p.writeToParcel(parcel, 0);
-                parcel.setDataPosition(0);
-
-                // The tag tells which type of action it is (2 is ReflectionAction)
-                int tag = parcel.readInt();
-                if (tag != 2)  {
-                    parcel.recycle();
-                    continue;
-                }
-
-                parcel.readInt(); // skip View ID
-                String methodName = parcel.readString();
-                if ("setMax".equals(methodName)) {
-                    parcel.readInt(); // skip type value
-                    max = parcel.readInt();
-                    if (DEBUG) log("getProgressInfoFromRemoteView: max=" + max);
-                } else if ("setProgress".equals(methodName)) {
-                    parcel.readInt(); // skip type value
-                    progress = parcel.readInt();
-                    if (DEBUG) log("getProgressInfoFromRemoteView: progress=" + progress);
-                }
-
-                parcel.recycle();
-            }
-        } catch (Throwable  t) {
-            GravityBox.log(TAG, t);
+    private ProgressInfo getProgressInfoFromRemoteView(String id, String pkgName, RemoteViews view) {
+        if (mProgressExtractor.extract(pkgName, view)) {
+            if (DEBUG) log("getProgressInfoFromRemoteView: max=" + mProgressExtractor.getMax() +
+                    "; progress=" + mProgressExtractor.getProgress());
+            return new ProgressInfo(id, mProgressExtractor.getProgress(), mProgressExtractor.getMax());
         }
-
-        return (max != -1 && progress != -1) ?
-                new ProgressInfo(id, progress, max) : null;
+        return null;
     }
 
     private void maybePlaySound() {
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+/**
+ * Decides whether a wake-up request proceeds with respect to proximity sensor.
+ * Wake-ups are never deferred: trusted reasons wake right away, a live
+ * proximity reading either lets the wake-up through or blocks it and without
+ * a reading the device wakes immediately and is put back to sleep
+ * if the first reading within verify timeout reports sensor covered.
+ * Sensor is kept enabled for a short time after each request so that
+ * repeated requests are decided from live reading.
+ * Timing is delegated to a Scheduler and there are no Android dependencies
+ * so wake sequences can be replayed on plain JVM.
+ */
+class ProximityWakeGate {
+    static final int DECISION_WAKE = 0;
+    static final int DECISION_BLOCK = 1;
+    // wake immediately and sleep again if sensor turns out covered
+    static final int DECISION_WAKE_VERIFY = 2;
+
+    interface Scheduler {
+        void postDelayed(Runnable r, long delayMs);
+        void removeCallbacks(Runnable r);
+    }
+
+    interface Callback {
+        void setSensorEnabled(boolean enabled);
+        void onCoveredAfterWake();
+    }
+
+    private final Scheduler mScheduler;
+    private final Callback mCallback;
+    private long mSensorTtlMs = 1000;
+    private long mVerifyTimeoutMs = 500;
+    private int mTrustedReasons;
+
+    private boolean mSensorEnabled;
+    private boolean mHasReading;
+    private boolean mCovered;
+    private boolean mVerifyPending;
+
+    ProximityWakeGate(Scheduler scheduler, Callback callback) {
+        mScheduler = scheduler;
+        mCallback = callback;
+    }
+
+    synchronized void setSensorTtlMs(long ttlMs) {
+        mSensorTtlMs = ttlMs;
+    }
+
+    synchronized void setVerifyTimeoutMs(long timeoutMs) {
+        mVerifyTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Wake reasons that bypass proximity check, e.g. plugging in charger
+     */
+    synchronized void setTrustedReasons(int... reasons) {
+        mTrustedReasons = 0;
+        for (int reason : reasons) {
+            if (reason >= 0 && reason < 32) {
+                mTrustedReasons |= 1 << reason;
+            }
+        }
+    }
+
+    synchronized int onWakeRequest(int reason) {
+        if (reason >= 0 && reason < 32 && (mTrustedReasons & (1 << reason)) != 0) {
+            return DECISION_WAKE;
+        }
+
+        keepSensorAlive();
+        if (mHasReading) {
+            return mCovered ? DECISION_BLOCK : DECISION_WAKE;
+        }
+        if (!mVerifyPending) {
+            mVerifyPending = true;
+            mScheduler.postDelayed(mVerifyTimeout, mVerifyTimeoutMs);
+        }
+        return DECISION_WAKE_VERIFY;
+    }
+
+    synchronized void onProximityChanged(boolean covered) {
+        if (!mSensorEnabled) return;
+
+        mHasReading = true;
+        mCovered = covered;
+        if (mVerifyPending) {
+            mVerifyPending = false;
+            mScheduler.removeCallbacks(mVerifyTimeout);
+            if (covered) {
+                mCallback.onCoveredAfterWake();
+            }
+        }
+    }
+
+    synchronized void reset() {
+        mScheduler.removeCallbacks(mVerifyTimeout);
+        mScheduler.removeCallbacks(mSensorTimeout);
+        mVerifyPending = false;
+        setSensorEnabled(false);
+    }
+
+    synchronized boolean isSensorEnabled() {
+        return mSensorEnabled;
+    }
+
+    private void keepSensorAlive() {
+        setSensorEnabled(true);
+        mScheduler.removeCallbacks(mSensorTimeout);
+        mScheduler.postDelayed(mSensorTimeout, Math.max(mSensorTtlMs, mVerifyTimeoutMs));
+    }
+
+    private void setSensorEnabled(boolean enabled) {
+        if (mSensorEnabled == enabled) return;
+        mSensorEnabled = enabled;
+        // reading of previous session might not be current anymore
+        mHasReading = false;
+        mCallback.setSensorEnabled(enabled);
+    }
+
+    private final Runnable mVerifyTimeout = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ProximityWakeGate.this) {
+                // no reading in time; device stays awake
+                mVerifyPending = false;
+            }
+        }
+    };
+
+    private final Runnable mSensorTimeout = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ProximityWakeGate.this) {
+                setSensorEnabled(false);
+            }
+        }
+    };
+}
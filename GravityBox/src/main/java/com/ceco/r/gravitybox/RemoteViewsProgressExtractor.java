@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ceco.r.gravitybox;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.widget.RemoteViews;
+
+import de.robv.android.xposed.XposedBridge;
+import de.robv.android.xposed.XposedHelpers;
+
+/**
+ * Extracts progress values from setMax/setProgress actions of RemoteViews.
+ * ReflectionAction fields are read directly through accessors resolved once
+ * and actions are paired by view ID using ProgressActionMatcher.
+ * Falls back to parceling actions when fields cannot be resolved.
+ * Not thread safe; meant to be used from SystemUI main thread only.
+ */
+class RemoteViewsProgressExtractor implements ProgressActionMatcher.ActionReader {
+    private static final String TAG = "GB:RemoteViewsProgressExtractor";
+    private static final boolean DEBUG = false;
+    private static final String CLASS_REFLECTION_ACTION = "android.widget.RemoteViews$ReflectionAction";
+    private static final int PARCEL_TAG_REFLECTION_ACTION = 2;
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    private static boolean sAccessorsResolved;
+    private static Field sActionsField;
+    private static Class<?> sReflectionActionClass;
+    private static Field sViewIdField;
+    private static Field sMethodNameField;
+    private static Field sValueField;
+
+    private final ProgressActionMatcher mMatcher = new ProgressActionMatcher(this);
+    private int mMax;
+    private int mProgress;
+
+    private static void resolveAccessors() {
+        if (sAccessorsResolved) return;
+        sAccessorsResolved = true;
+        try {
+            sActionsField = XposedHelpers.findField(RemoteViews.class, "mActions");
+            sReflectionActionClass = XposedHelpers.findClass(CLASS_REFLECTION_ACTION, null);
+            sViewIdField = XposedHelpers.findField(sReflectionActionClass, "viewId");
+            sMethodNameField = XposedHelpers.findField(sReflectionActionClass, "methodName");
+            sValueField = XposedHelpers.findField(sReflectionActionClass, "value");
+        } catch (Throwable t) {
+            if (DEBUG) log("Direct accessors not available; using parcel fallback: " + t.getMessage());
+            sReflectionActionClass = null;
+        }
+    }
+
+    int getMax() {
+        return mMax;
+    }
+
+    int getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * Returns true when both max and progress were found.
+     * Values can then be obtained via getMax() and getProgress().
+     */
+    boolean extract(String pkgName, RemoteViews view) {
+        resolveAccessors();
+        try {
+            if (sReflectionActionClass == null) {
+                return extractFromParcel(view);
+            }
+
+            List<?> actions = (List<?>) sActionsField.get(view);
+            if (actions != null && mMatcher.match(pkgName, actions)) {
+                mMax = mMatcher.getMax();
+                mProgress = mMatcher.getProgress();
+                return true;
+            }
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isReflectionAction(Object action) {
+        return sReflectionActionClass.isInstance(action);
+    }
+
+    @Override
+    public int getViewId(Object action) throws IllegalAccessException {
+        return sViewIdField.getInt(action);
+    }
+
+    @Override
+    public String getMethodName(Object action) throws IllegalAccessException {
+        return (String) sMethodNameField.get(action);
+    }
+
+    @Override
+    public Object getValue(Object action) throws IllegalAccessException {
+        return sValueField.get(action);
+    }
+
+    private boolean extractFromParcel(RemoteViews view) {
+        int max = -1;
+        int progress = -1;
+
+        @SuppressWarnings("unchecked")
+        List<Parcelable> actions = (List<Parcelable>)
+            XposedHelpers.getObjectField(view, "mActions");
+        if (actions == null) return false;
+
+        for (Parcelable p : actions) {
+            Parcel parcel = Parcel.obtain();
+            p.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+
+            // The tag tells which type of action it is (2 is ReflectionAction)
+            int tag = parcel.readInt();
+            if (tag != PARCEL_TAG_REFLECTION_ACTION)  {
+                parcel.recycle();
+                continue;
+            }
+
+            parcel.readInt(); // skip View ID
+            String methodName = parcel.readString();
+            if ("setMax".equals(methodName)) {
+                parcel.readInt(); // skip type value
+                max = parcel.readInt();
+            } else if ("setProgress".equals(methodName)) {
+                parcel.readInt(); // skip type value
+                progress = parcel.readInt();
+            }
+
+            parcel.recycle();
+        }
+
+        if (max != -1 && progress != -1) {
+            mMax = max;
+            mProgress = progress;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.media.MediaRecorder;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Records mirrored screen content in-process. Video is encoded from
+ * virtual display rendering directly into encoder input surface and,
+ * optionally, microphone audio is encoded to AAC. Encoded output is
+ * muxed directly into the final MP4 file.
+ * All the work runs on a dedicated thread; Callback is called from it.
+ */
+class ScreenRecorder {
+    private static final String TAG = "GB:ScreenRecorder";
+    private static final boolean DEBUG = false;
+
+    private static final String VIDEO_MIME = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final String AUDIO_MIME = MediaFormat.MIMETYPE_AUDIO_AAC;
+    private static final int I_FRAME_INTERVAL_SEC = 1;
+    private static final int AUDIO_SAMPLE_RATE = 44100;
+    private static final int AUDIO_BIT_RATE = 128000;
+    // ~23ms of 16-bit mono audio so that reading doesn't hold off video draining
+    private static final int AUDIO_READ_SIZE = 2048;
+    private static final long DRAIN_TIMEOUT_US = 10000;
+    private static final long EOS_TIMEOUT_MS = 2000;
+
+    interface Callback {
+        /**
+         * Recording finished either on request or after time limit was reached.
+         * @param success whether output file contains playable video
+         */
+        void onRecordingFinished(boolean success, String error);
+    }
+
+    static class Config {
+        int width;
+        int height;
+        int densityDpi;
+        int bitRate;
+        int frameRate;
+        boolean audio;
+        int orientationHint;
+        long timeLimitMs;
+    }
+
+    private final Context mContext;
+    private final Config mConfig;
+    private final File mOutput;
+    private final Callback mCallback;
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+    private Thread mThread;
+    private volatile boolean mStopRequested;
+
+    private MediaMuxer mMediaMuxer;
+    private ScreenRecordingMuxer<MediaFormat> mMuxer;
+    private MediaCodec mVideoEncoder;
+    private MediaCodec mAudioEncoder;
+    private Surface mInputSurface;
+    private VirtualDisplay mVirtualDisplay;
+    private AudioRecord mAudioRecord;
+    private long mAudioStartUs;
+    private long mAudioFrames;
+    private boolean mVideoEos;
+    private boolean mAudioEos;
+
+    ScreenRecorder(Context context, Config config, File output, Callback callback) {
+        mContext = context;
+        mConfig = config;
+        mOutput = output;
+        mCallback = callback;
+    }
+
+    void start() {
+        if (mThread != null) return;
+        mThread = new Thread(this::record, TAG);
+        mThread.start();
+    }
+
+    /**
+     * Requests recording to stop. Returns immediately;
+     * Callback gets called once output is finalized.
+     */
+    void stop() {
+        mStopRequested = true;
+    }
+
+    private void record() {
+        String error = null;
+        boolean success;
+        try {
+            prepare();
+            while (!mStopRequested) {
+                if (mAudioEncoder != null) {
+                    feedAudio(false);
+                    drain(mAudioEncoder, ScreenRecordingMuxer.SOURCE_AUDIO, 0);
+                }
+                // audio input read paces the loop when enabled
+                drain(mVideoEncoder, ScreenRecordingMuxer.SOURCE_VIDEO,
+                        mAudioEncoder == null ? DRAIN_TIMEOUT_US : 0);
+                if (mMuxer.isLimitReached()) {
+                    if (DEBUG) Log.d(TAG, "Time limit reached");
+                    break;
+                }
+            }
+            finish();
+        } catch (Throwable t) {
+            Log.e(TAG, "Error while recording", t);
+            error = t.getMessage();
+        } finally {
+            success = release();
+            if (!success && mOutput.exists() && !mOutput.delete()) {
+                Log.w(TAG, "Unable to delete incomplete output " + mOutput);
+            }
+        }
+        if (DEBUG && mMuxer != null) Log.d(TAG, "Recording finished: success=" + success +
+                "; video samples=" + mMuxer.getSampleCount(ScreenRecordingMuxer.SOURCE_VIDEO) +
+                "; audio samples=" + mMuxer.getSampleCount(ScreenRecordingMuxer.SOURCE_AUDIO) +
+                "; dropped=" + mMuxer.getDroppedCount() +
+                "; duration=" + mMuxer.getDurationUs() + "us");
+        mCallback.onRecordingFinished(success, error);
+    }
+
+    private void prepare() throws IOException {
+        mMediaMuxer = new MediaMuxer(mOutput.getAbsolutePath(),
+                MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        mMediaMuxer.setOrientationHint(mConfig.orientationHint);
+
+        mVideoEncoder = MediaCodec.createEncoderByType(VIDEO_MIME);
+        fitVideoSize(mVideoEncoder.getCodecInfo().getCapabilitiesForType(VIDEO_MIME)
+                .getVideoCapabilities());
+
+        MediaFormat videoFormat = MediaFormat.createVideoFormat(VIDEO_MIME,
+                mConfig.width, mConfig.height);
+        videoFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        videoFormat.setInteger(MediaFormat.KEY_BIT_RATE, mConfig.bitRate);
+        videoFormat.setInteger(MediaFormat.KEY_FRAME_RATE, mConfig.frameRate);
+        // virtual display produces frames on content change only; cap to configured rate
+        videoFormat.setFloat(MediaFormat.KEY_MAX_FPS_TO_ENCODER, mConfig.frameRate);
+        videoFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SEC);
+        mVideoEncoder.configure(videoFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mInputSurface = mVideoEncoder.createInputSurface();
+
+        if (mConfig.audio) {
+            prepareAudio();
+        }
+
+        mMuxer = new ScreenRecordingMuxer<>(new MediaMuxerSink(mMediaMuxer),
+                mAudioEncoder != null, mConfig.timeLimitMs * 1000);
+
+        mVideoEncoder.start();
+        DisplayManager dm = mContext.getSystemService(DisplayManager.class);
+        mVirtualDisplay = dm.createVirtualDisplay(TAG, mConfig.width, mConfig.height,
+                mConfig.densityDpi, mInputSurface, DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR);
+        if (mAudioEncoder != null) {
+            mAudioEncoder.start();
+            mAudioRecord.startRecording();
+            mAudioStartUs = System.nanoTime() / 1000;
+        }
+    }
+
+    /**
+     * Scales video size down keeping aspect ratio until it's supported by encoder.
+     * Content is letterboxed by virtual display if aspect ratio changes slightly by alignment.
+     */
+    private void fitVideoSize(MediaCodecInfo.VideoCapabilities caps) {
+        final int widthAlign = caps.getWidthAlignment();
+        final int heightAlign = caps.getHeightAlignment();
+        final int origWidth = mConfig.width;
+        final int origHeight = mConfig.height;
+        int width = origWidth / widthAlign * widthAlign;
+        int height = origHeight / heightAlign * heightAlign;
+        float scale = 1f;
+        while (!caps.isSizeSupported(width, height) && scale > 0.25f) {
+            scale -= 0.05f;
+            width = (int) (origWidth * scale) / widthAlign * widthAlign;
+            height = (int) (origHeight * scale) / heightAlign * heightAlign;
+        }
+        if (DEBUG) Log.d(TAG, "Video size " + origWidth + "x" + origHeight +
+                " fitted to " + width + "x" + height);
+        mConfig.width = width;
+        mConfig.height = height;
+    }
+
+    private void prepareAudio() {
+        try {
+            final int minBufferSize = AudioRecord.getMinBufferSize(AUDIO_SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+            mAudioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, AUDIO_SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, minBufferSize * 2);
+            if (mAudioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+                throw new IllegalStateException("AudioRecord not initialized");
+            }
+            MediaFormat audioFormat = MediaFormat.createAudioFormat(AUDIO_MIME,
+                    AUDIO_SAMPLE_RATE, 1);
+            audioFormat.setInteger(MediaFormat.KEY_AAC_PROFILE,
+                    MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+            audioFormat.setInteger(MediaFormat.KEY_BIT_RATE, AUDIO_BIT_RATE);
+            audioFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, minBufferSize);
+            mAudioEncoder = MediaCodec.createEncoderByType(AUDIO_MIME);
+            mAudioEncoder.configure(audioFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        } catch (Throwable t) {
+            // record video only rather than failing completely, e.g. when permission is missing
+            Log.w(TAG, "Unable to set up audio recording; continuing without audio", t);
+            releaseAudio();
+        }
+    }
+
+    /**
+     * Queues one buffer of audio input. Returns false if no input buffer
+     * became available in time.
+     */
+    private boolean feedAudio(boolean endOfStream) {
+        final int index = mAudioEncoder.dequeueInputBuffer(DRAIN_TIMEOUT_US);
+        if (index < 0) return false;
+        final ByteBuffer buffer = mAudioEncoder.getInputBuffer(index);
+        final long ptsUs = mAudioStartUs + mAudioFrames * 1000000L / AUDIO_SAMPLE_RATE;
+        int size = 0;
+        if (!endOfStream && buffer != null) {
+            buffer.clear();
+            size = mAudioRecord.read(buffer, Math.min(buffer.remaining(), AUDIO_READ_SIZE));
+            if (size < 0) {
+                Log.w(TAG, "AudioRecord read error: " + size);
+                size = 0;
+            }
+            // 16-bit mono
+            mAudioFrames += size / 2;
+        }
+        mAudioEncoder.queueInputBuffer(index, 0, size, ptsUs,
+                endOfStream ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
+        return true;
+    }
+
+    /**
+     * Moves available encoder output to muxer. Returns true once end of stream is reached.
+     */
+    private boolean drain(MediaCodec encoder, int source, long timeoutUs) {
+        while (true) {
+            final int index = encoder.dequeueOutputBuffer(mBufferInfo, timeoutUs);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                return false;
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                mMuxer.onFormat(source, encoder.getOutputFormat());
+            } else if (index >= 0) {
+                ByteBuffer buffer = encoder.getOutputBuffer(index);
+                if (buffer != null) {
+                    mMuxer.onSample(source, buffer, mBufferInfo.offset, mBufferInfo.size,
+                            mBufferInfo.presentationTimeUs, mBufferInfo.flags);
+                }
+                encoder.releaseOutputBuffer(index, false);
+                if ((mBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return true;
+                }
+            }
+            timeoutUs = 0;
+        }
+    }
+
+    private void finish() {
+        mVideoEncoder.signalEndOfInputStream();
+        boolean audioEosQueued = true;
+        if (mAudioEncoder != null) {
+            mAudioRecord.stop();
+            audioEosQueued = feedAudio(true);
+        } else {
+            mAudioEos = true;
+        }
+        final long deadline = System.currentTimeMillis() + EOS_TIMEOUT_MS;
+        while ((!mVideoEos || !mAudioEos) && System.currentTimeMillis() < deadline) {
+            if (!mVideoEos) {
+                mVideoEos = drain(mVideoEncoder, ScreenRecordingMuxer.SOURCE_VIDEO, DRAIN_TIMEOUT_US);
+            }
+            if (!mAudioEos) {
+                // all input buffers might have been taken; draining frees them up
+                if (!audioEosQueued) {
+                    audioEosQueued = feedAudio(true);
+                }
+                mAudioEos = drain(mAudioEncoder, ScreenRecordingMuxer.SOURCE_AUDIO, DRAIN_TIMEOUT_US);
+            }
+        }
+        if (!mVideoEos || !mAudioEos) {
+            Log.w(TAG, "Encoders didn't reach end of stream in time");
+        }
+    }
+
+    private boolean release() {
+        boolean success = false;
+        if (mVirtualDisplay != null) {
+            mVirtualDisplay.release();
+            mVirtualDisplay = null;
+        }
+        if (mVideoEncoder != null) {
+            try { mVideoEncoder.stop(); } catch (Throwable ignore) { }
+            mVideoEncoder.release();
+            mVideoEncoder = null;
+        }
+        if (mInputSurface != null) {
+            mInputSurface.release();
+            mInputSurface = null;
+        }
+        releaseAudio();
+        if (mMuxer != null) {
+            try {
+                success = mMuxer.stop();
+            } catch (Throwable t) {
+                Log.e(TAG, "Error finalizing output", t);
+                success = false;
+            }
+        }
+        if (mMediaMuxer != null) {
+            try { mMediaMuxer.release(); } catch (Throwable ignore) { }
+            mMediaMuxer = null;
+        }
+        return success;
+    }
+
+    private void releaseAudio() {
+        if (mAudioEncoder != null) {
+            try { mAudioEncoder.stop(); } catch (Throwable ignore) { }
+            mAudioEncoder.release();
+            mAudioEncoder = null;
+        }
+        if (mAudioRecord != null) {
+            try { mAudioRecord.stop(); } catch (Throwable ignore) { }
+            mAudioRecord.release();
+            mAudioRecord = null;
+        }
+    }
+
+    private static class MediaMuxerSink implements ScreenRecordingMuxer.Sink<MediaFormat> {
+        private final MediaMuxer mMuxer;
+        private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+
+        MediaMuxerSink(MediaMuxer muxer) {
+            mMuxer = muxer;
+        }
+
+        @Override
+        public int addTrack(MediaFormat format) {
+            return mMuxer.addTrack(format);
+        }
+
+        @Override
+        public void start() {
+            mMuxer.start();
+        }
+
+        @Override
+        public void writeSample(int track, ByteBuffer buffer, int offset, int size, long ptsUs, int flags) {
+            mInfo.set(offset, size, ptsUs, flags);
+            mMuxer.writeSampleData(track, buffer, mInfo);
+        }
+
+        @Override
+        public void stop() {
+            mMuxer.stop();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes encoded video and audio samples into a container sink.
+ * Sink is started only once formats of all sources are known; samples
+ * arriving before that are copied and kept until then. Recording starts
+ * with the first video key frame, timestamps are rebased to it and kept
+ * increasing per track. Recording ends once video reaches time limit.
+ * Format type is generic and there are no Android dependencies
+ * so synthetic encoded buffers can be replayed on plain JVM.
+ * Not thread safe.
+ */
+class ScreenRecordingMuxer<F> {
+    static final int SOURCE_VIDEO = 0;
+    static final int SOURCE_AUDIO = 1;
+
+    // same values as MediaCodec.BUFFER_FLAG_*
+    static final int FLAG_KEY_FRAME = 1;
+    static final int FLAG_CODEC_CONFIG = 2;
+    static final int FLAG_END_OF_STREAM = 4;
+
+    private static final long MAX_PENDING_BYTES = 8 * 1024 * 1024;
+
+    interface Sink<F> {
+        int addTrack(F format);
+        void start();
+        void writeSample(int track, ByteBuffer buffer, int offset, int size, long ptsUs, int flags);
+        void stop();
+    }
+
+    private static class PendingSample {
+        final int source;
+        final byte[] data;
+        final long ptsUs;
+        final int flags;
+        PendingSample(int source, byte[] data, long ptsUs, int flags) {
+            this.source = source;
+            this.data = data;
+            this.ptsUs = ptsUs;
+            this.flags = flags;
+        }
+    }
+
+    private final Sink<F> mSink;
+    private final int mSourceCount;
+    private final long mTimeLimitUs;
+    private final int[] mTracks;
+    private final long[] mLastPtsUs;
+    private final int[] mSampleCount;
+    private int mTrackCount;
+    private boolean mStarted;
+    private boolean mStopped;
+    private boolean mLimitReached;
+    private long mBasePtsUs = -1;
+
+    private final List<PendingSample> mPending = new ArrayList<>();
+    private long mPendingBytes;
+    private int mDroppedCount;
+
+    /**
+     * @param withAudio whether audio source is expected in addition to video
+     * @param timeLimitUs max duration of recording or 0 for no limit
+     */
+    ScreenRecordingMuxer(Sink<F> sink, boolean withAudio, long timeLimitUs) {
+        mSink = sink;
+        mSourceCount = withAudio ? 2 : 1;
+        mTimeLimitUs = timeLimitUs;
+        mTracks = new int[mSourceCount];
+        mLastPtsUs = new long[mSourceCount];
+        mSampleCount = new int[mSourceCount];
+        for (int i = 0; i < mSourceCount; i++) {
+            mTracks[i] = -1;
+            mLastPtsUs[i] = -1;
+        }
+    }
+
+    /**
+     * Registers output format of a source. Starts the sink once all sources are known.
+     */
+    void onFormat(int source, F format) {
+        if (mStarted || mStopped) {
+            throw new IllegalStateException("Format of source " + source + " changed after start");
+        }
+        if (mTracks[source] >= 0) {
+            throw new IllegalStateException("Format of source " + source + " already set");
+        }
+        mTracks[source] = mSink.addTrack(format);
+        if (++mTrackCount == mSourceCount) {
+            mSink.start();
+            mStarted = true;
+            for (PendingSample s : mPending) {
+                write(s.source, ByteBuffer.wrap(s.data), 0, s.data.length, s.ptsUs, s.flags);
+            }
+            mPending.clear();
+            mPendingBytes = 0;
+        }
+    }
+
+    /**
+     * Handles encoded sample. Buffer content is not retained after return.
+     * Returns true once time limit is reached and recording should stop.
+     */
+    boolean onSample(int source, ByteBuffer buffer, int offset, int size, long ptsUs, int flags) {
+        if ((flags & FLAG_CODEC_CONFIG) != 0 || size <= 0 || mStopped) {
+            // codec config is part of the format
+            return mLimitReached;
+        }
+        if (!mStarted) {
+            if (mPendingBytes + size > MAX_PENDING_BYTES) {
+                mDroppedCount++;
+                return mLimitReached;
+            }
+            byte[] data = new byte[size];
+            ByteBuffer src = buffer.duplicate();
+            src.position(offset);
+            src.get(data, 0, size);
+            mPending.add(new PendingSample(source, data, ptsUs, flags));
+            mPendingBytes += size;
+            return mLimitReached;
+        }
+        write(source, buffer, offset, size, ptsUs, flags);
+        return mLimitReached;
+    }
+
+    private void write(int source, ByteBuffer buffer, int offset, int size, long ptsUs, int flags) {
+        if (mLimitReached) return;
+
+        if (mBasePtsUs < 0) {
+            // audio before first video key frame and leading video delta frames can't be played
+            if (source != SOURCE_VIDEO || (flags & FLAG_KEY_FRAME) == 0) {
+                mDroppedCount++;
+                return;
+            }
+            mBasePtsUs = ptsUs;
+        }
+        if (ptsUs < mBasePtsUs) {
+            mDroppedCount++;
+            return;
+        }
+
+        long pts = ptsUs - mBasePtsUs;
+        if (source == SOURCE_VIDEO && mTimeLimitUs > 0 && pts >= mTimeLimitUs) {
+            mLimitReached = true;
+            return;
+        }
+        if (pts <= mLastPtsUs[source]) {
+            pts = mLastPtsUs[source] + 1;
+        }
+        mLastPtsUs[source] = pts;
+        mSampleCount[source]++;
+        mSink.writeSample(mTracks[source], buffer, offset, size, pts,
+                flags & ~(FLAG_END_OF_STREAM | FLAG_CODEC_CONFIG));
+    }
+
+    /**
+     * Stops the sink. Returns true if output contains any video.
+     */
+    boolean stop() {
+        if (mStopped) return mSampleCount[SOURCE_VIDEO] > 0;
+        mStopped = true;
+        mPending.clear();
+        if (mStarted) {
+            mSink.stop();
+        }
+        return mSampleCount[SOURCE_VIDEO] > 0;
+    }
+
+    boolean isStarted() {
+        return mStarted;
+    }
+
+    boolean isLimitReached() {
+        return mLimitReached;
+    }
+
+    int getSampleCount(int source) {
+        return source < mSourceCount ? mSampleCount[source] : 0;
+    }
+
+    int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * Duration of written video in us
+     */
+    long getDurationUs() {
+        return Math.max(0, mLastPtsUs[SOURCE_VIDEO]);
+    }
+}
@@ -32,13 +32,16 @@
 
 package com.ceco.r.gravitybox;
 
+import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Notification;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.graphics.drawable.Icon;
+import android.hardware.display.DisplayManager;
 import android.media.MediaScannerConnection;
 import android.os.Environment;
 import android.os.Handler;
@@ -46,22 +49,14 @@ import android.os.IBinder;
 import android.os.Message;
 import android.provider.Settings;
 import android.provider.Settings.SettingNotFoundException;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.Display;
 import android.widget.Toast;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 
 public class ScreenRecordingService extends Service {
@@ -69,8 +64,6 @@ public class ScreenRecordingService extends Service {
 
     private static final int SCREENRECORD_NOTIFICATION_ID = 3;
     private static final int MSG_TASK_ENDED = 1;
-    private static final int MSG_TASK_ERROR = 2;
-    private static final String TMP_PATH = Environment.getExternalStorageDirectory() + "/__tmp_screenrecord.mp4";
 
     public static final String ACTION_SCREEN_RECORDING_START = "gravitybox.intent.action.SCREEN_RECORDING_START";
     public static final String ACTION_SCREEN_RECORDING_STOP = "gravitybox.intent.action.SCREEN_RECORDING_STOP";
@@ -90,86 +83,9 @@ public class ScreenRecordingService extends Service {
     private int mRecordingStatus;
     private int mShowTouchesDefault = 0;
     private SharedPreferences mPrefs;
-    private boolean mUseStockBinary;
 
-    private CaptureThread mCaptureThread;
-
-    private class CaptureThread extends Thread {
-        public void run() {
-            try {
-                // Firstly, make sure we are able to get to pid field of ProcessImpl class
-                final Class<?> classProcImpl = Class.forName("java.lang.UNIXProcess");
-                final Field fieldPid = classProcImpl.getDeclaredField("pid");
-                fieldPid.setAccessible(true);
-
-                // choose screenrecord binary and prepare command
-                List<String> command = new ArrayList<>();
-                command.add(getBinaryPath());
-//                if (!mUseStockBinary && 
-//                        mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_SCREENRECORD_MICROPHONE, true)) {
-//                    command.add("--microphone");
-//                }
-                String prefVal = mPrefs.getString(GravityBoxSettings.PREF_KEY_SCREENRECORD_SIZE, "default");
-                if (!prefVal.equals("default")) {
-                    command.add("--size"); command.add(prefVal);
-                }
-                prefVal = String.valueOf(mPrefs.getInt(GravityBoxSettings.PREF_KEY_SCREENRECORD_BITRATE, 4)*1000000);
-                command.add("--bit-rate"); command.add(prefVal);
-                if (!mUseStockBinary) {
-                    prefVal = String.valueOf(mPrefs.getInt(GravityBoxSettings.PREF_KEY_SCREENRECORD_TIMELIMIT, 3)*60);
-                    command.add("--time-limit"); command.add(prefVal);
-                }
-                if (mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_SCREENRECORD_ROTATE, false)) {
-                    command.add("--rotate");
-                }
-
-                command.add(TMP_PATH);
-
-                // construct and start the process
-                ProcessBuilder pb = new ProcessBuilder();
-                pb.command(command);
-                pb.redirectErrorStream(true);
-                Process proc = pb.start();
-
-                // Get process PID to be used with native kill later
-                final int pid = fieldPid.getInt(proc);
-                Log.d(TAG, "Screenrecord PID = " + pid);
-
-                BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-
-                while (!isInterrupted()) {
-                    if (br.ready()) {
-                        Log.d(TAG, br.readLine());
-                    }
-
-                    try {
-                        int code = proc.exitValue();
-
-                        // If the recording is still running, we won't reach here,
-                        // but will land in the catch block below.
-                        Message msg = Message.obtain(mHandler, MSG_TASK_ENDED, code, 0, null);
-                        mHandler.sendMessage(msg);
-
-                        // No need to stop the process, so we can exit this method early
-                        return;
-                    } catch (IllegalThreadStateException ignore) {
-                        // ignored
-                    }
-                }
-
-                // Terminate the recording process
-                Runtime.getRuntime().exec(new String[]{ "kill", "-2", String.valueOf(pid) });
-            } catch (IOException | NoSuchFieldException | IllegalAccessException |
-                     IllegalArgumentException | ClassNotFoundException e) {
-                // Notify something went wrong
-                Message msg = Message.obtain(mHandler, MSG_TASK_ERROR, 0, 0, e.getMessage());
-                mHandler.sendMessage(msg);
-
-                // Log the error as well
-                Log.e(TAG, "Error while starting the screenrecord process", e);
-            }
-        }
-    }
+    private ScreenRecorder mRecorder;
+    private File mOutputFile;
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -186,14 +102,7 @@ public class ScreenRecordingService extends Service {
         mHandler = new Handler() {
             public void handleMessage(Message msg) {
                 if (msg.what == MSG_TASK_ENDED) {
-                    // The screenrecord process stopped, act as if user
-                    // requested the record to stop.
-                    stopScreenrecord();
-                } else if (msg.what == MSG_TASK_ERROR) {
-                    mCaptureThread = null;
-                    updateStatus(STATUS_ERROR, (String) msg.obj);
-                    Toast.makeText(ScreenRecordingService.this, 
-                            R.string.screenrecord_toast_error, Toast.LENGTH_SHORT).show();
+                    onRecordingFinished(msg.arg1 == 1, (String) msg.obj);
                 }
             }
         };
@@ -249,8 +158,8 @@ public class ScreenRecordingService extends Service {
 
     @Override
     public void onDestroy() {
-        if (isRecording()) {
-            stopScreenrecord();
+        if (mRecorder != null) {
+            mRecorder.stop();
         }
         super.onDestroy();
     }
@@ -311,23 +220,12 @@ public class ScreenRecordingService extends Service {
         // Exynos devices are currently known to have issues
         if (Utils.isExynosDevice()) {
             Log.e(TAG, "isScreenrecordSupported: screen recording not supported on Exynos devices");
+            return false;
         }
-        // check if screenrecord and kill binaries exist and are executable
-        File f = new File(getBinaryPath());
-        final boolean scrBinaryOk = f.exists() && f.canExecute();
-        if (!scrBinaryOk) {
-            Log.e(TAG, "isScreenrecordSupported: screenrecord binary doesn't exist or is not executable");
-        }
-        f = new File("/system/bin/kill");
-        final boolean killBinaryOk = f.exists() && f.canExecute();
-        if (!killBinaryOk) {
-            Log.e(TAG, "isScreenrecordSupported: kill binary doesn't exist or is not executable");
-        }
-        return (!Utils.isExynosDevice() && scrBinaryOk && killBinaryOk);
+        return true;
     }
 
     private void startScreenrecord() {
-        mUseStockBinary = true; //mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_SCREENRECORD_USE_STOCK, true);
         if (!isScreenrecordSupported()) {
             Log.e(TAG, "startScreenrecord: System does not support screen recording");
             Toast.makeText(this, "Your system does not support screen recording", Toast.LENGTH_SHORT).show();
@@ -343,6 +241,12 @@ public class ScreenRecordingService extends Service {
             return;
         }
 
+        mOutputFile = createOutputFile();
+        if (mOutputFile == null) {
+            Toast.makeText(this, R.string.screenrecord_toast_save_error, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
         try {
             mShowTouchesDefault = Settings.System.getInt(getContentResolver(),
                     ModHwKeys.SETTING_SHOW_TOUCHES);
@@ -352,9 +256,12 @@ public class ScreenRecordingService extends Service {
         } catch (SettingNotFoundException e) {
             //
         }
-        mCaptureThread = new CaptureThread();
-        mCaptureThread.start();
+
+        mRecorder = new ScreenRecorder(this, createRecorderConfig(), mOutputFile,
+                (success, error) -> mHandler.obtainMessage(MSG_TASK_ENDED,
+                        success ? 1 : 0, 0, error).sendToTarget());
         updateStatus(STATUS_RECORDING);
+        mRecorder.start();
     }
 
     private void stopScreenrecord() {
@@ -363,87 +270,85 @@ public class ScreenRecordingService extends Service {
             return;
         }
 
+        // recorder finalizes output file and reports back via MSG_TASK_ENDED
         updateStatus(STATUS_PROCESSING);
+        mRecorder.stop();
+    }
 
-        try {
-            mCaptureThread.interrupt();
-        } catch (Exception e) { /* ignore */ }
-
-        // Wait a bit for capture thread to finish
-        while (mCaptureThread.isAlive()) {
-            // wait...
-        }
-
-        // Give a second to screenrecord to process the file
-        mHandler.postDelayed(() -> {
-            mCaptureThread = null;
-
-            String fileName = "SCR_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".mp4";
-
-            File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-            if (!picturesDir.exists()) {
-                if (!picturesDir.mkdir()) {
-                    Log.e(TAG, "Cannot create Pictures directory");
-                    return;
-                }
-            }
-
-            File screenrecord = new File(picturesDir, "Screenrecord");
-            if (!screenrecord.exists()) {
-                if (!screenrecord.mkdir()) {
-                    Log.e(TAG, "Cannot create Screenrecord directory");
-                    return;
-                }
-            }
-
-            File input = new File(TMP_PATH);
-            final File output = new File(screenrecord, fileName);
+    private void onRecordingFinished(boolean success, String error) {
+        mRecorder = null;
+        final File output = mOutputFile;
+        mOutputFile = null;
 
-            Log.d(TAG, "Copying file to " + output.getAbsolutePath());
-
-            try {
-                copyFileUsingStream(input, output);
-                input.delete();
-                Toast.makeText(ScreenRecordingService.this,
-                        String.format(getString(R.string.screenrecord_toast_saved),
-                                output.getPath()), Toast.LENGTH_SHORT).show();
-            } catch (IOException e) {
-                Log.e(TAG, "Unable to copy output file", e);
-                Toast.makeText(ScreenRecordingService.this,
-                        R.string.screenrecord_toast_save_error, Toast.LENGTH_SHORT).show();
-            }
+        if (success) {
+            Toast.makeText(this, String.format(getString(R.string.screenrecord_toast_saved),
+                    output.getPath()), Toast.LENGTH_SHORT).show();
 
             // Make it appear in gallery, run MediaScanner
-            MediaScannerConnection.scanFile(ScreenRecordingService.this,
+            MediaScannerConnection.scanFile(this,
                 new String[] { output.getAbsolutePath() }, null,
                     (path, uri) -> Log.i(TAG, "MediaScanner done scanning " + path));
 
             updateStatus(STATUS_IDLE);
-        }, 3000);
-    }
-
-    private String getBinaryPath() {
-        return (mUseStockBinary ? "/system/bin/screenrecord" : Utils.getFilesDir(this) + "/screenrecord");
+        } else {
+            updateStatus(STATUS_ERROR, error);
+            Toast.makeText(this, R.string.screenrecord_toast_error, Toast.LENGTH_SHORT).show();
+        }
     }
 
-    private static void copyFileUsingStream(File source, File dest) throws IOException {
-        InputStream is = null;
-        OutputStream os = null;
-        try {
-            is = new FileInputStream(source);
-            os = new FileOutputStream(dest);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = is.read(buffer)) > 0) {
-                os.write(buffer, 0, length);
+    private File createOutputFile() {
+        File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        if (!picturesDir.exists()) {
+            if (!picturesDir.mkdir()) {
+                Log.e(TAG, "Cannot create Pictures directory");
+                return null;
             }
-        } finally {
-            if (is != null) {
-                is.close();
+        }
+
+        File screenrecord = new File(picturesDir, "Screenrecord");
+        if (!screenrecord.exists()) {
+            if (!screenrecord.mkdir()) {
+                Log.e(TAG, "Cannot create Screenrecord directory");
+                return null;
             }
-            if (os != null) {
-                os.close();
+        }
+
+        String fileName = "SCR_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".mp4";
+        return new File(screenrecord, fileName);
+    }
+
+    private ScreenRecorder.Config createRecorderConfig() {
+        Display display = getSystemService(DisplayManager.class).getDisplay(Display.DEFAULT_DISPLAY);
+        DisplayMetrics metrics = new DisplayMetrics();
+        display.getRealMetrics(metrics);
+
+        ScreenRecorder.Config config = new ScreenRecorder.Config();
+        config.width = metrics.widthPixels;
+        config.height = metrics.heightPixels;
+        config.densityDpi = metrics.densityDpi;
+
+        String prefVal = mPrefs.getString(GravityBoxSettings.PREF_KEY_SCREENRECORD_SIZE, "default");
+        if (!prefVal.equals("default")) {
+            try {
+                String[] size = prefVal.split("x");
+                int width = Integer.parseInt(size[0]);
+                int height = Integer.parseInt(size[1]);
+                // sizes are given for portrait; follow current orientation
+                final boolean landscape = metrics.widthPixels > metrics.heightPixels;
+                config.width = landscape ? height : width;
+                config.height = landscape ? width : height;
+            } catch (Exception e) {
+                Log.e(TAG, "Invalid video size: " + prefVal);
             }
         }
+
+        config.bitRate = mPrefs.getInt(GravityBoxSettings.PREF_KEY_SCREENRECORD_BITRATE, 4) * 1000000;
+        config.frameRate = mPrefs.getInt(GravityBoxSettings.PREF_KEY_SCREENRECORD_FRAMERATE, 30);
+        config.timeLimitMs = mPrefs.getInt(GravityBoxSettings.PREF_KEY_SCREENRECORD_TIMELIMIT, 3) * 60000L;
+        config.orientationHint = mPrefs.getBoolean(
+                GravityBoxSettings.PREF_KEY_SCREENRECORD_ROTATE, false) ? 90 : 0;
+        config.audio = mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_SCREENRECORD_MICROPHONE, false) &&
+                checkSelfPermission(Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
+        return config;
     }
 }
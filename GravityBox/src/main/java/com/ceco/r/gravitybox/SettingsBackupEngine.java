@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Copies settings files between app storage and backup folder.
+ * Work is done in background with several files being copied in parallel.
+ * Backup keeps a manifest with size and CRC32 of each entry which is used
+ * to skip unchanged files on subsequent backups and to verify data on restore.
+ * Restore stages and verifies all files first and only then renames them
+ * over the current ones. Current files are kept aside until every rename
+ * succeeds and are put back on failure so a partially restored set is never left.
+ */
+class SettingsBackupEngine {
+    private static final String TAG = "GB:SettingsBackupEngine";
+    private static final boolean DEBUG = false;
+    static final String MANIFEST_FILE_NAME = ".manifest";
+    private static final String TMP_SUFFIX = ".gbtmp";
+    private static final String OLD_SUFFIX = ".gbold";
+    private static final int COPY_THREADS = 3;
+
+    interface ProgressListener {
+        void onProgress(int done, int total);
+        void onFinished(boolean success);
+    }
+
+    static class Entry {
+        final File source;
+        final File target;
+        // path relative to backup root; used as manifest key
+        final String backupName;
+        final boolean worldReadable;
+
+        Entry(File source, File target, String backupName, boolean worldReadable) {
+            this.source = source;
+            this.target = target;
+            this.backupName = backupName;
+            this.worldReadable = worldReadable;
+        }
+    }
+
+    private static class Checksum {
+        final long size;
+        final long crc;
+
+        Checksum(long size, long crc) {
+            this.size = size;
+            this.crc = crc;
+        }
+
+        boolean matches(Checksum other) {
+            return other != null && size == other.size && crc == other.crc;
+        }
+    }
+
+    private final File mBackupDir;
+    private final Handler mHandler;
+
+    SettingsBackupEngine(File backupDir) {
+        mBackupDir = backupDir;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Backs up entries and creates completion flag file once all data
+     * including manifest has been written.
+     */
+    void backupAsync(final List<Entry> entries, final File completionFlag,
+                     final ProgressListener listener) {
+        new Thread(() -> {
+            boolean success;
+            try {
+                success = backup(entries, listener) &&
+                        (completionFlag.exists() || completionFlag.createNewFile());
+            } catch (Throwable t) {
+                Log.e(TAG, "Backup failed", t);
+                success = false;
+            }
+            postFinished(listener, success);
+        }, TAG).start();
+    }
+
+    void restoreAsync(final List<Entry> entries, final ProgressListener listener) {
+        new Thread(() -> {
+            boolean success;
+            try {
+                success = restore(entries, listener);
+            } catch (Throwable t) {
+                Log.e(TAG, "Restore failed", t);
+                success = false;
+            }
+            postFinished(listener, success);
+        }, TAG).start();
+    }
+
+    // when more entries share the same destination the last one wins
+    private static List<Entry> dedupe(List<Entry> entries, boolean byBackupName) {
+        Map<String, Entry> unique = new LinkedHashMap<>();
+        for (Entry e : entries) {
+            String key = byBackupName ? e.backupName : e.target.getAbsolutePath();
+            unique.remove(key);
+            unique.put(key, e);
+        }
+        return new ArrayList<>(unique.values());
+    }
+
+    private boolean backup(List<Entry> allEntries, ProgressListener listener) throws Exception {
+        final List<Entry> entries = dedupe(allEntries, true);
+        final Map<String, Checksum> oldManifest = readManifest();
+        final Map<String, Checksum> newManifest = new HashMap<>();
+        final AtomicInteger done = new AtomicInteger(0);
+        final int total = entries.size();
+
+        runParallel(entries, entry -> {
+            Checksum sum = checksum(entry.source);
+            if (sum.matches(oldManifest.get(entry.backupName)) &&
+                    entry.target.length() == sum.size) {
+                if (DEBUG) Log.d(TAG, "Unchanged, skipping: " + entry.backupName);
+            } else {
+                copyFile(entry.source, entry.target);
+            }
+            synchronized (newManifest) {
+                newManifest.put(entry.backupName, sum);
+            }
+            postProgress(listener, done.incrementAndGet(), total);
+        });
+
+        writeManifest(newManifest);
+        return true;
+    }
+
+    private boolean restore(List<Entry> allEntries, ProgressListener listener) throws Exception {
+        final List<Entry> entries = dedupe(allEntries, false);
+        final Map<String, Checksum> manifest = readManifest();
+        final AtomicInteger done = new AtomicInteger(0);
+        final int total = entries.size();
+        final List<File> staged = new ArrayList<>();
+
+        try {
+            // stage
+            runParallel(entries, entry -> {
+                File tmp = new File(entry.target.getPath() + TMP_SUFFIX);
+                synchronized (staged) {
+                    staged.add(tmp);
+                }
+                copyFile(entry.source, tmp);
+                Checksum expected = manifest.get(entry.backupName);
+                if (expected != null && !expected.matches(checksum(tmp))) {
+                    throw new IOException("Checksum mismatch: " + entry.backupName);
+                }
+                postProgress(listener, done.incrementAndGet(), total);
+            });
+
+            commit(entries);
+            staged.clear();
+            return true;
+        } finally {
+            for (File f : staged) {
+                if (f.exists()) f.delete();
+            }
+        }
+    }
+
+    private static void commit(List<Entry> entries) throws IOException {
+        final List<File> movedAside = new ArrayList<>();
+        final List<File> committed = new ArrayList<>();
+        boolean success = false;
+        try {
+            // keep current files aside so they can be put back
+            for (Entry entry : entries) {
+                if (!entry.target.exists()) continue;
+                File old = new File(entry.target.getPath() + OLD_SUFFIX);
+                if (old.exists()) old.delete();
+                if (!entry.target.renameTo(old)) {
+                    throw new IOException("Unable to rename " + entry.target + " to " + old);
+                }
+                movedAside.add(entry.target);
+            }
+
+            for (Entry entry : entries) {
+                File tmp = new File(entry.target.getPath() + TMP_SUFFIX);
+                if (entry.worldReadable) {
+                    tmp.setReadable(true, false);
+                }
+                if (!tmp.renameTo(entry.target)) {
+                    throw new IOException("Unable to rename " + tmp + " to " + entry.target);
+                }
+                committed.add(entry.target);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (File target : committed) {
+                    target.delete();
+                }
+            }
+            for (File target : movedAside) {
+                File old = new File(target.getPath() + OLD_SUFFIX);
+                if (success) {
+                    old.delete();
+                } else if (!old.renameTo(target)) {
+                    Log.e(TAG, "Unable to roll back " + target);
+                }
+            }
+        }
+    }
+
+    private interface EntryTask {
+        void run(Entry entry) throws IOException;
+    }
+
+    private void runParallel(List<Entry> entries, final EntryTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(COPY_THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>(entries.size());
+            for (final Entry entry : entries) {
+                futures.add(executor.submit(() -> {
+                    task.run(entry);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ?
+                            (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void copyFile(File source, File dest) throws IOException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(dest)) {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            final long size = inChannel.size();
+            long pos = 0;
+            while (pos < size) {
+                long count = inChannel.transferTo(pos, size - pos, outChannel);
+                if (count <= 0) {
+                    throw new IOException("Source truncated while copying: " + source);
+                }
+                pos += count;
+            }
+            outChannel.force(true);
+        }
+    }
+
+    private static Checksum checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        byte[] buf = new byte[65536];
+        try (InputStream in = new FileInputStream(file)) {
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                crc.update(buf, 0, len);
+                size += len;
+            }
+        }
+        return new Checksum(size, crc.getValue());
+    }
+
+    private Map<String, Checksum> readManifest() {
+        Map<String, Checksum> manifest = new HashMap<>();
+        File file = new File(mBackupDir, MANIFEST_FILE_NAME);
+        if (!file.exists()) return manifest;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length == 3) {
+                    manifest.put(parts[0], new Checksum(
+                            Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "Error reading manifest: " + e.getMessage());
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Map<String, Checksum> manifest) throws IOException {
+        File file = new File(mBackupDir, MANIFEST_FILE_NAME);
+        File tmp = new File(mBackupDir, MANIFEST_FILE_NAME + TMP_SUFFIX);
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             PrintWriter writer = new PrintWriter(fos)) {
+            for (Map.Entry<String, Checksum> e : manifest.entrySet()) {
+                writer.print(e.getKey());
+                writer.print('\t');
+                writer.print(e.getValue().size);
+                writer.print('\t');
+                writer.println(e.getValue().crc);
+            }
+            writer.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to write manifest");
+        }
+    }
+
+    private void postProgress(final ProgressListener listener, final int done, final int total) {
+        if (listener != null) {
+            mHandler.post(() -> listener.onProgress(done, total));
+        }
+    }
+
+    private void postFinished(final ProgressListener listener, final boolean success) {
+        if (listener != null) {
+            mHandler.post(() -> listener.onFinished(success));
+        }
+    }
+}
@@ -43,6 +43,10 @@ public class SettingsManager {
     private static final String O_PREFERENCES = "com.ceco.oreo.gravitybox_preferences.xml";
     private static final String P_PREFERENCES = "com.ceco.pie.gravitybox_preferences.xml";
     private static final String Q_PREFERENCES = "com.ceco.q.gravitybox_preferences.xml";
+    // ordered from newest to oldest
+    private static final String[] LEGACY_PREFERENCES = new String[] {
+            Q_PREFERENCES, P_PREFERENCES, O_PREFERENCES, N_PREFERENCES, MM_PREFERENCES, LP_PREFERENCES
+    };
 
     public interface FileObserverListener {
         void onFileUpdated(String path);
@@ -104,7 +108,18 @@ public class SettingsManager {
         return mInstance;
     }
 
-    public boolean backupSettings() {
+    private String[] getPrefsFileNames() {
+        return new String[] {
+                mContext.getPackageName() + "_preferences.xml",
+                "ledcontrol.xml",
+                "quiet_hours.xml",
+                "tuner.xml",
+                "navbar_custom_key_image",
+                "lockwallpaper"
+        };
+    }
+
+    public boolean backupSettings(final SettingsBackupEngine.ProgressListener listener) {
         if (mContext.checkSelfPermission(permission.READ_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED ||
                 mContext.checkSelfPermission(permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
             Toast.makeText(mContext, R.string.permission_storage_denied, Toast.LENGTH_SHORT).show();
@@ -134,27 +149,16 @@ public class SettingsManager {
             backupOkFlagFile.delete();
         }
 
+        List<SettingsBackupEngine.Entry> entries = new ArrayList<>();
+
         // preferences
-        String[] prefsFileNames = new String[] { 
-                mContext.getPackageName() + "_preferences.xml",
-                "ledcontrol.xml",
-                "quiet_hours.xml",
-                "tuner.xml",
-                "navbar_custom_key_image",
-                "lockwallpaper"
-        };
+        String[] prefsFileNames = getPrefsFileNames();
         for (String prefsFileName : prefsFileNames) {
             File prefsFile = new File(getPreferenceDir(), prefsFileName);
             if (prefsFile.exists()) {
-                String bupPath = prefsFileName.endsWith(".xml") ? BACKUP_PATH : BACKUP_PATH + "/files";
-                File prefsDestFile = new File(bupPath, prefsFileName);
-                try {
-                    Utils.copyFile(prefsFile, prefsDestFile);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                    return false;
-                }
+                String bupName = prefsFileName.endsWith(".xml") ? prefsFileName : "files/" + prefsFileName;
+                entries.add(new SettingsBackupEngine.Entry(prefsFile,
+                        new File(BACKUP_PATH, bupName), bupName, false));
             } else if (prefsFileName.equals(prefsFileNames[0])) {
                 // normally, this should never happen
                 Toast.makeText(mContext, R.string.settings_backup_no_prefs, Toast.LENGTH_LONG).show();
@@ -163,49 +167,43 @@ public class SettingsManager {
         }
 
         // app picker
-        String appPickerFilesDirPath = BACKUP_PATH + "/files/app_picker";
         File sourceDir = new File(getPreferenceDir() + "/app_picker");
         File[] appPickerfileList = sourceDir.listFiles();
         if (appPickerfileList != null) {
             for (File apf : appPickerfileList) {
-                File outFile = new File(appPickerFilesDirPath, apf.getName());
-                try {
-                    Utils.copyFile(apf, outFile);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                    return false;
-                }
+                String bupName = "files/app_picker/" + apf.getName();
+                entries.add(new SettingsBackupEngine.Entry(apf,
+                        new File(BACKUP_PATH, bupName), bupName, false));
             }
         }
 
         // other files
-        String targetFilesDirPath = BACKUP_PATH + "/files";
         File[] fileList = mContext.getFilesDir().listFiles();
         if (fileList != null) {
             for (File f : fileList) {
                 if (f.isFile()) {
-                    File outFile = new File(targetFilesDirPath, f.getName());
-                    try {
-                        Utils.copyFile(f, outFile);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-                        return false;
-                    }
+                    String bupName = "files/" + f.getName();
+                    entries.add(new SettingsBackupEngine.Entry(f,
+                            new File(BACKUP_PATH, bupName), bupName, false));
                 }
             }
         }
 
-        try {
-            backupOkFlagFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Toast.makeText(mContext, R.string.settings_backup_failed, Toast.LENGTH_LONG).show();
-            return false;
-        }
-       
-        Toast.makeText(mContext, R.string.settings_backup_success, Toast.LENGTH_SHORT).show();
+        new SettingsBackupEngine(new File(BACKUP_PATH)).backupAsync(entries, backupOkFlagFile,
+                new SettingsBackupEngine.ProgressListener() {
+                    @Override
+                    public void onProgress(int done, int total) {
+                        if (listener != null) listener.onProgress(done, total);
+                    }
+
+                    @Override
+                    public void onFinished(boolean success) {
+                        Toast.makeText(mContext, success ? R.string.settings_backup_success :
+                                R.string.settings_backup_failed,
+                                success ? Toast.LENGTH_SHORT : Toast.LENGTH_LONG).show();
+                        if (listener != null) listener.onFinished(success);
+                    }
+                });
         return true;
     }
 
@@ -221,7 +219,7 @@ public class SettingsManager {
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
     @SuppressLint("SetWorldReadable")
-    public boolean restoreSettings() {
+    public boolean restoreSettings(final SettingsBackupEngine.ProgressListener listener) {
         if (mContext.checkSelfPermission(permission.READ_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED ||
                 mContext.checkSelfPermission(permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
             Toast.makeText(mContext, R.string.permission_storage_denied, Toast.LENGTH_SHORT).show();
@@ -239,46 +237,23 @@ public class SettingsManager {
             new File(mContext.getFilesDir() + "/" + uuid).createNewFile();
         } catch (IOException e) { /* ignore */ }
 
+        List<SettingsBackupEngine.Entry> entries = new ArrayList<>();
+
         // preferences
-        String[] prefsFileNames = new String[] { 
-                mContext.getPackageName() + "_preferences.xml",
-                "ledcontrol.xml",
-                "quiet_hours.xml",
-                "tuner.xml",
-                "navbar_custom_key_image",
-                "lockwallpaper"
-        };
+        String[] prefsFileNames = getPrefsFileNames();
         for (String prefsFileName : prefsFileNames) {
-            String bupPath = prefsFileName.endsWith(".xml") ? BACKUP_PATH : BACKUP_PATH + "/files";
-            File prefsFile = new File(bupPath, prefsFileName);
-            // try Q preferences if no R prefs file exists
-            if (prefsFileName.equals(prefsFileNames[0]) && !prefsFile.exists())
-                prefsFile = new File(bupPath, Q_PREFERENCES);
-            // try P preferences if no Q prefs file exists
-            if (prefsFileName.equals(prefsFileNames[0]) && !prefsFile.exists())
-                prefsFile = new File(bupPath, P_PREFERENCES);
-            // try O preferences if no P prefs file exists
-            if (prefsFileName.equals(prefsFileNames[0]) && !prefsFile.exists())
-                prefsFile = new File(bupPath, O_PREFERENCES);
-            // try N preferences if no O prefs file exists
-            if (prefsFileName.equals(prefsFileNames[0]) && !prefsFile.exists())
-                prefsFile = new File(bupPath, N_PREFERENCES);
-            // try MM preferences if no N prefs file exists
-            if (prefsFileName.equals(prefsFileNames[0]) && !prefsFile.exists())
-                prefsFile = new File(bupPath, MM_PREFERENCES);
-            // try LP preferences if no MM prefs file exists
-            if (prefsFileName.equals(prefsFileNames[0]) && !prefsFile.exists())
-                prefsFile = new File(bupPath, LP_PREFERENCES);
-            if (prefsFile.exists()) {
-                File prefsDestFile = new File(getPreferenceDir(), prefsFileName);
-                try {
-                    Utils.copyFile(prefsFile, prefsDestFile);
-                    prefsDestFile.setReadable(true, false);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(mContext, R.string.settings_restore_failed, Toast.LENGTH_LONG).show();
-                    return false;
+            String bupName = prefsFileName.endsWith(".xml") ? prefsFileName : "files/" + prefsFileName;
+            File prefsFile = new File(BACKUP_PATH, bupName);
+            // try preferences of older versions if no current prefs file exists
+            if (prefsFileName.equals(prefsFileNames[0])) {
+                for (int i = 0; i < LEGACY_PREFERENCES.length && !prefsFile.exists(); i++) {
+                    bupName = LEGACY_PREFERENCES[i];
+                    prefsFile = new File(BACKUP_PATH, bupName);
                 }
+            }
+            if (prefsFile.exists()) {
+                entries.add(new SettingsBackupEngine.Entry(prefsFile,
+                        new File(getPreferenceDir(), prefsFileName), bupName, true));
             } else if (prefsFileName.equals(prefsFileNames[0])) {
                 Toast.makeText(mContext, R.string.settings_restore_no_backup, Toast.LENGTH_SHORT).show();
                 return false;
@@ -298,15 +273,9 @@ public class SettingsManager {
         File[] appPickerfileList = sourceDir.listFiles();
         if (appPickerfileList != null) {
             for (File apf : appPickerfileList) {
-                File outFile = new File(appPickerFilesDirPath, apf.getName());
-                try {
-                    Utils.copyFile(apf, outFile);
-                    outFile.setReadable(true, false);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(mContext, R.string.settings_restore_failed, Toast.LENGTH_LONG).show();
-                    return true;
-                }
+                entries.add(new SettingsBackupEngine.Entry(apf,
+                        new File(appPickerFilesDirPath, apf.getName()),
+                        "files/app_picker/" + apf.getName(), true));
             }
         }
 
@@ -323,20 +292,28 @@ public class SettingsManager {
         if (fileList != null) {
             for (File f : fileList) {
                 if (f.isFile()) {
-                    File outFile = new File(targetFilesDirPath + "/" + f.getName());
-                    try {
-                        Utils.copyFile(f, outFile);
-                        outFile.setReadable(true, false);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        Toast.makeText(mContext, R.string.settings_restore_failed, Toast.LENGTH_LONG).show();
-                        return false;
-                    }
+                    entries.add(new SettingsBackupEngine.Entry(f,
+                            new File(targetFilesDirPath, f.getName()),
+                            "files/" + f.getName(), true));
                 }
             }
         }
 
-        Toast.makeText(mContext, R.string.settings_restore_success, Toast.LENGTH_SHORT).show();
+        new SettingsBackupEngine(new File(BACKUP_PATH)).restoreAsync(entries,
+                new SettingsBackupEngine.ProgressListener() {
+                    @Override
+                    public void onProgress(int done, int total) {
+                        if (listener != null) listener.onProgress(done, total);
+                    }
+
+                    @Override
+                    public void onFinished(boolean success) {
+                        Toast.makeText(mContext, success ? R.string.settings_restore_success :
+                                R.string.settings_restore_failed,
+                                success ? Toast.LENGTH_SHORT : Toast.LENGTH_LONG).show();
+                        if (listener != null) listener.onFinished(success);
+                    }
+                });
         return true;
     }
 
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.util.Locale;
+
+/**
+ * Decides when a requested radio state gets applied.
+ * A request is applied only after hysteresis window passes without being
+ * overridden by an opposite request, and not before current state has been
+ * held for minimum dwell time. Decisions are kept in a small ring buffer.
+ * Timing is delegated to a Timer and there are no Android dependencies
+ * so synthetic event timelines can be replayed on plain JVM.
+ * Not thread safe; all calls are expected to come from a single thread.
+ */
+class SmartRadioScheduler<S> {
+    private static final int LOG_SIZE = 32;
+
+    interface Timer {
+        long now();
+        void postDelayed(Runnable r, long delayMs);
+        void removeCallbacks(Runnable r);
+    }
+
+    interface Listener<S> {
+        void onApplyState(S state, String reason);
+    }
+
+    private static class LogEntry {
+        long time;
+        Object state;
+        String reason;
+        String decision;
+    }
+
+    private final Timer mTimer;
+    private final Listener<S> mListener;
+    private long mHysteresisMs;
+    private long mMinDwellMs;
+
+    private S mCurrentState;
+    private long mCurrentStateSince;
+    private S mPendingState;
+    private String mPendingReason;
+
+    private final LogEntry[] mLog = new LogEntry[LOG_SIZE];
+    private int mLogNext;
+    private int mLogCount;
+
+    SmartRadioScheduler(Timer timer, Listener<S> listener) {
+        mTimer = timer;
+        mListener = listener;
+        for (int i = 0; i < LOG_SIZE; i++) {
+            mLog[i] = new LogEntry();
+        }
+    }
+
+    void setHysteresisMs(long hysteresisMs) {
+        mHysteresisMs = Math.max(0, hysteresisMs);
+    }
+
+    void setMinDwellMs(long minDwellMs) {
+        mMinDwellMs = Math.max(0, minDwellMs);
+    }
+
+    S getCurrentState() {
+        return mCurrentState;
+    }
+
+    S getPendingState() {
+        return mPendingState;
+    }
+
+    /**
+     * Requests switch to given state.
+     * With force set, state is re-applied even if it's already current.
+     */
+    void request(S state, boolean force, String reason) {
+        request(state, force, false, reason);
+    }
+
+    /**
+     * Requests switch to given state.
+     * With skipHysteresis set, only minimum dwell time is honored; meant for
+     * switches that are not a result of flapping and are delayed by other means.
+     */
+    void request(S state, boolean force, boolean skipHysteresis, String reason) {
+        final long now = mTimer.now();
+
+        if (mPendingState != null) {
+            if (mPendingState.equals(state) && !skipHysteresis) {
+                // keep original deadline so that repeated requests don't postpone it
+                return;
+            }
+            mTimer.removeCallbacks(mApplyRunnable);
+            record(now, mPendingState, reason, "cancelled");
+            mPendingState = null;
+            mPendingReason = null;
+        }
+
+        if (!force && state.equals(mCurrentState)) {
+            return;
+        }
+
+        long delay = skipHysteresis ? 0 : mHysteresisMs;
+        if (mCurrentState != null && !state.equals(mCurrentState)) {
+            delay = Math.max(delay, mCurrentStateSince + mMinDwellMs - now);
+        }
+
+        if (delay <= 0) {
+            apply(state, reason, now);
+        } else {
+            mPendingState = state;
+            mPendingReason = reason;
+            mTimer.postDelayed(mApplyRunnable, delay);
+            record(now, state, reason, "scheduled in " + delay + "ms");
+        }
+    }
+
+    void cancel(String reason) {
+        if (mPendingState != null) {
+            mTimer.removeCallbacks(mApplyRunnable);
+            record(mTimer.now(), mPendingState, reason, "cancelled");
+            mPendingState = null;
+            mPendingReason = null;
+        }
+    }
+
+    private final Runnable mApplyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            S state = mPendingState;
+            String reason = mPendingReason;
+            mPendingState = null;
+            mPendingReason = null;
+            if (state != null) {
+                apply(state, reason, mTimer.now());
+            }
+        }
+    };
+
+    private void apply(S state, String reason, long now) {
+        if (!state.equals(mCurrentState)) {
+            mCurrentStateSince = now;
+        }
+        mCurrentState = state;
+        record(now, state, reason, "applied");
+        mListener.onApplyState(state, reason);
+    }
+
+    private void record(long time, Object state, String reason, String decision) {
+        LogEntry e = mLog[mLogNext];
+        e.time = time;
+        e.state = state;
+        e.reason = reason;
+        e.decision = decision;
+        mLogNext = (mLogNext + 1) % LOG_SIZE;
+        if (mLogCount < LOG_SIZE) mLogCount++;
+    }
+
+    /**
+     * Returns recorded decisions, oldest first, with times relative to now.
+     */
+    String dump() {
+        final long now = mTimer.now();
+        StringBuilder sb = new StringBuilder();
+        sb.append("current=").append(mCurrentState)
+          .append("; pending=").append(mPendingState)
+          .append("; hysteresis=").append(mHysteresisMs)
+          .append("ms; minDwell=").append(mMinDwellMs).append("ms");
+        int start = (mLogNext - mLogCount + LOG_SIZE) % LOG_SIZE;
+        for (int i = 0; i < mLogCount; i++) {
+            LogEntry e = mLog[(start + i) % LOG_SIZE];
+            sb.append('\n').append(String.format(Locale.US, "%8.1fs ", (e.time - now) / 1000f))
+              .append(e.state).append(": ").append(e.decision)
+              .append(" (").append(e.reason).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -20,6 +20,7 @@ import de.robv.android.xposed.XSharedPreferences;
 import com.ceco.r.gravitybox.ModStatusBar.ContainerType;
 import com.ceco.r.gravitybox.managers.SysUiStatusBarIconManager;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
+import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryData;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryStatusListener;
 import com.ceco.r.gravitybox.managers.SysUiStatusBarIconManager.ColorInfo;
@@ -72,7 +73,8 @@ public class StatusbarBatteryPercentage implements IconManagerListener, BatteryS
             SysUiManagers.IconManager.registerListener(this);
         }
         if (SysUiManagers.BatteryInfoManager != null) {
-            SysUiManagers.BatteryInfoManager.registerListener(this);
+            SysUiManagers.BatteryInfoManager.registerListener(this,
+                    SysUiBatteryInfoManager.FIELD_LEVEL | SysUiBatteryInfoManager.FIELD_CHARGING);
         }
     }
 
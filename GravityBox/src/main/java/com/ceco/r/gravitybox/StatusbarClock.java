@@ -29,7 +29,6 @@ import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
 import de.robv.android.xposed.XposedHelpers;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
@@ -62,8 +61,14 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
     private float mDowSize;
     private float mAmPmSize;
     private boolean mShowSeconds;
-    private SimpleDateFormat mSecondsFormat;
-    private Handler mSecondsHandler;
+    private Handler mSecondsHandler = new Handler();
+    private boolean mScreenOn = true;
+    private ClockTemplate mTemplate;
+    private final SpannableStringBuilder mClockText = new SpannableStringBuilder();
+    private boolean mClockTextDirty = true;
+    private int mLastPrefixLength;
+    private int mLastAmPmStart;
+    private int mLastAmPmEnd;
     private List<Unhook> mHooks = new ArrayList<>();
     private Map<ClockPosition, ClockPositionInfo> mPositions;
     private ClockPosition mCurrentPosition = ClockPosition.DEFAULT;
@@ -153,6 +158,8 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
         mClock.addOnAttachStateChangeListener(new OnAttachStateChangeListener() {
             @Override
             public void onViewAttachedToWindow(View v) {
+                mScreenOn = mClock.getDisplay() == null ||
+                        mClock.getDisplay().getState() == Display.STATE_ON;
                 updateSecondsHandler();
             }
             @Override
@@ -199,33 +206,36 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
         }
     }
 
+    /**
+     * Runs second tick only while it can be seen:
+     * seconds enabled, clock attached and visible and screen on.
+     * Minute updates are driven by SystemUI clock itself.
+     */
     private void updateSecondsHandler() {
-        if (mClock == null) return;
+        if (mSecondsHandler == null) return;
 
-        if (mShowSeconds && mClock.getDisplay() != null) {
-            mSecondsHandler = new Handler();
-            if (mClock.getDisplay().getState() == Display.STATE_ON && !mClockHidden) {
-                mSecondsHandler.postAtTime(mSecondTick,
-                        SystemClock.uptimeMillis() / 1000 * 1000 + 1000);
-            }
-        } else if (mSecondsHandler != null) {
-            mSecondsHandler.removeCallbacks(mSecondTick);
-            mSecondsHandler = null;
-            updateClock();
+        mSecondsHandler.removeCallbacks(mSecondTick);
+        if (mClock != null && mShowSeconds && mScreenOn && !mClockHidden &&
+                mClock.isAttachedToWindow() && mClock.getVisibility() == View.VISIBLE) {
+            scheduleSecondTick();
         }
     }
 
+    private void scheduleSecondTick() {
+        // align with wall clock second boundary as seconds displayed are wall clock based
+        final long delay = 1000 - System.currentTimeMillis() % 1000;
+        mSecondsHandler.postAtTime(mSecondTick, SystemClock.uptimeMillis() + delay);
+    }
+
+    private void invalidateTemplate() {
+        mTemplate = null;
+        mClockTextDirty = true;
+    }
+
     public void setClockVisibility(boolean show) {
         if (mClock != null) {
             mClock.setVisibility(show && !mClockHidden ? View.VISIBLE : View.GONE);
-            if (mClock.getVisibility() == View.VISIBLE) { 
-                if (mSecondsHandler != null) {
-                    mSecondsHandler.postAtTime(mSecondTick,
-                            SystemClock.uptimeMillis() / 1000 * 1000 + 1000);
-                }
-            } else if (mSecondsHandler != null) {
-                mSecondsHandler.removeCallbacks(mSecondTick);
-            }
+            updateSecondsHandler();
         }
     }
 
@@ -236,7 +246,6 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
     private void hookGetSmallTime() {
         try {
             mHooks.add(XposedHelpers.findAndHookMethod(mClock.getClass(), "getSmallTime", new XC_MethodHook() {
-                @SuppressLint("SimpleDateFormat")
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
                     // is this a status bar Clock instance?
@@ -251,20 +260,14 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
                         }
                         return;
                     }
+                    if (isStatusbarClock) {
+                        param.setResult(getStatusbarClockText());
+                        return;
+                    }
                     Calendar calendar = Calendar.getInstance(TimeZone.getDefault());
                     boolean is24 = DateFormat.is24HourFormat(mClock.getContext());
                     String clockText = param.getResult().toString();
                     if (DEBUG) log("Original clockText: '" + clockText + "'");
-                    // generate fresh base time text if seconds enabled
-                    if (mShowSeconds && isStatusbarClock) {
-                        if (mSecondsFormat == null) {
-                            mSecondsFormat = new SimpleDateFormat(
-                                    DateFormat.getBestDateTimePattern(
-                                    Locale.getDefault(), is24 ? "Hms" : "hms"));
-                        }
-                        clockText = mSecondsFormat.format(calendar.getTime());
-                        if (DEBUG) log("New clock text with seconds: " + clockText);
-                    }
                     String amPm = calendar.getDisplayName(
                             Calendar.AM_PM, Calendar.SHORT, Locale.getDefault());
                     if (DEBUG) log("Locale specific AM/PM string: '" + amPm + "'");
@@ -284,35 +287,18 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
                         amPmIndex = clockText.indexOf(amPm);
                         if (DEBUG) log("AM/PM added. New clockText: '" + clockText + "'; New AM/PM index: " + amPmIndex);
                     }
-                    CharSequence date = "";
-                    // apply date to statusbar clock, not the notification panel clock
-                    if (!mClockShowDate.equals("disabled") && isStatusbarClock) {
-                        SimpleDateFormat df = (SimpleDateFormat) SimpleDateFormat.getDateInstance(SimpleDateFormat.SHORT);
-                        String pattern = mClockShowDate.equals("localized") ?
-                                df.toLocalizedPattern().replaceAll(".?[Yy].?", "") : mClockShowDate;
-                        date = new SimpleDateFormat(pattern, Locale.getDefault()).format(calendar.getTime()) + " ";
-                    }
-                    clockText = date + clockText;
-                    CharSequence dow = "";
-                    // apply day of week only to statusbar clock, not the notification panel clock
-                    if (mClockShowDow != GravityBoxSettings.DOW_DISABLED && isStatusbarClock) {
-                        dow = getFormattedDow(calendar.getDisplayName(
-                                Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.getDefault())) + " ";
-                    }
-                    clockText = dow + clockText;
+                    // day of week and date apply only to statusbar clock, not the notification panel clock
                     SpannableStringBuilder sb = new SpannableStringBuilder(clockText);
-                    sb.setSpan(new RelativeSizeSpan(mDowSize), 0, dow.length() + date.length(),
-                            Spannable.SPAN_EXCLUSIVE_INCLUSIVE);
                     if (amPmIndex > -1) {
                         if(Locale.getDefault().equals(Locale.TAIWAN) || Locale.getDefault().equals(Locale.CHINA)) {
-                            sb.setSpan(new RelativeSizeSpan(mAmPmSize), dow.length() + date.length() + amPmIndex,
-                                    dow.length() + date.length() + amPmIndex + amPm.length(),
+                            sb.setSpan(new RelativeSizeSpan(mAmPmSize), amPmIndex,
+                                    amPmIndex + amPm.length(),
                                     Spannable.SPAN_EXCLUSIVE_INCLUSIVE);
                         } else {
-                            int offset = Character.isWhitespace(clockText.charAt(dow.length() + date.length() + amPmIndex - 1)) ?
+                            int offset = amPmIndex > 0 && Character.isWhitespace(clockText.charAt(amPmIndex - 1)) ?
                                     1 : 0;
-                            sb.setSpan(new RelativeSizeSpan(mAmPmSize), dow.length() + date.length() + amPmIndex - offset,
-                                    dow.length() + date.length() + amPmIndex + amPm.length(),
+                            sb.setSpan(new RelativeSizeSpan(mAmPmSize), amPmIndex - offset,
+                                    amPmIndex + amPm.length(),
                                     Spannable.SPAN_EXCLUSIVE_INCLUSIVE);
                         }
                     }
@@ -325,23 +311,66 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
         }
     }
 
-    private String getFormattedDow(String inDow) {
-        switch (mClockShowDow) {
-            case GravityBoxSettings.DOW_LOWERCASE: 
-                return inDow.toLowerCase(Locale.getDefault());
-            case GravityBoxSettings.DOW_UPPERCASE:
-                return inDow.toUpperCase(Locale.getDefault());
-            case GravityBoxSettings.DOW_STANDARD:
-            default: return inDow;
+    private ClockTemplate createTemplate() {
+        final Locale locale = Locale.getDefault();
+        final boolean is24 = DateFormat.is24HourFormat(mClock.getContext());
+        final String timePattern = DateFormat.getBestDateTimePattern(locale,
+                is24 ? (mShowSeconds ? "Hms" : "Hm") : (mShowSeconds ? "hms" : "hm"));
+        String datePattern = null;
+        if (!mClockShowDate.equals("disabled")) {
+            SimpleDateFormat df = (SimpleDateFormat) SimpleDateFormat.getDateInstance(SimpleDateFormat.SHORT);
+            datePattern = mClockShowDate.equals("localized") ?
+                    df.toLocalizedPattern().replaceAll(".?[Yy].?", "") : mClockShowDate;
         }
+        if (DEBUG) log("createTemplate: timePattern='" + timePattern + "'; datePattern='" + datePattern + "'");
+        // DOW modes of template match GravityBoxSettings.DOW_*
+        return new ClockTemplate(locale, TimeZone.getDefault(), timePattern, is24,
+                mAmPmHide, datePattern, mClockShowDow);
+    }
+
+    private CharSequence getStatusbarClockText() {
+        if (mTemplate == null) {
+            mTemplate = createTemplate();
+        }
+        final CharSequence text = mTemplate.format(System.currentTimeMillis());
+        final int prefixLength = mTemplate.getPrefixLength();
+        final int amPmStart = mTemplate.getAmPmStart();
+        final int amPmEnd = mTemplate.getAmPmEnd();
+
+        // TextView makes its own copy so it's safe to keep updating the same builder
+        if (mClockTextDirty || text.length() != mClockText.length() ||
+                prefixLength != mLastPrefixLength || amPmStart != mLastAmPmStart ||
+                amPmEnd != mLastAmPmEnd) {
+            mClockText.clearSpans();
+            mClockText.replace(0, mClockText.length(), text);
+            if (prefixLength > 0) {
+                mClockText.setSpan(new RelativeSizeSpan(mDowSize), 0, prefixLength,
+                        Spannable.SPAN_EXCLUSIVE_INCLUSIVE);
+            }
+            if (amPmStart > -1) {
+                mClockText.setSpan(new RelativeSizeSpan(mAmPmSize), amPmStart, amPmEnd,
+                        Spannable.SPAN_EXCLUSIVE_INCLUSIVE);
+            }
+            mLastPrefixLength = prefixLength;
+            mLastAmPmStart = amPmStart;
+            mLastAmPmEnd = amPmEnd;
+            mClockTextDirty = false;
+        } else {
+            // only changed characters are written; spans stay in place
+            for (int i = 0; i < text.length(); i++) {
+                if (mClockText.charAt(i) != text.charAt(i)) {
+                    mClockText.replace(i, i + 1, text, i, i + 1);
+                }
+            }
+        }
+        if (DEBUG) log("Final clockText: '" + mClockText + "'");
+        return mClockText;
     }
 
     public void destroy() {
         SysUiManagers.BroadcastMediator.unsubscribe(this);
-        if (mSecondsHandler != null) {
-            mSecondsHandler.removeCallbacksAndMessages(null);
-            mSecondsHandler = null;
-        }
+        mSecondsHandler.removeCallbacksAndMessages(null);
+        mSecondsHandler = null;
         for (Unhook hook : mHooks) {
             hook.unhook();
         }
@@ -357,7 +386,7 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
         public void run() {
             updateClock();
             if (mSecondsHandler != null) {
-                mSecondsHandler.postAtTime(this, SystemClock.uptimeMillis() / 1000 * 1000 + 1000);
+                scheduleSecondTick();
             }
         }
     };
@@ -368,10 +397,12 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_CLOCK_DOW)) {
                 mClockShowDow = intent.getIntExtra(GravityBoxSettings.EXTRA_CLOCK_DOW,
                         GravityBoxSettings.DOW_DISABLED);
+                invalidateTemplate();
                 updateClock();
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_AMPM_HIDE)) {
                 mAmPmHide = intent.getBooleanExtra(GravityBoxSettings.EXTRA_AMPM_HIDE, false);
+                invalidateTemplate();
                 updateClock();
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_CLOCK_HIDE)) {
@@ -381,36 +412,39 @@ public class StatusbarClock implements BroadcastMediator.Receiver {
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_CLOCK_DOW_SIZE)) {
                 mDowSize = intent.getIntExtra(GravityBoxSettings.EXTRA_CLOCK_DOW_SIZE, 70) / 100f;
+                mClockTextDirty = true;
                 updateClock();
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_AMPM_SIZE)) {
                 mAmPmSize = intent.getIntExtra(GravityBoxSettings.EXTRA_AMPM_SIZE, 70) / 100f;
+                mClockTextDirty = true;
                 updateClock();
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_CLOCK_DATE)) {
                 mClockShowDate = intent.getStringExtra(GravityBoxSettings.EXTRA_CLOCK_DATE);
+                invalidateTemplate();
                 updateClock();
             }
             if (intent.hasExtra(GravityBoxSettings.EXTRA_CLOCK_SHOW_SECONDS)) {
                 mShowSeconds = intent.getBooleanExtra(GravityBoxSettings.EXTRA_CLOCK_SHOW_SECONDS, false);
+                invalidateTemplate();
                 updateSecondsHandler();
+                updateClock();
             }
         }
         if (intent.getAction().equals(Intent.ACTION_SCREEN_ON)) {
-            if (mSecondsHandler != null && !mClockHidden) {
-                mSecondsHandler.postAtTime(mSecondTick,
-                        SystemClock.uptimeMillis() / 1000 * 1000 + 1000);
-            }
+            mScreenOn = true;
+            updateSecondsHandler();
         }
         if (intent.getAction().equals(Intent.ACTION_SCREEN_OFF)) {
-            if (mSecondsHandler != null) {
-                mSecondsHandler.removeCallbacks(mSecondTick);
-            }
+            mScreenOn = false;
+            updateSecondsHandler();
         }
+        // locale, timezone and 12/24h format changes require recompiling the template
         if (intent.getAction().equals(Intent.ACTION_CONFIGURATION_CHANGED) ||
             intent.getAction().equals(Intent.ACTION_TIME_CHANGED) ||
             intent.getAction().equals(Intent.ACTION_TIMEZONE_CHANGED)) {
-            mSecondsFormat = null;
+            invalidateTemplate();
         }
     }
 }
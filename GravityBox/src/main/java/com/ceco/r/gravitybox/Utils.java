@@ -53,9 +53,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 public class Utils {
@@ -502,22 +502,22 @@ public class Utils {
         }
     }
 
-    public static void copyFile(File source, File dest) throws IOException { 
-        InputStream input = null; 
-        OutputStream output = null; 
-        try { 
-            input = new FileInputStream(source); 
-            output = new FileOutputStream(dest); 
-            byte[] buf = new byte[1024]; 
-            int bytesRead; 
-            while ((bytesRead = input.read(buf)) > 0) { 
-                output.write(buf, 0, bytesRead); 
+    public static void copyFile(File source, File dest) throws IOException {
+        try (FileInputStream input = new FileInputStream(source);
+             FileOutputStream output = new FileOutputStream(dest)) {
+            FileChannel inChannel = input.getChannel();
+            FileChannel outChannel = output.getChannel();
+            final long size = inChannel.size();
+            long pos = 0;
+            while (pos < size) {
+                long count = inChannel.transferTo(pos, size - pos, outChannel);
+                if (count <= 0) {
+                    throw new IOException("Source truncated while copying: " + source);
+                }
+                pos += count;
             }
-        } finally {
-            if (input != null) input.close(); 
-            if (output != null) output.close(); 
-        } 
-    } 
+        }
+    }
 
     public static boolean writeAssetToFile(Context context, String assetName, File outFile) {
         try {
@@ -15,15 +15,28 @@
 
 package com.ceco.r.gravitybox.adapters;
 
+import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.regex.Pattern;
 
 import android.widget.Filter;
 
 public class BaseListAdapterFilter<T extends IBaseListAdapterItem> extends Filter {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{Mn}+");
+
     private IBaseListAdapterFilterable<T> mTarget;
 
+    // search index; accessed from filter worker thread only
+    private List<T> mIndexedData;
+    private int mIndexedSize;
+    private ArrayList<T> mIndexItems;
+    private String[] mIndexTexts;
+    private String mLastSearch;
+    private int[] mLastMatches;
+    private int mLastMatchCount;
+
     public interface IBaseListAdapterFilterable<T> {
         List<T> getOriginalData();
         List<T> getFilteredData();
@@ -34,24 +47,63 @@ public class BaseListAdapterFilter<T extends IBaseListAdapterItem> extends Filte
         mTarget = target;
     }
 
+    private static String normalize(String text) {
+        if (text == null) return "";
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        folded = DIACRITICS.matcher(folded).replaceAll("");
+        return folded.toLowerCase(Locale.getDefault());
+    }
+
+    // adapters keep private copy of original data with immutable item texts
+    // so replacing or resizing the list is the only change to detect
+    private void ensureIndex() {
+        List<T> data = mTarget.getOriginalData();
+        if (data == mIndexedData && data.size() == mIndexedSize) return;
+
+        mIndexItems = new ArrayList<>(data);
+        mIndexTexts = new String[mIndexItems.size()];
+        for (int i = 0; i < mIndexTexts.length; i++) {
+            mIndexTexts[i] = normalize(mIndexItems.get(i).getText());
+        }
+        mIndexedData = data;
+        mIndexedSize = data.size();
+        mLastSearch = null;
+        mLastMatches = new int[mIndexTexts.length];
+        mLastMatchCount = 0;
+    }
+
     @Override
     protected FilterResults performFiltering(CharSequence constraint) {
         FilterResults results = new FilterResults();
-        String search = constraint.toString().toLowerCase(Locale.getDefault());
-        ArrayList<T> original = new ArrayList<>(mTarget.getOriginalData());
+        ensureIndex();
+        String search = normalize(constraint == null ? null : constraint.toString());
 
-        if(search == null || search.length() == 0) {
-            results.values = original;
-            results.count = original.size();
+        if (search.length() == 0) {
+            mLastSearch = null;
+            results.values = new ArrayList<>(mIndexItems);
+            results.count = mIndexItems.size();
         } else {
             final ArrayList<T> nlist = new ArrayList<>();
-            for (int i = 0; i < original.size(); i++) {
-                final T item = original.get(i);
-                final String val = item.getText().toLowerCase(Locale.getDefault());
-
-                if(val.contains(search))
-                    nlist.add(item);
+            int count = 0;
+            if (mLastSearch != null && search.contains(mLastSearch)) {
+                // new query narrows the previous one; rescan only its matches
+                for (int i = 0; i < mLastMatchCount; i++) {
+                    final int idx = mLastMatches[i];
+                    if (mIndexTexts[idx].contains(search)) {
+                        mLastMatches[count++] = idx;
+                        nlist.add(mIndexItems.get(idx));
+                    }
+                }
+            } else {
+                for (int idx = 0; idx < mIndexTexts.length; idx++) {
+                    if (mIndexTexts[idx].contains(search)) {
+                        mLastMatches[count++] = idx;
+                        nlist.add(mIndexItems.get(idx));
+                    }
+                }
             }
+            mLastSearch = search;
+            mLastMatchCount = count;
 
             results.values = nlist;
             results.count = nlist.size();
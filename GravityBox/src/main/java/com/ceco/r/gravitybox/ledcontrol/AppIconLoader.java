@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.ledcontrol;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.ceco.r.gravitybox.BitmapUtils;
+import com.ceco.r.gravitybox.Utils;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.TypedValue;
+
+/**
+ * Loads scaled application icons on a background thread.
+ * Decoded icons are kept in a size-bounded memory cache and persisted as
+ * thumbnails so that subsequent loads do not need to touch PackageManager.
+ * Thumbnails are considered stale once the package's APK is newer.
+ */
+class AppIconLoader {
+    private static final String TAG = "GB:AppIconLoader";
+    private static final int ICON_SIZE_DP = 40;
+    private static final int LOADER_THREADS = 2;
+
+    interface IconLoadedCallback {
+        void onIconLoaded(String packageName, Drawable icon);
+    }
+
+    private static AppIconLoader sInstance;
+
+    static synchronized AppIconLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppIconLoader(context.getApplicationContext() != null ?
+                    context.getApplicationContext() : context);
+        }
+        return sInstance;
+    }
+
+    private final PackageManager mPkgManager;
+    private final Resources mResources;
+    private final int mIconSizePx;
+    private final File mThumbnailDir;
+    private final Handler mHandler;
+    private final LruCache<String, BitmapDrawable> mMemCache;
+    private final Map<String, List<IconLoadedCallback>> mPending = new HashMap<>();
+    private final ThreadPoolExecutor mExecutor;
+
+    private AppIconLoader(Context context) {
+        mPkgManager = context.getPackageManager();
+        mResources = context.getResources();
+        mIconSizePx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                ICON_SIZE_DP, mResources.getDisplayMetrics());
+        // icon size is part of the path so density changes invalidate thumbnails
+        mThumbnailDir = new File(Utils.getCacheDir(context), "app_icons_" + mIconSizePx);
+        mHandler = new Handler(Looper.getMainLooper());
+
+        final int cacheSize = Math.min((int) Runtime.getRuntime().maxMemory() / 8, 4194304);
+        mMemCache = new LruCache<String, BitmapDrawable>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, BitmapDrawable d) {
+                return d.getBitmap().getByteCount();
+            }
+        };
+
+        mExecutor = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS,
+                10, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    Drawable getCachedIcon(String packageName) {
+        return mMemCache.get(packageName);
+    }
+
+    /**
+     * Delivers icon via callback on the main thread.
+     * Multiple requests for the same package are served by a single load.
+     */
+    void loadIcon(final ApplicationInfo appInfo, IconLoadedCallback callback) {
+        final String pkgName = appInfo.packageName;
+        BitmapDrawable icon = mMemCache.get(pkgName);
+        if (icon != null) {
+            callback.onIconLoaded(pkgName, icon);
+            return;
+        }
+
+        synchronized (mPending) {
+            List<IconLoadedCallback> callbacks = mPending.get(pkgName);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>(1);
+            callbacks.add(callback);
+            mPending.put(pkgName, callbacks);
+        }
+
+        mExecutor.execute(() -> {
+            final BitmapDrawable d = decodeIcon(appInfo);
+            mMemCache.put(pkgName, d);
+            mHandler.post(() -> {
+                List<IconLoadedCallback> callbacks;
+                synchronized (mPending) {
+                    callbacks = mPending.remove(pkgName);
+                }
+                if (callbacks != null) {
+                    for (IconLoadedCallback cb : callbacks) {
+                        cb.onIconLoaded(pkgName, d);
+                    }
+                }
+            });
+        });
+    }
+
+    private BitmapDrawable decodeIcon(ApplicationInfo appInfo) {
+        File thumbnail = new File(mThumbnailDir, appInfo.packageName + ".png");
+        long apkTime = appInfo.sourceDir != null ? new File(appInfo.sourceDir).lastModified() : 0;
+        if (thumbnail.exists() && thumbnail.lastModified() >= apkTime) {
+            Bitmap bitmap = BitmapFactory.decodeFile(thumbnail.getAbsolutePath());
+            if (bitmap != null) {
+                return new BitmapDrawable(mResources, bitmap);
+            }
+        }
+
+        try {
+            Bitmap bitmap = BitmapUtils.drawableToBitmap(appInfo.loadIcon(mPkgManager));
+            if (bitmap.getWidth() != mIconSizePx || bitmap.getHeight() != mIconSizePx) {
+                bitmap = Bitmap.createScaledBitmap(bitmap, mIconSizePx, mIconSizePx, true);
+            }
+            saveThumbnail(thumbnail, bitmap);
+            return new BitmapDrawable(mResources, bitmap);
+        } catch (Throwable t) {
+            Log.e(TAG, "Error loading icon for " + appInfo.packageName + ": " + t.getMessage());
+            // remember failure as empty icon so the load is not queued again
+            return new BitmapDrawable(mResources, Bitmap.createBitmap(
+                    mIconSizePx, mIconSizePx, Bitmap.Config.ALPHA_8));
+        }
+    }
+
+    private void saveThumbnail(File thumbnail, Bitmap bitmap) {
+        if (!mThumbnailDir.exists() && !mThumbnailDir.mkdirs()) {
+            return;
+        }
+        File tmpFile = new File(thumbnail.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmpFile)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Error saving thumbnail: " + e.getMessage());
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(thumbnail)) {
+            tmpFile.delete();
+        }
+    }
+}
@@ -15,12 +15,17 @@
 
 package com.ceco.r.gravitybox.ledcontrol;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.ceco.r.gravitybox.R;
 import com.ceco.r.gravitybox.GravityBoxListActivity;
+import com.ceco.r.gravitybox.SettingsManager;
 import com.ceco.r.gravitybox.ledcontrol.LedListAdapter.ListItemActionHandler;
 
 import android.app.ProgressDialog;
@@ -141,19 +146,29 @@ public class LedControlActivity extends GravityBoxListActivity implements ListIt
 
             @Override
             protected ArrayList<LedListItem> doInBackground(Void... arg0) {
-                ArrayList<LedListItem> itemList = new ArrayList<>();
-
                 PackageManager pm = LedControlActivity.this.getPackageManager();
                 List<ApplicationInfo> packages = pm.getInstalledApplications(0);
-                Collections.sort(packages, new ApplicationInfo.DisplayNameComparator(pm));
+                // single snapshot of UNC prefs for all items
+                Map<String, ?> uncPrefs = SettingsManager.getInstance(
+                        LedControlActivity.this).getLedControlPrefs().getAll();
+
+                ArrayList<LedListItem> itemList = new ArrayList<>(packages.size());
                 for(ApplicationInfo ai : packages) {
                     if (isCancelled()) break;
                     if (ai.packageName.equals(LedControlActivity.this.getPackageName())) continue;
-                    LedListItem item = new LedListItem(LedControlActivity.this, ai);
+                    LedListItem item = new LedListItem(LedControlActivity.this, ai, uncPrefs);
                     if (mShowActiveOnly && !item.isEnabled()) continue;
                     itemList.add(item);
                 }
 
+                // sort by labels already loaded by items using precomputed collation keys
+                final Collator collator = Collator.getInstance();
+                final Map<LedListItem, CollationKey> keys = new HashMap<>(itemList.size());
+                for (LedListItem item : itemList) {
+                    keys.put(item, collator.getCollationKey(item.getAppName()));
+                }
+                Collections.sort(itemList, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+
                 return itemList;
             }
 
@@ -24,6 +24,7 @@ import com.ceco.r.gravitybox.adapters.BaseListAdapterFilter.IBaseListAdapterFilt
 import com.ceco.r.gravitybox.ledcontrol.LedSettings.LedMode;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -40,6 +41,7 @@ public class LedListAdapter extends ArrayAdapter<LedListItem>
     private List<LedListItem> mFilteredData = null;
     private ListItemActionHandler mActionHandler;
     private android.widget.Filter mFilter;
+    private AppIconLoader mIconLoader;
 
     protected interface ListItemActionHandler {
         void onItemCheckedChanged(LedListItem item, boolean checked);
@@ -52,6 +54,7 @@ public class LedListAdapter extends ArrayAdapter<LedListItem>
         mData = new ArrayList<>(objects);
         mFilteredData = new ArrayList<>(objects);
         mActionHandler = handler;
+        mIconLoader = AppIconLoader.getInstance(context);
     }
 
     static class ViewHolder {
@@ -62,6 +65,7 @@ public class LedListAdapter extends ArrayAdapter<LedListItem>
         LedColorView colorView;
         CheckBox enabledView;
         ImageView insistentView;
+        String iconPkgName;
     }
 
     @Override
@@ -95,7 +99,18 @@ public class LedListAdapter extends ArrayAdapter<LedListItem>
         }
 
         LedListItem item = mFilteredData.get(position);
-        holder.appIconView.setImageDrawable(item.getAppIcon());
+        holder.iconPkgName = item.getAppInfo().packageName;
+        Drawable icon = mIconLoader.getCachedIcon(holder.iconPkgName);
+        holder.appIconView.setImageDrawable(icon);
+        if (icon == null) {
+            final ViewHolder h = holder;
+            mIconLoader.loadIcon(item.getAppInfo(), (pkgName, d) -> {
+                // row might have been recycled for another item meanwhile
+                if (pkgName.equals(h.iconPkgName)) {
+                    h.appIconView.setImageDrawable(d);
+                }
+            });
+        }
         holder.appNameView.setText(item.getAppName());
         holder.pkgNameView.setText(item.getAppInfo().packageName);
         holder.pkgNameView.setVisibility(item.getAppName() != null &&
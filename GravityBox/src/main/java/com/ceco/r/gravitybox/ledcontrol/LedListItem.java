@@ -16,6 +16,7 @@
 package com.ceco.r.gravitybox.ledcontrol;
 
 import java.util.Locale;
+import java.util.Map;
 
 import com.ceco.r.gravitybox.R;
 import com.ceco.r.gravitybox.adapters.IBaseListAdapterItem;
@@ -28,7 +29,6 @@ import com.ceco.r.gravitybox.ledcontrol.LedSettings.VisibilityLs;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
 import android.media.Ringtone;
 import android.media.RingtoneManager;
 
@@ -37,16 +37,15 @@ public class LedListItem implements IBaseListAdapterItem {
     private Context mContext;
     private ApplicationInfo mAppInfo;
     private String mAppName;
-    private Drawable mAppIcon;
     private LedSettings mLedSettings;
     private PackageManager mPkgManager;
 
-    protected LedListItem(Context context, ApplicationInfo appInfo) {
+    protected LedListItem(Context context, ApplicationInfo appInfo, Map<String, ?> uncPrefs) {
         mContext = context;
         mAppInfo = appInfo;
         mPkgManager = mContext.getPackageManager();
-        mAppName = (String) mAppInfo.loadLabel(mPkgManager);
-        mLedSettings = LedSettings.deserialize(mContext, appInfo.packageName);
+        mAppName = mAppInfo.loadLabel(mPkgManager).toString();
+        mLedSettings = LedSettings.deserialize(mContext, appInfo.packageName, uncPrefs);
     }
 
     protected ApplicationInfo getAppInfo() {
@@ -179,19 +178,6 @@ public class LedListItem implements IBaseListAdapterItem {
         }
     }
 
-    protected Drawable getAppIcon() {
-        if (mAppIcon == null) {
-            try {
-                mAppIcon = mAppInfo.loadIcon(mPkgManager);
-            } catch (Throwable t) {
-                t.printStackTrace(); 
-                System.gc(); 
-            }
-        }
-
-        return mAppIcon;
-    }
-
     protected LedSettings getLedSettings() {
         return mLedSettings;
     }
@@ -17,6 +17,7 @@ package com.ceco.r.gravitybox.ledcontrol;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import com.ceco.r.gravitybox.GravityBoxSettings;
@@ -115,6 +116,29 @@ public class LedSettings {
         }
     }
 
+    /**
+     * Bulk variant to be used when settings for many packages are needed at once.
+     * Expects snapshot of all UNC preferences obtained via a single getAll() call.
+     */
+    @SuppressWarnings("unchecked")
+    protected static LedSettings deserialize(Context context, String packageName, Map<String, ?> allPrefs) {
+        try {
+            Object dataSet = allPrefs.get(packageName);
+            if (dataSet instanceof Set) {
+                return deserialize(context, packageName, (Set<String>) dataSet);
+            }
+            Object defDataSet = allPrefs.get("default");
+            LedSettings defLs = deserialize(context, "default",
+                    defDataSet instanceof Set ? (Set<String>) defDataSet : null);
+            defLs.mPackageName = packageName;
+            defLs.mEnabled = false;
+            return defLs;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return new LedSettings(context, packageName);
+        }
+    }
+
     public static LedSettings deserialize(Set<String> dataSet) {
         return deserialize(null, null, dataSet);
     }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.managers;
+
+/**
+ * Fixed-size history of battery samples kept in primitive arrays
+ * together with exponentially weighted charge/drain rate estimate.
+ * Rate is sampled on every level step within the same charging state
+ * so each update is O(1) regardless of history size.
+ * There are no Android dependencies so recorded charge/discharge curves
+ * can be replayed on plain JVM.
+ * Not thread safe.
+ */
+public class BatteryHistory {
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final long UNKNOWN = -1;
+
+    private static final float ALPHA = 0.3f;
+    private static final long HOUR_MS = 3600000L;
+
+    private final int mCapacity;
+    private final long[] mTime;
+    private final byte[] mLevel;
+    private final short[] mTemperature;
+    private final short[] mVoltage;
+    private final boolean[] mCharging;
+    private int mNext;
+    private int mCount;
+
+    // rate estimator state
+    private boolean mAnchorCharging;
+    private int mAnchorLevel = -1;
+    private long mAnchorTime;
+    private boolean mAnchorValid;
+    private float mRate = Float.NaN;
+    private int mLastLevel = -1;
+
+    public BatteryHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BatteryHistory(int capacity) {
+        mCapacity = Math.max(2, capacity);
+        mTime = new long[mCapacity];
+        mLevel = new byte[mCapacity];
+        mTemperature = new short[mCapacity];
+        mVoltage = new short[mCapacity];
+        mCharging = new boolean[mCapacity];
+    }
+
+    /**
+     * Adds sample and updates rate estimate.
+     * Returns true if rate estimate changed.
+     * @param time monotonic time in ms
+     * @param temperature in tenths of degree Celsius
+     * @param voltage in mV
+     */
+    public boolean add(long time, int level, int temperature, int voltage, boolean charging) {
+        mTime[mNext] = time;
+        mLevel[mNext] = (byte) level;
+        mTemperature[mNext] = (short) temperature;
+        mVoltage[mNext] = (short) voltage;
+        mCharging[mNext] = charging;
+        mNext = (mNext + 1) % mCapacity;
+        if (mCount < mCapacity) mCount++;
+        mLastLevel = level;
+
+        if (mAnchorLevel < 0 || charging != mAnchorCharging) {
+            // charging state changed; previous rate doesn't apply anymore
+            // first level step is partial so it just anchors
+            boolean changed = !Float.isNaN(mRate);
+            mRate = Float.NaN;
+            mAnchorCharging = charging;
+            mAnchorLevel = level;
+            mAnchorTime = time;
+            mAnchorValid = false;
+            return changed;
+        }
+
+        if (level == mAnchorLevel) return false;
+
+        boolean changed = false;
+        final long dt = time - mAnchorTime;
+        final int dl = level - mAnchorLevel;
+        // ignore steps going against charging state, e.g. heavy load while charging
+        if (mAnchorValid && dt > 0 && (dl > 0) == charging) {
+            float sample = (float) dl * HOUR_MS / dt;
+            mRate = Float.isNaN(mRate) ? sample : ALPHA * sample + (1 - ALPHA) * mRate;
+            changed = true;
+        }
+        mAnchorLevel = level;
+        mAnchorTime = time;
+        mAnchorValid = true;
+        return changed;
+    }
+
+    public void clear() {
+        mNext = mCount = 0;
+        mAnchorLevel = mLastLevel = -1;
+        mAnchorValid = false;
+        mRate = Float.NaN;
+    }
+
+    /**
+     * Estimated rate in percent per hour; positive when charging,
+     * negative when draining or NaN if not known yet.
+     */
+    public float getRate() {
+        return mRate;
+    }
+
+    /**
+     * Rate bounded by time elapsed since last level step so that estimate
+     * follows when consumption drops, e.g. after screen goes off.
+     */
+    private float getEffectiveRate(long now) {
+        if (Float.isNaN(mRate) || mRate == 0) return Float.NaN;
+        final long elapsed = now - mAnchorTime;
+        if (elapsed > 0) {
+            float bound = (float) HOUR_MS / elapsed;
+            if (Math.abs(mRate) > bound) {
+                return Math.copySign(bound, mRate);
+            }
+        }
+        return mRate;
+    }
+
+    /**
+     * Estimated time until full in ms or UNKNOWN
+     */
+    public long getTimeToFull(long now) {
+        final float rate = getEffectiveRate(now);
+        if (!(rate > 0) || mLastLevel < 0) return UNKNOWN;
+        return (long) ((100 - mLastLevel) / rate * HOUR_MS);
+    }
+
+    /**
+     * Estimated time until empty in ms or UNKNOWN
+     */
+    public long getTimeToEmpty(long now) {
+        final float rate = getEffectiveRate(now);
+        if (!(rate < 0) || mLastLevel < 0) return UNKNOWN;
+        return (long) (mLastLevel / -rate * HOUR_MS);
+    }
+
+    /**
+     * Temperature change in tenths of degree Celsius from the oldest sample
+     * within given window before the newest sample up to the newest one.
+     * Returns 0 if there are not enough samples.
+     */
+    public int getTemperatureChange(long windowMs) {
+        if (mCount < 2) return 0;
+        final int newest = mCount - 1;
+        final long since = getTime(newest) - windowMs;
+        int oldest = newest;
+        while (oldest > 0 && getTime(oldest - 1) >= since) {
+            oldest--;
+        }
+        return getTemperature(newest) - getTemperature(oldest);
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    private int index(int i) {
+        if (i < 0 || i >= mCount) {
+            throw new IndexOutOfBoundsException("index=" + i + "; size=" + mCount);
+        }
+        return (mNext - mCount + i + mCapacity) % mCapacity;
+    }
+
+    // accessors with i from 0 (oldest) to size()-1 (newest)
+
+    public long getTime(int i) {
+        return mTime[index(i)];
+    }
+
+    public int getLevel(int i) {
+        return mLevel[index(i)];
+    }
+
+    public int getTemperature(int i) {
+        return mTemperature[index(i)];
+    }
+
+    public int getVoltage(int i) {
+        return mVoltage[index(i)];
+    }
+
+    public boolean isCharging(int i) {
+        return mCharging[index(i)];
+    }
+}
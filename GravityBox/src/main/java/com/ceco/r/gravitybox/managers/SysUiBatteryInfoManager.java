@@ -34,12 +34,16 @@ import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.BatteryManager;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.telephony.TelephonyManager;
 
 public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
     private static final String TAG = "GB:BatteryInfoManager";
+    private static final boolean DEBUG = false;
+    private static final long TEMPERATURE_TREND_WINDOW_MS = 10 * 60 * 1000;
     private BatteryData mBatteryData;
-    private final ArrayList<BatteryStatusListener> mListeners = new ArrayList<>();
+    private final ArrayList<ListenerInfo> mListeners = new ArrayList<>();
+    private final BatteryHistory mHistory = new BatteryHistory();
     private Context mContext;
     private Uri[] mSounds;
     private TelephonyManager mTelephonyManager;
@@ -51,6 +55,10 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
     public static final int SOUND_PLUGGED = 1;
     public static final int SOUND_UNPLUGGED = 2;
 
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
     public enum LowBatteryWarningPolicy { DEFAULT, NONINTRUSIVE, OFF }
 
     public static final String ACTION_POWER_SAVE_MODE_CHANGING = 
@@ -58,6 +66,18 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
     public static final String EXTRA_POWER_SAVE_MODE = "mode";
     public static final String EXTRA_FAST_CHARGE = "fastcharge_status";
 
+    // fields listeners can subscribe to
+    public static final int FIELD_LEVEL = 1 << 0;
+    public static final int FIELD_CHARGING = 1 << 1;
+    public static final int FIELD_POWER_SOURCE = 1 << 2;
+    public static final int FIELD_TEMPERATURE = 1 << 3;
+    public static final int FIELD_VOLTAGE = 1 << 4;
+    public static final int FIELD_POWER_SAVING = 1 << 5;
+    public static final int FIELD_FAST_CHARGING = 1 << 6;
+    public static final int FIELD_STATUS = 1 << 7;
+    public static final int FIELD_ESTIMATE = 1 << 8;
+    public static final int FIELD_ALL = 0xFFFFFFFF;
+
     public class BatteryData {
         public boolean charging;
         public int level;
@@ -67,6 +87,13 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
         public boolean isPowerSaving;
         public boolean fastCharging;
         public int status;
+        // charge/drain rate in %/h, positive when charging; NaN if unknown
+        public float rate = Float.NaN;
+        // estimates in ms at the time of last estimate change; BatteryHistory.UNKNOWN if unknown
+        public long timeToFull = BatteryHistory.UNKNOWN;
+        public long timeToEmpty = BatteryHistory.UNKNOWN;
+        // temperature change over last 10 minutes in tenths of degree Celsius
+        public int temperatureChange;
 
         public float getTempCelsius() {
             return ((float)temperature/10f);
@@ -96,6 +123,10 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
             bd.isPowerSaving = this.isPowerSaving;
             bd.fastCharging = this.fastCharging;
             bd.status = this.status;
+            bd.rate = this.rate;
+            bd.timeToFull = this.timeToFull;
+            bd.timeToEmpty = this.timeToEmpty;
+            bd.temperatureChange = this.temperatureChange;
             return bd;
         }
 
@@ -106,8 +137,11 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
                     "; voltage="+this.voltage+
                     "; isPowerSaving="+this.isPowerSaving+
                     "; fastCharging="+this.fastCharging+
-                    "; status="+this.status;
-                    
+                    "; status="+this.status+
+                    "; rate="+this.rate+
+                    "; timeToFull="+this.timeToFull+
+                    "; timeToEmpty="+this.timeToEmpty+
+                    "; temperatureChange="+this.temperatureChange;
         }
     }
 
@@ -115,6 +149,15 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
         void onBatteryStatusChanged(BatteryData batteryData);
     }
 
+    private static class ListenerInfo {
+        final BatteryStatusListener listener;
+        final int fields;
+        ListenerInfo(BatteryStatusListener listener, int fields) {
+            this.listener = listener;
+            this.fields = fields;
+        }
+    }
+
     protected SysUiBatteryInfoManager(Context context, XSharedPreferences prefs, XSharedPreferences qhPrefs) {
         mContext = context;
         mQuietHours = new QuietHours(qhPrefs);
@@ -146,11 +189,19 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
     }
 
     public void registerListener(BatteryStatusListener listener) {
+        registerListener(listener, FIELD_ALL);
+    }
+
+    /**
+     * Registers listener notified only when any of given FIELD_* fields changes.
+     * Listener is notified with current data immediately.
+     */
+    public void registerListener(BatteryStatusListener listener, int fields) {
         if (listener == null) return;
         synchronized(mListeners) {
-            if (!mListeners.contains(listener)) {
-                mListeners.add(listener);
-                listener.onBatteryStatusChanged(mBatteryData);
+            if (indexOfListener(listener) < 0) {
+                mListeners.add(new ListenerInfo(listener, fields));
+                listener.onBatteryStatusChanged(mBatteryData.clone());
             }
         }
     }
@@ -158,14 +209,34 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
     public void unregisterListener(BatteryStatusListener listener) {
         if (listener == null) return;
         synchronized(mListeners) {
-            mListeners.remove(listener);
+            int index = indexOfListener(listener);
+            if (index >= 0) {
+                mListeners.remove(index);
+            }
         }
     }
 
-    private void notifyListeners() {
+    private int indexOfListener(BatteryStatusListener listener) {
+        for (int i = 0; i < mListeners.size(); i++) {
+            if (mListeners.get(i).listener == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void notifyListeners(int changedFields) {
         synchronized(mListeners) {
+            // single snapshot shared by all listeners notified for this change
+            BatteryData snapshot = null;
             for (int i = mListeners.size()-1; i >= 0; i--) {
-                mListeners.get(i).onBatteryStatusChanged(mBatteryData.clone());
+                ListenerInfo info = mListeners.get(i);
+                if ((info.fields & changedFields) != 0) {
+                    if (snapshot == null) {
+                        snapshot = mBatteryData.clone();
+                    }
+                    info.listener.onBatteryStatusChanged(snapshot);
+                }
             }
         }
     }
@@ -184,12 +255,16 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
         int newStatus = intent.getIntExtra(BatteryManager.EXTRA_STATUS,
                 BatteryManager.BATTERY_STATUS_UNKNOWN);
 
-        if (mBatteryData.level != newLevel || mBatteryData.charging != newCharging ||
-                mBatteryData.powerSource != newPowerSource ||
-                mBatteryData.temperature != newTemp || 
-                mBatteryData.voltage != newVoltage ||
-                mBatteryData.fastCharging != newFastCharging ||
-                mBatteryData.status != newStatus) {
+        int changedFields = 0;
+        if (mBatteryData.level != newLevel) changedFields |= FIELD_LEVEL;
+        if (mBatteryData.charging != newCharging) changedFields |= FIELD_CHARGING;
+        if (mBatteryData.powerSource != newPowerSource) changedFields |= FIELD_POWER_SOURCE;
+        if (mBatteryData.temperature != newTemp) changedFields |= FIELD_TEMPERATURE;
+        if (mBatteryData.voltage != newVoltage) changedFields |= FIELD_VOLTAGE;
+        if (mBatteryData.fastCharging != newFastCharging) changedFields |= FIELD_FAST_CHARGING;
+        if (mBatteryData.status != newStatus) changedFields |= FIELD_STATUS;
+
+        if (changedFields != 0) {
             if (newLevel == 100 && mBatteryData.level < 100 && mBatteryData.level > 0) {
                 playSound(SOUND_CHARGED);
             }
@@ -210,14 +285,31 @@ public class SysUiBatteryInfoManager implements BroadcastMediator.Receiver {
             mBatteryData.fastCharging = newFastCharging;
             mBatteryData.status = newStatus;
 
-            notifyListeners();
+            if ((changedFields & (FIELD_LEVEL | FIELD_CHARGING |
+                    FIELD_TEMPERATURE | FIELD_VOLTAGE)) != 0) {
+                final long now = SystemClock.elapsedRealtime();
+                if (mHistory.add(now, newLevel, newTemp, newVoltage, newCharging)) {
+                    mBatteryData.rate = mHistory.getRate();
+                    mBatteryData.timeToFull = mHistory.getTimeToFull(now);
+                    mBatteryData.timeToEmpty = mHistory.getTimeToEmpty(now);
+                    changedFields |= FIELD_ESTIMATE;
+                    if (DEBUG) log("Estimate updated: " + mBatteryData);
+                }
+                final int tempChange = mHistory.getTemperatureChange(TEMPERATURE_TREND_WINDOW_MS);
+                if (mBatteryData.temperatureChange != tempChange) {
+                    mBatteryData.temperatureChange = tempChange;
+                    changedFields |= FIELD_TEMPERATURE;
+                }
+            }
+
+            notifyListeners(changedFields);
         }
     }
 
     private void updatePowerSavingInfo(boolean enabled) {
         if (mBatteryData.isPowerSaving != enabled) {
             mBatteryData.isPowerSaving = enabled;
-            notifyListeners();
+            notifyListeners(FIELD_POWER_SAVING);
         }
     }
 
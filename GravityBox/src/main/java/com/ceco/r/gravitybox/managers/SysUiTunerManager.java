@@ -17,7 +17,9 @@ package com.ceco.r.gravitybox.managers;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.content.res.Resources;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.ResultReceiver;
 import android.provider.Settings;
@@ -30,9 +32,12 @@ import com.ceco.r.gravitybox.tuner.TunerBlacklist;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedBridge;
@@ -46,6 +51,7 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
     public static final String ACTION_GET_TUNEABLES = "gravitybox.intent.action.TUNER_GET_TUNABLES";
     public static final String EXTRA_TUNER_CATEGORY = "tunerCategory";
     public static final String EXTRA_TUNEABLES = "tunerTuneables";
+    public static final String EXTRA_RECEIVER = "receiver";
 
     public enum Category { FRAMEWORK, SYSTEMUI }
 
@@ -53,9 +59,24 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
         XposedBridge.log(TAG + ": " + msg);
     }
 
-    private static Map<Category,List<TuneableItem>> sUserItemsCache = new HashMap<>();
+    // user overrides by resource name; built once in Zygote and read-only afterwards
+    private static TunerUserItems<Category,TuneableItem> sUserItemsCache =
+            new TunerUserItems.Builder<Category,TuneableItem>(Category.class).build();
+
+    // discovered tuneables; valid while package version and configuration stay the same
+    private static class TuneablesCacheEntry {
+        final long packageVersion;
+        final int configHash;
+        final ArrayList<TuneableItem> items;
+        TuneablesCacheEntry(long packageVersion, int configHash, ArrayList<TuneableItem> items) {
+            this.packageVersion = packageVersion;
+            this.configHash = configHash;
+            this.items = items;
+        }
+    }
 
     private Context mContext;
+    private final Map<Category,TuneablesCacheEntry> mTuneablesCache = new EnumMap<>(Category.class);
 
     SysUiTunerManager(Context context) {
         mContext = context;
@@ -90,21 +111,61 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
     @Override
     public void onBroadcastReceived(Context context, Intent intent) {
         if (ACTION_GET_TUNEABLES.equals(intent.getAction()) &&
-                intent.hasExtra("receiver") &&
                 intent.hasExtra(EXTRA_TUNER_CATEGORY)) {
-            if (DEBUG) log("Request for tuneables received");
-            ResultReceiver receiver = intent.getParcelableExtra("receiver");
-            Category category = Category.valueOf(intent.getStringExtra(EXTRA_TUNER_CATEGORY));
-            sendTuneables(category, receiver);
+            // request without receiver only prefetches tuneables into cache
+            final ResultReceiver receiver = intent.getParcelableExtra(EXTRA_RECEIVER);
+            final Category category = Category.valueOf(intent.getStringExtra(EXTRA_TUNER_CATEGORY));
+            if (DEBUG) log("Request for tuneables received: category=" + category +
+                    "; prefetch=" + (receiver == null));
+            AsyncTask.execute(() -> {
+                try {
+                    ArrayList<TuneableItem> tiList = getTuneables(category);
+                    if (receiver != null) {
+                        sendTuneables(tiList, receiver);
+                    }
+                } catch (Throwable t) {
+                    GravityBox.log(TAG, t);
+                }
+            });
+        }
+    }
+
+    private void sendTuneables(ArrayList<TuneableItem> tiList, ResultReceiver receiver) {
+        Bundle data = new Bundle();
+        data.putParcelableArrayList(EXTRA_TUNEABLES, tiList);
+        receiver.send(0, data);
+        if (DEBUG) log("Tuneables sent to receiver");
+    }
+
+    private ArrayList<TuneableItem> getTuneables(Category category) {
+        final long version = getPackageVersionFor(category);
+        final int configHash = getResourcesFor(category).getConfiguration().hashCode();
+        synchronized (mTuneablesCache) {
+            TuneablesCacheEntry entry = mTuneablesCache.get(category);
+            if (entry != null && entry.packageVersion == version && entry.configHash == configHash) {
+                if (DEBUG) log("getTuneables: returning cached tuneables for " + category);
+                return entry.items;
+            }
+            ArrayList<TuneableItem> tiList = findTuneables(category);
+            mTuneablesCache.put(category, new TuneablesCacheEntry(version, configHash, tiList));
+            return tiList;
+        }
+    }
+
+    private long getPackageVersionFor(Category category) {
+        try {
+            return mContext.getPackageManager().getPackageInfo(
+                    getPackageNameFor(category), 0).getLongVersionCode();
+        } catch (PackageManager.NameNotFoundException e) {
+            return -1;
         }
     }
 
-    private void sendTuneables(Category category, ResultReceiver receiver) {
+    private ArrayList<TuneableItem> findTuneables(Category category) {
         String pkgName = getPackageNameFor(category);
         Resources res = getResourcesFor(category);
         List<String> classNameList = getResourceClassNamesFor(category);
         ArrayList<TuneableItem> tiList = new ArrayList<>();
-        Bundle data = new Bundle();
         Class<?> clazz;
 
         for (String className : classNameList) {
@@ -145,10 +206,7 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
         if (tiList.isEmpty()) {
             GravityBox.log(TAG, "Didn't find any tuneables in " + category);
         }
-
-        data.putParcelableArrayList(EXTRA_TUNEABLES, tiList);
-        receiver.send(0, data);
-        if (DEBUG) log("Tuneables sent to receiver");
+        return tiList;
     }
 
     private String getPackageNameFor(Category category) {
@@ -188,46 +246,43 @@ public class SysUiTunerManager implements BroadcastMediator.Receiver {
 
     // Must be called from Zygote
     public static void initUserItemsCache(final XSharedPreferences prefs) {
-        for (Category category : new Category[] { Category.FRAMEWORK, Category.SYSTEMUI}) {
-            List<TuneableItem> list = new ArrayList<>();
-            Map<String, ?> prefMap = prefs.getAll();
-            for (Map.Entry<String, ?> pref : prefMap.entrySet()) {
-                if (pref.getKey().startsWith(category.toString() + ":") ||
-                        pref.getKey().startsWith("tuneable:")) {
-                    TuneableItem item = TuneableItem.createUserInstance(pref.getKey(), prefs);
-                    if (item != null && item.getCategory() == category && item.isOverridden() &&
-                            !TunerBlacklist.isBlacklisted(category, item.getKey())) {
-                        if (DEBUG) log("getUserItemList: new tuneable item added: category=" + category +
-                                "; key=" + item.getKey() +
-                                "; overridden=" + item.isOverridden() +
-                                "; userValue=" + item.getUserValue());
-                        list.add(item);
-                    }
-                }
+        TunerUserItems.Builder<Category,TuneableItem> builder =
+                new TunerUserItems.Builder<>(Category.class);
+
+        for (Map.Entry<String, ?> pref : prefs.getAll().entrySet()) {
+            final String prefKey = pref.getKey();
+            if (!TunerUserItems.isUserItemKey(prefKey, Category.values())) {
+                continue;
+            }
+            TuneableItem item = TuneableItem.createUserInstance(prefKey, prefs);
+            if (item != null && item.getCategory() != null && item.isOverridden() &&
+                    !TunerBlacklist.isBlacklisted(item.getCategory(), item.getKey())) {
+                builder.add(item.getCategory(), item.getKey(), item,
+                        TunerUserItems.isLegacyKey(prefKey));
+                if (DEBUG) log("initUserItemsCache: new tuneable item added: category=" +
+                        item.getCategory() +
+                        "; key=" + item.getKey() +
+                        "; userValue=" + item.getUserValue());
             }
-            sUserItemsCache.put(category, list);
         }
+
+        sUserItemsCache = builder.build();
     }
 
     public static void addUserItemKeysToList(Category category, List<String> list) {
-        if (sUserItemsCache.containsKey(category) && sUserItemsCache.get(category) != null) {
-            for (TuneableItem item : sUserItemsCache.get(category)) {
-                if (!list.contains(item.getKey())) {
-                    list.add(item.getKey());
+        Collection<String> keys = sUserItemsCache.getKeys(category);
+        if (!keys.isEmpty()) {
+            Set<String> existing = new HashSet<>(list);
+            for (String key : keys) {
+                if (existing.add(key)) {
+                    list.add(key);
                 }
             }
         }
     }
 
     private static TuneableItem findUserItemByKey(Category category, String key) {
-        if (sUserItemsCache.containsKey(category) && sUserItemsCache.get(category) != null) {
-            for (TuneableItem item : sUserItemsCache.get(category)) {
-                if (item.getKey().equals(key)) {
-                    return item;
-                }
-            }
-        }
-        return null;
+        return sUserItemsCache.find(category, key);
     }
 
     public static boolean onIntercept(ResourceProxy.ResourceSpec spec) {
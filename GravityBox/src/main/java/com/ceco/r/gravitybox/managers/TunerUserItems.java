@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.managers;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable index of tuner user overrides by category and resource name.
+ * Items stored under current pref key ("CATEGORY:name") take precedence
+ * over ones stored under legacy key ("tuneable:name") regardless of order
+ * in which prefs are enumerated.
+ * There are no Android dependencies so it can be verified on plain JVM.
+ */
+class TunerUserItems<C extends Enum<C>, T> {
+    static final String LEGACY_KEY_PREFIX = "tuneable:";
+
+    private final Map<C, Map<String, T>> mItems;
+
+    private TunerUserItems(Map<C, Map<String, T>> items) {
+        mItems = items;
+    }
+
+    static boolean isLegacyKey(String prefKey) {
+        return prefKey.startsWith(LEGACY_KEY_PREFIX);
+    }
+
+    /**
+     * Returns true if pref key might hold a user override of any of given categories
+     */
+    static <C extends Enum<C>> boolean isUserItemKey(String prefKey, C[] categories) {
+        if (isLegacyKey(prefKey)) return true;
+        for (C category : categories) {
+            if (prefKey.startsWith(category.name() + ":")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    T find(C category, String key) {
+        Map<String, T> map = mItems.get(category);
+        return (map == null ? null : map.get(key));
+    }
+
+    Collection<String> getKeys(C category) {
+        Map<String, T> map = mItems.get(category);
+        return (map == null ? Collections.emptySet() : map.keySet());
+    }
+
+    static class Builder<C extends Enum<C>, T> {
+        private final Map<C, Map<String, T>> mItems;
+
+        Builder(Class<C> categoryClass) {
+            mItems = new EnumMap<>(categoryClass);
+        }
+
+        Builder<C, T> add(C category, String key, T item, boolean legacy) {
+            Map<String, T> map = mItems.get(category);
+            if (map == null) {
+                map = new HashMap<>();
+                mItems.put(category, map);
+            }
+            if (legacy) {
+                map.putIfAbsent(key, item);
+            } else {
+                map.put(key, item);
+            }
+            return this;
+        }
+
+        TunerUserItems<C, T> build() {
+            for (Map.Entry<C, Map<String, T>> entry : mItems.entrySet()) {
+                entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+            }
+            return new TunerUserItems<>(mItems);
+        }
+    }
+}
@@ -113,6 +113,7 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
     private Drawable mBackAltIcon;
     private PieLongPressHandler mLongPressHandler;
     private boolean mSysinfoDisabled;
+    private final Point mTriggerPoint = new Point();
     private int mLongpressDelay;
     private boolean mMirroredKeys;
 
@@ -358,7 +359,8 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
 
         // start listening for changes
         if (SysUiManagers.BatteryInfoManager != null) {
-            SysUiManagers.BatteryInfoManager.registerListener(this);
+            SysUiManagers.BatteryInfoManager.registerListener(this,
+                    SysUiBatteryInfoManager.FIELD_LEVEL | SysUiBatteryInfoManager.FIELD_STATUS);
         }
 
         if (mHasTelephony) {
@@ -368,6 +370,33 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
         }
     }
 
+    /**
+     * Releases container attached by {@link #attachTo(PieLayout)} so that it can be
+     * garbage collected. State of navigation items is kept and applied on next attach.
+     */
+    public void detach() {
+        if (mPieContainer == null) return;
+
+        if (DEBUG) {
+            log("Detaching from container: " + mPieContainer);
+        }
+
+        if (SysUiManagers.BatteryInfoManager != null) {
+            SysUiManagers.BatteryInfoManager.unregisterListener(this);
+        }
+        if (mHasTelephony) {
+            TelephonyManager telephonyManager =
+                    (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
+            telephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
+        }
+
+        mPieContainer.setOnSnapListener(null);
+        mPieContainer = null;
+        mNavigationSlice = null;
+        mSysInfo = null;
+        mMenuButton = null;
+    }
+
     private void setupNavigationItems() {
         if (mNavigationSlice == null) return;
 
@@ -449,8 +478,11 @@ public class PieController implements PieLayout.OnSnapListener, PieItem.PieOnCli
             doHapticTriggerFeedback();
 
             mPosition = position;
-            Point center = new Point((int) event.getRawX(), (int) event.getRawY());
-            mPieContainer.activate(center, position);
+            if (!mSysinfoDisabled && mSysInfo != null) {
+                mSysInfo.prefetchData();
+            }
+            mTriggerPoint.set((int) event.getRawX(), (int) event.getRawY());
+            mPieContainer.activate(mTriggerPoint, position);
             mPieContainer.invalidate();
         }
     }
@@ -48,7 +48,17 @@ public class PieItem extends PieLayout.PieDrawable {
     private Paint mOutlinePaint = new Paint();
 
     private View mView;
-    private Path mPath;
+    private final Path mPath = new Path();
+    private final RectF mOuterBB = new RectF();
+    private final RectF mInnerBB = new RectF();
+
+    // outline is valid for this geometry
+    private float mOutlineScale = -1;
+    private float mOutlineStart;
+    private float mOutlineSweep;
+    private float mOutlineGap;
+    private int mOutlineInner;
+    private int mOutlineOuter;
 
     public final int width;
     public final Object tag;
@@ -160,7 +170,7 @@ public class PieItem extends PieLayout.PieDrawable {
 
     @Override
     public void prepare(Position position, float scale) {
-        mPath = getOutline(scale);
+        updateOutline(scale);
         if (mView != null) {
             mView.measure(mView.getLayoutParams().width, mView.getLayoutParams().height);
             final int w = mView.getMeasuredWidth();
@@ -227,20 +237,30 @@ public class PieItem extends PieLayout.PieDrawable {
                 && (radius > mInner && radius < mOuter); 
     }
 
-    private Path getOutline(float scale) {
-        RectF outerBB = new RectF(-mOuter * scale, -mOuter * scale, mOuter * scale, mOuter * scale);
-        RectF innerBB = new RectF(-mInner * scale, -mInner * scale, mInner * scale, mInner * scale);
+    private void updateOutline(float scale) {
+        if (scale == mOutlineScale && mStart == mOutlineStart && mSweep == mOutlineSweep &&
+                mGap == mOutlineGap && mInner == mOutlineInner && mOuter == mOutlineOuter) {
+            return;
+        }
+
+        mOuterBB.set(-mOuter * scale, -mOuter * scale, mOuter * scale, mOuter * scale);
+        mInnerBB.set(-mInner * scale, -mInner * scale, mInner * scale, mInner * scale);
 
         double gamma = (mInner + mOuter) * Math.sin(Math.toRadians(mGap / 2.0f));
         float alphaOuter = (float) Math.toDegrees(Math.asin( gamma / (mOuter * 2.0f)));
         float alphaInner = (float) Math.toDegrees(Math.asin( gamma / (mInner * 2.0f)));
 
-        Path path = new Path();
-        path.arcTo(outerBB, mStart + alphaOuter, mSweep - 2 * alphaOuter, true);
-        path.arcTo(innerBB, mStart + mSweep - alphaInner, 2 * alphaInner - mSweep);
-        path.close();
-
-        return path;
+        mPath.reset();
+        mPath.arcTo(mOuterBB, mStart + alphaOuter, mSweep - 2 * alphaOuter, true);
+        mPath.arcTo(mInnerBB, mStart + mSweep - alphaInner, 2 * alphaInner - mSweep);
+        mPath.close();
+
+        mOutlineScale = scale;
+        mOutlineStart = mStart;
+        mOutlineSweep = mSweep;
+        mOutlineGap = mGap;
+        mOutlineInner = mInner;
+        mOutlineOuter = mOuter;
     }
 
     public PieLayout getLayout() {
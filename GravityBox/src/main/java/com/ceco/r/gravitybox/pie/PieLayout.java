@@ -76,7 +76,7 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
 
     private boolean mActive = false;
     private int mPointerId;
-    private Point mCenter = new Point(0, 0);
+    private final Point mCenter = new Point(0, 0);
     private Position mPosition = Position.BOTTOM;
     private Position mLayoutDoneForPosition;
     private boolean mSysinfoDisabled;
@@ -103,8 +103,9 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
             mBackgroundFraction = animation.getAnimatedFraction();
 
             // propagate the animation event to all listeners
-            for (ValueAnimator.AnimatorUpdateListener listener : mAnimationListenerCache) {
-                listener.onAnimationUpdate(animation);
+            // indexed loops avoid iterator allocations on animation and touch paths
+            for (int i = 0; i < mAnimationListenerCache.size(); i++) {
+                mAnimationListenerCache.get(i).onAnimationUpdate(animation);
             }
 
             // animation updates occur on the main thread. it is save to call invalidate here.
@@ -354,8 +355,8 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
                     canvas.translate(-mCenter.x, -mCenter.y);
             }
 
-            for (PieDrawable drawable : mDrawableCache) {
-                drawable.draw(canvas, mPosition);
+            for (int i = 0; i < mDrawableCache.size(); i++) {
+                mDrawableCache.get(i).draw(canvas, mPosition);
             }
 
             canvas.restoreToCount(state);
@@ -395,7 +396,9 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
                     }
                 }
 
-                double distance = Math.sqrt(Math.pow(mCenter.x - x, 2) + Math.pow(mCenter.y - y, 2));
+                final float dx = mCenter.x - x;
+                final float dy = mCenter.y - y;
+                double distance = Math.sqrt(dx * dx + dy * dy);
 
                 float alpha = (float) ((distance > 1.0f)
                         ? Math.toDegrees(Math.atan2(y - mCenter.y, x - mCenter.x)) : 0.0f);
@@ -413,8 +416,8 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
                 }
 
                 PieItem newItem = null;
-                for (PieDrawable drawable : mDrawableCache) {
-                    PieItem tmp = drawable.interact(alpha, radius);
+                for (int i = 0; i < mDrawableCache.size(); i++) {
+                    PieItem tmp = mDrawableCache.get(i).interact(alpha, radius);
                     if (tmp != null) {
                         newItem = tmp;
                     }
@@ -556,7 +559,7 @@ public class PieLayout extends FrameLayout implements View.OnTouchListener {
 
         // Set the activation center as center of the pie
         // This will be corrected by the #onLayout call.
-        mCenter = center;
+        mCenter.set(center.x, center.y);
 
         mAnimationListenerCache.clear();
         for (PieSlice slice : mSlices) {
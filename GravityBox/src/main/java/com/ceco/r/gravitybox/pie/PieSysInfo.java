@@ -28,6 +28,7 @@ import android.graphics.Typeface;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 //import android.net.wifi.WifiSsid;
+import android.os.AsyncTask;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
 
@@ -51,21 +52,45 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
     private Context mContext;
     private Resources mGbResources;
 
+    private WifiManager mWifiManager;
+
     private Path mClockPath = new Path();
     private Path mInfoPath[] = new Path[4];
+    private final RectF mArcBounds = new RectF();
 
     private Paint mClockPaint = new Paint();
     private Paint mInfoPaint = new Paint();
 
     private float[] mClockTextDisplacements = new float[32];
 
+    // clock glyph layout and arc paths are valid for this key
+    private String mLayoutClockText;
+    private float mLayoutScale;
+    private int mLayoutTextSize;
+    private float mLayoutStart;
+    private float mLayoutSweep;
+    private int mLayoutInner;
+    private int mLayoutOuter;
+
     private boolean mStaleData = true;
     private String mClockText;
+    private char[] mClockChars = new char[0];
     private String mDateText;
     private String mNetworkState;
     private String mBatteryLevelReadable;
     private String mWifiSsid;
 
+    private static class SysInfoData {
+        String dateText;
+        String networkState;
+        String batteryLevel;
+        String wifiSsid;
+    }
+    // collected in background when pie gets triggered; consumed once
+    private final Object mPrefetchLock = new Object();
+    private SysInfoData mPrefetchedData;
+    private int mPrefetchSeq;
+
     private String mTimeFormatString;
     private SimpleDateFormat mTimeFormat;
 
@@ -75,6 +100,7 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
         mController = controller;
         mContext = context;
         mGbResources = gbContext.getResources();
+        mWifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
 
         mClockPaint.setAntiAlias(true);
         mClockPaint.setTypeface(Typeface.create("sans-serif-light", Typeface.BOLD));
@@ -89,8 +115,8 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
     public void prepare(Position position, float scale) {
 
         // We are updating data later when we starting to get visible.
-        // This does not save work on the main thread, but for fast gestures
-        // we don't even start to collect this data.
+        // Data is normally prefetched in background by the time we get visible
+        // and for fast gestures we don't even need to wait for it.
         mStaleData = true;
 
         mClockText = getTimeFormat().format(new Date());
@@ -100,14 +126,26 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
 
         int textsize = mGbResources.getDimensionPixelSize(R.dimen.pie_textsize);
 
+        if (mClockText.equals(mLayoutClockText) && scale == mLayoutScale &&
+                textsize == mLayoutTextSize && mStart == mLayoutStart &&
+                mSweep == mLayoutSweep && mInner == mLayoutInner && mOuter == mLayoutOuter) {
+            return;
+        }
+
         mInfoPaint.setTextSize(textsize * scale);
         mClockPaint.setTextSize((mOuter - mInner) * scale);
 
+        final int length = Math.min(mClockText.length(), mClockTextDisplacements.length);
+        if (mClockChars.length != length) {
+            mClockChars = new char[length];
+        }
+        mClockText.getChars(0, length, mClockChars, 0);
+        mClockPaint.getTextWidths(mClockChars, 0, length, mClockTextDisplacements);
+
         float total = 0;
-        for (int i = 0; i < mClockText.length(); i++) {
-            char character = mClockText.charAt(i);
-            float measure = mClockPaint.measureText("" + character);
-            mClockTextDisplacements[i] = measure * (character == '1' || character == ':' ? 0.5f : 0.8f);
+        for (int i = 0; i < length; i++) {
+            char character = mClockChars[i];
+            mClockTextDisplacements[i] *= (character == '1' || character == ':' ? 0.5f : 0.8f);
             total += mClockTextDisplacements[i];
         }
         float alpha = 268 - (float)(total * 360 / (2.0f * Math.PI * mInner * scale));
@@ -116,6 +154,14 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
         for (int i = 0; i < mInfoPath.length; i++)
             mInfoPath[i] = updatePath(mInfoPath[i], (mInner + textsize * 1.2f * i) * scale,
                     272, mStart + mSweep - 272);
+
+        mLayoutClockText = mClockText;
+        mLayoutScale = scale;
+        mLayoutTextSize = textsize;
+        mLayoutStart = mStart;
+        mLayoutSweep = mSweep;
+        mLayoutInner = mInner;
+        mLayoutOuter = mOuter;
     }
 
     @Override
@@ -126,8 +172,8 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
         }
 
         float lastPos = 0;
-        for(int i = 0; i < mClockText.length(); i++) {
-            canvas.drawTextOnPath("" + mClockText.charAt(i), mClockPath, lastPos, 0, mClockPaint);
+        for (int i = 0; i < mClockChars.length; i++) {
+            canvas.drawTextOnPath(mClockChars, i, 1, mClockPath, lastPos, 0, mClockPaint);
             lastPos += mClockTextDisplacements[i];
         }
 
@@ -159,26 +205,65 @@ public class PieSysInfo extends PieSliceContainer implements ValueAnimator.Anima
             path.reset();
         }
 
-        final RectF bB = new RectF(-radius, -radius, radius, radius);
-        path.arcTo(bB, start, sweep, true);
+        mArcBounds.set(-radius, -radius, radius, radius);
+        path.arcTo(mArcBounds, start, sweep, true);
         return path;
     }
 
+    /**
+     * Starts collecting system info in background so that it's ready
+     * by the time pie fades in. Called when pie gets triggered.
+     */
+    public void prefetchData() {
+        final int seq;
+        synchronized (mPrefetchLock) {
+            mPrefetchedData = null;
+            seq = ++mPrefetchSeq;
+        }
+        // controller state is owned by main thread so take snapshot here
+        final String networkState = mController.getOperatorState();
+        final String batteryLevel = mController.getBatteryLevel();
+        AsyncTask.execute(() -> {
+            SysInfoData data = collectData(networkState, batteryLevel);
+            synchronized (mPrefetchLock) {
+                // drop result if already consumed or superseded
+                if (seq == mPrefetchSeq) {
+                    mPrefetchedData = data;
+                }
+            }
+        });
+    }
+
+    private SysInfoData collectData(String networkState, String batteryLevel) {
+        SysInfoData data = new SysInfoData();
+        data.dateText = DateFormat.getMediumDateFormat(mContext).format(new Date()).toUpperCase(Locale.getDefault());
+        data.networkState = networkState == null ? null : networkState.toUpperCase(Locale.getDefault());
+        data.wifiSsid = getWifiSsid().toUpperCase(Locale.getDefault());
+        data.batteryLevel = batteryLevel.toUpperCase(Locale.getDefault());
+        return data;
+    }
+
     private void updateData() {
-        mDateText = DateFormat.getMediumDateFormat(mContext).format(new Date()).toUpperCase(Locale.getDefault());
-        mNetworkState = mController.getOperatorState();
-        if (mNetworkState != null) {
-            mNetworkState = mNetworkState.toUpperCase(Locale.getDefault());
+        SysInfoData data;
+        synchronized (mPrefetchLock) {
+            data = mPrefetchedData;
+            mPrefetchedData = null;
+            mPrefetchSeq++;
+        }
+        if (data == null) {
+            // prefetch not finished yet
+            data = collectData(mController.getOperatorState(), mController.getBatteryLevel());
         }
-        mWifiSsid = getWifiSsid().toUpperCase(Locale.getDefault());
-        mBatteryLevelReadable = mController.getBatteryLevel().toUpperCase(Locale.getDefault());
+        mDateText = data.dateText;
+        mNetworkState = data.networkState;
+        mWifiSsid = data.wifiSsid;
+        mBatteryLevelReadable = data.batteryLevel;
     }
 
     private String getWifiSsid() {
         String ssid = null;
-        final WifiManager wifiManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
-        if (wifiManager != null) {
-            final WifiInfo connectionInfo = wifiManager.getConnectionInfo();
+        if (mWifiManager != null) {
+            final WifiInfo connectionInfo = mWifiManager.getConnectionInfo();
             if (connectionInfo != null) {
                 final Object wifiSsid = XposedHelpers.callMethod(connectionInfo, "getWifiSsid");
                 if (wifiSsid != null) {
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.pie;
+
+/**
+ * Screen edge regions in which touches may activate pie controls.
+ * Each enabled slot covers a strip of given thickness along its edge that is
+ * centered on the edge and spans either a fraction of the edge or a fixed
+ * length when center trigger is enabled.
+ * Indices match {@link PieController.Position#INDEX} and slot flags match
+ * {@link PieController.Position#FLAG}. There are no Android dependencies
+ * so trigger evaluation can be verified on plain JVM.
+ */
+public class PieTriggerGeometry {
+    public static final int NONE = -1;
+    public static final int LEFT = 0;
+    public static final int BOTTOM = 1;
+    public static final int RIGHT = 2;
+    public static final int TOP = 3;
+    public static final int COUNT = 4;
+
+    // portion of screen edge covered by trigger unless center trigger is used
+    static final float EDGE_FRACTION = 0.8f;
+
+    private int mSlots;
+    private int mScreenWidth;
+    private int mScreenHeight;
+    private int mThickness;
+    private boolean mCenterTrigger;
+    private int mCenterLength;
+
+    /**
+     * @param slots bit mask of enabled positions; bit index equals position index
+     * @param thickness trigger thickness in pixels
+     * @param centerLength trigger length in pixels used when center trigger is enabled
+     */
+    public void update(int slots, int screenWidth, int screenHeight, int thickness,
+                       boolean centerTrigger, int centerLength) {
+        mSlots = slots;
+        mScreenWidth = screenWidth;
+        mScreenHeight = screenHeight;
+        mThickness = thickness;
+        mCenterTrigger = centerTrigger;
+        mCenterLength = centerLength;
+    }
+
+    public boolean isEmpty() {
+        return (mSlots & ((1 << COUNT) - 1)) == 0 || mThickness <= 0 ||
+                mScreenWidth <= 0 || mScreenHeight <= 0;
+    }
+
+    public boolean isEnabled(int index) {
+        return index >= 0 && index < COUNT && (mSlots & (1 << index)) != 0;
+    }
+
+    /**
+     * Returns trigger length along its edge
+     */
+    public int getLength(int index) {
+        final int edge = (index == LEFT || index == RIGHT) ? mScreenHeight : mScreenWidth;
+        return mCenterTrigger ? Math.min(mCenterLength, edge) : (int) (edge * EDGE_FRACTION);
+    }
+
+    public int getThickness() {
+        return mThickness;
+    }
+
+    /**
+     * Returns index of trigger containing given screen point or NONE
+     */
+    public int findTrigger(float x, float y) {
+        if (isEmpty()) return NONE;
+        for (int i = 0; i < COUNT; i++) {
+            if (isEnabled(i) && contains(i, x, y)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    private boolean contains(int index, float x, float y) {
+        final int length = getLength(index);
+        switch (index) {
+            case LEFT:
+            case RIGHT: {
+                final float start = (mScreenHeight - length) / 2f;
+                if (y < start || y >= start + length) return false;
+                return index == LEFT ? x < mThickness : x >= mScreenWidth - mThickness;
+            }
+            case TOP:
+            case BOTTOM: {
+                final float start = (mScreenWidth - length) / 2f;
+                if (x < start || x >= start + length) return false;
+                return index == TOP ? y < mThickness : y >= mScreenHeight - mThickness;
+            }
+            default:
+                return false;
+        }
+    }
+}
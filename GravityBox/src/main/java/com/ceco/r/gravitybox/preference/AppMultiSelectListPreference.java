@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.preference;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.MultiSelectListPreference;
+import android.util.AttributeSet;
+
+/**
+ * Multi-select list of launchable applications persisting package names.
+ * Entries are loaded from LauncherAppIndex in background when dialog is
+ * first requested. Selected packages that are not launchable (anymore)
+ * are kept so that the selection survives temporarily unavailable apps.
+ */
+public class AppMultiSelectListPreference extends MultiSelectListPreference {
+    private boolean mLoading;
+
+    public AppMultiSelectListPreference(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    @Override
+    protected void onClick() {
+        if (getEntries() != null) {
+            super.onClick();
+            return;
+        }
+        if (mLoading) return;
+
+        mLoading = true;
+        final Context context = getContext();
+        final Set<String> selected = new HashSet<>(getValues());
+        final Handler handler = new Handler(Looper.getMainLooper());
+        AsyncTask.execute(() -> {
+            List<LauncherAppIndex.Entry> entries = LauncherAppIndex.getInstance(context)
+                    .getEntries(LauncherAppIndex.KIND_LAUNCHER);
+            final List<CharSequence> labels = new ArrayList<>(entries.size());
+            final List<CharSequence> pkgs = new ArrayList<>(entries.size());
+            Set<String> seen = new HashSet<>();
+            for (LauncherAppIndex.Entry entry : entries) {
+                if (seen.add(entry.component.getPackageName())) {
+                    labels.add(entry.label);
+                    pkgs.add(entry.component.getPackageName());
+                }
+            }
+            for (String pkg : selected) {
+                if (seen.add(pkg)) {
+                    labels.add(pkg);
+                    pkgs.add(pkg);
+                }
+            }
+            handler.post(() -> {
+                mLoading = false;
+                setEntries(labels.toArray(new CharSequence[0]));
+                setEntryValues(pkgs.toArray(new CharSequence[0]));
+                showDialog(null);
+            });
+        });
+    }
+}
@@ -21,11 +21,15 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.ceco.r.gravitybox.BitmapUtils;
 import com.ceco.r.gravitybox.R;
@@ -48,9 +52,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
@@ -60,6 +62,8 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.DialogPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -93,6 +97,8 @@ public class AppPickerPreference extends DialogPreference
     public static final int MODE_APP = 0;
     public static final int MODE_SHORTCUT = 1;
 
+    private static final int ICON_LOADER_THREADS = 2;
+
     public static PrefsFragment sPrefsFragment;
 
     private Context mContext;
@@ -120,6 +126,9 @@ public class AppPickerPreference extends DialogPreference
     private boolean mAllowGravityBoxActions;
     private Bundle mExtraData;
     private IconListAdapter mIconPickerAdapter;
+    private Handler mHandler;
+    private BitmapDrawable mIconPlaceholder;
+    private final AtomicBoolean mIconRefreshPending = new AtomicBoolean(false);
 
     private static LruCache<String, BitmapDrawable> sAppIconCache;
     static {
@@ -132,6 +141,14 @@ public class AppPickerPreference extends DialogPreference
         };
     }
 
+    private static final ThreadPoolExecutor sIconLoader = new ThreadPoolExecutor(
+            ICON_LOADER_THREADS, ICON_LOADER_THREADS, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+    private static final Set<String> sPendingIconKeys = new HashSet<>();
+    static {
+        sIconLoader.allowCoreThreadTimeOut(true);
+    }
+
     public static void cleanupAsync(final Context context) {
         new AsyncTask<Void,Void,Void>() {
             @SuppressWarnings("unchecked")
@@ -207,6 +224,7 @@ public class AppPickerPreference extends DialogPreference
         mIconPickSizePx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 50, 
                 mResources.getDisplayMetrics());
         mPackageManager = mContext.getPackageManager();
+        mHandler = new Handler(Looper.getMainLooper());
         mMode = MODE_APP;
         mAppInfo = new AppInfo();
         mAllowGravityBoxActions = true;
@@ -477,41 +495,25 @@ public class AppPickerPreference extends DialogPreference
 
             @Override
             protected ArrayList<IIconListAdapterItem> doInBackground(Void... arg0) {
-                ArrayList<IIconListAdapterItem> itemList = new ArrayList<>();
-                List<ResolveInfo> appList = new ArrayList<>();
-
-                List<PackageInfo> packages = mPackageManager.getInstalledPackages(0);
-                Intent mainIntent = new Intent();
-                if (mMode == MODE_APP) {
-                    mainIntent.setAction(Intent.ACTION_MAIN);
-                    mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-                } else if (mMode == MODE_SHORTCUT) {
-                    mainIntent.setAction(Intent.ACTION_CREATE_SHORTCUT);
-                }
-                for(PackageInfo pi : packages) {
-                    if (this.isCancelled()) break;
-                    if (mMode == MODE_SHORTCUT &&
-                            pi.packageName.equals(mContext.getPackageName()) &&
-                                    !mAllowGravityBoxActions)
-                        continue;
-                    mainIntent.setPackage(pi.packageName);
-                    List<ResolveInfo> activityList = mPackageManager.queryIntentActivities(mainIntent, 0);
-                    for(ResolveInfo ri : activityList) {
-                        appList.add(ri);
-                    }
-                }
+                List<LauncherAppIndex.Entry> entries = LauncherAppIndex.getInstance(mContext)
+                        .getEntries(mMode == MODE_SHORTCUT ?
+                                LauncherAppIndex.KIND_SHORTCUT : LauncherAppIndex.KIND_LAUNCHER);
+                ArrayList<IIconListAdapterItem> itemList = new ArrayList<>(entries.size() + 1);
 
-                Collections.sort(appList, new ResolveInfo.DisplayNameComparator(mPackageManager));
                 if (mNullItemEnabled) {
                     itemList.add(mMode == MODE_SHORTCUT ? 
                         new ShortcutItem(mContext.getString(R.string.app_picker_none), null) :
                         new AppItem(mContext.getString(R.string.app_picker_none), null));
                 }
-                for (ResolveInfo ri : appList) {
+                for (LauncherAppIndex.Entry entry : entries) {
                     if (this.isCancelled()) break;
-                    String appName = ri.loadLabel(mPackageManager).toString();
+                    if (mMode == MODE_SHORTCUT &&
+                            entry.component.getPackageName().equals(mContext.getPackageName()) &&
+                                    !mAllowGravityBoxActions)
+                        continue;
                     IIconListAdapterItem ai = mMode == MODE_SHORTCUT ?
-                            new ShortcutItem(appName, ri) : new AppItem(appName, ri);
+                            new ShortcutItem(entry.label, entry.component) :
+                            new AppItem(entry.label, entry.component);
                     itemList.add(ai);
                 }
 
@@ -530,6 +532,59 @@ public class AppPickerPreference extends DialogPreference
         }.execute();
     }
 
+    private Drawable getIconPlaceholder() {
+        if (mIconPlaceholder == null) {
+            mIconPlaceholder = new BitmapDrawable(mResources, Bitmap.createBitmap(
+                    mAppIconSizePx, mAppIconSizePx, Bitmap.Config.ALPHA_8));
+        }
+        return mIconPlaceholder;
+    }
+
+    private void loadIconAsync(final String key, final ComponentName component) {
+        synchronized (sPendingIconKeys) {
+            if (!sPendingIconKeys.add(key)) return;
+        }
+
+        final int sizePx = mAppIconSizePx;
+        sIconLoader.execute(() -> {
+            try {
+                Drawable d;
+                try {
+                    d = mPackageManager.getActivityIcon(component);
+                } catch (PackageManager.NameNotFoundException e) {
+                    d = mPackageManager.getDefaultActivityIcon();
+                }
+                Bitmap bitmap = BitmapUtils.drawableToBitmap(d);
+                bitmap = Bitmap.createScaledBitmap(bitmap, sizePx, sizePx, false);
+                sAppIconCache.put(key, new BitmapDrawable(mResources, bitmap));
+            } catch (Throwable t) {
+                Log.e(TAG, "Error loading icon for " + component + ": " + t.getMessage());
+                // remember failure as empty icon so the load is not queued again
+                sAppIconCache.put(key, new BitmapDrawable(mResources, Bitmap.createBitmap(
+                        sizePx, sizePx, Bitmap.Config.ALPHA_8)));
+                return;
+            } finally {
+                synchronized (sPendingIconKeys) {
+                    sPendingIconKeys.remove(key);
+                }
+            }
+            // coalesce list refreshes of icons loaded in quick succession
+            if (!mIconRefreshPending.getAndSet(true)) {
+                mHandler.postDelayed(mIconRefreshRunnable, 50);
+            }
+        });
+    }
+
+    private final Runnable mIconRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIconRefreshPending.set(false);
+            if (mListView != null && mListView.getAdapter() != null) {
+                ((IconListAdapter)mListView.getAdapter()).notifyDataSetChanged();
+            }
+        }
+    };
+
     public void setValue(String value){
         if (!callChangeListener(value))
             return;
@@ -626,20 +681,18 @@ public class AppPickerPreference extends DialogPreference
     class AppItem implements IIconListAdapterItem {
         protected String mAppName;
         protected BitmapDrawable mAppIcon;
-        protected ResolveInfo mResolveInfo;
+        protected ComponentName mComponent;
         protected Intent mIntent;
 
         private AppItem() { }
 
-        public AppItem(String appName, ResolveInfo ri) {
+        public AppItem(String appName, ComponentName component) {
             mAppName = appName;
-            mResolveInfo = ri;
-            if (mResolveInfo != null) {
+            mComponent = component;
+            if (mComponent != null) {
                 mIntent = new Intent(Intent.ACTION_MAIN);
                 mIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-                ComponentName cn = new ComponentName(mResolveInfo.activityInfo.packageName,
-                        mResolveInfo.activityInfo.name);
-                mIntent.setComponent(cn);
+                mIntent.setComponent(mComponent);
                 mIntent.putExtra("mode", MODE_APP);
                 if (mForceCustomIcon) {
                     mIntent.putExtra("iconResName", "ic_shortcut_help");
@@ -675,16 +728,14 @@ public class AppPickerPreference extends DialogPreference
 
         @Override
         public Drawable getIconLeft() {
-            if (mResolveInfo == null) return null;
+            if (mComponent == null) return null;
 
             if (mAppIcon == null) {
                 final String key = getKey();
                 mAppIcon = sAppIconCache.get(key);
                 if (mAppIcon == null) {
-                    Bitmap bitmap = BitmapUtils.drawableToBitmap(mResolveInfo.loadIcon(mPackageManager));
-                    bitmap = Bitmap.createScaledBitmap(bitmap, mAppIconSizePx, mAppIconSizePx, false);
-                    mAppIcon = new BitmapDrawable(mResources, bitmap);
-                    sAppIconCache.put(key, mAppIcon);
+                    loadIconAsync(key, mComponent);
+                    return getIconPlaceholder();
                 }
             }
             return mAppIcon;
@@ -704,14 +755,12 @@ public class AppPickerPreference extends DialogPreference
         private Intent mCreateShortcutIntent;
         private ShortcutCreatedListener mShortcutCreatedListener;
 
-        public ShortcutItem(String appName, ResolveInfo ri) {
+        public ShortcutItem(String appName, ComponentName component) {
             mAppName = appName;
-            mResolveInfo = ri;
-            if (mResolveInfo != null) {
+            mComponent = component;
+            if (mComponent != null) {
                 mCreateShortcutIntent = new Intent(Intent.ACTION_CREATE_SHORTCUT);
-                ComponentName cn = new ComponentName(mResolveInfo.activityInfo.packageName,
-                        mResolveInfo.activityInfo.name);
-                mCreateShortcutIntent.setComponent(cn);
+                mCreateShortcutIntent.setComponent(mComponent);
                 // mark intent so we can later identify it comes from GB
                 mCreateShortcutIntent.putExtra("gravitybox", true);
                 if (mAllowUnlockAction) {
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.preference;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.ceco.r.gravitybox.Utils;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.provider.Settings;
+import android.util.Log;
+
+/**
+ * Process-wide index of launchable and shortcut-providing activities.
+ * Built with a single PackageManager query per kind, labels are loaded once,
+ * sorted using precomputed collation keys and persisted to a small cache file
+ * that is dropped whenever a package broadcast arrives.
+ */
+public class LauncherAppIndex {
+    private static final String TAG = "GB:LauncherAppIndex";
+    private static final boolean DEBUG = false;
+    private static final String CACHE_FILE_NAME = "launcher_app_index";
+    private static final int CACHE_VERSION = 1;
+
+    public static final int KIND_LAUNCHER = 0;
+    public static final int KIND_SHORTCUT = 1;
+    private static final int KIND_COUNT = 2;
+
+    private static LauncherAppIndex sInstance;
+
+    public static class Entry implements Comparable<Entry> {
+        public final ComponentName component;
+        public final String label;
+        private final CollationKey mCollationKey;
+
+        private Entry(ComponentName component, String label, Collator collator) {
+            this.component = component;
+            this.label = label;
+            mCollationKey = collator.getCollationKey(label);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return mCollationKey.compareTo(other.mCollationKey);
+        }
+    }
+
+    private final Context mContext;
+    private final PackageManager mPackageManager;
+    private final File mCacheFile;
+    @SuppressWarnings("unchecked")
+    private final List<Entry>[] mEntries = new List[KIND_COUNT];
+
+    public static synchronized LauncherAppIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LauncherAppIndex(context.getApplicationContext() != null ?
+                    context.getApplicationContext() : context);
+        }
+        return sInstance;
+    }
+
+    private LauncherAppIndex(Context context) {
+        mContext = context;
+        mPackageManager = context.getPackageManager();
+        mCacheFile = new File(Utils.getCacheDir(context), CACHE_FILE_NAME);
+
+        IntentFilter pkgFilter = new IntentFilter();
+        pkgFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        pkgFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        pkgFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        pkgFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        pkgFilter.addDataScheme("package");
+        context.registerReceiver(mInvalidateReceiver, pkgFilter);
+
+        IntentFilter miscFilter = new IntentFilter();
+        miscFilter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        miscFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_AVAILABLE);
+        miscFilter.addAction(Intent.ACTION_EXTERNAL_APPLICATIONS_UNAVAILABLE);
+        context.registerReceiver(mInvalidateReceiver, miscFilter);
+    }
+
+    private final BroadcastReceiver mInvalidateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (DEBUG) Log.d(TAG, "Invalidating index due to: " + intent.getAction());
+            invalidate();
+        }
+    };
+
+    public synchronized void invalidate() {
+        for (int i = 0; i < KIND_COUNT; i++) {
+            mEntries[i] = null;
+        }
+        if (mCacheFile.exists() && !mCacheFile.delete()) {
+            Log.w(TAG, "Unable to delete cache file");
+        }
+    }
+
+    /**
+     * Returns immutable list of entries sorted by label.
+     * Must not be called from the UI thread as it might need to query PackageManager.
+     */
+    public synchronized List<Entry> getEntries(int kind) {
+        if (mEntries[kind] == null) {
+            if (!loadCache()) {
+                for (int i = 0; i < KIND_COUNT; i++) {
+                    mEntries[i] = queryEntries(i);
+                }
+                saveCache();
+            }
+        }
+        return mEntries[kind];
+    }
+
+    private List<Entry> queryEntries(int kind) {
+        Intent intent = new Intent();
+        if (kind == KIND_LAUNCHER) {
+            intent.setAction(Intent.ACTION_MAIN);
+            intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        } else {
+            intent.setAction(Intent.ACTION_CREATE_SHORTCUT);
+        }
+
+        List<ResolveInfo> riList = mPackageManager.queryIntentActivities(intent, 0);
+        Collator collator = Collator.getInstance();
+        List<Entry> entries = new ArrayList<>(riList.size());
+        for (ResolveInfo ri : riList) {
+            CharSequence label = ri.loadLabel(mPackageManager);
+            entries.add(new Entry(new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name),
+                    label == null ? ri.activityInfo.name : label.toString(), collator));
+        }
+        Collections.sort(entries);
+        if (DEBUG) Log.d(TAG, "Queried " + entries.size() + " entries of kind " + kind);
+        return Collections.unmodifiableList(entries);
+    }
+
+    private int getBootCount() {
+        return Settings.Global.getInt(mContext.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+    }
+
+    private boolean loadCache() {
+        if (!mCacheFile.exists()) return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(mCacheFile)))) {
+            if (in.readInt() != CACHE_VERSION ||
+                    in.readInt() != getBootCount() ||
+                    !Locale.getDefault().toString().equals(in.readUTF())) {
+                return false;
+            }
+            // catches changes that happened while our process was not running
+            ChangedPackages changed = mPackageManager.getChangedPackages(in.readInt());
+            if (changed != null && !changed.getPackageNames().isEmpty()) {
+                return false;
+            }
+
+            Collator collator = Collator.getInstance();
+            @SuppressWarnings("unchecked")
+            List<Entry>[] entries = new List[KIND_COUNT];
+            for (int kind = 0; kind < KIND_COUNT; kind++) {
+                final int count = in.readInt();
+                List<Entry> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ComponentName cn = new ComponentName(in.readUTF(), in.readUTF());
+                    list.add(new Entry(cn, in.readUTF(), collator));
+                }
+                Collections.sort(list);
+                entries[kind] = Collections.unmodifiableList(list);
+            }
+            System.arraycopy(entries, 0, mEntries, 0, KIND_COUNT);
+            if (DEBUG) Log.d(TAG, "Index loaded from cache");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Error loading cache: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void saveCache() {
+        File tmpFile = new File(mCacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpFile)))) {
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(getBootCount());
+            out.writeUTF(Locale.getDefault().toString());
+            ChangedPackages changed = mPackageManager.getChangedPackages(0);
+            out.writeInt(changed == null ? 0 : changed.getSequenceNumber());
+            for (int kind = 0; kind < KIND_COUNT; kind++) {
+                out.writeInt(mEntries[kind].size());
+                for (Entry e : mEntries[kind]) {
+                    out.writeUTF(e.component.getPackageName());
+                    out.writeUTF(e.component.getClassName());
+                    out.writeUTF(e.label);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error saving cache: " + e.getMessage());
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(mCacheFile)) {
+            tmpFile.delete();
+        }
+    }
+}
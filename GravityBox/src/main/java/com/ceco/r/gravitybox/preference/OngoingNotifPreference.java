@@ -15,12 +15,16 @@
 package com.ceco.r.gravitybox.preference;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.ceco.r.gravitybox.BitmapUtils;
 import com.ceco.r.gravitybox.ColorUtils;
 import com.ceco.r.gravitybox.R;
 import com.ceco.r.gravitybox.GravityBoxSettings;
 import com.ceco.r.gravitybox.ModStatusBar;
+import com.ceco.r.gravitybox.OngoingNotifRegistry;
 import com.ceco.r.gravitybox.adapters.IIconCheckListAdapterItem;
 import com.ceco.r.gravitybox.adapters.IconCheckListAdapter;
 
@@ -100,14 +104,14 @@ public class OngoingNotifPreference extends DialogPreference
     @Override
     protected void onDialogClosed(boolean positiveResult) {
         if (positiveResult) {
-            String buf = "";
+            List<String> blocked = new ArrayList<>();
             for(int i = 0; i < mListData.size(); i++) {
                 OngoingNotif on = (OngoingNotif) mListData.get(i);
                 if (on.isChecked()) {
-                    if (!buf.isEmpty()) buf += "#C3C0#";
-                    buf += on.getKey();
+                    blocked.add(on.getKey());
                 }
             }
+            String buf = OngoingNotifRegistry.serialize(blocked);
             persistString(buf);
             Intent intent = new Intent();
             intent.setAction(GravityBoxSettings.ACTION_PREF_ONGOING_NOTIFICATIONS_CHANGED);
@@ -125,15 +129,14 @@ public class OngoingNotifPreference extends DialogPreference
         final String notifData = Settings.Secure.getString(mContext.getContentResolver(),
                 ModStatusBar.SETTING_ONGOING_NOTIFICATIONS);
         if (notifData != null && !notifData.isEmpty()) {
-            final String[] notifications = notifData.split("#C3C0#");
+            final Set<String> blocked = new HashSet<>(OngoingNotifRegistry.parse(prefData));
             mListData = new ArrayList<>();
-            for (String n : notifications) {
-                final String[] nd = n.split(",");
-                if (nd.length == 2) {
-                    OngoingNotif on = new OngoingNotif(nd[0], Integer.valueOf(nd[1]));
-                    on.setChecked(prefData != null && prefData.contains(on.getKey()));
-                    mListData.add(on);
-                }
+            for (String key : OngoingNotifRegistry.parse(notifData)) {
+                final int comma = key.lastIndexOf(',');
+                OngoingNotif on = new OngoingNotif(key.substring(0, comma),
+                        Integer.parseInt(key.substring(comma + 1)));
+                on.setChecked(blocked.contains(on.getKey()));
+                mListData.add(on);
             }
             IconCheckListAdapter adapter = new IconCheckListAdapter(mContext, mListData);
             adapter.setSubtextEnabled(false);
@@ -166,7 +169,7 @@ public class OngoingNotifPreference extends DialogPreference
         public String getKey() {
             if (mPackage == null) return null;
 
-            return mPackage + "," + mIconId;
+            return OngoingNotifRegistry.getKey(mPackage, mIconId);
         }
 
         @Override
@@ -120,8 +120,7 @@ public abstract class AospTile extends BaseTile implements QsEventListener {
                 mHandleUpdateStateHook = XposedBridge.hookMethod(m1, new XC_MethodHook() {
                     @Override
                     protected void afterHookedMethod(MethodHookParam param) {
-                        if (mKey.equals(XposedHelpers.getAdditionalInstanceField(
-                                param.thisObject, BaseTile.TILE_KEY_NAME))) {
+                        if (param.thisObject == mTile) {
                             handleUpdateState(param.args[0], param.args[1]);
                         }
                     }
@@ -140,8 +139,7 @@ public abstract class AospTile extends BaseTile implements QsEventListener {
                 mHandleClickHook = XposedBridge.hookMethod(m2, new XC_MethodHook() {
                     @Override
                     protected void beforeHookedMethod(MethodHookParam param) {
-                        if (mKey.equals(XposedHelpers.getAdditionalInstanceField(
-                                param.thisObject, BaseTile.TILE_KEY_NAME)) &&
+                        if (param.thisObject == mTile &&
                                 onBeforeHandleClick()) {
                             param.getExtra().putBoolean("returnEarly", true);
                             param.setResult(null);
@@ -150,8 +148,7 @@ public abstract class AospTile extends BaseTile implements QsEventListener {
                     @Override
                     protected void afterHookedMethod(MethodHookParam param) {
                         if (!param.getExtra().getBoolean("returnEarly") &&
-                                mKey.equals(XposedHelpers.getAdditionalInstanceField(
-                                        param.thisObject, BaseTile.TILE_KEY_NAME))) {
+                                param.thisObject == mTile) {
                             handleClick();
                         }
                     }
@@ -171,8 +168,7 @@ public abstract class AospTile extends BaseTile implements QsEventListener {
                 mSetListeningHook = XposedBridge.hookMethod(m3, new XC_MethodHook() {
                     @Override
                     protected void afterHookedMethod(MethodHookParam param) {
-                        if (mKey.equals(XposedHelpers.getAdditionalInstanceField(
-                                param.thisObject, BaseTile.TILE_KEY_NAME))) {
+                        if (param.thisObject == mTile) {
                             setListening((boolean) param.args[0]);
                         }
                     }
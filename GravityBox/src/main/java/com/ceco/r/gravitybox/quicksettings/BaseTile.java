@@ -45,7 +45,6 @@ public abstract class BaseTile implements QsEventListener, BroadcastMediator.Rec
     protected static String TAG = "GB:BaseTile";
     protected static final boolean DEBUG = ModQsTiles.DEBUG;
 
-    public static final String TILE_KEY_NAME = "gbTileKey";
     public static final String CLASS_BASE_TILE = "com.android.systemui.plugins.qs.QSTile";
     public static final String CLASS_BASE_TILE_IMPL = "com.android.systemui.qs.tileimpl.QSTileImpl";
     public static final String CLASS_TILE_STATE = "com.android.systemui.plugins.qs.QSTile.State";
@@ -159,11 +158,11 @@ public abstract class BaseTile implements QsEventListener, BroadcastMediator.Rec
 
     public final void setTile(Object tile) {
         if (mTile != null) {
-            XposedHelpers.removeAdditionalInstanceField(mTile, BaseTile.TILE_KEY_NAME);
+            mEventDistributor.unbind(mTile);
         }
         mTile = tile;
         if (mTile != null) {
-            XposedHelpers.setAdditionalInstanceField(mTile, BaseTile.TILE_KEY_NAME, mKey);
+            mEventDistributor.bind(mTile, this);
         }
     }
 
@@ -194,7 +193,8 @@ public abstract class BaseTile implements QsEventListener, BroadcastMediator.Rec
     public void handleDestroy() {
         SysUiManagers.BroadcastMediator.unsubscribe(this);
         setListening(false);
-        XposedHelpers.removeAdditionalInstanceField(mTile, BaseTile.TILE_KEY_NAME);
+        mEventDistributor.unbind(mTile);
+        mEventDistributor.unbind(mTileView);
         mEventDistributor.unregisterListener(this);
         mEventDistributor = null;
         mKey = null;
@@ -211,8 +211,11 @@ public abstract class BaseTile implements QsEventListener, BroadcastMediator.Rec
     @Override
     public void onCreateTileView(View tileView) {
         try {
+            if (mTileView != null && mTileView != tileView) {
+                mEventDistributor.unbind(mTileView);
+            }
             mTileView = tileView;
-            XposedHelpers.setAdditionalInstanceField(tileView, TILE_KEY_NAME, mKey);
+            mEventDistributor.bind(tileView, this);
 
             // backup original dimensions
             TextView label = (TextView) XposedHelpers.getObjectField(mTileView, "mLabel");
@@ -19,7 +19,10 @@ import de.robv.android.xposed.XSharedPreferences;
 import de.robv.android.xposed.XposedHelpers;
 
 import com.ceco.r.gravitybox.GravityBoxSettings;
+import com.ceco.r.gravitybox.R;
+import com.ceco.r.gravitybox.managers.BatteryHistory;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
+import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryData;
 import com.ceco.r.gravitybox.managers.SysUiBatteryInfoManager.BatteryStatusListener;
 
@@ -29,6 +32,8 @@ import android.content.Intent;
 
 public class BatteryTile extends AospTile {
     public static final String AOSP_KEY = "battery";
+    // temperature change in tenths of degree Celsius shown as trend arrow
+    private static final int TEMP_TREND_THRESHOLD = 10;
 
     private boolean mIsReceiving;
     private BatteryData mBatteryData;
@@ -53,7 +58,9 @@ public class BatteryTile extends AospTile {
     private void registerReceiver() {
         if (mIsReceiving) return;
         if (SysUiManagers.BatteryInfoManager != null) {
-            SysUiManagers.BatteryInfoManager.registerListener(mBatteryStatusListener);
+            SysUiManagers.BatteryInfoManager.registerListener(mBatteryStatusListener,
+                    SysUiBatteryInfoManager.FIELD_TEMPERATURE | SysUiBatteryInfoManager.FIELD_VOLTAGE |
+                    SysUiBatteryInfoManager.FIELD_ESTIMATE);
             if (DEBUG) log(getKey() + ": registerReceiver: battery status listener registered");
         }
         mIsReceiving = true;
@@ -126,14 +133,16 @@ public class BatteryTile extends AospTile {
             if (DEBUG) log(getKey() + ": handleUpdateState: battery data is null");
         } else {
             if (mShowTemp && mShowVoltage) {
-                label = String.format("%.1f\u00b0%s, %dmV",
-                        mBatteryData.getTemp(mTempUnit), mTempUnit, mBatteryData.voltage);
+                label = String.format("%s, %dmV", getTempText(), mBatteryData.voltage);
             } else if (mShowTemp) {
-                label = String.format("%.1f\u00b0%s",
-                        mBatteryData.getTemp(mTempUnit), mTempUnit);
+                label = getTempText();
             } else if (mShowVoltage) {
                 label = String.format("%dmV", mBatteryData.voltage);
             }
+            String estimate = getEstimateText();
+            if (estimate != null) {
+                label = (label == null ? estimate : label + ", " + estimate);
+            }
         }
         if (label != null) {
             XposedHelpers.setObjectField(state, "label", label);
@@ -141,6 +150,27 @@ public class BatteryTile extends AospTile {
         super.handleUpdateState(state, arg);
     }
 
+    @SuppressLint("DefaultLocale")
+    private String getTempText() {
+        String text = String.format("%.1f\u00b0%s", mBatteryData.getTemp(mTempUnit), mTempUnit);
+        if (mBatteryData.temperatureChange >= TEMP_TREND_THRESHOLD) {
+            text += "\u2191";
+        } else if (mBatteryData.temperatureChange <= -TEMP_TREND_THRESHOLD) {
+            text += "\u2193";
+        }
+        return text;
+    }
+
+    private String getEstimateText() {
+        final long time = mBatteryData.charging ?
+                mBatteryData.timeToFull : mBatteryData.timeToEmpty;
+        if (time == BatteryHistory.UNKNOWN) return null;
+        final long minutes = Math.max(1, time / 60000);
+        return mGbContext.getString(mBatteryData.charging ?
+                R.string.qs_tile_battery_time_to_full : R.string.qs_tile_battery_time_left,
+                (int) (minutes / 60), (int) (minutes % 60));
+    }
+
     @Override
     public void handleDestroy() {
         super.handleDestroy();
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.quicksettings;
+
+/**
+ * Turns raw sensor samples into compass heading.
+ * Heading is computed either from rotation vector or, as a fallback,
+ * from low-pass filtered accelerometer and magnetometer vectors using
+ * the same math as SensorManager.getRotationMatrix() and getOrientation().
+ * Heading is smoothed with time based filter so result doesn't depend
+ * on sampling rate and is published only when it moves by more than
+ * given threshold. There are no allocations per sample and no Android
+ * dependencies so recorded sensor traces can be replayed on plain JVM.
+ * Not thread safe.
+ */
+class CompassHeadingFilter {
+    private static final float NS_PER_SEC = 1e9f;
+    // heading itself is smoothed only lightly; vectors are filtered already and rotation vector is fused
+    private static final float HEADING_TIME_CONSTANT_RATIO = 0.25f;
+
+    private final float mTimeConstantSec;
+    private final float mThresholdDeg;
+
+    private final float[] mAcceleration = new float[3];
+    private final float[] mGeomagnetic = new float[3];
+    private long mAccelerationTime = -1;
+    private long mGeomagneticTime = -1;
+
+    // smoothed heading as unit vector to handle wrap around 0/360
+    private float mHeadingSin;
+    private float mHeadingCos;
+    private long mHeadingTime = -1;
+
+    private float mPublishedDeg = Float.NaN;
+
+    /**
+     * @param timeConstantSec time constant of low-pass filters
+     * @param thresholdDeg minimum heading change to publish
+     */
+    CompassHeadingFilter(float timeConstantSec, float thresholdDeg) {
+        mTimeConstantSec = timeConstantSec;
+        mThresholdDeg = thresholdDeg;
+    }
+
+    void reset() {
+        mAccelerationTime = mGeomagneticTime = mHeadingTime = -1;
+        mPublishedDeg = Float.NaN;
+    }
+
+    private static float alpha(long lastTimeNs, long timeNs, float timeConstantSec) {
+        if (lastTimeNs < 0 || timeNs <= lastTimeNs || timeConstantSec <= 0) return 0f;
+        final float dt = (timeNs - lastTimeNs) / NS_PER_SEC;
+        return (float) Math.exp(-dt / timeConstantSec);
+    }
+
+    private void lowPass(float[] state, long lastTimeNs, float[] values, long timeNs) {
+        final float a = alpha(lastTimeNs, timeNs, mTimeConstantSec);
+        for (int i = 0; i < 3; i++) {
+            state[i] = a * state[i] + (1 - a) * values[i];
+        }
+    }
+
+    /**
+     * Handles accelerometer sample. Returns true if published heading changed.
+     */
+    boolean onAcceleration(float[] values, long timeNs) {
+        lowPass(mAcceleration, mAccelerationTime, values, timeNs);
+        mAccelerationTime = timeNs;
+        return updateFromVectors(timeNs);
+    }
+
+    /**
+     * Handles magnetometer sample. Returns true if published heading changed.
+     */
+    boolean onGeomagnetic(float[] values, long timeNs) {
+        lowPass(mGeomagnetic, mGeomagneticTime, values, timeNs);
+        mGeomagneticTime = timeNs;
+        return updateFromVectors(timeNs);
+    }
+
+    private boolean updateFromVectors(long timeNs) {
+        if (mAccelerationTime < 0 || mGeomagneticTime < 0) return false;
+
+        final float[] a = mAcceleration;
+        final float[] e = mGeomagnetic;
+        // H = E x A points east
+        float hx = e[1] * a[2] - e[2] * a[1];
+        float hy = e[2] * a[0] - e[0] * a[2];
+        float hz = e[0] * a[1] - e[1] * a[0];
+        final float normH = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+        if (normH < 0.1f) {
+            // device is close to free fall or close to magnetic pole
+            return false;
+        }
+        final float normA = (float) Math.sqrt(a[0] * a[0] + a[1] * a[1] + a[2] * a[2]);
+        hx /= normH; hy /= normH; hz /= normH;
+        final float ax = a[0] / normA, ay = a[1] / normA, az = a[2] / normA;
+        // M = A x H points north; azimuth = atan2(R[1], R[4]) = atan2(Hy, My)
+        final float my = az * hx - ax * hz;
+        return updateHeading((float) Math.atan2(hy, my), timeNs);
+    }
+
+    /**
+     * Handles rotation vector sample. Returns true if published heading changed.
+     */
+    boolean onRotationVector(float[] values, long timeNs) {
+        final float q1 = values[0], q2 = values[1], q3 = values[2];
+        final float q0;
+        if (values.length >= 4) {
+            q0 = values[3];
+        } else {
+            float w = 1 - q1 * q1 - q2 * q2 - q3 * q3;
+            q0 = w > 0 ? (float) Math.sqrt(w) : 0;
+        }
+        // R[1] and R[4] of SensorManager.getRotationMatrixFromVector()
+        final float r1 = 2 * q1 * q2 - 2 * q3 * q0;
+        final float r4 = 1 - 2 * q1 * q1 - 2 * q3 * q3;
+        return updateHeading((float) Math.atan2(r1, r4), timeNs);
+    }
+
+    private boolean updateHeading(float azimuthRad, long timeNs) {
+        final float sin = (float) Math.sin(azimuthRad);
+        final float cos = (float) Math.cos(azimuthRad);
+        final float a = alpha(mHeadingTime, timeNs,
+                mTimeConstantSec * HEADING_TIME_CONSTANT_RATIO);
+        mHeadingSin = a * mHeadingSin + (1 - a) * sin;
+        mHeadingCos = a * mHeadingCos + (1 - a) * cos;
+        mHeadingTime = timeNs;
+
+        float deg = (float) Math.toDegrees(Math.atan2(mHeadingSin, mHeadingCos));
+        deg = (deg + 360) % 360;
+        if (Float.isNaN(mPublishedDeg) || Math.abs(delta(mPublishedDeg, deg)) >= mThresholdDeg) {
+            mPublishedDeg = deg;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Shortest signed angular difference from one heading to another in range [-180, 180)
+     */
+    static float delta(float fromDeg, float toDeg) {
+        float d = (toDeg - fromDeg) % 360;
+        if (d >= 180) d -= 360;
+        if (d < -180) d += 360;
+        return d;
+    }
+
+    /**
+     * Last published heading in degrees [0, 360) or NaN if none yet
+     */
+    float getHeading() {
+        return mPublishedDeg;
+    }
+}
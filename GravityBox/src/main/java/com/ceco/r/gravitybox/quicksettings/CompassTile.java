@@ -34,22 +34,25 @@ public class CompassTile extends QsTile implements SensorEventListener {
         static final String KEY = CompassTile.class.getSimpleName()+"$Service";
     }
 
-    private final static float ALPHA = 0.97f;
+    // sensors are sampled at about the rate tile visibly refreshes at
+    private static final int SAMPLING_PERIOD_US = 100000;
+    private static final float FILTER_TIME_CONSTANT_SEC = 0.5f;
+    private static final float HEADING_THRESHOLD_DEG = 2f;
 
     private boolean mActive = false;
-    private Float mNewDegree;
+    private float mHeading = Float.NaN;
 
     private SensorManager mSensorManager;
+    private Sensor mRotationVectorSensor;
     private Sensor mAccelerationSensor;
     private Sensor mGeomagneticFieldSensor;
     private WindowManager mWindowManager;
-
-    private float[] mAcceleration;
-    private float[] mGeomagnetic;
+    private final CompassHeadingFilter mFilter = new CompassHeadingFilter(
+            FILTER_TIME_CONSTANT_SEC, HEADING_THRESHOLD_DEG);
+    private String[] mCardinalDirections;
 
     private ImageView mImage;
     private boolean mListeningSensors;
-    private int mCount;
     private boolean mUpdatePending;
 
     public CompassTile(Object host, String key, Object tile, XSharedPreferences prefs,
@@ -57,9 +60,13 @@ public class CompassTile extends QsTile implements SensorEventListener {
         super(host, key, tile, prefs, eventDistributor);
 
         mSensorManager = (SensorManager) mContext.getSystemService(Context.SENSOR_SERVICE);
-        mAccelerationSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        mGeomagneticFieldSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        mRotationVectorSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        if (mRotationVectorSensor == null) {
+            mAccelerationSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            mGeomagneticFieldSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        }
         mWindowManager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+        mCardinalDirections = mGbContext.getResources().getStringArray(R.array.cardinal_directions);
     }
 
     @Override
@@ -69,14 +76,14 @@ public class CompassTile extends QsTile implements SensorEventListener {
 
     @Override
     public void handleDestroy() {
+        setListeningSensors(false);
         super.handleDestroy();
         mSensorManager = null;
+        mRotationVectorSensor = null;
         mAccelerationSensor = null;
         mGeomagneticFieldSensor = null;
         mWindowManager = null;
         mImage = null;
-        mAcceleration = null;
-        mGeomagnetic = null;
     }
 
     @Override
@@ -100,15 +107,21 @@ public class CompassTile extends QsTile implements SensorEventListener {
     }
 
     private void setListeningSensors(boolean listening) {
-        if (listening == mListeningSensors) return;
+        if (listening == mListeningSensors || mSensorManager == null) return;
         mListeningSensors = listening;
         if (mListeningSensors) {
-            mCount = 10;
+            mFilter.reset();
+            mHeading = Float.NaN;
             mUpdatePending = false;
-            mSensorManager.registerListener(
-                    this, mAccelerationSensor, SensorManager.SENSOR_DELAY_GAME);
-            mSensorManager.registerListener(
-                    this, mGeomagneticFieldSensor, SensorManager.SENSOR_DELAY_GAME);
+            if (mRotationVectorSensor != null) {
+                mSensorManager.registerListener(
+                        this, mRotationVectorSensor, SAMPLING_PERIOD_US);
+            } else {
+                mSensorManager.registerListener(
+                        this, mAccelerationSensor, SAMPLING_PERIOD_US);
+                mSensorManager.registerListener(
+                        this, mGeomagneticFieldSensor, SAMPLING_PERIOD_US);
+            }
         } else {
             mSensorManager.unregisterListener(this);
         }
@@ -119,17 +132,19 @@ public class CompassTile extends QsTile implements SensorEventListener {
         if (mActive) {
             mState.booleanValue = true;
             mState.icon = iconFromResId(R.drawable.ic_qs_compass_on);
-            if (mNewDegree != null) {
-                mState.label = formatValueWithCardinalDirection(mNewDegree);
-
-                float target = getBaseDegree() - mNewDegree;
-                float relative = target - mImage.getRotation();
-                if (relative > 180) relative -= 360;
-
-                mImage.setRotation(mImage.getRotation() + relative / 2);
+            if (!Float.isNaN(mHeading)) {
+                mState.label = formatValueWithCardinalDirection(mHeading);
+
+                if (mImage != null) {
+                    float target = getBaseDegree() - mHeading;
+                    mImage.setRotation(mImage.getRotation() +
+                            CompassHeadingFilter.delta(mImage.getRotation(), target));
+                }
             } else {
                 mState.label = mGbContext.getString(R.string.quick_settings_compass_init);
-                mImage.setRotation(0);
+                if (mImage != null) {
+                    mImage.setRotation(0);
+                }
             }
         } else {
             mState.booleanValue = false;
@@ -148,6 +163,7 @@ public class CompassTile extends QsTile implements SensorEventListener {
     @Override
     public void setListening(boolean listening) {
         if (!listening) {
+            // panel collapsed; stop sensors right away
             setListeningSensors(false);
             mActive = false;
         }
@@ -165,61 +181,35 @@ public class CompassTile extends QsTile implements SensorEventListener {
 
     private String formatValueWithCardinalDirection(float degree) {
         int cardinalDirectionIndex = (int) (Math.floor(((degree - 22.5) % 360) / 45) + 1) % 8;
-        String[] cardinalDirections = mGbContext.getResources().getStringArray(
-                R.array.cardinal_directions);
-
         return mGbContext.getString(R.string.quick_settings_compass_value, degree,
-                cardinalDirections[cardinalDirectionIndex]);
+                mCardinalDirections[cardinalDirectionIndex]);
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        float[] values;
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            if (mAcceleration == null) {
-                mAcceleration = event.values.clone();
-            }
-            values = mAcceleration;
-        } else {
-            // Magnetic field sensor
-            if (mGeomagnetic == null) {
-                mGeomagnetic = event.values.clone();
-            }
-            values = mGeomagnetic;
-        }
-
-        for (int i = 0; i < 3; i++) {
-            values[i] = ALPHA * values[i] + (1 - ALPHA) * event.values[i];
-        }
-
-        if (!mActive || !mListeningSensors || mUpdatePending ||
-                mAcceleration == null || mGeomagnetic == null) {
-            // Nothing to do at this moment
-            return;
-        }
-
-        if (mCount++ <= 10) {
-            return;
+        if (!mActive || !mListeningSensors) return;
+
+        final boolean changed;
+        switch (event.sensor.getType()) {
+            case Sensor.TYPE_ROTATION_VECTOR:
+                changed = mFilter.onRotationVector(event.values, event.timestamp);
+                break;
+            case Sensor.TYPE_ACCELEROMETER:
+                changed = mFilter.onAcceleration(event.values, event.timestamp);
+                break;
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                changed = mFilter.onGeomagnetic(event.values, event.timestamp);
+                break;
+            default:
+                changed = false;
         }
 
-        mCount = 0;
-        float R[] = new float[9];
-        float I[] = new float[9];
-        if (!SensorManager.getRotationMatrix(R, I, mAcceleration, mGeomagnetic)) {
-            // Rotation matrix couldn't be calculated
-            return;
+        // filter keeps tracking while refresh is pending; latest heading gets shown
+        mHeading = mFilter.getHeading();
+        if (changed && !mUpdatePending) {
+            mUpdatePending = true;
+            refreshState();
         }
-
-        // Get the current orientation
-        float[] orientation = new float[3];
-        SensorManager.getOrientation(R, orientation);
-
-        // Convert azimuth to degrees
-        mNewDegree = Float.valueOf((float) Math.toDegrees(orientation[0]));
-        mNewDegree = (mNewDegree + 360) % 360;
-
-        mUpdatePending = true;
-        refreshState();
     }
 
     @Override
@@ -24,16 +24,14 @@ import com.ceco.r.gravitybox.ColorUtils;
 import com.ceco.r.gravitybox.GravityBox;
 import com.ceco.r.gravitybox.GravityBoxSettings;
 import com.ceco.r.gravitybox.LinearColorBar;
-import com.ceco.r.gravitybox.MemInfoReader;
 import com.ceco.r.gravitybox.R;
 import com.ceco.r.gravitybox.Utils;
 import com.ceco.r.gravitybox.managers.BroadcastMediator;
 import com.ceco.r.gravitybox.managers.SysUiManagers;
 
-import android.app.ActivityManager;
 import android.content.Context;
 import android.content.Intent;
-import android.text.format.Formatter;
+import android.content.res.Configuration;
 import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -85,8 +83,12 @@ public class QsPanel implements BroadcastMediator.Receiver {
     private RamBarMode mRamBarMode;
     private TextView mMemoryUsedTextView;
     private TextView mMemoryFreeTextView;
-    private ActivityManager mAm;
-    private MemInfoReader mMemInfoReader;
+    private SystemMonitorSampler mRamBarSampler;
+    private int mRamBarInterval;
+    private boolean mRamBarShowSwap;
+    private boolean mRamBarShowCpu;
+    private boolean mRamBarStyleDirty = true;
+    private boolean mListening;
 
     public QsPanel(XSharedPreferences prefs, ClassLoader classLoader) {
         mPrefs = prefs;
@@ -110,11 +112,15 @@ public class QsPanel implements BroadcastMediator.Receiver {
         mLockedTileIndicator = LockedTileIndicator.valueOf(
                 mPrefs.getString(GravityBoxSettings.PREF_KEY_QS_LOCKED_TILE_INDICATOR, "DIM"));
         mRamBarMode = RamBarMode.valueOf(mPrefs.getString(GravityBoxSettings.PREF_KEY_QS_RAMBAR_MODE, "OFF"));
+        mRamBarInterval = mPrefs.getInt(GravityBoxSettings.PREF_KEY_QS_RAMBAR_INTERVAL, 2);
+        mRamBarShowSwap = mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_QS_RAMBAR_SHOW_SWAP, false);
+        mRamBarShowCpu = mPrefs.getBoolean(GravityBoxSettings.PREF_KEY_QS_RAMBAR_SHOW_CPU, false);
         if (DEBUG) log("initPreferences: mNumColumns=" + mNumColumns +
                 "; mHideBrightness=" + mHideBrightness +
                 "; mBrightnessIconEnabled=" + mBrightnessIconEnabled +
                 "; mLockedTileIndicator=" + mLockedTileIndicator +
-                "; mRamBarMode=" + mRamBarMode);
+                "; mRamBarMode=" + mRamBarMode +
+                "; mRamBarInterval=" + mRamBarInterval);
     }
 
     @Override
@@ -133,6 +139,7 @@ public class QsPanel implements BroadcastMediator.Receiver {
             if (intent.hasExtra(GravityBoxSettings.EXTRA_QS_HIDE_BRIGHTNESS)) {
                 mHideBrightness = intent.getBooleanExtra(
                         GravityBoxSettings.EXTRA_QS_HIDE_BRIGHTNESS, false);
+                mRamBarStyleDirty = true;
                 updateResources();
                 if (DEBUG) log("onBroadcastReceived: mHideBrightness=" + mHideBrightness);
             }
@@ -152,6 +159,27 @@ public class QsPanel implements BroadcastMediator.Receiver {
                 updateRamBarMode();
                 if (DEBUG) log("onBroadcastReceived: mRamBarMode=" + mRamBarMode);
             }
+            if (intent.hasExtra(GravityBoxSettings.EXTRA_QS_RAMBAR_INTERVAL)) {
+                mRamBarInterval = intent.getIntExtra(GravityBoxSettings.EXTRA_QS_RAMBAR_INTERVAL, 2);
+                if (mRamBarSampler != null) {
+                    mRamBarSampler.setIntervalSec(mRamBarInterval);
+                }
+                if (DEBUG) log("onBroadcastReceived: mRamBarInterval=" + mRamBarInterval);
+            }
+            if (intent.hasExtra(GravityBoxSettings.EXTRA_QS_RAMBAR_SHOW_SWAP)) {
+                mRamBarShowSwap = intent.getBooleanExtra(GravityBoxSettings.EXTRA_QS_RAMBAR_SHOW_SWAP, false);
+                if (mRamBarSampler != null) {
+                    mRamBarSampler.setShowSwap(mRamBarShowSwap);
+                }
+                if (DEBUG) log("onBroadcastReceived: mRamBarShowSwap=" + mRamBarShowSwap);
+            }
+            if (intent.hasExtra(GravityBoxSettings.EXTRA_QS_RAMBAR_SHOW_CPU)) {
+                mRamBarShowCpu = intent.getBooleanExtra(GravityBoxSettings.EXTRA_QS_RAMBAR_SHOW_CPU, false);
+                if (mRamBarSampler != null) {
+                    mRamBarSampler.setShowCpu(mRamBarShowCpu);
+                }
+                if (DEBUG) log("onBroadcastReceived: mRamBarShowCpu=" + mRamBarShowCpu);
+            }
         }
     }
 
@@ -315,8 +343,28 @@ public class QsPanel implements BroadcastMediator.Receiver {
                     boolean.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    if (param.thisObject == mQsPanel && (boolean)param.args[0]) {
-                        updateRamBarMemoryUsage();
+                    if (param.thisObject == mQsPanel) {
+                        mListening = (boolean)param.args[0];
+                        updateRamBarSampling();
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            GravityBox.log(TAG, t);
+        }
+
+        try {
+            XposedHelpers.findAndHookMethod(CLASS_QS_PANEL, classLoader, "onConfigurationChanged",
+                    Configuration.class, new XC_MethodHook() {
+                @Override
+                protected void afterHookedMethod(MethodHookParam param) {
+                    if (param.thisObject == mQsPanel && mRamBar != null) {
+                        // covers density, night mode, theme overlay and locale changes
+                        mRamBarStyleDirty = true;
+                        if (mRamBarSampler != null) {
+                            mRamBarSampler.invalidate();
+                        }
+                        updateRamBarSampling();
                     }
                 }
             });
@@ -411,17 +459,23 @@ public class QsPanel implements BroadcastMediator.Receiver {
     }
 
     private void createRamBar() throws Throwable {
+        Context gbContext = Utils.getGbContext(mQsPanel.getContext());
         mRamBar = new LinearColorBar(mQsPanel.getContext(), null);
         mRamBar.setOrientation(LinearLayout.HORIZONTAL);
         mRamBar.setClipChildren(false);
         mRamBar.setClipToPadding(false);
-        LayoutInflater inflater = LayoutInflater.from(Utils.getGbContext(mQsPanel.getContext()));
+        LayoutInflater inflater = LayoutInflater.from(gbContext);
         inflater.inflate(R.layout.linear_color_bar, mRamBar, true);
         mMemoryUsedTextView = mRamBar.findViewById(R.id.foregroundText);
         mMemoryFreeTextView = mRamBar.findViewById(R.id.backgroundText);
         LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
                 LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT);
         mRamBar.setLayoutParams(lp);
+        mRamBarSampler = new SystemMonitorSampler(mQsPanel.getContext(), gbContext,
+                this::onRamBarSample);
+        mRamBarSampler.setIntervalSec(mRamBarInterval);
+        mRamBarSampler.setShowSwap(mRamBarShowSwap);
+        mRamBarSampler.setShowCpu(mRamBarShowCpu);
         updateRamBarMode();
     }
 
@@ -433,31 +487,26 @@ public class QsPanel implements BroadcastMediator.Receiver {
             } else if (mRamBarMode == RamBarMode.BOTTOM) {
                 mQsPanel.addView(mRamBar);
             }
+            // margins depend on mode
+            mRamBarStyleDirty = true;
+            updateRamBarSampling();
         }
     }
 
-    private void updateRamBarMemoryUsage() {
-        mQsPanel.removeCallbacks(updateRamBarTask);
-        if (mRamBarMode != RamBarMode.OFF && mRamBar != null && mRamBar.isAttachedToWindow()) {
-            mQsPanel.post(updateRamBarTask);
+    private void updateRamBarSampling() {
+        if (mRamBarSampler == null) return;
+        if (mListening && mRamBarMode != RamBarMode.OFF && mRamBar.isAttachedToWindow()) {
+            if (mRamBarStyleDirty) {
+                updateRamBarStyle();
+            }
+            mRamBarSampler.start();
+        } else {
+            mRamBarSampler.stop();
         }
     }
 
-    private final Runnable updateRamBarTask = () -> {
-        Context gbContext;
-        try {
-            gbContext = Utils.getGbContext(mQsPanel.getContext());
-        } catch (Throwable t) {
-            GravityBox.log(TAG, t);
-            return;
-        }
-
-        if (mAm == null) {
-            mAm = (ActivityManager) mQsPanel.getContext().getSystemService(Context.ACTIVITY_SERVICE);
-        }
-        if (mMemInfoReader == null) {
-            mMemInfoReader = new MemInfoReader();
-        }
+    private void updateRamBarStyle() {
+        mRamBarStyleDirty = false;
 
         // update layout
         LinearLayout.LayoutParams lp = (LinearLayout.LayoutParams) mRamBar.getLayoutParams();
@@ -489,24 +538,14 @@ public class QsPanel implements BroadcastMediator.Receiver {
         mRamBar.setRightColor(rightBgColor);
         mMemoryUsedTextView.setTextColor(ColorUtils.findContrastColor(primaryTextColor, leftBgColor, true, 2));
         mMemoryFreeTextView.setTextColor(primaryTextColor);
+        if (DEBUG) log("RAM bar style updated");
+    }
 
-        // update memory usage
-        ActivityManager.MemoryInfo memInfo = new ActivityManager.MemoryInfo();
-        mAm.getMemoryInfo(memInfo);
-        long secServerMem = 0;//XposedHelpers.getLongField(memInfo, "secondaryServerThreshold");
-        mMemInfoReader.readMemInfo();
-        long availMem = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize() -
-                secServerMem;
-        long totalMem = mMemInfoReader.getTotalSize();
-
-        String sizeStr = Formatter.formatShortFileSize(mQsPanel.getContext(), totalMem-availMem);
-        mMemoryUsedTextView.setText(gbContext.getResources().getString(
-                R.string.service_foreground_processes, sizeStr));
-        sizeStr = Formatter.formatShortFileSize(mQsPanel.getContext(), availMem);
-        mMemoryFreeTextView.setText(gbContext.getResources().getString(
-                R.string.service_background_processes, sizeStr));
-
-        mRamBar.setRatios(((float) totalMem - (float) availMem) / (float) totalMem, 0, 0);
+    private void onRamBarSample(SystemMonitorSampler.Sample sample) {
+        if (mRamBar == null || mRamBarMode == RamBarMode.OFF) return;
+        mMemoryUsedTextView.setText(sample.usedText);
+        mMemoryFreeTextView.setText(sample.freeText);
+        mRamBar.setRatios(sample.usedRatio, 0, 0);
         if (DEBUG) log("RAM bar updated");
-    };
+    }
 }
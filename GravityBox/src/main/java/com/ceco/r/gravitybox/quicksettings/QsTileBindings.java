@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.quicksettings;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Maps tile and tile view objects to listeners owning them.
+ * Lookup is by identity so objects we don't own simply miss without
+ * their equals() or hashCode() being invoked. Bindings are copy-on-write;
+ * lookups from hooked methods need no locking.
+ */
+class QsTileBindings<L> {
+    private volatile Map<Object,L> mBindings = new IdentityHashMap<>();
+
+    L get(Object target) {
+        return target == null ? null : mBindings.get(target);
+    }
+
+    synchronized void bind(Object target, L listener) {
+        if (target == null || listener == null) return;
+        Map<Object,L> bindings = new IdentityHashMap<>(mBindings);
+        bindings.put(target, listener);
+        mBindings = bindings;
+    }
+
+    synchronized void unbind(Object target) {
+        if (target == null || !mBindings.containsKey(target)) return;
+        Map<Object,L> bindings = new IdentityHashMap<>(mBindings);
+        bindings.remove(target);
+        mBindings = bindings;
+    }
+
+    // drops all bindings owned by listener
+    synchronized void unbindAll(L listener) {
+        if (!mBindings.containsValue(listener)) return;
+        Map<Object,L> bindings = new IdentityHashMap<>(mBindings);
+        bindings.values().removeIf(l -> l == listener);
+        mBindings = bindings;
+    }
+}
@@ -16,7 +16,6 @@ package com.ceco.r.gravitybox.quicksettings;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import com.ceco.r.gravitybox.GravityBox;
 import com.ceco.r.gravitybox.ModQsTiles;
@@ -65,13 +64,15 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
     @SuppressWarnings("unused")
     private final XSharedPreferences mPrefs;
     private final Map<String,QsEventListener> mListeners;
-    private String mCreateTileViewTileKey;
+    private final QsTileBindings<QsEventListener> mBindings;
+    private QsEventListener mCreateTileViewListener;
     private QsPanel mQsPanel;
 
     public QsTileEventDistributor(Object host, XSharedPreferences prefs) {
         mHost = host;
         mPrefs = prefs;
         mListeners = new LinkedHashMap<>();
+        mBindings = new QsTileBindings<>();
         SysUiManagers.KeyguardMonitor.registerListener(this);
 
         createHooks();
@@ -95,8 +96,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     BaseTile.CLASS_TILE_STATE, Object.class, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l instanceof QsTile) {
                         l.handleUpdateState(param.args[0], param.args[1]);
                         param.setResult(null);
@@ -108,8 +108,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l instanceof QsTile) {
                         if (!l.isLocked()) {
                             l.handleClick();
@@ -125,8 +124,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     boolean.class, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l instanceof QsTile) {
                         l.setListening((boolean)param.args[0]);
                     }
@@ -138,8 +136,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     boolean.class, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l instanceof AospTile) {
                         l.setListening((boolean)param.args[0]);
                     }
@@ -150,17 +147,15 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     BaseTile.CLASS_BASE_TILE, boolean.class, new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    mCreateTileViewTileKey = (String) XposedHelpers
-                            .getAdditionalInstanceField(param.args[0], BaseTile.TILE_KEY_NAME);
+                    mCreateTileViewListener = getBoundListener(param.args[0]);
                 }
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.args[0], BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = mCreateTileViewListener;
                     if (l != null && !(boolean)param.args[1]) {
                         l.onCreateTileView((View)param.getResult());
                     }
-                    mCreateTileViewTileKey = null;
+                    mCreateTileViewListener = null;
                 }
             });
 
@@ -168,8 +163,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l != null) {
                         Object detailAdapter = l.getDetailAdapter();
                         if (detailAdapter != null) {
@@ -183,8 +177,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l != null && (l.isLocked() || l.handleSecondaryClick())) {
                         param.setResult(null);
                     }
@@ -195,8 +188,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     Configuration.class, new XC_MethodHook() {
                 @Override
                 protected void afterHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l != null) {
                         l.onViewConfigurationChanged((View)param.thisObject,
                                 (Configuration)param.args[0]);
@@ -208,8 +200,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     BaseTile.CLASS_TILE_STATE, new XC_MethodHook() {
                         @Override
                         protected void afterHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l != null) {
                         l.onViewHandleStateChanged((View)param.thisObject, param.args[0]);
                     }
@@ -220,7 +211,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
                     new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(mCreateTileViewTileKey);
+                    final QsEventListener l = mCreateTileViewListener;
                     if (l != null) {
                         View icon = l.onCreateIcon();
                         if (icon != null) {
@@ -233,8 +224,7 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
             XC_MethodHook longClickHook = new XC_MethodHook() {
                 @Override
                 protected void beforeHookedMethod(MethodHookParam param) {
-                    final QsEventListener l = mListeners.get(XposedHelpers
-                            .getAdditionalInstanceField(param.thisObject, BaseTile.TILE_KEY_NAME));
+                    final QsEventListener l = getBoundListener(param.thisObject);
                     if (l != null && l.handleLongClick()) {
                         param.setResult(null);
                     }
@@ -247,6 +237,22 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
         }
     }
 
+    private QsEventListener getBoundListener(Object target) {
+        return mBindings.get(target);
+    }
+
+    /**
+     * Binds tile or tile view object to listener so that hooked methods
+     * invoked on that object are dispatched directly to it.
+     */
+    public void bind(Object target, QsEventListener listener) {
+        mBindings.bind(target, listener);
+    }
+
+    public void unbind(Object target) {
+        mBindings.unbind(target);
+    }
+
     public synchronized void registerListener(QsEventListener listener) {
         if (listener == null) 
             throw new IllegalArgumentException("registerListener: Listener cannot be null");
@@ -263,12 +269,13 @@ public class QsTileEventDistributor implements SysUiKeyguardStateMonitor.Listene
 
         final String key = listener.getKey();
         mListeners.remove(key);
+        mBindings.unbindAll(listener);
     }
 
     @Override
     public void onKeyguardStateChanged() {
-        for (Entry<String,QsEventListener> entry : mListeners.entrySet()) {
-            entry.getValue().onKeyguardStateChanged();
+        for (QsEventListener l : mListeners.values()) {
+            l.onKeyguardStateChanged();
         }
     }
 
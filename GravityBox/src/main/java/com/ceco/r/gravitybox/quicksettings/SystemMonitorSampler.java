@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.quicksettings;
+
+import com.ceco.r.gravitybox.CpuStatReader;
+import com.ceco.r.gravitybox.MemInfoReader;
+import com.ceco.r.gravitybox.R;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.text.format.Formatter;
+
+import de.robv.android.xposed.XposedBridge;
+
+/**
+ * Periodically samples memory, swap and CPU load on a background thread
+ * while started and delivers ready to display values on the main thread.
+ * Samples identical to the previously delivered one are not delivered.
+ */
+class SystemMonitorSampler {
+    private static final String TAG = "GB:SystemMonitorSampler";
+    private static final boolean DEBUG = false;
+    private static final String SEPARATOR = " \u00B7 ";
+
+    private static void log(String message) {
+        XposedBridge.log(TAG + ": " + message);
+    }
+
+    interface Listener {
+        void onSample(Sample sample);
+    }
+
+    static class Sample {
+        final float usedRatio;
+        final String usedText;
+        final String freeText;
+
+        private Sample(float usedRatio, String usedText, String freeText) {
+            this.usedRatio = usedRatio;
+            this.usedText = usedText;
+            this.freeText = freeText;
+        }
+
+        private boolean sameAs(Sample other) {
+            return other != null && usedRatio == other.usedRatio &&
+                    usedText.equals(other.usedText) && freeText.equals(other.freeText);
+        }
+    }
+
+    private final Context mContext;
+    private final Resources mGbResources;
+    private final Listener mListener;
+    private final Handler mMainHandler;
+    private Handler mHandler;
+
+    // accessed from sampler thread only
+    private final MemInfoReader mMemInfoReader = new MemInfoReader();
+    private final CpuStatReader mCpuStatReader = new CpuStatReader();
+    private boolean mCpuStatAvailable = true;
+    private Sample mLastSample;
+
+    private volatile boolean mRunning;
+    private volatile long mIntervalMs = 2000;
+    private volatile boolean mShowSwap;
+    private volatile boolean mShowCpu;
+
+    SystemMonitorSampler(Context context, Context gbContext, Listener listener) {
+        mContext = context;
+        mGbResources = gbContext.getResources();
+        mListener = listener;
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    void setIntervalSec(int seconds) {
+        mIntervalMs = Math.max(1, seconds) * 1000L;
+        if (DEBUG) log("setIntervalSec: " + seconds);
+    }
+
+    void setShowSwap(boolean show) {
+        mShowSwap = show;
+        invalidate();
+    }
+
+    void setShowCpu(boolean show) {
+        mShowCpu = show;
+        invalidate();
+    }
+
+    /**
+     * Forces next sample to be delivered even if unchanged,
+     * e.g. after configuration change affecting formatting.
+     */
+    void invalidate() {
+        if (mHandler != null) {
+            mHandler.post(() -> mLastSample = null);
+        }
+    }
+
+    void start() {
+        if (mHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            mHandler = new Handler(thread.getLooper());
+        }
+        mHandler.removeCallbacks(mSampleTask);
+        if (!mRunning) {
+            mRunning = true;
+            mHandler.post(mResetTask);
+            if (DEBUG) log("started");
+        }
+        mHandler.post(mSampleTask);
+    }
+
+    void stop() {
+        if (!mRunning) return;
+        mRunning = false;
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mSampleTask);
+        }
+        if (DEBUG) log("stopped");
+    }
+
+    private final Runnable mResetTask = () -> {
+        // last delivery might have been dropped when stopped
+        mLastSample = null;
+        // CPU load should reflect the time panel is visible
+        mCpuStatReader.reset();
+        if (mShowCpu && mCpuStatAvailable) {
+            mCpuStatAvailable = mCpuStatReader.readCpuStat(CpuStatReader.PROC_STAT);
+        }
+    };
+
+    private final Runnable mSampleTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!mRunning) return;
+
+            final Sample sample = takeSample();
+            if (sample != null && !sample.sameAs(mLastSample)) {
+                mLastSample = sample;
+                mMainHandler.post(() -> {
+                    if (mRunning) {
+                        mListener.onSample(sample);
+                    }
+                });
+            }
+
+            // start() might have posted another run meanwhile; keep single chain
+            mHandler.removeCallbacks(this);
+            mHandler.postDelayed(this, mIntervalMs);
+        }
+    };
+
+    private Sample takeSample() {
+        mMemInfoReader.readMemInfo(MemInfoReader.PROC_MEMINFO);
+        final long totalMem = mMemInfoReader.getTotalSize();
+        if (totalMem <= 0) return null;
+        final long availMem = mMemInfoReader.getFreeSize() + mMemInfoReader.getCachedSize();
+        final long usedMem = totalMem - availMem;
+
+        String usedText = mGbResources.getString(R.string.service_foreground_processes,
+                Formatter.formatShortFileSize(mContext, usedMem));
+        if (mShowSwap && mMemInfoReader.getSwapTotalSize() > 0) {
+            long swapUsed = mMemInfoReader.getSwapTotalSize() - mMemInfoReader.getSwapFreeSize();
+            usedText += SEPARATOR + mGbResources.getString(R.string.rambar_swap_used,
+                    Formatter.formatShortFileSize(mContext, swapUsed));
+        }
+
+        String freeText = mGbResources.getString(R.string.service_background_processes,
+                Formatter.formatShortFileSize(mContext, availMem));
+        if (mShowCpu && mCpuStatAvailable) {
+            mCpuStatAvailable = mCpuStatReader.readCpuStat(CpuStatReader.PROC_STAT);
+            if (!mCpuStatAvailable && DEBUG) log("CPU stats not readable; disabling");
+            int load = mCpuStatReader.getLoadPercent();
+            if (mCpuStatAvailable && load >= 0) {
+                freeText = mGbResources.getString(R.string.rambar_cpu_load, load) +
+                        SEPARATOR + freeText;
+            }
+        }
+
+        return new Sample((float) usedMem / (float) totalMem, usedText, freeText);
+    }
+}
@@ -83,7 +83,7 @@ public class TunerCategoryActivity extends GravityBoxListActivity implements
         receiver.setReceiver(this);
         Intent intent = new Intent(SysUiTunerManager.ACTION_GET_TUNEABLES);
         intent.putExtra(SysUiTunerManager.EXTRA_TUNER_CATEGORY, mCategory.toString());
-        intent.putExtra("receiver", receiver);
+        intent.putExtra(SysUiTunerManager.EXTRA_RECEIVER, receiver);
         sendBroadcast(intent);
     }
 
@@ -64,6 +64,19 @@ public class TunerMainActivity extends GravityBoxActivity {
             trialInfoView.setText(String.format(getString(R.string.trial_info), trialCountdown));
             trialInfoView.setVisibility(View.VISIBLE);
         }
+
+        if (savedInstanceState == null) {
+            prefetchTuneables();
+        }
+    }
+
+    // warms up tuneables cache in SystemUI so that category screens open without delay
+    private void prefetchTuneables() {
+        for (SysUiTunerManager.Category category : SysUiTunerManager.Category.values()) {
+            Intent intent = new Intent(SysUiTunerManager.ACTION_GET_TUNEABLES);
+            intent.putExtra(SysUiTunerManager.EXTRA_TUNER_CATEGORY, category.toString());
+            sendBroadcast(intent);
+        }
     }
 
     public static boolean isTunerLocked(Context context) {
@@ -279,7 +279,8 @@ public class VisualizerController implements StatusBarStateChangedListener,
 
         if (mPlaying) {
             if (SysUiManagers.BatteryInfoManager != null) {
-                SysUiManagers.BatteryInfoManager.registerListener(this);
+                SysUiManagers.BatteryInfoManager.registerListener(this,
+                        SysUiBatteryInfoManager.FIELD_LEVEL | SysUiBatteryInfoManager.FIELD_POWER_SAVING);
             }
             if (metaDataChanged) {
                 Bitmap artworkBitmap = null;
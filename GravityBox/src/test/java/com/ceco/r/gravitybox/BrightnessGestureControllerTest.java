@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static com.ceco.r.gravitybox.BrightnessGestureController.ACTION_CANCEL;
+import static com.ceco.r.gravitybox.BrightnessGestureController.ACTION_DOWN;
+import static com.ceco.r.gravitybox.BrightnessGestureController.ACTION_MOVE;
+import static com.ceco.r.gravitybox.BrightnessGestureController.ACTION_UP;
+import static com.ceco.r.gravitybox.BrightnessGestureController.gammaToLinear;
+import static com.ceco.r.gravitybox.BrightnessGestureController.positionToLevel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BrightnessGestureControllerTest {
+    private static final float EPS = 0.0001f;
+
+    // 1000px wide screen with 60px status bar
+    private static final int STATUS_BAR_HEIGHT = 60;
+    private static final int PEEK_HEIGHT = 200;
+    private static final int SCREEN_WIDTH = 1000;
+    private static final int TOUCH_SLOP = 16;
+    private static final int Y = 30;
+
+    private final List<Float> mPreviews = new ArrayList<>();
+    private final List<Float> mCommits = new ArrayList<>();
+    private int mLongPresses;
+
+    private FakeScheduler mScheduler;
+    private BrightnessGestureController mController;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler();
+        mScheduler.advanceTo(1000);
+        mController = new BrightnessGestureController(mScheduler,
+                new BrightnessGestureController.Callback() {
+                    @Override
+                    public void onPreview(float level) {
+                        mPreviews.add(level);
+                    }
+
+                    @Override
+                    public void onCommit(float level) {
+                        mCommits.add(level);
+                    }
+
+                    @Override
+                    public void onLongPress() {
+                        mLongPresses++;
+                    }
+                });
+        mController.setGeometry(STATUS_BAR_HEIGHT, PEEK_HEIGHT, SCREEN_WIDTH, TOUCH_SLOP);
+    }
+
+    // touches down at x and lingers horizontally long enough to start adjusting
+    private void downAndLinger(int x) {
+        mController.onTouch(ACTION_DOWN, x, Y);
+        for (int i = 1; i <= 21; i++) {
+            mController.onTouch(ACTION_MOVE, x + i, Y);
+        }
+    }
+
+    @Test
+    public void positionMapsLinearlyWithinPadding() {
+        assertEquals(0f, positionToLevel(0f, false), EPS);
+        assertEquals(0f, positionToLevel(0.2f, false), EPS);
+        assertEquals(0.25f, positionToLevel(0.35f, false), EPS);
+        assertEquals(0.5f, positionToLevel(0.5f, false), EPS);
+        assertEquals(1f, positionToLevel(0.8f, false), EPS);
+        assertEquals(1f, positionToLevel(1f, false), EPS);
+        assertEquals(1f, positionToLevel(1.5f, false), EPS);
+        assertEquals(0f, positionToLevel(-0.5f, false), EPS);
+    }
+
+    @Test
+    public void perceptualPositionGoesThroughCurve() {
+        assertEquals(0f, positionToLevel(0.1f, true), EPS);
+        assertEquals(1f / 12f, positionToLevel(0.5f, true), EPS);
+        assertEquals(1f, positionToLevel(0.9f, true), EPS);
+        assertEquals(gammaToLinear(0.25f), positionToLevel(0.35f, true), EPS);
+    }
+
+    @Test
+    public void gammaToLinearEndpointsAndKnee() {
+        assertEquals(0f, gammaToLinear(0f), EPS);
+        assertEquals(1f, gammaToLinear(1f), EPS);
+        // square law below knee
+        assertEquals(0.25f / 12f, gammaToLinear(0.25f), EPS);
+        assertEquals(1f / 12f, gammaToLinear(0.5f), EPS);
+        // both segments meet at knee
+        assertEquals(gammaToLinear(0.5f), gammaToLinear(0.5001f), 0.001f);
+    }
+
+    @Test
+    public void gammaToLinearMonotonicAndClamped() {
+        float prev = gammaToLinear(0f);
+        for (int i = 1; i <= 100; i++) {
+            float v = gammaToLinear(i / 100f);
+            assertTrue("not increasing at " + i, v > prev);
+            assertTrue(v <= 1f);
+            prev = v;
+        }
+        assertEquals(0f, gammaToLinear(-1f), 0f);
+        assertEquals(1f, gammaToLinear(2f), 0f);
+    }
+
+    @Test
+    public void lingerThenDragPreviewsAndCommits() {
+        downAndLinger(300);
+        assertTrue(mPreviews.isEmpty());
+        mController.onTouch(ACTION_MOVE, 500, Y);
+        mScheduler.advance(20);
+        mController.onTouch(ACTION_MOVE, 800, Y);
+        mController.onTouch(ACTION_UP, 800, Y);
+
+        assertEquals(2, mPreviews.size());
+        assertEquals(0.5f, mPreviews.get(0), EPS);
+        assertEquals(1f, mPreviews.get(1), EPS);
+        assertEquals(1, mCommits.size());
+        assertEquals(1f, mCommits.get(0), EPS);
+        // moving beyond slop while lingering cancelled long press
+        mScheduler.advance(1000);
+        assertEquals(0, mLongPresses);
+        assertTrue(mController.isChanged());
+    }
+
+    @Test
+    public void previewsCoalescedWithinInterval() {
+        downAndLinger(300);
+        mController.onTouch(ACTION_MOVE, 350, Y);
+        for (int x = 400; x <= 500; x += 50) {
+            mScheduler.advance(4);
+            mController.onTouch(ACTION_MOVE, x, Y);
+        }
+        // only the first level shown until interval elapses
+        assertEquals(1, mPreviews.size());
+        assertEquals(1, mScheduler.getPendingCount());
+        mScheduler.advance(4);
+        assertEquals(2, mPreviews.size());
+        assertEquals(0.25f, mPreviews.get(0), EPS);
+        assertEquals(0.5f, mPreviews.get(1), EPS);
+
+        // level still pending at release is previewed before commit
+        mController.onTouch(ACTION_MOVE, 600, Y);
+        mScheduler.advance(4);
+        mController.onTouch(ACTION_UP, 600, Y);
+        assertEquals(3, mPreviews.size());
+        assertEquals(2f / 3f, mPreviews.get(2), EPS);
+        assertEquals(1, mCommits.size());
+        assertEquals(2f / 3f, mCommits.get(0), EPS);
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void previewRateBoundedDuringFastDrag() {
+        mController.setMinPreviewIntervalMs(16);
+        downAndLinger(200);
+        // 4ms touch sampling for 400ms
+        for (int i = 0; i < 100; i++) {
+            mController.onTouch(ACTION_MOVE, 200 + 6 * i, Y);
+            mScheduler.advance(4);
+        }
+        mController.onTouch(ACTION_UP, 800, Y);
+        assertTrue("previews: " + mPreviews.size(),
+                mPreviews.size() >= 20 && mPreviews.size() <= 27);
+        assertEquals(1, mCommits.size());
+        assertEquals(mPreviews.get(mPreviews.size() - 1), mCommits.get(0));
+    }
+
+    @Test
+    public void sameLevelNotPreviewedTwice() {
+        downAndLinger(100);
+        // all within left padding
+        mController.onTouch(ACTION_MOVE, 150, Y);
+        mScheduler.advance(20);
+        mController.onTouch(ACTION_MOVE, 120, Y);
+        mScheduler.advance(20);
+        mController.onTouch(ACTION_UP, 120, Y);
+        assertEquals(1, mPreviews.size());
+        assertEquals(0f, mPreviews.get(0), EPS);
+        assertEquals(1, mCommits.size());
+    }
+
+    @Test
+    public void longPressStartsAdjustmentAtTouchPosition() {
+        mController.onTouch(ACTION_DOWN, 650, Y);
+        mController.onTouch(ACTION_MOVE, 655, Y + 3);
+        mScheduler.advance(749);
+        assertEquals(0, mLongPresses);
+        mScheduler.advance(1);
+        assertEquals(1, mLongPresses);
+        assertEquals(1, mPreviews.size());
+        assertEquals(0.75f, mPreviews.get(0), EPS);
+
+        // adjusting right away without lingering
+        mScheduler.advance(20);
+        mController.onTouch(ACTION_MOVE, 700, Y);
+        mController.onTouch(ACTION_UP, 700, Y);
+        assertEquals(5f / 6f, mPreviews.get(1), EPS);
+        assertEquals(1, mCommits.size());
+        assertEquals(5f / 6f, mCommits.get(0), EPS);
+    }
+
+    @Test
+    public void perceptualLongPress() {
+        mController.setPerceptual(true);
+        mController.onTouch(ACTION_DOWN, 500, Y);
+        mScheduler.advance(750);
+        mController.onTouch(ACTION_UP, 500, Y);
+        assertEquals(1f / 12f, mCommits.get(0), EPS);
+    }
+
+    @Test
+    public void pullDownDoesNotAdjust() {
+        mController.onTouch(ACTION_DOWN, 300, Y);
+        mController.onTouch(ACTION_MOVE, 302, 80);
+        assertTrue(mController.isJustPeeked());
+        mController.onTouch(ACTION_MOVE, 305, 150);
+        assertTrue(mController.isJustPeeked());
+        mController.onTouch(ACTION_MOVE, 310, 250);
+        assertFalse(mController.isJustPeeked());
+        // back within status bar after leaving peek area
+        for (int i = 1; i <= 30; i++) {
+            mController.onTouch(ACTION_MOVE, 310 + 10 * i, Y);
+        }
+        mScheduler.advance(1000);
+        mController.onTouch(ACTION_UP, 600, Y);
+
+        assertEquals(0, mLongPresses);
+        assertTrue(mPreviews.isEmpty());
+        assertTrue(mCommits.isEmpty());
+        assertFalse(mController.isChanged());
+    }
+
+    @Test
+    public void touchBelowStatusBarIgnored() {
+        mController.onTouch(ACTION_DOWN, 300, 500);
+        mScheduler.advance(1000);
+        for (int i = 1; i <= 30; i++) {
+            mController.onTouch(ACTION_MOVE, 300 + 10 * i, Y);
+        }
+        mController.onTouch(ACTION_UP, 600, Y);
+        assertEquals(0, mLongPresses);
+        assertTrue(mPreviews.isEmpty());
+        assertTrue(mCommits.isEmpty());
+        assertFalse(mController.isJustPeeked());
+    }
+
+    @Test
+    public void tapDoesNotCommit() {
+        mController.onTouch(ACTION_DOWN, 300, Y);
+        mScheduler.advance(100);
+        mController.onTouch(ACTION_UP, 300, Y);
+        mScheduler.advance(1000);
+        assertEquals(0, mLongPresses);
+        assertTrue(mCommits.isEmpty());
+        assertTrue(mController.isJustPeeked());
+    }
+
+    @Test
+    public void cancelCommitsAdjustedLevel() {
+        downAndLinger(300);
+        mController.onTouch(ACTION_MOVE, 500, Y);
+        mController.onTouch(ACTION_CANCEL, 500, Y);
+        assertEquals(1, mCommits.size());
+        assertEquals(0.5f, mCommits.get(0), EPS);
+    }
+
+    @Test
+    public void newGestureResetsChangedState() {
+        downAndLinger(300);
+        mController.onTouch(ACTION_MOVE, 500, Y);
+        mController.onTouch(ACTION_UP, 500, Y);
+        assertTrue(mController.isChanged());
+        mController.onTouch(ACTION_DOWN, 500, Y);
+        assertFalse(mController.isChanged());
+        mController.onTouch(ACTION_UP, 500, Y);
+        assertEquals(1, mCommits.size());
+    }
+
+    @Test
+    public void ignoredWithoutGeometry() {
+        BrightnessGestureController c = new BrightnessGestureController(mScheduler,
+                new BrightnessGestureController.Callback() {
+                    @Override
+                    public void onPreview(float level) { mPreviews.add(level); }
+                    @Override
+                    public void onCommit(float level) { mCommits.add(level); }
+                    @Override
+                    public void onLongPress() { mLongPresses++; }
+                });
+        c.onTouch(ACTION_DOWN, 300, Y);
+        mScheduler.advance(1000);
+        assertEquals(0, mLongPresses);
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class ClockTemplateTest {
+    private static final Locale[] LOCALES = {
+            Locale.US, Locale.GERMANY, Locale.CHINA, Locale.TAIWAN, new Locale("ar", "EG")
+    };
+    private static final String[] PATTERNS = {
+            "HH:mm", "H:mm", "HH:mm:ss", "k:mm", "K:mm a", "h:mm a", "hh:mm:ss a",
+            "a h:mm", "HH'h'mm", "''HH:mm''", "h 'o''clock' a", "'It''s' H:mm"
+    };
+    private static final String[] TIME_ZONES = {
+            "America/New_York", "Europe/Berlin", "Asia/Shanghai", "UTC"
+    };
+
+    private static String format(String pattern, Locale locale, TimeZone tz, long time) {
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern, locale);
+        sdf.setTimeZone(tz);
+        return sdf.format(time);
+    }
+
+    private static long time(TimeZone tz, int year, int month, int day, int hour, int minute) {
+        Calendar c = new GregorianCalendar(tz);
+        c.clear();
+        c.set(year, month, day, hour, minute, 7);
+        return c.getTimeInMillis();
+    }
+
+    private static void assertMatches(String pattern, Locale locale, TimeZone tz, long from, long to) {
+        ClockTemplate template = new ClockTemplate(locale, tz, pattern, true, false, null,
+                ClockTemplate.DOW_NONE);
+        for (long t = from; t < to; t += 13 * 60 * 1000 + 1000) {
+            assertEquals(pattern + " " + locale + " " + tz.getID(),
+                    format(pattern, locale, tz, t), template.format(t).toString());
+        }
+    }
+
+    @Test
+    public void matchesSimpleDateFormat() {
+        for (String id : TIME_ZONES) {
+            TimeZone tz = TimeZone.getTimeZone(id);
+            long from = time(tz, 2021, Calendar.JUNE, 1, 0, 0);
+            for (Locale locale : LOCALES) {
+                for (String pattern : PATTERNS) {
+                    assertMatches(pattern, locale, tz, from, from + 24 * 3600 * 1000L);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesSimpleDateFormatAcrossDst() {
+        TimeZone ny = TimeZone.getTimeZone("America/New_York");
+        TimeZone berlin = TimeZone.getTimeZone("Europe/Berlin");
+        for (String pattern : PATTERNS) {
+            // spring forward and fall back
+            assertMatches(pattern, Locale.US, ny, time(ny, 2021, Calendar.MARCH, 13, 22, 0),
+                    time(ny, 2021, Calendar.MARCH, 14, 6, 0));
+            assertMatches(pattern, Locale.US, ny, time(ny, 2021, Calendar.NOVEMBER, 6, 22, 0),
+                    time(ny, 2021, Calendar.NOVEMBER, 7, 6, 0));
+            assertMatches(pattern, Locale.GERMANY, berlin, time(berlin, 2021, Calendar.MARCH, 27, 22, 0),
+                    time(berlin, 2021, Calendar.MARCH, 28, 6, 0));
+            assertMatches(pattern, Locale.GERMANY, berlin, time(berlin, 2021, Calendar.OCTOBER, 30, 22, 0),
+                    time(berlin, 2021, Calendar.OCTOBER, 31, 6, 0));
+        }
+    }
+
+    @Test
+    public void quotedApostrophe() {
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        long t = time(tz, 2021, Calendar.JANUARY, 1, 23, 0);
+        ClockTemplate template = new ClockTemplate(Locale.US, tz, "h 'o''clock' a", false, false,
+                null, ClockTemplate.DOW_NONE);
+        assertEquals("11 o'clock PM", template.format(t).toString());
+    }
+
+    @Test
+    public void amPmAddedIn12HourMode() {
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        long t = time(tz, 2021, Calendar.JANUARY, 1, 13, 5);
+        ClockTemplate us = new ClockTemplate(Locale.US, tz, "h:mm", false, false,
+                null, ClockTemplate.DOW_NONE);
+        assertEquals(format("h:mm a", Locale.US, tz, t), us.format(t).toString());
+        assertEquals(4, us.getAmPmStart());
+        assertEquals(7, us.getAmPmEnd());
+
+        ClockTemplate cn = new ClockTemplate(Locale.CHINA, tz, "h:mm", false, false,
+                null, ClockTemplate.DOW_NONE);
+        assertEquals(format("a h:mm", Locale.CHINA, tz, t), cn.format(t).toString());
+        assertEquals(0, cn.getAmPmStart());
+    }
+
+    @Test
+    public void amPmHidden() {
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        long t = time(tz, 2021, Calendar.JANUARY, 1, 13, 5);
+        ClockTemplate template = new ClockTemplate(Locale.US, tz, "h:mm a", false, true,
+                null, ClockTemplate.DOW_NONE);
+        assertEquals("1:05", template.format(t).toString());
+        assertEquals(-1, template.getAmPmStart());
+    }
+
+    @Test
+    public void fallbackAppliesAmPmRules() {
+        TimeZone tz = TimeZone.getTimeZone("UTC");
+        long t = time(tz, 2021, Calendar.JANUARY, 1, 13, 5);
+        ClockTemplate hidden = new ClockTemplate(Locale.US, tz, "EEE h:mm a", false, true,
+                null, ClockTemplate.DOW_NONE);
+        assertEquals(format("EEE h:mm", Locale.US, tz, t), hidden.format(t).toString());
+
+        ClockTemplate added = new ClockTemplate(Locale.US, tz, "EEE h:mm", false, false,
+                null, ClockTemplate.DOW_NONE);
+        assertEquals(format("EEE h:mm a", Locale.US, tz, t), added.format(t).toString());
+
+        ClockTemplate quoted = new ClockTemplate(Locale.US, tz, "EEE h 'o''clock' a", false, false,
+                null, ClockTemplate.DOW_NONE);
+        assertEquals(format("EEE h 'o''clock' a", Locale.US, tz, t), quoted.format(t).toString());
+    }
+
+    @Test
+    public void prefixFollowsDay() {
+        TimeZone tz = TimeZone.getTimeZone("Europe/Berlin");
+        ClockTemplate template = new ClockTemplate(Locale.GERMANY, tz, "HH:mm", true, false,
+                "dd.MM.", ClockTemplate.DOW_UPPERCASE);
+        long t = time(tz, 2021, Calendar.MARCH, 27, 23, 59);
+        String prefix = format("EEE", Locale.GERMANY, tz, t).toUpperCase(Locale.GERMANY) + " 27.03. ";
+        assertEquals(prefix + "23:59", template.format(t).toString());
+        assertEquals(prefix.length(), template.getPrefixLength());
+
+        t += 60 * 1000;
+        prefix = format("EEE", Locale.GERMANY, tz, t).toUpperCase(Locale.GERMANY) + " 28.03. ";
+        assertEquals(prefix + "00:00", template.format(t).toString());
+        assertEquals(prefix.length(), template.getPrefixLength());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CpuStatReaderTest {
+
+    private CpuStatReader mReader;
+
+    @Before
+    public void setUp() {
+        mReader = new CpuStatReader();
+    }
+
+    static String fixture(String name) throws Exception {
+        return new File(CpuStatReaderTest.class.getResource(name).toURI()).getPath();
+    }
+
+    private static String tempStat(String content) throws IOException {
+        File f = File.createTempFile("stat", null);
+        f.deleteOnExit();
+        try (FileOutputStream os = new FileOutputStream(f)) {
+            os.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return f.getPath();
+    }
+
+    @Test
+    public void firstReadingHasNoLoad() throws Exception {
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_1")));
+        assertEquals(-1, mReader.getLoadPercent());
+    }
+
+    @Test
+    public void loadBetweenSamples() throws Exception {
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_1")));
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_2")));
+        // user+nice+system+irq+softirq = 820 busy of 1870 jiffies total
+        assertEquals(44, mReader.getLoadPercent());
+    }
+
+    @Test
+    public void guestTimeNotCountedTwice() throws Exception {
+        // guest jiffies grew by 500 between samples; counting them on top of
+        // user would report 1320 busy of 2370, i.e. 56%
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_1")));
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_2")));
+        assertTrue(mReader.getLoadPercent() < 50);
+    }
+
+    @Test
+    public void olderKernelWithoutSteal() throws Exception {
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_no_steal")));
+        assertTrue(mReader.readCpuStat(tempStat(
+                "cpu  2355 34 2390 22625763 6290 127 456\ncpu0 1 2 3 4 5 6 7\n")));
+        assertEquals(50, mReader.getLoadPercent());
+    }
+
+    @Test
+    public void idleAndIowaitCountAsIdle() throws Exception {
+        assertTrue(mReader.readCpuStat(tempStat("cpu  100 0 100 1000 100 0 0 0 0 0\n")));
+        assertTrue(mReader.readCpuStat(tempStat("cpu  100 0 100 1600 500 0 0 0 0 0\n")));
+        assertEquals(0, mReader.getLoadPercent());
+        assertTrue(mReader.readCpuStat(tempStat("cpu  1100 0 100 1600 500 0 0 0 900 0\n")));
+        assertEquals(100, mReader.getLoadPercent());
+    }
+
+    @Test
+    public void unchangedCountersKeepLastLoad() throws Exception {
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_1")));
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_2")));
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_2")));
+        assertEquals(44, mReader.getLoadPercent());
+    }
+
+    @Test
+    public void resetDropsBaseline() throws Exception {
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_1")));
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_2")));
+        mReader.reset();
+        assertEquals(-1, mReader.getLoadPercent());
+        assertTrue(mReader.readCpuStat(fixture("proc_stat_1")));
+        assertEquals(-1, mReader.getLoadPercent());
+    }
+
+    @Test
+    public void unreadableOrMalformedStat() throws Exception {
+        assertFalse(mReader.readCpuStat("/nonexistent/proc/stat"));
+        assertFalse(mReader.readCpuStat(tempStat("")));
+        assertFalse(mReader.readCpuStat(tempStat("cpu0 1 2 3 4 5 6 7\n")));
+        assertFalse(mReader.readCpuStat(fixture("proc_meminfo")));
+        // iowait is required
+        assertFalse(mReader.readCpuStat(tempStat("cpu  1 2 3 4\ncpu0 1 2 3 4 5\n")));
+        assertEquals(-1, mReader.getLoadPercent());
+    }
+}
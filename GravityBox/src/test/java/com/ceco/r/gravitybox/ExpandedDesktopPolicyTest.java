@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static com.ceco.r.gravitybox.ExpandedDesktopPolicy.FLAG_HIDE_NAVBAR;
+import static com.ceco.r.gravitybox.ExpandedDesktopPolicy.FLAG_HIDE_STATUSBAR;
+import static com.ceco.r.gravitybox.ExpandedDesktopPolicy.FLAG_IMMERSIVE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExpandedDesktopPolicyTest {
+
+    private static List<String> packages(String prefix, int count) {
+        List<String> pkgs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pkgs.add(prefix + ".app" + i);
+        }
+        return pkgs;
+    }
+
+    @Test
+    public void emptyRulesGiveSharedInstance() {
+        assertSame(ExpandedDesktopPolicy.EMPTY, ExpandedDesktopPolicy.compile(
+                null, Collections.emptyList(), null, Arrays.asList("", null)));
+        assertEquals(FLAG_HIDE_NAVBAR, ExpandedDesktopPolicy.EMPTY.getFlags("com.app", FLAG_HIDE_NAVBAR));
+    }
+
+    @Test
+    public void flagsOfPackage() {
+        ExpandedDesktopPolicy policy = ExpandedDesktopPolicy.compile(
+                Arrays.asList("com.sb", "com.both"), Arrays.asList("com.nb", "com.both"),
+                Collections.singletonList("com.imm"), Collections.singletonList("com.ex"));
+        assertEquals(5, policy.size());
+        assertEquals(FLAG_HIDE_STATUSBAR, policy.getFlags("com.sb", 0));
+        assertEquals(FLAG_HIDE_NAVBAR, policy.getFlags("com.nb", 0));
+        assertEquals(FLAG_IMMERSIVE, policy.getFlags("com.both", 0));
+        assertEquals(FLAG_IMMERSIVE, policy.getFlags("com.imm", 0));
+        assertEquals(0, policy.getFlags("com.ex", 0));
+        assertEquals(0, policy.getFlags("com.other", 0));
+        assertEquals(0, policy.getFlags(null, 0));
+    }
+
+    @Test
+    public void globalFlagsCombined() {
+        ExpandedDesktopPolicy policy = ExpandedDesktopPolicy.compile(
+                Collections.singletonList("com.sb"), null, null,
+                Collections.singletonList("com.ex"));
+        assertEquals(FLAG_IMMERSIVE, policy.getFlags("com.sb", FLAG_HIDE_NAVBAR));
+        assertEquals(FLAG_HIDE_NAVBAR, policy.getFlags("com.other", FLAG_HIDE_NAVBAR));
+        assertEquals(FLAG_IMMERSIVE, policy.getFlags(null, FLAG_IMMERSIVE));
+        // exclude opts out of global mode
+        assertEquals(0, policy.getFlags("com.ex", FLAG_IMMERSIVE));
+    }
+
+    @Test
+    public void excludeWinsOverOtherRules() {
+        ExpandedDesktopPolicy policy = ExpandedDesktopPolicy.compile(
+                Collections.singletonList("com.app"), null, Collections.singletonList("com.app"),
+                Collections.singletonList("com.app"));
+        assertEquals(1, policy.size());
+        assertEquals(0, policy.getFlags("com.app", FLAG_HIDE_STATUSBAR));
+    }
+
+    // rule list counting how many times it is consulted
+    private static class CountingList extends AbstractCollection<String> {
+        final List<String> items;
+        int reads;
+
+        CountingList(List<String> items) {
+            this.items = items;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            reads++;
+            return items.iterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            reads++;
+            return items.contains(o);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+    }
+
+    @Test
+    public void rulesIndexedOnceAtCompileTime() {
+        final int[] sizes = { 8, 100, 2000 };
+        for (int size : sizes) {
+            int quarter = size / 4;
+            CountingList[] lists = {
+                    new CountingList(packages("com.sb", quarter)),
+                    new CountingList(packages("com.nb", quarter)),
+                    new CountingList(packages("com.imm", quarter)),
+                    new CountingList(packages("com.ex", quarter))
+            };
+            ExpandedDesktopPolicy policy = ExpandedDesktopPolicy.compile(
+                    lists[0], lists[1], lists[2], lists[3]);
+            assertEquals(size, policy.size());
+            for (CountingList list : lists) {
+                assertEquals(1, list.reads);
+            }
+
+            // lookups resolve from the compiled index and never touch rule lists
+            for (int i = 0; i < quarter; i++) {
+                assertEquals(FLAG_HIDE_STATUSBAR, policy.getFlags("com.sb.app" + i, 0));
+                assertEquals(FLAG_HIDE_NAVBAR, policy.getFlags("com.nb.app" + i, 0));
+                assertEquals(FLAG_IMMERSIVE, policy.getFlags("com.imm.app" + i, 0));
+                assertEquals(0, policy.getFlags("com.ex.app" + i, FLAG_IMMERSIVE));
+                assertEquals(FLAG_HIDE_NAVBAR, policy.getFlags("com.miss.app" + i, FLAG_HIDE_NAVBAR));
+            }
+            for (CountingList list : lists) {
+                assertEquals(1, list.reads);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handler replacement running posted callbacks on a virtual clock.
+ * Callbacks run in order of due time and then of posting, the way
+ * a Looper would, once the clock is advanced past their due time.
+ */
+class FakeScheduler implements HwKeyGestureDetector.Scheduler,
+                               SmartRadioScheduler.Timer,
+                               OngoingNotifRegistry.Scheduler,
+                               BrightnessGestureController.Scheduler,
+                               ProximityWakeGate.Scheduler {
+
+    private static class Task {
+        final Runnable runnable;
+        final long when;
+        final long seq;
+
+        Task(Runnable runnable, long when, long seq) {
+            this.runnable = runnable;
+            this.when = when;
+            this.seq = seq;
+        }
+    }
+
+    private final List<Task> mTasks = new ArrayList<>();
+    private long mNow;
+    private long mSeq;
+
+    @Override
+    public long now() {
+        return mNow;
+    }
+
+    @Override
+    public void postDelayed(Runnable r, long delayMs) {
+        mTasks.add(new Task(r, mNow + Math.max(0, delayMs), mSeq++));
+    }
+
+    @Override
+    public void removeCallbacks(Runnable r) {
+        mTasks.removeIf(t -> t.runnable == r);
+    }
+
+    int getPendingCount() {
+        return mTasks.size();
+    }
+
+    void advance(long ms) {
+        advanceTo(mNow + ms);
+    }
+
+    // runs every callback due up to given time, including ones posted meanwhile
+    void advanceTo(long time) {
+        while (true) {
+            Task next = null;
+            for (Task t : mTasks) {
+                if (t.when <= time && (next == null || t.when < next.when ||
+                        (t.when == next.when && t.seq < next.seq))) {
+                    next = t;
+                }
+            }
+            if (next == null) break;
+            mTasks.remove(next);
+            mNow = next.when;
+            next.runnable.run();
+        }
+        mNow = Math.max(mNow, time);
+    }
+}
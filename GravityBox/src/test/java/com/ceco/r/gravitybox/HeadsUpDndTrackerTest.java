@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeadsUpDndTrackerTest {
+
+    private static class FakeSource implements HeadsUpDndTracker.ForegroundSource {
+        String foreground;
+        int lookups;
+        Runnable duringLookup;
+
+        @Override
+        public String getForegroundPackage() {
+            lookups++;
+            if (duringLookup != null) {
+                Runnable r = duringLookup;
+                duringLookup = null;
+                r.run();
+            }
+            return foreground;
+        }
+    }
+
+    private FakeSource mSource;
+    private HeadsUpDndTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mSource = new FakeSource();
+        mTracker = new HeadsUpDndTracker(mSource);
+        mTracker.setEventsAvailable(true);
+        mTracker.setDndPackages(Arrays.asList("com.game", "com.video"));
+    }
+
+    private int burst(int count) {
+        int suppressed = 0;
+        for (int i = 0; i < count; i++) {
+            if (mTracker.shouldNotDisturb()) suppressed++;
+        }
+        return suppressed;
+    }
+
+    @Test
+    public void burstResolvesForegroundOnce() {
+        mSource.foreground = "com.game";
+        mTracker.onForegroundChanged();
+        assertEquals(50, burst(50));
+        assertEquals(1, mSource.lookups);
+    }
+
+    @Test
+    public void replayForegroundChanges() {
+        final String[] timeline = { "com.launcher", "com.game", "com.chat", "com.video", "com.game" };
+        final boolean[] expected = { false, true, false, true, true };
+        for (int i = 0; i < timeline.length; i++) {
+            mSource.foreground = timeline[i];
+            mTracker.onForegroundChanged();
+            assertEquals(timeline[i], expected[i] ? 20 : 0, burst(20));
+            assertEquals(i + 1, mSource.lookups);
+        }
+    }
+
+    @Test
+    public void noLookupWithoutDndPackages() {
+        mTracker.setDndPackages(Collections.emptyList());
+        mSource.foreground = "com.game";
+        mTracker.onForegroundChanged();
+        assertEquals(0, burst(10));
+        assertEquals(0, mSource.lookups);
+
+        mTracker.setDndPackages(null);
+        assertEquals(0, burst(10));
+        assertEquals(0, mSource.lookups);
+    }
+
+    @Test
+    public void noLookupWhileLocked() {
+        mSource.foreground = "com.game";
+        mTracker.setLocked(true);
+        assertEquals(0, burst(10));
+        assertEquals(0, mSource.lookups);
+
+        mTracker.setLocked(false);
+        assertEquals(10, burst(10));
+        assertEquals(1, mSource.lookups);
+    }
+
+    @Test
+    public void packageDndUpdatesApplyWithoutLookup() {
+        mSource.foreground = "com.chat";
+        mTracker.onForegroundChanged();
+        assertEquals(0, burst(5));
+
+        mTracker.setPackageDnd("com.chat", true);
+        assertEquals(5, burst(5));
+        mTracker.setPackageDnd("com.chat", false);
+        assertEquals(0, burst(5));
+        // unchanged foreground is not resolved again
+        assertEquals(1, mSource.lookups);
+
+        mTracker.setPackageDnd(null, true);
+        mTracker.setPackageDnd("com.game", true);
+        assertEquals(0, burst(5));
+    }
+
+    @Test
+    public void lookupPerDecisionWithoutEvents() {
+        mTracker.setEventsAvailable(false);
+        mSource.foreground = "com.game";
+        assertEquals(10, burst(10));
+        assertEquals(10, mSource.lookups);
+    }
+
+    @Test
+    public void resultDroppedWhenForegroundChangesDuringLookup() {
+        mSource.foreground = "com.game";
+        mSource.duringLookup = () -> mTracker.onForegroundChanged();
+        assertTrue(mTracker.shouldNotDisturb());
+        assertEquals(1, mSource.lookups);
+
+        // stale result was not cached; next decision looks up again
+        mSource.foreground = "com.chat";
+        assertFalse(mTracker.shouldNotDisturb());
+        assertEquals(2, mSource.lookups);
+        assertFalse(mTracker.shouldNotDisturb());
+        assertEquals(2, mSource.lookups);
+    }
+
+    @Test
+    public void unknownForeground() {
+        mSource.foreground = null;
+        mTracker.onForegroundChanged();
+        assertEquals(0, burst(5));
+        assertNull(mTracker.getForegroundPackage());
+        assertEquals(1, mSource.lookups);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HwKeyGestureDetectorTest {
+
+    private static final long DOUBLE_TAP_TIMEOUT = 300;
+    private static final long LONG_PRESS_TIMEOUT = 500;
+
+    private FakeScheduler mScheduler;
+    private final List<String> mActions = new ArrayList<>();
+    private boolean mKeysEnabled;
+    private boolean mHasDoubleTap;
+    private boolean mHasLongPress;
+    private HwKeyGestureDetector mDetector;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler();
+        mActions.clear();
+        mKeysEnabled = true;
+        mHasDoubleTap = false;
+        mHasLongPress = false;
+        mDetector = new HwKeyGestureDetector(mScheduler, new HwKeyGestureDetector.Callback() {
+            @Override
+            public void onSingleTap() {
+                mActions.add("single@" + mScheduler.now());
+            }
+
+            @Override
+            public void onDoubleTap() {
+                mActions.add("double@" + mScheduler.now());
+            }
+
+            @Override
+            public void onLongPress() {
+                mActions.add("long@" + mScheduler.now());
+            }
+
+            @Override
+            public boolean areKeysEnabled() {
+                return mKeysEnabled;
+            }
+        });
+    }
+
+    /**
+     * Replays recorded key events and returns consumed flag of each one.
+     * Events are "D<time>" for key down, "R<time>" for repeated key down,
+     * "U<time>" for key up and "C<time>" for canceled key up.
+     */
+    private List<Boolean> replay(String recording) {
+        List<Boolean> consumed = new ArrayList<>();
+        int repeatCount = 0;
+        for (String event : recording.split(" ")) {
+            mScheduler.advanceTo(Long.parseLong(event.substring(1)));
+            switch (event.charAt(0)) {
+                case 'D':
+                    repeatCount = 0;
+                    consumed.add(down(0));
+                    break;
+                case 'R':
+                    consumed.add(down(++repeatCount));
+                    break;
+                case 'U':
+                    consumed.add(mDetector.onKeyUp(0, false));
+                    break;
+                case 'C':
+                    consumed.add(mDetector.onKeyUp(0, true));
+                    break;
+                default:
+                    throw new IllegalArgumentException(event);
+            }
+        }
+        // let all pending timeouts expire
+        mScheduler.advance(10000);
+        return consumed;
+    }
+
+    private boolean down(int repeatCount) {
+        return mDetector.onKeyDown(repeatCount, mHasDoubleTap, DOUBLE_TAP_TIMEOUT,
+                mHasLongPress, mHasLongPress ? LONG_PRESS_TIMEOUT : 0);
+    }
+
+    @Test
+    public void singleTapDeliveredOnKeyUp() {
+        assertEquals(Arrays.asList(true, true), replay("D0 U80"));
+        assertEquals(Arrays.asList("single@80"), mActions);
+        assertFalse(mDetector.isKeyPressed());
+    }
+
+    @Test
+    public void singleTapPostponedUntilDoubleTapTimeout() {
+        mHasDoubleTap = true;
+        replay("D0 U80");
+        assertEquals(Arrays.asList("single@300"), mActions);
+    }
+
+    @Test
+    public void doubleTapSuppressesSingleTap() {
+        mHasDoubleTap = true;
+        assertEquals(Arrays.asList(true, true, true, true), replay("D0 U80 D150 U230"));
+        assertEquals(Arrays.asList("double@150"), mActions);
+    }
+
+    @Test
+    public void secondTapAfterTimeoutIsAnotherSingleTap() {
+        mHasDoubleTap = true;
+        replay("D0 U80 D400 U450");
+        assertEquals(Arrays.asList("single@300", "single@700"), mActions);
+    }
+
+    @Test
+    public void tripleTapStartsNewSequence() {
+        mHasDoubleTap = true;
+        replay("D0 U50 D100 U150 D200 U250");
+        assertEquals(Arrays.asList("double@100", "single@500"), mActions);
+    }
+
+    @Test
+    public void longPressConsumesKeyUpAndRepeats() {
+        mHasLongPress = true;
+        List<Boolean> consumed = replay("D0 R400 R450 R500 R550 U900");
+        assertEquals(Arrays.asList("long@500"), mActions);
+        // repeated downs go to the framework, key up is swallowed
+        assertEquals(Arrays.asList(true, false, false, false, false, true), consumed);
+    }
+
+    @Test
+    public void shortPressCancelsLongPress() {
+        mHasLongPress = true;
+        replay("D0 U200");
+        assertEquals(Arrays.asList("single@200"), mActions);
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void heldKeyDoesNotDeliverSingleTapOnDoubleTapTimeout() {
+        mHasDoubleTap = true;
+        mHasLongPress = true;
+        replay("D0 U900");
+        assertEquals(Arrays.asList("long@500"), mActions);
+    }
+
+    @Test
+    public void releaseBetweenDoubleTapAndLongPressTimeout() {
+        mHasDoubleTap = true;
+        mHasLongPress = true;
+        // held past double-tap timeout but released before long-press
+        replay("D0 U400");
+        assertEquals(Arrays.asList("single@400"), mActions);
+    }
+
+    @Test
+    public void disabledKeysSwallowSingleTap() {
+        mKeysEnabled = false;
+        assertEquals(Arrays.asList(true, true), replay("D0 U80"));
+        mHasDoubleTap = true;
+        replay("D20000 U20080");
+        assertTrue(mActions.isEmpty());
+        // double-tap action is still performed
+        replay("D30000 U30080 D30150 U30230");
+        assertEquals(Arrays.asList("double@30150"), mActions);
+    }
+
+    @Test
+    public void canceledKeyUpDropsSingleTap() {
+        assertEquals(Arrays.asList(true, true), replay("D0 C80"));
+        assertTrue(mActions.isEmpty());
+    }
+
+    @Test
+    public void keyPressedTracksState() {
+        mHasLongPress = true;
+        down(0);
+        assertTrue(mDetector.isKeyPressed());
+        mScheduler.advance(600);
+        assertTrue(mDetector.isKeyPressed());
+        mDetector.onKeyUp(0, false);
+        assertFalse(mDetector.isKeyPressed());
+    }
+}
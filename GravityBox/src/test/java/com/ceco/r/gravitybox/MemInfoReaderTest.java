@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemInfoReaderTest {
+
+    private MemInfoReader mReader;
+
+    @Before
+    public void setUp() {
+        mReader = new MemInfoReader();
+    }
+
+    @Test
+    public void parsesAllValues() throws Exception {
+        mReader.readMemInfo(CpuStatReaderTest.fixture("proc_meminfo"));
+        assertEquals(5772300L * 1024, mReader.getTotalSize());
+        assertEquals(190432L * 1024, mReader.getFreeSize());
+        // SwapCached must not be taken for Cached
+        assertEquals(1943288L * 1024, mReader.getCachedSize());
+        assertEquals(2621436L * 1024, mReader.getSwapTotalSize());
+        assertEquals(1416720L * 1024, mReader.getSwapFreeSize());
+    }
+
+    @Test
+    public void missingSwapReadsAsZero() throws Exception {
+        mReader.readMemInfo(CpuStatReaderTest.fixture("proc_meminfo_no_swap"));
+        assertEquals(1945632L * 1024, mReader.getTotalSize());
+        assertEquals(74012L * 1024, mReader.getFreeSize());
+        assertEquals(550120L * 1024, mReader.getCachedSize());
+        assertEquals(0, mReader.getSwapTotalSize());
+        assertEquals(0, mReader.getSwapFreeSize());
+    }
+
+    @Test
+    public void previousReadDoesNotLeak() throws Exception {
+        mReader.readMemInfo(CpuStatReaderTest.fixture("proc_meminfo"));
+        mReader.readMemInfo(CpuStatReaderTest.fixture("proc_meminfo_no_swap"));
+        assertEquals(1945632L * 1024, mReader.getTotalSize());
+        assertEquals(0, mReader.getSwapTotalSize());
+        assertEquals(0, mReader.getSwapFreeSize());
+    }
+
+    @Test
+    public void unreadableFileClearsValues() throws Exception {
+        mReader.readMemInfo(CpuStatReaderTest.fixture("proc_meminfo"));
+        mReader.readMemInfo("/nonexistent/proc/meminfo");
+        assertEquals(0, mReader.getTotalSize());
+        assertEquals(0, mReader.getFreeSize());
+        assertEquals(0, mReader.getCachedSize());
+    }
+}
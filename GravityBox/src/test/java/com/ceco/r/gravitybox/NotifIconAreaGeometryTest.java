@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static com.ceco.r.gravitybox.NotifIconAreaGeometry.NONE;
+import static com.ceco.r.gravitybox.NotifIconAreaGeometry.computeMaxWidth;
+import static com.ceco.r.gravitybox.NotifIconAreaGeometry.computeSafeWidth;
+import static com.ceco.r.gravitybox.NotifIconAreaGeometry.computeSystemIconAreaMaxWidth;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NotifIconAreaGeometryTest {
+    // 1080x2340 panel
+    private static final int SHORT_SIDE = 1080;
+    private static final int LONG_SIDE = 2340;
+    private static final int GAP = 24;
+
+    @Test
+    public void noCutoutPortraitAndLandscape() {
+        assertEquals(594, computeSafeWidth(SHORT_SIDE, LONG_SIDE, NONE, NONE));
+        assertEquals(1404, computeSafeWidth(LONG_SIDE, SHORT_SIDE, NONE, NONE));
+    }
+
+    @Test
+    public void squareScreenUsesPortraitRatio() {
+        assertEquals(990, computeSafeWidth(1800, 1800, NONE, NONE));
+    }
+
+    @Test
+    public void baseWidthRounded() {
+        // 1081 * 0.55 = 594.55
+        assertEquals(595, computeSafeWidth(1081, 2340, NONE, NONE));
+        // 1081 * 0.60 = 648.6
+        assertEquals(649, computeSafeWidth(1081, 1000, NONE, NONE));
+    }
+
+    @Test
+    public void centerPunchHoleLimitsWidth() {
+        assertEquals(505, computeSafeWidth(SHORT_SIDE, LONG_SIDE, 505, NONE));
+    }
+
+    @Test
+    public void centerNotchLimitsWidth() {
+        // wide notch spanning 320..760
+        assertEquals(320, computeSafeWidth(SHORT_SIDE, LONG_SIDE, 320, NONE));
+    }
+
+    @Test
+    public void leftCornerPunchHole() {
+        assertEquals(40, computeSafeWidth(SHORT_SIDE, LONG_SIDE, 40, NONE));
+    }
+
+    @Test
+    public void rightCornerPunchHoleKeepsBaseWidth() {
+        assertEquals(594, computeSafeWidth(SHORT_SIDE, LONG_SIDE, 980, NONE));
+    }
+
+    @Test
+    public void centerLayoutLimitsWidth() {
+        // centered clock
+        assertEquals(470, computeSafeWidth(SHORT_SIDE, LONG_SIDE, NONE, 470));
+        assertEquals(1100, computeSafeWidth(LONG_SIDE, SHORT_SIDE, NONE, 1100));
+        // center layout child beyond base width
+        assertEquals(594, computeSafeWidth(SHORT_SIDE, LONG_SIDE, NONE, 700));
+    }
+
+    @Test
+    public void narrowerOfCutoutAndCenterLayoutWins() {
+        assertEquals(470, computeSafeWidth(SHORT_SIDE, LONG_SIDE, 505, 470));
+        assertEquals(505, computeSafeWidth(SHORT_SIDE, LONG_SIDE, 505, 520));
+    }
+
+    @Test
+    public void centerLayoutLeftOfScreen() {
+        int safe = computeSafeWidth(SHORT_SIDE, LONG_SIDE, NONE, -20);
+        assertEquals(-20, safe);
+        assertEquals(SHORT_SIDE - GAP, computeSystemIconAreaMaxWidth(SHORT_SIDE, safe, GAP));
+        assertEquals(0, computeMaxWidth(safe, 0));
+
+        NotifIconAreaGeometry g = new NotifIconAreaGeometry();
+        g.update(SHORT_SIDE, LONG_SIDE, NONE, -20, GAP);
+        assertEquals(-20, g.getSafeWidth());
+        assertEquals(0, g.getComputedWidth());
+    }
+
+    @Test
+    public void systemIconAreaGetsRemainder() {
+        assertEquals(1080 - 594 - GAP, computeSystemIconAreaMaxWidth(SHORT_SIDE, 594, GAP));
+        assertEquals(2340 - 1404 - GAP, computeSystemIconAreaMaxWidth(LONG_SIDE, 1404, GAP));
+    }
+
+    @Test
+    public void maxWidthFromContainerOffset() {
+        assertEquals(594 - 48, computeMaxWidth(594, 48));
+        assertEquals(0, computeMaxWidth(40, 48));
+    }
+
+    @Test
+    public void updateReportsChangesOnly() {
+        NotifIconAreaGeometry g = new NotifIconAreaGeometry();
+        assertFalse(g.isValid());
+        assertTrue(g.update(SHORT_SIDE, LONG_SIDE, 505, NONE, GAP));
+        assertTrue(g.isValid());
+        assertEquals(505, g.getSafeWidth());
+        assertEquals(505, g.getComputedWidth());
+        assertEquals(SHORT_SIDE - 505 - GAP, g.getSystemIconAreaMaxWidth());
+
+        // same inputs; nothing to relayout
+        assertFalse(g.update(SHORT_SIDE, LONG_SIDE, 505, NONE, GAP));
+        // center layout appears right of cutout
+        assertFalse(g.update(SHORT_SIDE, LONG_SIDE, 505, 600, GAP));
+
+        // rotation
+        assertTrue(g.update(LONG_SIDE, SHORT_SIDE, NONE, NONE, GAP));
+        assertEquals(1404, g.getComputedWidth());
+        // gap change affects system icon area only
+        assertTrue(g.update(LONG_SIDE, SHORT_SIDE, NONE, NONE, GAP * 2));
+        assertEquals(1404, g.getSafeWidth());
+    }
+
+    @Test
+    public void invalidateForcesChange() {
+        NotifIconAreaGeometry g = new NotifIconAreaGeometry();
+        g.update(SHORT_SIDE, LONG_SIDE, NONE, NONE, GAP);
+        g.invalidate();
+        assertFalse(g.isValid());
+        assertTrue(g.update(SHORT_SIDE, LONG_SIDE, NONE, NONE, GAP));
+        assertEquals(594, g.getSafeWidth());
+    }
+}
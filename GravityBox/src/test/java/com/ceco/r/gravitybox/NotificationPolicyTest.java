@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NotificationPolicyTest {
+
+    @Test
+    public void roundTripAllCombinations() {
+        int count = 0;
+        for (int flags = 0; flags < 8; flags++) {
+            final boolean progress = (flags & 1) != 0;
+            final boolean hidePersistent = (flags & 2) != 0;
+            final boolean activeScreen = (flags & 4) != 0;
+            for (int vls = 0; vls < 4; vls++) {
+                for (int huMode = 0; huMode < 4; huMode++) {
+                    for (int asMode = 0; asMode < 4; asMode++) {
+                        for (int timeout = -1; timeout <= NotificationPolicy.MAX_HEADS_UP_TIMEOUT; timeout++) {
+                            int p = NotificationPolicy.EMPTY;
+                            p = NotificationPolicy.setProgressTracking(p, progress);
+                            p = NotificationPolicy.setHidePersistent(p, hidePersistent);
+                            p = NotificationPolicy.setVisibilityLs(p, vls);
+                            p = NotificationPolicy.setHeadsUpMode(p, huMode);
+                            p = NotificationPolicy.setHeadsUpTimeout(p, timeout);
+                            p = NotificationPolicy.setActiveScreen(p, activeScreen, asMode);
+
+                            // word travels through notification extras as plain int
+                            final int d = NotificationPolicy.decode(p);
+                            final String msg = "flags=" + flags + " vls=" + vls + " hu=" + huMode +
+                                    " as=" + asMode + " timeout=" + timeout;
+                            assertEquals(msg, p, d);
+                            assertNotEquals(msg, NotificationPolicy.NONE, d);
+                            assertEquals(msg, progress, NotificationPolicy.isProgressTracking(d));
+                            assertEquals(msg, hidePersistent, NotificationPolicy.isHidePersistent(d));
+                            assertEquals(msg, vls, NotificationPolicy.getVisibilityLs(d));
+                            assertEquals(msg, huMode, NotificationPolicy.getHeadsUpMode(d));
+                            assertEquals(msg, activeScreen, NotificationPolicy.isActiveScreen(d));
+                            assertEquals(msg, activeScreen ? asMode : 0,
+                                    NotificationPolicy.getActiveScreenMode(d));
+                            assertEquals(msg, timeout >= 0, NotificationPolicy.hasHeadsUpTimeout(d));
+                            if (timeout >= 0) {
+                                assertEquals(msg, timeout, NotificationPolicy.getHeadsUpTimeout(d));
+                            }
+
+                            // consuming active screen leaves the rest intact
+                            final int c = NotificationPolicy.setActiveScreen(d, false, 0);
+                            assertFalse(msg, NotificationPolicy.isActiveScreen(c));
+                            assertEquals(msg, d & ~0x304, c & ~0x304);
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(8 * 4 * 4 * 4 * (NotificationPolicy.MAX_HEADS_UP_TIMEOUT + 2), count);
+    }
+
+    @Test
+    public void settersOverwritePreviousValues() {
+        int p = NotificationPolicy.EMPTY;
+        p = NotificationPolicy.setHeadsUpMode(p, 3);
+        p = NotificationPolicy.setHeadsUpMode(p, 1);
+        assertEquals(1, NotificationPolicy.getHeadsUpMode(p));
+        p = NotificationPolicy.setHeadsUpTimeout(p, 200);
+        p = NotificationPolicy.setHeadsUpTimeout(p, 7);
+        assertEquals(7, NotificationPolicy.getHeadsUpTimeout(p));
+        p = NotificationPolicy.setHeadsUpTimeout(p, -1);
+        assertFalse(NotificationPolicy.hasHeadsUpTimeout(p));
+        assertEquals(0, NotificationPolicy.getHeadsUpTimeout(p));
+        p = NotificationPolicy.setProgressTracking(p, true);
+        p = NotificationPolicy.setProgressTracking(p, false);
+        assertFalse(NotificationPolicy.isProgressTracking(p));
+        assertEquals(NotificationPolicy.setHeadsUpMode(NotificationPolicy.EMPTY, 1), p);
+    }
+
+    @Test
+    public void timeoutClamped() {
+        int p = NotificationPolicy.setHeadsUpTimeout(NotificationPolicy.EMPTY, 1000);
+        assertTrue(NotificationPolicy.hasHeadsUpTimeout(p));
+        assertEquals(NotificationPolicy.MAX_HEADS_UP_TIMEOUT, NotificationPolicy.getHeadsUpTimeout(p));
+        // clamping must not spill into neighbouring fields
+        assertEquals(0, NotificationPolicy.getHeadsUpMode(p));
+        assertEquals(NotificationPolicy.EMPTY, NotificationPolicy.decode(p) & 0xF0000000);
+        assertEquals(p, NotificationPolicy.decode(p));
+    }
+
+    @Test
+    public void versionMismatchDecodesAsNone() {
+        assertEquals(NotificationPolicy.NONE, NotificationPolicy.decode(0));
+        // missing extra reads as 0
+        assertFalse(NotificationPolicy.isProgressTracking(NotificationPolicy.decode(0)));
+
+        int p = NotificationPolicy.setProgressTracking(NotificationPolicy.EMPTY, true);
+        p = NotificationPolicy.setHeadsUpMode(p, 2);
+        p = NotificationPolicy.setHeadsUpTimeout(p, 10);
+        for (int version = 0; version < 16; version++) {
+            int word = (p & 0x0FFFFFFF) | (version << 28);
+            int d = NotificationPolicy.decode(word);
+            if (version == NotificationPolicy.VERSION) {
+                assertEquals(word, d);
+            } else {
+                assertEquals("version " + version, NotificationPolicy.NONE, d);
+                assertFalse(NotificationPolicy.isProgressTracking(d));
+                assertFalse(NotificationPolicy.hasHeadsUpTimeout(d));
+                assertEquals(0, NotificationPolicy.getHeadsUpMode(d));
+                assertEquals(0, NotificationPolicy.getVisibilityLs(d));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void modeOutOfRangeRejected() {
+        NotificationPolicy.setVisibilityLs(NotificationPolicy.EMPTY, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeModeRejected() {
+        NotificationPolicy.setActiveScreen(NotificationPolicy.EMPTY, true, -1);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OngoingNotifRegistryTest {
+
+    private static class FakeStore implements OngoingNotifRegistry.Store {
+        String data;
+        int loads;
+        final List<String> saves = new ArrayList<>();
+
+        @Override
+        public String load() {
+            loads++;
+            return data;
+        }
+
+        @Override
+        public void save(String data) {
+            this.data = data;
+            saves.add(data);
+        }
+    }
+
+    private FakeStore mStore;
+    private FakeScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mStore = new FakeStore();
+        mScheduler = new FakeScheduler();
+    }
+
+    private OngoingNotifRegistry newRegistry(int capacity) {
+        return new OngoingNotifRegistry(mStore, mScheduler, capacity);
+    }
+
+    @Test
+    public void blockedLookupIsExact() {
+        OngoingNotifRegistry registry = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        registry.setBlocked(OngoingNotifRegistry.serialize(Arrays.asList(
+                "com.foo.bar,12", "org.player,2131230")));
+        assertTrue(registry.isBlocked("com.foo.bar", 12));
+        assertTrue(registry.isBlocked("org.player", 2131230));
+        // substring matching of the serialized list used to block these
+        assertFalse(registry.isBlocked("foo.bar", 1));
+        assertFalse(registry.isBlocked("com.foo.bar", 1));
+        assertFalse(registry.isBlocked("com.foo", 12));
+        assertFalse(registry.isBlocked("org.player", 213));
+        assertFalse(registry.isBlocked("player", 2131230));
+    }
+
+    @Test
+    public void seenLookupIsExact() {
+        mStore.data = "com.foo.bar,12";
+        OngoingNotifRegistry registry = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        assertTrue(registry.isSeen("com.foo.bar", 12));
+        assertFalse(registry.isSeen("foo.bar", 1));
+        assertTrue(registry.record("foo.bar", 1));
+        assertTrue(registry.record("com.foo.bar", 1));
+        assertFalse(registry.record("com.foo.bar", 12));
+        assertEquals(3, registry.size());
+    }
+
+    @Test
+    public void emptyBlockedList() {
+        OngoingNotifRegistry registry = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        assertFalse(registry.isBlocked("com.foo", 1));
+        registry.setBlocked(null);
+        assertFalse(registry.isBlocked("com.foo", 1));
+        registry.setBlocked("");
+        assertFalse(registry.isBlocked("", 0));
+    }
+
+    @Test
+    public void parseSkipsMalformedEntries() {
+        String data = "com.a,1" + OngoingNotifRegistry.SEPARATOR +
+                "broken" + OngoingNotifRegistry.SEPARATOR +
+                ",5" + OngoingNotifRegistry.SEPARATOR +
+                "com.b," + OngoingNotifRegistry.SEPARATOR +
+                "com.c,notanumber" + OngoingNotifRegistry.SEPARATOR +
+                "com.d,-7";
+        assertEquals(Arrays.asList("com.a,1", "com.d,-7"), OngoingNotifRegistry.parse(data));
+        assertTrue(OngoingNotifRegistry.parse(null).isEmpty());
+        assertTrue(OngoingNotifRegistry.parse("").isEmpty());
+    }
+
+    @Test
+    public void persistenceRoundTrip() {
+        OngoingNotifRegistry registry = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        assertTrue(registry.record("com.music", 100));
+        assertTrue(registry.record("com.download", 200));
+        assertTrue(registry.record("com.navi", 300));
+        // additions in short succession are batched into a single write
+        assertTrue(mStore.saves.isEmpty());
+        mScheduler.advance(5000);
+        assertEquals(1, mStore.saves.size());
+        assertEquals(Arrays.asList("com.music,100", "com.download,200", "com.navi,300"),
+                OngoingNotifRegistry.parse(mStore.data));
+
+        // next SystemUI start
+        OngoingNotifRegistry restored = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        assertTrue(restored.isSeen("com.music", 100));
+        assertTrue(restored.isSeen("com.download", 200));
+        assertTrue(restored.isSeen("com.navi", 300));
+        assertFalse(restored.record("com.navi", 300));
+        mScheduler.advance(10000);
+        // nothing new, nothing written
+        assertEquals(1, mStore.saves.size());
+    }
+
+    @Test
+    public void storeLoadedOnceLazily() {
+        mStore.data = "com.a,1";
+        OngoingNotifRegistry registry = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        assertEquals(0, mStore.loads);
+        for (int i = 0; i < 100; i++) {
+            registry.isSeen("com.a", 1);
+            registry.record("com.b", i);
+        }
+        assertEquals(1, mStore.loads);
+    }
+
+    @Test
+    public void oldestEntriesEvicted() {
+        OngoingNotifRegistry registry = newRegistry(3);
+        for (int i = 1; i <= 5; i++) {
+            registry.record("com.app" + i, i);
+        }
+        assertEquals(3, registry.size());
+        assertFalse(registry.isSeen("com.app1", 1));
+        assertFalse(registry.isSeen("com.app2", 2));
+        assertTrue(registry.isSeen("com.app5", 5));
+        mScheduler.advance(5000);
+        assertEquals(Arrays.asList("com.app3,3", "com.app4,4", "com.app5,5"),
+                OngoingNotifRegistry.parse(mStore.data));
+    }
+
+    @Test
+    public void blockedEntriesSurviveEviction() {
+        OngoingNotifRegistry registry = newRegistry(3);
+        registry.setBlocked("com.app1,1");
+        for (int i = 1; i <= 5; i++) {
+            registry.record("com.app" + i, i);
+        }
+        assertEquals(3, registry.size());
+        assertTrue(registry.isSeen("com.app1", 1));
+        assertFalse(registry.isSeen("com.app2", 2));
+        assertFalse(registry.isSeen("com.app3", 3));
+        assertTrue(registry.isSeen("com.app4", 4));
+        assertTrue(registry.isSeen("com.app5", 5));
+    }
+
+    @Test
+    public void oversizedStoreTrimmedOnLoad() {
+        mStore.data = OngoingNotifRegistry.serialize(Arrays.asList(
+                "com.a,1", "com.b,2", "com.c,3", "com.d,4"));
+        OngoingNotifRegistry registry = newRegistry(2);
+        assertEquals(2, registry.size());
+        assertTrue(registry.isSeen("com.d", 4));
+        mScheduler.advance(5000);
+        assertEquals("com.c,3" + OngoingNotifRegistry.SEPARATOR + "com.d,4", mStore.data);
+    }
+
+    @Test
+    public void resetSavesImmediatelyAndCancelsPendingSave() {
+        OngoingNotifRegistry registry = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        registry.record("com.a", 1);
+        registry.reset();
+        assertEquals(Arrays.asList(""), mStore.saves);
+        assertEquals(0, mScheduler.getPendingCount());
+        assertEquals(0, registry.size());
+        assertFalse(registry.isSeen("com.a", 1));
+        // reset registry doesn't reload stale data
+        mStore.data = "com.a,1";
+        assertFalse(registry.isSeen("com.a", 1));
+        assertTrue(registry.record("com.b", 2));
+        mScheduler.advance(5000);
+        assertEquals("com.b,2", mStore.data);
+    }
+
+    @Test
+    public void missingStoreData() {
+        mStore.data = null;
+        OngoingNotifRegistry registry = newRegistry(OngoingNotifRegistry.DEFAULT_CAPACITY);
+        assertEquals(0, registry.size());
+        mScheduler.advance(10000);
+        assertTrue(mStore.saves.isEmpty());
+        assertNull(mStore.data);
+    }
+}
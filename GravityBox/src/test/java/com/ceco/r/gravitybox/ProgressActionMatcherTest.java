@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProgressActionMatcherTest {
+
+    private static final String PKG = "com.download";
+
+    // captured shape of RemoteViews$ReflectionAction
+    private static class Action {
+        final int viewId;
+        final String methodName;
+        final Object value;
+
+        Action(int viewId, String methodName, Object value) {
+            this.viewId = viewId;
+            this.methodName = methodName;
+            this.value = value;
+        }
+    }
+
+    // other RemoteViews actions, e.g. SetOnClickResponse
+    private static class OtherAction { }
+
+    private static class FakeReader implements ProgressActionMatcher.ActionReader {
+        final List<Integer> visitedViews = new ArrayList<>();
+
+        @Override
+        public boolean isReflectionAction(Object action) {
+            return action instanceof Action;
+        }
+
+        @Override
+        public int getViewId(Object action) {
+            return ((Action) action).viewId;
+        }
+
+        @Override
+        public String getMethodName(Object action) {
+            visitedViews.add(((Action) action).viewId);
+            return ((Action) action).methodName;
+        }
+
+        @Override
+        public Object getValue(Object action) {
+            return ((Action) action).value;
+        }
+    }
+
+    private FakeReader mReader;
+    private ProgressActionMatcher mMatcher;
+
+    @Before
+    public void setUp() {
+        mReader = new FakeReader();
+        mMatcher = new ProgressActionMatcher(mReader);
+    }
+
+    // typical download notification: title, text, progress bar, chronometer
+    private static List<Object> download(int max, int progress) {
+        return Arrays.asList(
+                new Action(0x1020016, "setText", "file.zip"),
+                new OtherAction(),
+                new Action(0x1020046, "setText", "12 MB / 40 MB"),
+                new Action(0x102000d, "setMax", max),
+                new Action(0x102000d, "setProgress", progress),
+                new Action(0x102000d, "setIndeterminate", false),
+                new Action(0x1020018, "setBase", 1000L));
+    }
+
+    @Test
+    public void matchesCapturedDownload() throws Exception {
+        assertTrue(mMatcher.match(PKG, download(100, 42)));
+        assertEquals(100, mMatcher.getMax());
+        assertEquals(42, mMatcher.getProgress());
+    }
+
+    @Test
+    public void noProgressActions() throws Exception {
+        List<Object> actions = Arrays.asList(
+                new Action(0x1020016, "setText", "Message"),
+                new OtherAction());
+        assertFalse(mMatcher.match(PKG, actions));
+        assertFalse(mMatcher.match(PKG, new ArrayList<>()));
+    }
+
+    @Test
+    public void maxWithoutProgressOnSameViewIsIgnored() throws Exception {
+        List<Object> actions = Arrays.asList(
+                new Action(0x10, "setMax", 100),
+                new Action(0x20, "setProgress", 50));
+        assertFalse(mMatcher.match(PKG, actions));
+    }
+
+    @Test
+    public void pairsMaxAndProgressByViewId() throws Exception {
+        // seek bar of media player precedes the actual download progress;
+        // mixing views would yield max of one and progress of the other
+        List<Object> actions = Arrays.asList(
+                new Action(0x10, "setProgress", 7),
+                new Action(0x20, "setMax", 200),
+                new Action(0x20, "setProgress", 150),
+                new Action(0x30, "setMax", 1000));
+        assertTrue(mMatcher.match(PKG, actions));
+        assertEquals(200, mMatcher.getMax());
+        assertEquals(150, mMatcher.getProgress());
+    }
+
+    @Test
+    public void orderOfActionsDoesNotMatter() throws Exception {
+        List<Object> actions = Arrays.asList(
+                new Action(0x20, "setProgress", 3),
+                new Action(0x10, "setText", "x"),
+                new Action(0x20, "setMax", 9));
+        assertTrue(mMatcher.match(PKG, actions));
+        assertEquals(9, mMatcher.getMax());
+        assertEquals(3, mMatcher.getProgress());
+    }
+
+    @Test
+    public void rememberedViewServesSubsequentUpdates() throws Exception {
+        List<Object> first = Arrays.asList(
+                new Action(0x10, "setProgress", 7),
+                new Action(0x20, "setMax", 200),
+                new Action(0x20, "setProgress", 10));
+        assertTrue(mMatcher.match(PKG, first));
+
+        mReader.visitedViews.clear();
+        List<Object> update = Arrays.asList(
+                new Action(0x10, "setProgress", 8),
+                new Action(0x20, "setMax", 200),
+                new Action(0x20, "setProgress", 20));
+        assertTrue(mMatcher.match(PKG, update));
+        assertEquals(20, mMatcher.getProgress());
+        // fast path looks at remembered view only
+        assertFalse(mReader.visitedViews.contains(0x10));
+    }
+
+    @Test
+    public void layoutChangeFallsBackToFullScan() throws Exception {
+        assertTrue(mMatcher.match(PKG, download(100, 10)));
+
+        List<Object> changed = Arrays.asList(
+                new Action(0x40, "setMax", 50),
+                new Action(0x40, "setProgress", 25));
+        assertTrue(mMatcher.match(PKG, changed));
+        assertEquals(50, mMatcher.getMax());
+        assertEquals(25, mMatcher.getProgress());
+
+        // newly remembered view is used from now on
+        mReader.visitedViews.clear();
+        assertTrue(mMatcher.match(PKG, Arrays.asList(
+                new Action(0x102000d, "setProgress", 1),
+                new Action(0x40, "setMax", 50),
+                new Action(0x40, "setProgress", 30))));
+        assertEquals(30, mMatcher.getProgress());
+        assertFalse(mReader.visitedViews.contains(0x102000d));
+    }
+
+    @Test
+    public void viewsAreRememberedPerPackage() throws Exception {
+        assertTrue(mMatcher.match("a", Arrays.asList(
+                new Action(0x10, "setMax", 10),
+                new Action(0x10, "setProgress", 1))));
+        assertTrue(mMatcher.match("b", Arrays.asList(
+                new Action(0x10, "setProgress", 2),
+                new Action(0x20, "setMax", 20),
+                new Action(0x20, "setProgress", 3))));
+        // b's layout also carries view 0x10 progress without max; must stay on 0x20
+        assertTrue(mMatcher.match("b", Arrays.asList(
+                new Action(0x10, "setProgress", 4),
+                new Action(0x10, "setMax", 40),
+                new Action(0x20, "setMax", 20),
+                new Action(0x20, "setProgress", 5))));
+        assertEquals(20, mMatcher.getMax());
+        assertEquals(5, mMatcher.getProgress());
+        assertTrue(mMatcher.match("a", Arrays.asList(
+                new Action(0x10, "setMax", 10),
+                new Action(0x10, "setProgress", 6))));
+        assertEquals(10, mMatcher.getMax());
+        assertEquals(6, mMatcher.getProgress());
+    }
+
+    @Test
+    public void zeroViewIdIsNotACandidate() throws Exception {
+        assertFalse(mMatcher.match(PKG, Arrays.asList(
+                new Action(0, "setMax", 10),
+                new Action(0, "setProgress", 1))));
+    }
+}
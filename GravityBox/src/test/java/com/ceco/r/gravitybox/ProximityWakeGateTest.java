@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static com.ceco.r.gravitybox.ProximityWakeGate.DECISION_BLOCK;
+import static com.ceco.r.gravitybox.ProximityWakeGate.DECISION_WAKE;
+import static com.ceco.r.gravitybox.ProximityWakeGate.DECISION_WAKE_VERIFY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProximityWakeGateTest {
+    // PowerManager wake reasons
+    private static final int REASON_POWER_BUTTON = 1;
+    private static final int REASON_APPLICATION = 2;
+    private static final int REASON_PLUGGED_IN = 3;
+    private static final int REASON_GESTURE = 4;
+    private static final int REASON_CAMERA_LAUNCH = 5;
+    private static final int REASON_HDMI = 8;
+    private static final int REASON_LID = 9;
+
+    // same as ModPower
+    private static final long VERIFY_TIMEOUT = 500;
+    private static final long SENSOR_TTL = 1000;
+
+    private final List<Boolean> mSensorStates = new ArrayList<>();
+    private int mSleeps;
+
+    private FakeScheduler mScheduler;
+    private ProximityWakeGate mGate;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler();
+        mGate = new ProximityWakeGate(mScheduler, new ProximityWakeGate.Callback() {
+            @Override
+            public void setSensorEnabled(boolean enabled) {
+                mSensorStates.add(enabled);
+            }
+
+            @Override
+            public void onCoveredAfterWake() {
+                mSleeps++;
+            }
+        });
+        mGate.setVerifyTimeoutMs(VERIFY_TIMEOUT);
+        mGate.setSensorTtlMs(SENSOR_TTL);
+        mGate.setTrustedReasons(REASON_PLUGGED_IN, REASON_CAMERA_LAUNCH,
+                REASON_HDMI, REASON_LID);
+    }
+
+    @Test
+    public void trustedReasonsBypassSensor() {
+        for (int reason : new int[] { REASON_PLUGGED_IN, REASON_CAMERA_LAUNCH,
+                REASON_HDMI, REASON_LID }) {
+            assertEquals(DECISION_WAKE, mGate.onWakeRequest(reason));
+        }
+        assertFalse(mGate.isSensorEnabled());
+        assertTrue(mSensorStates.isEmpty());
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void trustedReasonWakesEvenWhenCovered() {
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mGate.onProximityChanged(true);
+        assertEquals(DECISION_BLOCK, mGate.onWakeRequest(REASON_GESTURE));
+        assertEquals(DECISION_WAKE, mGate.onWakeRequest(REASON_PLUGGED_IN));
+    }
+
+    @Test
+    public void untrustedAndInvalidReasonsChecked() {
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        mGate.reset();
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(-1));
+        mGate.reset();
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(40));
+
+        mGate.setTrustedReasons(REASON_APPLICATION, -1, 32);
+        assertEquals(DECISION_WAKE, mGate.onWakeRequest(REASON_APPLICATION));
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(REASON_PLUGGED_IN));
+    }
+
+    @Test
+    public void wakeThenVerifyCoveredGoesBackToSleep() {
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        assertTrue(mGate.isSensorEnabled());
+        assertEquals(Arrays.asList(true), mSensorStates);
+        mScheduler.advance(80);
+        mGate.onProximityChanged(true);
+        assertEquals(1, mSleeps);
+        // later readings don't trigger another sleep
+        mGate.onProximityChanged(false);
+        mGate.onProximityChanged(true);
+        assertEquals(1, mSleeps);
+    }
+
+    @Test
+    public void wakeThenVerifyUncoveredStaysAwake() {
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        mScheduler.advance(80);
+        mGate.onProximityChanged(false);
+        // user covers sensor when putting device down; not a pocket wake
+        mScheduler.advance(100);
+        mGate.onProximityChanged(true);
+        assertEquals(0, mSleeps);
+    }
+
+    @Test
+    public void verifyTimeoutKeepsDeviceAwake() {
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        mScheduler.advance(VERIFY_TIMEOUT);
+        // late reading only serves subsequent requests
+        mGate.onProximityChanged(true);
+        assertEquals(0, mSleeps);
+        assertEquals(DECISION_BLOCK, mGate.onWakeRequest(REASON_POWER_BUTTON));
+    }
+
+    @Test
+    public void liveReadingDecidesRightAway() {
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mScheduler.advance(50);
+        mGate.onProximityChanged(false);
+
+        mScheduler.advance(200);
+        assertEquals(DECISION_WAKE, mGate.onWakeRequest(REASON_GESTURE));
+        mGate.onProximityChanged(true);
+        mScheduler.advance(200);
+        assertEquals(DECISION_BLOCK, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        assertEquals(DECISION_BLOCK, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        mGate.onProximityChanged(false);
+        assertEquals(DECISION_WAKE, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        assertEquals(0, mSleeps);
+        // sensor stays on across requests
+        assertEquals(Arrays.asList(true), mSensorStates);
+    }
+
+    @Test
+    public void repeatedRequestsShareSingleVerify() {
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mScheduler.advance(10);
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        // verify timeout and sensor timeout
+        assertEquals(2, mScheduler.getPendingCount());
+        mGate.onProximityChanged(true);
+        assertEquals(1, mSleeps);
+    }
+
+    @Test
+    public void sensorDisabledAfterTtl() {
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mGate.onProximityChanged(false);
+        mScheduler.advance(SENSOR_TTL - 1);
+        assertTrue(mGate.isSensorEnabled());
+        mScheduler.advance(1);
+        assertFalse(mGate.isSensorEnabled());
+        assertEquals(Arrays.asList(true, false), mSensorStates);
+        assertEquals(0, mScheduler.getPendingCount());
+
+        // readings while disabled are ignored and old reading is stale
+        mGate.onProximityChanged(true);
+        assertEquals(DECISION_WAKE_VERIFY, mGate.onWakeRequest(REASON_POWER_BUTTON));
+        assertEquals(Arrays.asList(true, false, true), mSensorStates);
+    }
+
+    @Test
+    public void requestExtendsSensorTtl() {
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mGate.onProximityChanged(false);
+        mScheduler.advance(800);
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mScheduler.advance(800);
+        assertTrue(mGate.isSensorEnabled());
+        mScheduler.advance(200);
+        assertFalse(mGate.isSensorEnabled());
+    }
+
+    @Test
+    public void sensorKeptOnForVerifyTimeout() {
+        mGate.setSensorTtlMs(100);
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mScheduler.advance(300);
+        assertTrue(mGate.isSensorEnabled());
+        mGate.onProximityChanged(true);
+        assertEquals(1, mSleeps);
+        mScheduler.advance(200);
+        assertFalse(mGate.isSensorEnabled());
+    }
+
+    @Test
+    public void resetCancelsVerifyAndDisablesSensor() {
+        mGate.onWakeRequest(REASON_POWER_BUTTON);
+        mGate.reset();
+        assertFalse(mGate.isSensorEnabled());
+        assertEquals(0, mScheduler.getPendingCount());
+        mGate.onProximityChanged(true);
+        assertEquals(0, mSleeps);
+        assertEquals(Arrays.asList(true, false), mSensorStates);
+    }
+}
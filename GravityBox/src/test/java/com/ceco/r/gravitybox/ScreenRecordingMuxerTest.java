@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static com.ceco.r.gravitybox.ScreenRecordingMuxer.FLAG_CODEC_CONFIG;
+import static com.ceco.r.gravitybox.ScreenRecordingMuxer.FLAG_END_OF_STREAM;
+import static com.ceco.r.gravitybox.ScreenRecordingMuxer.FLAG_KEY_FRAME;
+import static com.ceco.r.gravitybox.ScreenRecordingMuxer.SOURCE_AUDIO;
+import static com.ceco.r.gravitybox.ScreenRecordingMuxer.SOURCE_VIDEO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScreenRecordingMuxerTest {
+
+    private static class Sample {
+        final int track;
+        final byte[] data;
+        final long ptsUs;
+        final int flags;
+        Sample(int track, byte[] data, long ptsUs, int flags) {
+            this.track = track;
+            this.data = data;
+            this.ptsUs = ptsUs;
+            this.flags = flags;
+        }
+    }
+
+    private static class FakeSink implements ScreenRecordingMuxer.Sink<String> {
+        final List<String> tracks = new ArrayList<>();
+        final List<Sample> samples = new ArrayList<>();
+        int startCount;
+        int stopCount;
+
+        @Override
+        public int addTrack(String format) {
+            if (startCount > 0) throw new IllegalStateException("track added after start");
+            tracks.add(format);
+            return tracks.size() - 1;
+        }
+
+        @Override
+        public void start() {
+            startCount++;
+        }
+
+        @Override
+        public void writeSample(int track, ByteBuffer buffer, int offset, int size, long ptsUs, int flags) {
+            if (startCount == 0) throw new IllegalStateException("write before start");
+            byte[] data = new byte[size];
+            ByteBuffer src = buffer.duplicate();
+            src.position(offset);
+            src.get(data);
+            samples.add(new Sample(track, data, ptsUs, flags));
+        }
+
+        @Override
+        public void stop() {
+            stopCount++;
+        }
+
+        List<Sample> track(int track) {
+            List<Sample> result = new ArrayList<>();
+            for (Sample s : samples) {
+                if (s.track == track) result.add(s);
+            }
+            return result;
+        }
+    }
+
+    private FakeSink mSink;
+
+    @Before
+    public void setUp() {
+        mSink = new FakeSink();
+    }
+
+    private static ByteBuffer buffer(int value, int size) {
+        byte[] data = new byte[size + 4];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return ByteBuffer.wrap(data);
+    }
+
+    private static boolean video(ScreenRecordingMuxer<String> muxer, long ptsUs, int flags) {
+        return muxer.onSample(SOURCE_VIDEO, buffer((int) (ptsUs / 1000), 100), 2, 100, ptsUs, flags);
+    }
+
+    private static boolean audio(ScreenRecordingMuxer<String> muxer, long ptsUs) {
+        return muxer.onSample(SOURCE_AUDIO, buffer((int) (ptsUs / 1000), 20), 2, 20, ptsUs, 0);
+    }
+
+    @Test
+    public void videoOnlyStartsOnVideoFormat() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, false, 0);
+        assertFalse(muxer.isStarted());
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        assertTrue(muxer.isStarted());
+        assertEquals(1, mSink.startCount);
+        assertEquals(1, mSink.tracks.size());
+    }
+
+    @Test
+    public void samplesKeptUntilAllFormatsKnown() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, true, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        ByteBuffer key = buffer(7, 100);
+        muxer.onSample(SOURCE_VIDEO, key, 2, 100, 1000000, FLAG_KEY_FRAME);
+        // encoder reuses its buffers once sample is handed over
+        key.put(2, (byte) 0);
+        video(muxer, 1033000, 0);
+        audio(muxer, 1010000);
+        assertFalse(muxer.isStarted());
+        assertEquals(0, mSink.samples.size());
+
+        muxer.onFormat(SOURCE_AUDIO, "aac");
+        assertTrue(muxer.isStarted());
+        assertEquals(3, mSink.samples.size());
+        assertEquals(buffer(7, 100).get(2), mSink.samples.get(0).data[0]);
+        assertEquals(2, mSink.track(0).size());
+        assertEquals(1, mSink.track(1).size());
+        assertEquals(10000, mSink.track(1).get(0).ptsUs);
+    }
+
+    @Test
+    public void recordingStartsAtFirstKeyFrame() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, true, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        muxer.onFormat(SOURCE_AUDIO, "aac");
+        audio(muxer, 400000);
+        video(muxer, 466000, 0);
+        video(muxer, 500000, FLAG_KEY_FRAME);
+        audio(muxer, 510000);
+        video(muxer, 533000, 0);
+
+        assertEquals(2, muxer.getDroppedCount());
+        List<Sample> v = mSink.track(0);
+        assertEquals(2, v.size());
+        assertEquals(0, v.get(0).ptsUs);
+        assertEquals(FLAG_KEY_FRAME, v.get(0).flags);
+        assertEquals(33000, v.get(1).ptsUs);
+        assertEquals(10000, mSink.track(1).get(0).ptsUs);
+        assertEquals(33000, muxer.getDurationUs());
+    }
+
+    @Test
+    public void timestampsIncreasePerTrack() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, true, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        muxer.onFormat(SOURCE_AUDIO, "aac");
+        video(muxer, 1000000, FLAG_KEY_FRAME);
+        video(muxer, 1000000, 0);
+        // samples before base are dropped
+        video(muxer, 999000, 0);
+        audio(muxer, 1020000);
+        audio(muxer, 1020000);
+        audio(muxer, 990000);
+
+        List<Sample> v = mSink.track(0);
+        assertEquals(2, v.size());
+        assertEquals(0, v.get(0).ptsUs);
+        assertEquals(1, v.get(1).ptsUs);
+        List<Sample> a = mSink.track(1);
+        assertEquals(2, a.size());
+        assertEquals(20000, a.get(0).ptsUs);
+        assertEquals(20001, a.get(1).ptsUs);
+        assertEquals(2, muxer.getDroppedCount());
+    }
+
+    @Test
+    public void codecConfigIgnoredAndFlagsStripped() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, false, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        video(muxer, 0, FLAG_CODEC_CONFIG);
+        video(muxer, 1000, FLAG_KEY_FRAME | FLAG_END_OF_STREAM);
+        muxer.onSample(SOURCE_VIDEO, buffer(0, 0), 0, 0, 2000, 0);
+
+        assertEquals(1, mSink.samples.size());
+        assertEquals(FLAG_KEY_FRAME, mSink.samples.get(0).flags);
+        assertEquals(1, muxer.getSampleCount(SOURCE_VIDEO));
+        assertEquals(0, muxer.getSampleCount(SOURCE_AUDIO));
+    }
+
+    @Test
+    public void timeLimitEndsRecording() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, true, 1000000);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        muxer.onFormat(SOURCE_AUDIO, "aac");
+        long pts = 5000000;
+        boolean limit = false;
+        int frames = 0;
+        while (!limit && frames < 100) {
+            limit = video(muxer, pts, frames % 30 == 0 ? FLAG_KEY_FRAME : 0);
+            audio(muxer, pts + 5000);
+            pts += 33333;
+            frames++;
+        }
+        assertTrue(limit);
+        assertTrue(muxer.isLimitReached());
+        // frame 30 is at 999990us, frame 31 hits the limit
+        assertEquals(32, frames);
+        assertEquals(31, muxer.getSampleCount(SOURCE_VIDEO));
+        assertEquals(30 * 33333, muxer.getDurationUs());
+
+        int written = mSink.samples.size();
+        assertTrue(audio(muxer, pts));
+        assertEquals(written, mSink.samples.size());
+        assertTrue(muxer.stop());
+        assertEquals(1, mSink.stopCount);
+    }
+
+    @Test
+    public void stopWithoutVideo() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, true, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        video(muxer, 0, FLAG_KEY_FRAME);
+        assertFalse(muxer.stop());
+        assertEquals(0, mSink.stopCount);
+        assertEquals(0, mSink.samples.size());
+
+        muxer = new ScreenRecordingMuxer<>(mSink, false, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        assertFalse(muxer.stop());
+        assertFalse(muxer.stop());
+        assertEquals(1, mSink.stopCount);
+    }
+
+    @Test
+    public void pendingSamplesBounded() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, true, 0);
+        ByteBuffer big = ByteBuffer.allocate(3 * 1024 * 1024);
+        for (int i = 0; i < 4; i++) {
+            muxer.onSample(SOURCE_VIDEO, big, 0, big.capacity(), i * 33333, FLAG_KEY_FRAME);
+        }
+        assertEquals(2, muxer.getDroppedCount());
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        muxer.onFormat(SOURCE_AUDIO, "aac");
+        assertEquals(2, mSink.samples.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void formatAfterStartThrows() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, false, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void duplicateFormatThrows() {
+        ScreenRecordingMuxer<String> muxer = new ScreenRecordingMuxer<>(mSink, true, 0);
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+        muxer.onFormat(SOURCE_VIDEO, "avc");
+    }
+}
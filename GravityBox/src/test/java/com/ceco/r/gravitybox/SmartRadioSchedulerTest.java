@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SmartRadioSchedulerTest {
+
+    private enum State { NORMAL, POWER_SAVING }
+
+    private static final long HYSTERESIS = 5000;
+    private static final long MIN_DWELL = 60000;
+
+    private FakeScheduler mTimer;
+    private SmartRadioScheduler<State> mScheduler;
+    private final List<String> mApplied = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mTimer = new FakeScheduler();
+        mApplied.clear();
+        mScheduler = new SmartRadioScheduler<>(mTimer,
+                (state, reason) -> mApplied.add(state + "@" + mTimer.now()));
+        mScheduler.setHysteresisMs(HYSTERESIS);
+        mScheduler.setMinDwellMs(MIN_DWELL);
+        // boot: initial state is applied right away
+        mScheduler.request(State.NORMAL, true, true, "init");
+        mApplied.clear();
+    }
+
+    private void at(long time) {
+        mTimer.advanceTo(time);
+    }
+
+    @Test
+    public void initialStateApplied() {
+        assertEquals(State.NORMAL, mScheduler.getCurrentState());
+        assertNull(mScheduler.getPendingState());
+    }
+
+    @Test
+    public void hysteresisDelaysSwitch() {
+        at(100000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        assertEquals(State.POWER_SAVING, mScheduler.getPendingState());
+        at(104999);
+        assertTrue(mApplied.isEmpty());
+        at(200000);
+        assertEquals(Arrays.asList("POWER_SAVING@105000"), mApplied);
+        assertEquals(State.POWER_SAVING, mScheduler.getCurrentState());
+    }
+
+    @Test
+    public void flappingWithinHysteresisIsDropped() {
+        at(100000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        at(102000);
+        mScheduler.request(State.NORMAL, false, "data active");
+        at(103000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        at(104000);
+        mScheduler.request(State.NORMAL, false, "data active");
+        at(200000);
+        assertTrue(mApplied.isEmpty());
+        assertEquals(State.NORMAL, mScheduler.getCurrentState());
+    }
+
+    @Test
+    public void repeatedRequestKeepsDeadline() {
+        at(100000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        at(103000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        at(200000);
+        assertEquals(Arrays.asList("POWER_SAVING@105000"), mApplied);
+    }
+
+    @Test
+    public void minDwellHoldsNewState() {
+        at(100000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        at(110000);
+        // POWER_SAVING applied at 105000 must be held until 165000
+        mScheduler.request(State.NORMAL, false, "data active");
+        at(164999);
+        assertEquals(Arrays.asList("POWER_SAVING@105000"), mApplied);
+        at(300000);
+        assertEquals(Arrays.asList("POWER_SAVING@105000", "NORMAL@165000"), mApplied);
+    }
+
+    @Test
+    public void hysteresisLongerThanRemainingDwellWins() {
+        at(100000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        at(163000);
+        mScheduler.request(State.NORMAL, false, "data active");
+        at(300000);
+        assertEquals(Arrays.asList("POWER_SAVING@105000", "NORMAL@168000"), mApplied);
+    }
+
+    @Test
+    public void forceReappliesCurrentState() {
+        at(1000);
+        mScheduler.request(State.NORMAL, false, "noop");
+        at(100000);
+        assertTrue(mApplied.isEmpty());
+
+        // mode value changed while in the same state; dwell doesn't apply
+        mScheduler.request(State.NORMAL, true, "mode value changed");
+        at(200000);
+        assertEquals(Arrays.asList("NORMAL@105000"), mApplied);
+    }
+
+    @Test
+    public void alarmDrivenScreenOffSkipsHysteresis() {
+        // screen went off at 100000 with 10 min delay; alarm fires at 700000
+        at(700000);
+        mScheduler.request(State.POWER_SAVING, true, true, "screen off");
+        assertEquals(Arrays.asList("POWER_SAVING@700000"), mApplied);
+        assertNull(mScheduler.getPendingState());
+    }
+
+    @Test
+    public void screenOffHonorsMinDwell() {
+        at(30000);
+        mScheduler.request(State.POWER_SAVING, true, true, "screen off");
+        // NORMAL applied at 0 is held for min dwell
+        assertTrue(mApplied.isEmpty());
+        at(100000);
+        assertEquals(Arrays.asList("POWER_SAVING@60000"), mApplied);
+    }
+
+    @Test
+    public void screenOffReplacesPendingHysteresisRequest() {
+        at(100000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        at(101000);
+        mScheduler.request(State.POWER_SAVING, true, true, "screen off");
+        at(200000);
+        // applied once, at alarm time rather than hysteresis deadline
+        assertEquals(Arrays.asList("POWER_SAVING@101000"), mApplied);
+    }
+
+    @Test
+    public void screenOnCancelsPendingScreenOff() {
+        at(30000);
+        mScheduler.request(State.POWER_SAVING, true, true, "screen off");
+        at(40000);
+        mScheduler.request(State.NORMAL, false, "screen on");
+        at(300000);
+        assertTrue(mApplied.isEmpty());
+        assertEquals(State.NORMAL, mScheduler.getCurrentState());
+    }
+
+    @Test
+    public void cancelDropsPendingRequest() {
+        at(100000);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        mScheduler.cancel("disabled");
+        assertNull(mScheduler.getPendingState());
+        at(200000);
+        assertTrue(mApplied.isEmpty());
+        assertEquals(0, mTimer.getPendingCount());
+    }
+
+    @Test
+    public void zeroHysteresisAndDwellApplyImmediately() {
+        mScheduler.setHysteresisMs(-1);
+        mScheduler.setMinDwellMs(0);
+        at(10);
+        mScheduler.request(State.POWER_SAVING, false, "data idle");
+        mScheduler.request(State.NORMAL, false, "data active");
+        assertEquals(Arrays.asList("POWER_SAVING@10", "NORMAL@10"), mApplied);
+    }
+
+    @Test
+    public void decisionLogIsBounded() {
+        for (int i = 1; i <= 50; i++) {
+            at(i * 1000);
+            mScheduler.request(i % 2 == 0 ? State.NORMAL : State.POWER_SAVING, false, "flap " + i);
+        }
+        String dump = mScheduler.dump();
+        assertTrue(dump.startsWith("current=NORMAL; pending=null"));
+        assertEquals(1 + 32, dump.split("\n").length);
+        assertTrue(dump.endsWith("POWER_SAVING: cancelled (flap 50)"));
+    }
+}
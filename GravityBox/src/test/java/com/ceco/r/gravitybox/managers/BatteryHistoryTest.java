@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BatteryHistoryTest {
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    // recorded discharge: minute of level step and level; screen on until 100%..70%,
+    // then screen off with slow drain
+    private static final int[][] DISCHARGE = {
+            {0, 100}, {5, 99}, {11, 98}, {16, 97}, {22, 96}, {27, 95}, {33, 94}, {38, 93},
+            {44, 92}, {49, 91}, {55, 90}, {60, 89}, {66, 88}, {71, 87}, {77, 86}, {82, 85},
+            {88, 84}, {93, 83}, {99, 82}, {104, 81}, {110, 80}, {115, 79}, {121, 78},
+            {126, 77}, {132, 76}, {137, 75}, {143, 74}, {148, 73}, {154, 72}, {159, 71},
+            {165, 70}, {225, 69}, {285, 68}, {345, 67}, {405, 66}, {465, 65}
+    };
+
+    // recorded charge: fast up to 80%, then tapering
+    private static final int[][] CHARGE = {
+            {0, 20}, {1, 21}, {2, 22}, {3, 24}, {4, 25}, {5, 26}, {6, 28}, {7, 29}, {8, 30},
+            {9, 32}, {10, 33}, {11, 34}, {12, 36}, {13, 37}, {14, 38}, {15, 40}, {20, 46},
+            {25, 52}, {30, 58}, {35, 64}, {40, 70}, {45, 76}, {50, 80}, {55, 83}, {60, 85},
+            {65, 87}, {70, 89}, {80, 92}, {90, 95}, {100, 97}, {110, 99}, {120, 100}
+    };
+
+    private static BatteryHistory replay(int[][] curve, boolean charging, int count) {
+        BatteryHistory h = new BatteryHistory();
+        for (int i = 0; i < count; i++) {
+            h.add(curve[i][0] * MINUTE, curve[i][1], 300, 4000, charging);
+        }
+        return h;
+    }
+
+    @Test
+    public void firstStepOnlyAnchors() {
+        BatteryHistory h = new BatteryHistory();
+        assertFalse(h.add(0, 50, 300, 4000, false));
+        assertFalse(h.add(3 * MINUTE, 49, 300, 4000, false));
+        assertTrue(Float.isNaN(h.getRate()));
+        assertEquals(BatteryHistory.UNKNOWN, h.getTimeToEmpty(3 * MINUTE));
+        assertTrue(h.add(9 * MINUTE, 48, 300, 4000, false));
+        assertEquals(-10f, h.getRate(), 0.001f);
+    }
+
+    @Test
+    public void dischargeRateAndTimeToEmpty() {
+        // screen on part drains 1% per 5.5 min, i.e. about 10.9 %/h
+        BatteryHistory h = replay(DISCHARGE, false, 31);
+        assertEquals(-10.9f, h.getRate(), 0.4f);
+        long now = 165 * MINUTE;
+        long tte = h.getTimeToEmpty(now);
+        assertEquals(70 / 10.9 * HOUR, tte, 0.05 * tte);
+        assertEquals(BatteryHistory.UNKNOWN, h.getTimeToFull(now));
+    }
+
+    @Test
+    public void estimateFollowsConsumptionDrop() {
+        BatteryHistory h = replay(DISCHARGE, false, 31);
+        long atLastStep = h.getTimeToEmpty(165 * MINUTE);
+        // no level step for 40 minutes after screen went off; rate is bounded by elapsed time
+        long later = h.getTimeToEmpty(205 * MINUTE);
+        assertEquals(70 * 40 * MINUTE, later);
+        assertTrue(later > atLastStep);
+
+        // slow screen off steps pull averaged rate down
+        h = replay(DISCHARGE, false, DISCHARGE.length);
+        assertTrue(h.getRate() > -3f && h.getRate() < -1f);
+    }
+
+    @Test
+    public void chargeRateAndTimeToFull() {
+        BatteryHistory h = replay(CHARGE, true, 23);
+        assertTrue(h.getRate() > 60f);
+        long ttf = h.getTimeToFull(50 * MINUTE);
+        assertTrue(ttf > 10 * MINUTE && ttf < 25 * MINUTE);
+        assertEquals(BatteryHistory.UNKNOWN, h.getTimeToEmpty(50 * MINUTE));
+
+        // tapering charge lowers rate and extends estimate
+        h = replay(CHARGE, true, CHARGE.length - 1);
+        assertTrue(h.getRate() < 20f);
+    }
+
+    @Test
+    public void chargingChangeResetsEstimate() {
+        BatteryHistory h = replay(DISCHARGE, false, 10);
+        assertFalse(Float.isNaN(h.getRate()));
+        assertTrue(h.add(50 * MINUTE, 91, 300, 4000, true));
+        assertTrue(Float.isNaN(h.getRate()));
+        assertEquals(BatteryHistory.UNKNOWN, h.getTimeToFull(50 * MINUTE));
+        assertEquals(BatteryHistory.UNKNOWN, h.getTimeToEmpty(50 * MINUTE));
+    }
+
+    @Test
+    public void stepAgainstChargingStateIgnored() {
+        BatteryHistory h = replay(CHARGE, true, 5);
+        float rate = h.getRate();
+        // heavy load while charging
+        assertFalse(h.add(5 * MINUTE, 24, 300, 4000, true));
+        assertEquals(rate, h.getRate(), 0f);
+    }
+
+    @Test
+    public void sameLevelDoesNotChangeRate() {
+        BatteryHistory h = replay(DISCHARGE, false, 5);
+        float rate = h.getRate();
+        assertFalse(h.add(23 * MINUTE, 96, 310, 3990, false));
+        assertEquals(rate, h.getRate(), 0f);
+        assertEquals(6, h.size());
+    }
+
+    @Test
+    public void ringBufferKeepsNewestSamples() {
+        BatteryHistory h = new BatteryHistory(4);
+        for (int i = 0; i < 6; i++) {
+            h.add(i * MINUTE, 50 - i, 300 + i, 4000 - i, i % 2 == 0);
+        }
+        assertEquals(4, h.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals((i + 2) * MINUTE, h.getTime(i));
+            assertEquals(48 - i, h.getLevel(i));
+            assertEquals(302 + i, h.getTemperature(i));
+            assertEquals(3998 - i, h.getVoltage(i));
+            assertEquals(i % 2 == 0, h.isCharging(i));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void accessOutOfRangeThrows() {
+        BatteryHistory h = new BatteryHistory(4);
+        h.add(0, 50, 300, 4000, false);
+        h.getLevel(1);
+    }
+
+    @Test
+    public void temperatureChangeWithinWindow() {
+        BatteryHistory h = new BatteryHistory();
+        assertEquals(0, h.getTemperatureChange(10 * MINUTE));
+        h.add(0, 80, 300, 4000, true);
+        assertEquals(0, h.getTemperatureChange(10 * MINUTE));
+        // heating up while fast charging
+        h.add(4 * MINUTE, 81, 312, 4010, true);
+        h.add(8 * MINUTE, 82, 321, 4020, true);
+        assertEquals(21, h.getTemperatureChange(10 * MINUTE));
+        h.add(12 * MINUTE, 83, 330, 4030, true);
+        // sample at minute 0 falls out of window, minute 4 is the oldest within
+        assertEquals(18, h.getTemperatureChange(10 * MINUTE));
+        assertEquals(9, h.getTemperatureChange(4 * MINUTE));
+        assertEquals(0, h.getTemperatureChange(MINUTE));
+    }
+
+    @Test
+    public void temperatureChangeCoolingAfterWrap() {
+        BatteryHistory h = new BatteryHistory(4);
+        for (int i = 0; i < 10; i++) {
+            h.add(i * MINUTE, 50, 400 - 5 * i, 4000, false);
+        }
+        // only last 4 samples are kept: minutes 6..9
+        assertEquals(-15, h.getTemperatureChange(HOUR));
+        assertEquals(-10, h.getTemperatureChange(2 * MINUTE));
+    }
+
+    @Test
+    public void clearResetsState() {
+        BatteryHistory h = replay(DISCHARGE, false, 10);
+        h.clear();
+        assertEquals(0, h.size());
+        assertTrue(Float.isNaN(h.getRate()));
+        assertEquals(BatteryHistory.UNKNOWN, h.getTimeToEmpty(0));
+    }
+}
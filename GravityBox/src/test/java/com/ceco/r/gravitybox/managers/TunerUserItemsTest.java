@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TunerUserItemsTest {
+    // mirrors SysUiTunerManager.Category
+    private enum Category { FRAMEWORK, SYSTEMUI }
+
+    // builds index from prefs the way SysUiTunerManager.initUserItemsCache does;
+    // pref values stand for items as "category/resource name[/origin]"
+    private static TunerUserItems<Category, String> index(Map<String, String> prefs) {
+        TunerUserItems.Builder<Category, String> builder =
+                new TunerUserItems.Builder<>(Category.class);
+        for (Map.Entry<String, String> pref : prefs.entrySet()) {
+            if (!TunerUserItems.isUserItemKey(pref.getKey(), Category.values())) continue;
+            String[] item = pref.getValue().split("/");
+            builder.add(Category.valueOf(item[0]), item[1], pref.getValue(),
+                    TunerUserItems.isLegacyKey(pref.getKey()));
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void userItemKeys() {
+        assertTrue(TunerUserItems.isUserItemKey("FRAMEWORK:config_dozeAlwaysOnDisplayAvailable",
+                Category.values()));
+        assertTrue(TunerUserItems.isUserItemKey("SYSTEMUI:quick_qs_offset_height",
+                Category.values()));
+        assertTrue(TunerUserItems.isUserItemKey("tuneable:quick_qs_offset_height",
+                Category.values()));
+        assertFalse(TunerUserItems.isUserItemKey("tunerTrialCountdown", Category.values()));
+        assertFalse(TunerUserItems.isUserItemKey("FRAMEWORKX:foo", Category.values()));
+        assertFalse(TunerUserItems.isUserItemKey("systemui:foo", Category.values()));
+        assertTrue(TunerUserItems.isLegacyKey("tuneable:foo"));
+        assertFalse(TunerUserItems.isLegacyKey("SYSTEMUI:foo"));
+    }
+
+    @Test
+    public void lookupByCategoryAndName() {
+        Map<String, String> prefs = new LinkedHashMap<>();
+        prefs.put("FRAMEWORK:config_showNavigationBar", "FRAMEWORK/config_showNavigationBar");
+        prefs.put("SYSTEMUI:quick_qs_offset_height", "SYSTEMUI/quick_qs_offset_height");
+        prefs.put("SYSTEMUI:config_showNavigationBar", "SYSTEMUI/config_showNavigationBar");
+        prefs.put("tunerTrialCountdown", "SYSTEMUI/ignored");
+        TunerUserItems<Category, String> items = index(prefs);
+
+        assertEquals("FRAMEWORK/config_showNavigationBar",
+                items.find(Category.FRAMEWORK, "config_showNavigationBar"));
+        assertEquals("SYSTEMUI/config_showNavigationBar",
+                items.find(Category.SYSTEMUI, "config_showNavigationBar"));
+        assertEquals("SYSTEMUI/quick_qs_offset_height",
+                items.find(Category.SYSTEMUI, "quick_qs_offset_height"));
+        assertNull(items.find(Category.FRAMEWORK, "quick_qs_offset_height"));
+        assertNull(items.find(Category.SYSTEMUI, "ignored"));
+        assertNull(items.find(Category.SYSTEMUI, "quick_qs_offset"));
+        assertEquals(new HashSet<>(Arrays.asList("quick_qs_offset_height", "config_showNavigationBar")),
+                new HashSet<>(items.getKeys(Category.SYSTEMUI)));
+    }
+
+    @Test
+    public void currentKeyWinsOverLegacyInAnyOrder() {
+        Map<String, String> legacyFirst = new LinkedHashMap<>();
+        legacyFirst.put("tuneable:quick_qs_offset_height", "SYSTEMUI/quick_qs_offset_height/legacy");
+        legacyFirst.put("SYSTEMUI:quick_qs_offset_height", "SYSTEMUI/quick_qs_offset_height/current");
+        Map<String, String> legacyLast = new LinkedHashMap<>();
+        legacyLast.put("SYSTEMUI:quick_qs_offset_height", "SYSTEMUI/quick_qs_offset_height/current");
+        legacyLast.put("tuneable:quick_qs_offset_height", "SYSTEMUI/quick_qs_offset_height/legacy");
+
+        for (Map<String, String> prefs : Arrays.asList(legacyFirst, legacyLast)) {
+            TunerUserItems<Category, String> items = index(prefs);
+            assertEquals("SYSTEMUI/quick_qs_offset_height/current",
+                    items.find(Category.SYSTEMUI, "quick_qs_offset_height"));
+            assertEquals(1, items.getKeys(Category.SYSTEMUI).size());
+        }
+    }
+
+    @Test
+    public void legacyKeyUsedWithoutCurrentOne() {
+        Map<String, String> prefs = new LinkedHashMap<>();
+        prefs.put("tuneable:config_showNavigationBar", "FRAMEWORK/config_showNavigationBar");
+        TunerUserItems<Category, String> items = index(prefs);
+        assertEquals("FRAMEWORK/config_showNavigationBar",
+                items.find(Category.FRAMEWORK, "config_showNavigationBar"));
+        assertNull(items.find(Category.SYSTEMUI, "config_showNavigationBar"));
+    }
+
+    @Test
+    public void emptyIndex() {
+        TunerUserItems<Category, String> items = index(new LinkedHashMap<>());
+        assertNull(items.find(Category.FRAMEWORK, "config_showNavigationBar"));
+        assertTrue(items.getKeys(Category.FRAMEWORK).isEmpty());
+        assertTrue(items.getKeys(Category.SYSTEMUI).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void builtIndexIsReadOnly() {
+        Map<String, String> prefs = new LinkedHashMap<>();
+        prefs.put("SYSTEMUI:quick_qs_offset_height", "SYSTEMUI/quick_qs_offset_height");
+        index(prefs).getKeys(Category.SYSTEMUI).clear();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.pie;
+
+import static com.ceco.r.gravitybox.pie.PieTriggerGeometry.BOTTOM;
+import static com.ceco.r.gravitybox.pie.PieTriggerGeometry.LEFT;
+import static com.ceco.r.gravitybox.pie.PieTriggerGeometry.NONE;
+import static com.ceco.r.gravitybox.pie.PieTriggerGeometry.RIGHT;
+import static com.ceco.r.gravitybox.pie.PieTriggerGeometry.TOP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PieTriggerGeometryTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 2340;
+    private static final int THICKNESS = 40;
+    private static final int ALL = (1 << LEFT) | (1 << BOTTOM) | (1 << RIGHT) | (1 << TOP);
+
+    private PieTriggerGeometry mGeometry;
+
+    @Before
+    public void setUp() {
+        mGeometry = new PieTriggerGeometry();
+    }
+
+    @Test
+    public void emptyGeometry() {
+        assertTrue(mGeometry.isEmpty());
+        assertEquals(NONE, mGeometry.findTrigger(0, 0));
+
+        mGeometry.update(0, WIDTH, HEIGHT, THICKNESS, false, 0);
+        assertTrue(mGeometry.isEmpty());
+        mGeometry.update(ALL, WIDTH, HEIGHT, 0, false, 0);
+        assertTrue(mGeometry.isEmpty());
+        mGeometry.update(ALL, 0, 0, THICKNESS, false, 0);
+        assertTrue(mGeometry.isEmpty());
+        assertEquals(NONE, mGeometry.findTrigger(0, HEIGHT / 2f));
+    }
+
+    @Test
+    public void onlyEnabledSlotsTrigger() {
+        mGeometry.update(1 << BOTTOM, WIDTH, HEIGHT, THICKNESS, false, 0);
+        assertFalse(mGeometry.isEmpty());
+        assertTrue(mGeometry.isEnabled(BOTTOM));
+        assertFalse(mGeometry.isEnabled(LEFT));
+        assertFalse(mGeometry.isEnabled(NONE));
+        assertFalse(mGeometry.isEnabled(PieTriggerGeometry.COUNT));
+
+        assertEquals(BOTTOM, mGeometry.findTrigger(WIDTH / 2f, HEIGHT - 1));
+        assertEquals(NONE, mGeometry.findTrigger(0, HEIGHT / 2f));
+        assertEquals(NONE, mGeometry.findTrigger(WIDTH / 2f, 0));
+        assertEquals(NONE, mGeometry.findTrigger(WIDTH - 1, HEIGHT / 2f));
+    }
+
+    @Test
+    public void thicknessBoundsTrigger() {
+        mGeometry.update(ALL, WIDTH, HEIGHT, THICKNESS, false, 0);
+        assertEquals(THICKNESS, mGeometry.getThickness());
+        final float cx = WIDTH / 2f;
+        final float cy = HEIGHT / 2f;
+
+        assertEquals(LEFT, mGeometry.findTrigger(THICKNESS - 1, cy));
+        assertEquals(NONE, mGeometry.findTrigger(THICKNESS, cy));
+        assertEquals(RIGHT, mGeometry.findTrigger(WIDTH - THICKNESS, cy));
+        assertEquals(NONE, mGeometry.findTrigger(WIDTH - THICKNESS - 1, cy));
+        assertEquals(TOP, mGeometry.findTrigger(cx, THICKNESS - 1));
+        assertEquals(NONE, mGeometry.findTrigger(cx, THICKNESS));
+        assertEquals(BOTTOM, mGeometry.findTrigger(cx, HEIGHT - THICKNESS));
+        assertEquals(NONE, mGeometry.findTrigger(cx, HEIGHT - THICKNESS - 1));
+    }
+
+    @Test
+    public void triggerSpansEightyPercentOfEdge() {
+        mGeometry.update(ALL, WIDTH, HEIGHT, THICKNESS, false, 0);
+        final int vLength = (int) (HEIGHT * 0.8f);
+        final int hLength = (int) (WIDTH * 0.8f);
+        assertEquals(vLength, mGeometry.getLength(LEFT));
+        assertEquals(vLength, mGeometry.getLength(RIGHT));
+        assertEquals(hLength, mGeometry.getLength(TOP));
+        assertEquals(hLength, mGeometry.getLength(BOTTOM));
+
+        // centered on the edge
+        final float vStart = (HEIGHT - vLength) / 2f;
+        assertEquals(LEFT, mGeometry.findTrigger(0, vStart));
+        assertEquals(NONE, mGeometry.findTrigger(0, vStart - 1));
+        assertEquals(LEFT, mGeometry.findTrigger(0, vStart + vLength - 1));
+        assertEquals(NONE, mGeometry.findTrigger(0, vStart + vLength));
+
+        final float hStart = (WIDTH - hLength) / 2f;
+        assertEquals(BOTTOM, mGeometry.findTrigger(hStart, HEIGHT - 1));
+        assertEquals(NONE, mGeometry.findTrigger(hStart - 1, HEIGHT - 1));
+        assertEquals(BOTTOM, mGeometry.findTrigger(hStart + hLength - 1, HEIGHT - 1));
+        assertEquals(NONE, mGeometry.findTrigger(hStart + hLength, HEIGHT - 1));
+
+        // screen corners belong to no trigger
+        assertEquals(NONE, mGeometry.findTrigger(0, 0));
+        assertEquals(NONE, mGeometry.findTrigger(WIDTH - 1, HEIGHT - 1));
+    }
+
+    @Test
+    public void centerTriggerUsesFixedLength() {
+        final int length = 300;
+        mGeometry.update(ALL, WIDTH, HEIGHT, THICKNESS, true, length);
+        assertEquals(length, mGeometry.getLength(LEFT));
+        assertEquals(length, mGeometry.getLength(BOTTOM));
+
+        final float cy = HEIGHT / 2f;
+        assertEquals(RIGHT, mGeometry.findTrigger(WIDTH - 1, cy - length / 2f));
+        assertEquals(NONE, mGeometry.findTrigger(WIDTH - 1, cy - length / 2f - 1));
+        assertEquals(RIGHT, mGeometry.findTrigger(WIDTH - 1, cy + length / 2f - 1));
+        assertEquals(NONE, mGeometry.findTrigger(WIDTH - 1, cy + length / 2f));
+
+        // length is capped by the edge
+        mGeometry.update(ALL, WIDTH, HEIGHT, THICKNESS, true, 5000);
+        assertEquals(HEIGHT, mGeometry.getLength(LEFT));
+        assertEquals(WIDTH, mGeometry.getLength(TOP));
+        assertEquals(LEFT, mGeometry.findTrigger(0, HEIGHT - 1));
+    }
+
+    @Test
+    public void rotatedScreenSwapsEdgeLengths() {
+        mGeometry.update(ALL, WIDTH, HEIGHT, THICKNESS, false, 0);
+        final int portraitLeft = mGeometry.getLength(LEFT);
+        final int portraitBottom = mGeometry.getLength(BOTTOM);
+
+        mGeometry.update(ALL, HEIGHT, WIDTH, THICKNESS, false, 0);
+        assertEquals(portraitBottom, mGeometry.getLength(LEFT));
+        assertEquals(portraitLeft, mGeometry.getLength(BOTTOM));
+
+        // landscape bottom edge spans the long side
+        assertEquals(BOTTOM, mGeometry.findTrigger(HEIGHT * 0.15f, WIDTH - 1));
+        assertEquals(RIGHT, mGeometry.findTrigger(HEIGHT - 1, WIDTH / 2f));
+        assertEquals(NONE, mGeometry.findTrigger(WIDTH - 1, WIDTH / 2f));
+        assertEquals(NONE, mGeometry.findTrigger(HEIGHT * 0.05f, WIDTH - 1));
+    }
+}
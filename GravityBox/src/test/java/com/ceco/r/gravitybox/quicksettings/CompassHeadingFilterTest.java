@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.quicksettings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompassHeadingFilterTest {
+
+    private static final float TIME_CONSTANT_SEC = 0.5f;
+    private static final float THRESHOLD_DEG = 2f;
+    private static final long NS_PER_MS = 1000000L;
+
+    // world frame: x east, y north, z up; field in uT as measured in central Europe
+    private static final float[] GRAVITY = { 0, 0, 9.81f };
+    private static final float[] GEOMAGNETIC = { 0, 20f, -44f };
+
+    /**
+     * Sensor trace of a device held at given azimuth and pitch, sampled at
+     * given rate with seeded noise, the way SensorEvent values come in.
+     */
+    private static class Trace {
+        final Random random = new Random(42);
+        final long periodNs;
+        final float noise;
+        long timeNs;
+
+        Trace(int rateHz, float noise) {
+            this.periodNs = 1000000000L / rateHz;
+            this.noise = noise;
+        }
+
+        // device coordinates of world vector: v_dev = Rx(pitch)^T * Rz(-azimuth)^T * v
+        float[] toDevice(float[] v, float azimuthDeg, float pitchDeg) {
+            final double az = Math.toRadians(azimuthDeg);
+            final double p = Math.toRadians(pitchDeg);
+            // undo rotation of device by -azimuth around z
+            double x = Math.cos(az) * v[0] - Math.sin(az) * v[1];
+            double y = Math.sin(az) * v[0] + Math.cos(az) * v[1];
+            double z = v[2];
+            // undo pitch around device x
+            double y2 = Math.cos(p) * y + Math.sin(p) * z;
+            double z2 = -Math.sin(p) * y + Math.cos(p) * z;
+            return new float[] { noisy(x), noisy(y2), noisy(z2) };
+        }
+
+        // rotation vector of a flat device pointing at given azimuth
+        float[] rotationVector(float azimuthDeg, boolean withScalar) {
+            final double half = Math.toRadians(-azimuthDeg) / 2;
+            float q3 = noisy(Math.sin(half) * 1000) / 1000;
+            float q0 = (float) Math.cos(half);
+            if (q0 < 0) {
+                q3 = -q3;
+                q0 = -q0;
+            }
+            return withScalar ? new float[] { 0, 0, q3, q0, 0 } : new float[] { 0, 0, q3 };
+        }
+
+        private float noisy(double value) {
+            return (float) (value + random.nextGaussian() * noise);
+        }
+
+        long next() {
+            timeNs += periodNs;
+            return timeNs;
+        }
+    }
+
+    private static List<Float> feedVectors(CompassHeadingFilter filter, Trace trace,
+                                           float azimuthDeg, float pitchDeg, long durationMs) {
+        List<Float> published = new ArrayList<>();
+        final long end = trace.timeNs + durationMs * NS_PER_MS;
+        while (trace.timeNs < end) {
+            // magnetometer and accelerometer events interleave
+            if (filter.onAcceleration(trace.toDevice(GRAVITY, azimuthDeg, pitchDeg), trace.next())) {
+                published.add(filter.getHeading());
+            }
+            if (filter.onGeomagnetic(trace.toDevice(GEOMAGNETIC, azimuthDeg, pitchDeg), trace.next())) {
+                published.add(filter.getHeading());
+            }
+        }
+        return published;
+    }
+
+    private static List<Float> feedRotation(CompassHeadingFilter filter, Trace trace,
+                                            float fromDeg, float toDeg, long durationMs) {
+        List<Float> published = new ArrayList<>();
+        final long start = trace.timeNs;
+        final long end = start + durationMs * NS_PER_MS;
+        while (trace.timeNs < end) {
+            final long t = trace.next();
+            final float f = Math.min(1f, (float) (t - start) / (end - start));
+            final float azimuth = fromDeg + f * CompassHeadingFilter.delta(fromDeg, toDeg);
+            if (filter.onRotationVector(trace.rotationVector(azimuth, true), t)) {
+                published.add(filter.getHeading());
+            }
+        }
+        return published;
+    }
+
+    private static void assertHeading(float expected, float actual, float tolerance) {
+        assertTrue("expected " + expected + " but was " + actual,
+                Math.abs(CompassHeadingFilter.delta(expected, actual)) <= tolerance);
+    }
+
+    @Test
+    public void deltaWrapsAroundNorth() {
+        assertEquals(20f, CompassHeadingFilter.delta(350, 10), 0.001f);
+        assertEquals(-20f, CompassHeadingFilter.delta(10, 350), 0.001f);
+        assertEquals(-180f, CompassHeadingFilter.delta(0, 180), 0.001f);
+        assertEquals(-180f, CompassHeadingFilter.delta(180, 0), 0.001f);
+        assertEquals(179f, CompassHeadingFilter.delta(0, 179), 0.001f);
+        assertEquals(0f, CompassHeadingFilter.delta(720, 0), 0.001f);
+        assertEquals(-90f, CompassHeadingFilter.delta(45, -45), 0.001f);
+    }
+
+    @Test
+    public void nothingPublishedInitially() {
+        CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+        assertTrue(Float.isNaN(filter.getHeading()));
+        // magnetometer alone is not enough
+        assertFalse(filter.onGeomagnetic(new float[] { 0, 20, -44 }, 1));
+        assertTrue(Float.isNaN(filter.getHeading()));
+    }
+
+    @Test
+    public void rotationVectorHeading() {
+        for (float azimuth : new float[] { 0, 45, 90, 180, 200, 270, 359 }) {
+            CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+            feedRotation(filter, new Trace(50, 0.5f), azimuth, azimuth, 2000);
+            assertHeading(azimuth, filter.getHeading(), THRESHOLD_DEG);
+        }
+    }
+
+    @Test
+    public void rotationVectorWithoutScalarComponent() {
+        CompassHeadingFilter withScalar = new CompassHeadingFilter(0, 0);
+        CompassHeadingFilter withoutScalar = new CompassHeadingFilter(0, 0);
+        Trace trace = new Trace(50, 0);
+        withScalar.onRotationVector(trace.rotationVector(123, true), 1);
+        withoutScalar.onRotationVector(trace.rotationVector(123, false), 1);
+        assertEquals(123f, withScalar.getHeading(), 0.01f);
+        assertEquals(withScalar.getHeading(), withoutScalar.getHeading(), 0.01f);
+    }
+
+    @Test
+    public void accelerometerAndMagnetometerHeading() {
+        for (float azimuth : new float[] { 10, 90, 200, 300 }) {
+            CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+            feedVectors(filter, new Trace(50, 0.3f), azimuth, 0, 3000);
+            assertHeading(azimuth, filter.getHeading(), THRESHOLD_DEG);
+        }
+    }
+
+    @Test
+    public void tiltCompensated() {
+        // phone held up in front of the user
+        CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+        feedVectors(filter, new Trace(50, 0.3f), 200, 40, 3000);
+        assertHeading(200, filter.getHeading(), THRESHOLD_DEG);
+        feedVectors(filter, new Trace(50, 0.3f), 200, 75, 3000);
+        assertHeading(200, filter.getHeading(), THRESHOLD_DEG);
+    }
+
+    @Test
+    public void freeFallIsIgnored() {
+        CompassHeadingFilter filter = new CompassHeadingFilter(0, 0);
+        assertFalse(filter.onGeomagnetic(new float[] { 0, 20, -44 }, 1));
+        assertFalse(filter.onAcceleration(new float[] { 0, 0, 0 }, 2));
+        assertTrue(Float.isNaN(filter.getHeading()));
+    }
+
+    @Test
+    public void turningThroughNorthDoesNotSwingThroughSouth() {
+        CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+        Trace trace = new Trace(50, 0.5f);
+        feedRotation(filter, trace, 340, 340, 2000);
+        List<Float> published = feedRotation(filter, trace, 340, 20, 2000);
+        published.addAll(feedRotation(filter, trace, 20, 20, 2000));
+        assertFalse(published.isEmpty());
+        // averaging degrees instead of unit vectors would pass through 180
+        for (float deg : published) {
+            assertTrue("heading " + deg, deg >= 330 || deg <= 30);
+        }
+        assertHeading(20, filter.getHeading(), THRESHOLD_DEG);
+    }
+
+    @Test
+    public void jitterBelowThresholdIsNotPublished() {
+        CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+        Trace trace = new Trace(50, 0.8f);
+        feedRotation(filter, trace, 45, 45, 2000);
+        final float settled = filter.getHeading();
+        // hand tremor of a couple of tenths of degree over 10 seconds
+        List<Float> published = feedRotation(filter, trace, 45, 45, 10000);
+        assertTrue("published " + published, published.size() <= 1);
+        assertHeading(45, filter.getHeading(), THRESHOLD_DEG);
+        assertHeading(settled, filter.getHeading(), THRESHOLD_DEG);
+    }
+
+    @Test
+    public void publishedStepsRespectThreshold() {
+        CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+        Trace trace = new Trace(50, 0.5f);
+        feedRotation(filter, trace, 0, 0, 1000);
+        float last = filter.getHeading();
+        List<Float> published = feedRotation(filter, trace, 0, 90, 3000);
+        published.addAll(feedRotation(filter, trace, 90, 90, 2000));
+        assertTrue(published.size() >= 10);
+        for (float deg : published) {
+            assertTrue(Math.abs(CompassHeadingFilter.delta(last, deg)) >= THRESHOLD_DEG);
+            last = deg;
+        }
+        assertHeading(90, filter.getHeading(), THRESHOLD_DEG);
+    }
+
+    @Test
+    public void smoothingDoesNotDependOnSampleRate() {
+        // 90 degree turn applied at once, sampled at game and UI sensor rates
+        float[] headings = new float[2];
+        int[] rates = { 50, 200 };
+        for (int i = 0; i < rates.length; i++) {
+            CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, 0);
+            Trace trace = new Trace(rates[i], 0);
+            feedRotation(filter, trace, 0, 0, 1000);
+            feedRotation(filter, trace, 90, 90, 100);
+            headings[i] = filter.getHeading();
+        }
+        // partially turned after 100 ms, to the same extent regardless of rate
+        assertTrue(headings[0] > 30 && headings[0] < 85);
+        assertEquals(headings[0], headings[1], 3f);
+    }
+
+    @Test
+    public void resetStartsOver() {
+        CompassHeadingFilter filter = new CompassHeadingFilter(TIME_CONSTANT_SEC, THRESHOLD_DEG);
+        Trace trace = new Trace(50, 0);
+        feedRotation(filter, trace, 90, 90, 2000);
+        filter.reset();
+        assertTrue(Float.isNaN(filter.getHeading()));
+        // first sample after reset is taken as is, not blended with old heading
+        assertTrue(filter.onRotationVector(trace.rotationVector(270, true), trace.next()));
+        assertEquals(270f, filter.getHeading(), 0.01f);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2021 Peter Gregus for GravityBox Project (C3C076@xda)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ceco.r.gravitybox.quicksettings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QsTileBindingsTest {
+
+    // stands in for QSTileImpl; stock tiles compare equal by spec, which
+    // must never route a hooked call to a listener owning a different tile
+    private static class FakeTile {
+        static int sStateTouches;
+        final String spec;
+
+        FakeTile(String spec) {
+            this.spec = spec;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            sStateTouches++;
+            return o instanceof FakeTile && ((FakeTile) o).spec.equals(spec);
+        }
+
+        @Override
+        public int hashCode() {
+            sStateTouches++;
+            return spec.hashCode();
+        }
+    }
+
+    // stands in for CustomTile
+    private static class FakeCustomTile extends FakeTile {
+        FakeCustomTile(String spec) {
+            super(spec);
+        }
+    }
+
+    // stands in for QSTileView
+    private static class FakeTileView {
+        @Override
+        public boolean equals(Object o) {
+            FakeTile.sStateTouches++;
+            return o instanceof FakeTileView;
+        }
+
+        @Override
+        public int hashCode() {
+            FakeTile.sStateTouches++;
+            return 1;
+        }
+    }
+
+    private static class FakeListener {
+        final String key;
+        final List<Object> clicks = new ArrayList<>();
+
+        FakeListener(String key) {
+            this.key = key;
+        }
+
+        void handleClick(Object tile) {
+            clicks.add(tile);
+        }
+    }
+
+    private QsTileBindings<FakeListener> mBindings;
+
+    @Before
+    public void setUp() {
+        mBindings = new QsTileBindings<>();
+        FakeTile.sStateTouches = 0;
+    }
+
+    // mirrors hooked handleClick: dispatches only to listener bound to thisObject
+    private boolean dispatchClick(Object thisObject) {
+        FakeListener l = mBindings.get(thisObject);
+        if (l == null) return false;
+        l.handleClick(thisObject);
+        return true;
+    }
+
+    @Test
+    public void dispatchesToBoundListener() {
+        FakeListener gb = new FakeListener("gb_tile_torch");
+        FakeCustomTile tile = new FakeCustomTile("custom(gb_tile_torch)");
+        FakeTileView view = new FakeTileView();
+        mBindings.bind(tile, gb);
+        mBindings.bind(view, gb);
+
+        assertSame(gb, mBindings.get(tile));
+        assertSame(gb, mBindings.get(view));
+        assertEquals(true, dispatchClick(tile));
+        assertEquals(1, gb.clicks.size());
+        assertSame(tile, gb.clicks.get(0));
+    }
+
+    @Test
+    public void foreignTilesMissWithoutTouchingState() {
+        FakeListener wifi = new FakeListener("aosp_tile_wifi");
+        FakeTile owned = new FakeTile("wifi");
+        mBindings.bind(owned, wifi);
+        FakeTile.sStateTouches = 0;
+
+        // equal by spec, yet a different object SystemUI created
+        FakeTile foreign = new FakeTile("wifi");
+        assertNull(mBindings.get(foreign));
+        assertNull(mBindings.get(new FakeCustomTile("custom(other)")));
+        assertNull(mBindings.get(new FakeTileView()));
+        assertNull(mBindings.get(null));
+        assertEquals(false, dispatchClick(foreign));
+        assertEquals(0, wifi.clicks.size());
+        assertEquals(0, FakeTile.sStateTouches);
+    }
+
+    @Test
+    public void rebindReplacesListener() {
+        FakeTile tile = new FakeTile("bt");
+        FakeListener first = new FakeListener("a");
+        FakeListener second = new FakeListener("b");
+        mBindings.bind(tile, first);
+        mBindings.bind(tile, second);
+        dispatchClick(tile);
+        assertEquals(0, first.clicks.size());
+        assertEquals(1, second.clicks.size());
+    }
+
+    @Test
+    public void unbindStopsDispatch() {
+        FakeListener gb = new FakeListener("gb_tile_sync");
+        FakeTile tile = new FakeTile("sync");
+        FakeTileView view = new FakeTileView();
+        mBindings.bind(tile, gb);
+        mBindings.bind(view, gb);
+
+        // tile view recreated on QS panel rebuild
+        mBindings.unbind(view);
+        assertNull(mBindings.get(view));
+        assertSame(gb, mBindings.get(tile));
+
+        mBindings.unbind(tile);
+        assertEquals(false, dispatchClick(tile));
+        // unbinding unknown or null objects is harmless
+        mBindings.unbind(tile);
+        mBindings.unbind(null);
+    }
+
+    @Test
+    public void unbindAllDropsOnlyListenersBindings() {
+        FakeListener a = new FakeListener("a");
+        FakeListener b = new FakeListener("b");
+        FakeTile tileA = new FakeTile("a");
+        FakeTileView viewA = new FakeTileView();
+        FakeTile tileB = new FakeTile("b");
+        mBindings.bind(tileA, a);
+        mBindings.bind(viewA, a);
+        mBindings.bind(tileB, b);
+
+        mBindings.unbindAll(a);
+        assertNull(mBindings.get(tileA));
+        assertNull(mBindings.get(viewA));
+        assertSame(b, mBindings.get(tileB));
+        mBindings.unbindAll(new FakeListener("b"));
+        assertSame(b, mBindings.get(tileB));
+    }
+
+    @Test
+    public void nullArgumentsAreIgnored() {
+        FakeTile tile = new FakeTile("x");
+        mBindings.bind(null, new FakeListener("x"));
+        mBindings.bind(tile, null);
+        assertNull(mBindings.get(tile));
+    }
+}